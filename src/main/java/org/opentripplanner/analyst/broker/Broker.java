@@ -9,10 +9,8 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.TreeMultimap;
-import gnu.trove.map.TIntIntMap;
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.TObjectLongMap;
-import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.map.hash.TObjectLongHashMap;
 import org.glassfish.grizzly.http.server.Request;
@@ -31,6 +29,9 @@ import java.io.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class tracks incoming requests from workers to consume Analyst tasks, and attempts to match those
@@ -63,7 +64,14 @@ public class Broker implements Runnable {
     /* How often we should check for delivered tasks that have timed out. */
     private static final int REDELIVERY_INTERVAL_SEC = 10;
 
-    public final CircularList<Job> jobs = new CircularList<>();
+    /**
+     * How often the task pump thread wakes up on its own to catch any tasks and workers that were not matched up
+     * when they arrived, and to check for redelivery.
+     */
+    private static final int PUMP_INTERVAL_MSEC = 1000;
+
+    /** When working offline all jobs and workers go in one shard, since we ignore graph affinity. */
+    private static final String OFFLINE_SHARD = "OFFLINE";
 
     /** the most tasks to deliver to a worker at a time */
     public final int MAX_TASKS_PER_WORKER = 8;
@@ -74,11 +82,29 @@ public class Broker implements Runnable {
      */
     public static final long WORKER_STARTUP_TIME = 60 * 60 * 1000;
 
-    private int nUndeliveredTasks = 0; // Including normal priority jobs and high-priority tasks.
+    /** Jobs and waiting workers, sharded by graph. */
+    private final Map<String, GraphShard> shards = new ConcurrentHashMap<>();
+
+    private final Map<String, Job> jobsById = new ConcurrentHashMap<>();
+
+    /**
+     * Each call to enqueueTasks gets a contiguous range of task IDs, so the job containing a task is the one whose
+     * range starts at or below the task ID. This saves keeping a map entry for every task.
+     */
+    private final NavigableMap<Integer, Job> jobsByFirstTaskId = new ConcurrentSkipListMap<>();
+
+    private final AtomicInteger nUndeliveredTasks = new AtomicInteger(); // Including normal priority jobs and high-priority tasks.
 
-    private int nWaitingConsumers = 0; // including some that might be closed
+    private final AtomicInteger nWaitingConsumers = new AtomicInteger(); // including some that might be closed
 
-    private int nextTaskId = 0;
+    private final AtomicInteger nextTaskId = new AtomicInteger();
+
+    /** The number of high-priority tasks waiting to be delivered through the normal channels by the task pump. */
+    private volatile int nStalledHighPriorityTasks = 0;
+
+    /** Used to wake up the task pump thread, and set when it has been woken. */
+    private final Object pumpSignal = new Object();
+    private boolean pumpWoken = false;
 
     /** Maximum number of workers allowed */
     private int maxWorkers;
@@ -102,9 +128,6 @@ public class Broker implements Runnable {
 
     private WorkerCatalog workerCatalog = new WorkerCatalog();
 
-    /** The time at which each task was delivered to a worker, to allow re-delivery. */
-    TIntIntMap deliveryTimes = new TIntIntHashMap();
-
     /**
      * Requests that are not part of a job and can "cut in line" in front of jobs for immediate execution.
      * When a high priority task is first received, we attempt to send it to a worker right away via
@@ -125,9 +148,6 @@ public class Broker implements Runnable {
     /** Priority requests that have already been farmed out to workers, and are awaiting a response. */
     private TIntObjectMap<Response> highPriorityResponses = new TIntObjectHashMap<>();
 
-    /** Outstanding requests from workers for tasks, grouped by worker graph affinity. */
-    Map<String, Deque<Response>> consumersByGraph = new HashMap<>();
-
     /**
      * Side channels used to send single point requests to workers, cutting in front of any other work on said workers.
      * We use a TreeMultimap because it is ordered, and the wrapped response defines an order based on
@@ -226,7 +246,7 @@ public class Broker implements Runnable {
         // note that this will mean that requests get delivered multiple times in offline mode,
         // so some unnecessary computation takes place
         if (workersAvailable || workOffline) {
-            task.taskId = nextTaskId++;
+            task.taskId = nextTaskId.getAndIncrement();
             newHighPriorityTasks.put(task.graphId, task);
             highPriorityResponses.put(task.taskId, response);
 
@@ -280,39 +300,48 @@ public class Broker implements Runnable {
         tasks.forEach(t -> stalledHighPriorityTasks.put(graphId, t));
         LOG.info("No side channel available for graph {}, delivering {} tasks via normal channel",
                 graphId, tasks.size());
-        nUndeliveredTasks += tasks.size();
+        nUndeliveredTasks.addAndGet(tasks.size());
+        nStalledHighPriorityTasks = stalledHighPriorityTasks.size();
         newHighPriorityTasks.removeAll(graphId);
 
         // wake up delivery thread
-        notify();
+        wakePump();
     }
 
-    /** Enqueue some tasks for queued execution possibly much later. Results will be saved to S3. */
-    public synchronized void enqueueTasks (List<AnalystClusterRequest> tasks) {
+    /**
+     * Enqueue some tasks for queued execution possibly much later. Results will be saved to S3.
+     * The tasks are handed straight to any workers already waiting on their graph.
+     */
+    public void enqueueTasks (List<AnalystClusterRequest> tasks) {
         Job job = findJob(tasks.get(0)); // creates one if it doesn't exist
 
-        if (!workersAvailableForGraph(job.graphId))
-            createWorkersForGraph(job.graphId);
+        synchronized (this) {
+            if (!workersAvailableForGraph(job.graphId))
+                createWorkersForGraph(job.graphId);
+        }
 
+        int firstTaskId = nextTaskId.getAndAdd(tasks.size());
+        jobsByFirstTaskId.put(firstTaskId, job);
+        int taskId = firstTaskId;
         for (AnalystClusterRequest task : tasks) {
-            task.taskId = nextTaskId++;
+            task.taskId = taskId++;
             job.addTask(task);
-            nUndeliveredTasks += 1;
             LOG.debug("Enqueued task id {} in job {}", task.taskId, job.jobId);
             if ( ! task.graphId.equals(job.graphId)) {
                 LOG.warn("Task graph ID {} does not match job graph ID {}.", task.graphId, job.graphId);
             }
         }
-        // Wake up the delivery thread if it's waiting on input.
-        // This wakes whatever thread called wait() while holding the monitor for this Broker object.
-        notify();
+        GraphShard shard = getShard(job.graphId);
+        shard.nUndeliveredTasks.addAndGet(tasks.size());
+        nUndeliveredTasks.addAndGet(tasks.size());
+        deliverTasks(shard);
     }
 
     public boolean workersAvailableForGraph (String graphId) {
         // make sure that we don't assign work to dead workers
         workerCatalog.purgeDeadWorkers();
 
-        return !workerCatalog.workersByGraph.get(graphId).isEmpty();
+        return workerCatalog.hasWorkers(graphId);
     }
 
     /** Create workers for a given job, if need be */
@@ -324,7 +353,7 @@ public class Broker implements Runnable {
             return;
         }
 
-        if (workerCatalog.observationsByWorkerId.size() >= maxWorkers) {
+        if (workerCatalog.size() >= maxWorkers) {
             LOG.warn("{} workers already started, not starting more; jobs on graph {} will not complete", maxWorkers, graphId);
             return;
         }
@@ -389,8 +418,11 @@ public class Broker implements Runnable {
         LOG.info("Requesting {} workers", nWorkers);
     }
 
-    /** Consumer long-poll operations are enqueued here. */
-    public synchronized void registerSuspendedResponse(String graphId, Response response) {
+    /**
+     * Consumer long-poll operations are enqueued here. If there are tasks waiting on the consumer's graph they are
+     * delivered right away on the calling thread.
+     */
+    public void registerSuspendedResponse(String graphId, Response response) {
         // Add this worker to our catalog, tracking its graph affinity and the last time it was seen.
         String workerId = response.getRequest().getHeader(AnalystWorker.WORKER_ID_HEADER);
         if (workerId != null && !workerId.isEmpty()) {
@@ -400,28 +432,26 @@ public class Broker implements Runnable {
             return;
         }
         // Shelf this suspended response in a queue grouped by graph affinity.
-        Deque<Response> deque = consumersByGraph.get(graphId);
-        if (deque == null) {
-            deque = new ArrayDeque<>();
-            consumersByGraph.put(graphId, deque);
+        GraphShard shard = getShard(graphId);
+        shard.consumers.addLast(response);
+        nWaitingConsumers.incrementAndGet();
+        if (nStalledHighPriorityTasks > 0) {
+            // Leave this consumer for the task pump, which delivers high-priority tasks first.
+            wakePump();
+        } else {
+            deliverTasks(shard);
         }
-        deque.addLast(response);
-        nWaitingConsumers += 1;
-        // Wake up the delivery thread if it's waiting on consumers.
-        // This is whatever thread called wait() while holding the monitor for this Broker object.
-        notify();
     }
 
     /** When we notice that a long poll connection has closed, we remove it here. */
-    public synchronized boolean removeSuspendedResponse(String graphId, Response response) {
-        Deque<Response> deque = consumersByGraph.get(graphId);
-        if (deque == null) {
+    public boolean removeSuspendedResponse(String graphId, Response response) {
+        GraphShard shard = shards.get(shardKey(graphId));
+        if (shard == null) {
             return false;
         }
-        if (deque.remove(response)) {
-            nWaitingConsumers -= 1;
+        if (shard.consumers.remove(response)) {
+            nWaitingConsumers.decrementAndGet();
             LOG.debug("Removed closed connection from queue.");
-            logQueueStatus();
             return true;
         }
         return false;
@@ -444,10 +474,27 @@ public class Broker implements Runnable {
     }
 
     private void logQueueStatus() {
-        LOG.info("{} undelivered, of which {} high-priority", nUndeliveredTasks,
-                stalledHighPriorityTasks.size());
-        LOG.info("{} producers waiting, {} consumers waiting", highPriorityResponses.size(), nWaitingConsumers);
-        LOG.info("{} total workers", workerCatalog.size());
+        LOG.info("{} undelivered, of which {} high-priority", nUndeliveredTasks.get(), nStalledHighPriorityTasks);
+        LOG.info("{} producers waiting, {} consumers waiting", highPriorityResponses.size(), nWaitingConsumers.get());
+        LOG.info("{} jobs on {} graphs, {} total workers", jobsById.size(), shards.size(), workerCatalog.size());
+    }
+
+    /** Wake up the task pump thread if it is waiting. */
+    private void wakePump() {
+        synchronized (pumpSignal) {
+            pumpWoken = true;
+            pumpSignal.notify();
+        }
+    }
+
+    /** @return the shard for jobs and workers on the given graph, creating it if it does not exist. */
+    GraphShard getShard (String graphId) {
+        return shards.computeIfAbsent(shardKey(graphId), GraphShard::new);
+    }
+
+    /** We don't respect graph affinity when working offline, because we can't start more workers. */
+    private String shardKey (String graphId) {
+        return workOffline ? OFFLINE_SHARD : graphId;
     }
 
     /**
@@ -460,135 +507,127 @@ public class Broker implements Runnable {
             LOG.info("Scanning for redelivery...");
             int nRedelivered = 0;
             int nInvisible = 0;
-            for (Job job : jobs) {
-                nInvisible += job.invisibleUntil.size();
-                nRedelivered += job.redeliver();
+            for (Job job : jobsById.values()) {
+                nInvisible += job.getInvisibleTaskCount();
+                int n = job.redeliver();
+                getShard(job.graphId).nUndeliveredTasks.addAndGet(n);
+                nRedelivered += n;
             }
             LOG.info("{} tasks enqueued for redelivery out of {} invisible tasks.", nRedelivered, nInvisible);
-            nUndeliveredTasks += nRedelivered;
+            nUndeliveredTasks.addAndGet(nRedelivered);
+            for (GraphShard shard : shards.values()) {
+                shard.purgeClosedConsumers();
+            }
+            logQueueStatus();
         }
     }
 
     /**
-     * This method checks whether there are any high-priority tasks or normal job tasks and attempts to match them with
-     * waiting workers. It blocks until there are tasks or workers available.
+     * One pass of the task pump thread. It waits until it is woken or PUMP_INTERVAL_MSEC has passed, then delivers
+     * any stalled high-priority tasks and matches up any tasks and consumers on the same graph. Normal tasks are
+     * usually delivered as soon as they or a consumer arrive, by the HTTP thread that brought them in, so this mostly
+     * catches up on redelivered tasks and on tasks and consumers that arrived at the same moment on different threads.
      */
-    public synchronized void deliverTasks() throws InterruptedException {
-
-        // Wait until there are some undelivered tasks.
-        while (nUndeliveredTasks == 0) {
-            LOG.debug("Task delivery thread is going to sleep, there are no tasks waiting for delivery.");
-            logQueueStatus();
-            wait();
-            redeliver();
+    public void deliverTasks() throws InterruptedException {
+        synchronized (pumpSignal) {
+            if (!pumpWoken) {
+                pumpSignal.wait(PUMP_INTERVAL_MSEC);
+            }
+            pumpWoken = false;
         }
-        LOG.debug("Task delivery thread is awake and there are some undelivered tasks.");
-        logQueueStatus();
-
-        while (nWaitingConsumers == 0) {
-            LOG.debug("Task delivery thread is going to sleep, there are no consumers waiting.");
-            // Thread will be notified when there are new incoming consumer connections.
-            wait();
+        redeliver();
+        if (nStalledHighPriorityTasks > 0) {
+            deliverStalledHighPriorityTasks();
         }
+        for (GraphShard shard : shards.values()) {
+            deliverTasks(shard);
+        }
+    }
 
-        LOG.debug("Task delivery thread awake; consumers are waiting and tasks are available");
-
-        // Loop over all jobs and send them to consumers
-        // This makes for an as-fair-as-possible allocation: jobs are fairly allocated between
-        // workers on their graph.
-
-        // start with high-priority tasks
-        HIGHPRIORITY: for (Map.Entry<String, Collection<AnalystClusterRequest>> e : stalledHighPriorityTasks
-                .asMap().entrySet()) {
-            // the collection is an arraylist with the most recently added at the end
-            String graphId = e.getKey();
-            Collection<AnalystClusterRequest> tasks = e.getValue();
-
-            // see if there are any consumers for this
-            // don't respect graph affinity when working offline; we can't arbitrarily start more workers
-            Deque<Response> consumers;
-            if (!workOffline)
-                consumers = consumersByGraph.get(graphId);
-            else {
-                Optional<Deque<Response>> opt = consumersByGraph.values().stream().filter(c -> !c.isEmpty()).findFirst();
-                if (opt.isPresent()) consumers = opt.get();
-                else consumers = null;
-            }
-
-            if (consumers == null || consumers.isEmpty()) {
-                LOG.warn("No consumer found for graph {}, needed for {} high-priority tasks", graphId, tasks.size());
-                continue HIGHPRIORITY;
-            }
-
+    /** Deliver high-priority tasks that could not be sent through a side channel to any consumers on their graph. */
+    private synchronized void deliverStalledHighPriorityTasks() {
+        for (String graphId : new ArrayList<>(stalledHighPriorityTasks.keySet())) {
+            // the list has the most recently added at the end
+            List<AnalystClusterRequest> tasks = stalledHighPriorityTasks.removeAll(graphId);
+            GraphShard shard = getShard(graphId);
             Iterator<AnalystClusterRequest> taskIt = tasks.iterator();
-            while (taskIt.hasNext() && !consumers.isEmpty()) {
-                Response consumer = consumers.pop();
+            List<AnalystClusterRequest> undelivered = new ArrayList<>();
+            while (taskIt.hasNext()) {
+                Response consumer = shard.consumers.pollFirst();
+                if (consumer == null) {
+                    LOG.warn("No consumer found for graph {}, needed for high-priority tasks", graphId);
+                    break;
+                }
+                nWaitingConsumers.decrementAndGet();
 
                 // package tasks into a job
                 Job job = new Job("HIGH PRIORITY");
                 job.graphId = graphId;
+                List<AnalystClusterRequest> batch = new ArrayList<>();
                 for (int i = 0; i < MAX_TASKS_PER_WORKER && taskIt.hasNext(); i++) {
-                    job.addTask(taskIt.next());
-                    taskIt.remove();
+                    batch.add(taskIt.next());
                 }
-
                 // TODO inefficiency here: we should mix single point and multipoint in the same response
-                deliver(job, consumer);
-                nWaitingConsumers--;
+                if (deliver(job, batch, consumer)) {
+                    nUndeliveredTasks.addAndGet(-batch.size());
+                } else {
+                    undelivered.addAll(batch);
+                }
             }
+            taskIt.forEachRemaining(undelivered::add);
+            stalledHighPriorityTasks.putAll(graphId, undelivered);
         }
+        nStalledHighPriorityTasks = stalledHighPriorityTasks.size();
+    }
 
-        // deliver low priority tasks
-        while (nWaitingConsumers > 0) {
-            // ensure we advance at least one; advanceToElement will not advance if the predicate passes
-            // for the first element.
-            jobs.advance();
-
-            // find a job that both has visible tasks and has available workers
-            // We don't respect graph affinity when working offline, because we can't start more workers
-            Job current;
-            if (!workOffline) {
-                current = jobs.advanceToElement(e -> !e.tasksAwaitingDelivery.isEmpty() &&
-                        consumersByGraph.containsKey(e.graphId) &&
-                        !consumersByGraph.get(e.graphId).isEmpty());
-            }
-            else {
-                current = jobs.advanceToElement(e -> !e.tasksAwaitingDelivery.isEmpty());
+    /**
+     * Match up tasks and consumers on one graph. This can be called by any thread at any time; it only uses the
+     * shard's concurrent queues and counters, so threads delivering on the same or different graphs don't block each
+     * other.
+     *
+     * Each consumer gets tasks from only one job, and the shard rotates through its jobs, so if there are multiple
+     * workers and multiple jobs the jobs will be fairly distributed, more or less.
+     */
+    void deliverTasks (GraphShard shard) {
+        int misses = 0;
+        while (shard.nUndeliveredTasks.get() > 0) {
+            Response consumer = shard.consumers.pollFirst();
+            if (consumer == null) return;
+            nWaitingConsumers.decrementAndGet();
+
+            Job job = shard.nextJobWithTasks();
+            List<AnalystClusterRequest> tasks = job == null ? Collections.emptyList() : job.pollTasks(MAX_TASKS_PER_WORKER);
+            if (tasks.isEmpty()) {
+                // Another thread got to the tasks first. Put the consumer back, then loop to check the count again:
+                // a thread that added tasks while we were holding the consumer will not have found it, so we have to
+                // deliver them. If we still find nothing, leave it to the task pump.
+                shard.consumers.addFirst(consumer);
+                nWaitingConsumers.incrementAndGet();
+                if (++misses > 1) return;
+                continue;
             }
-
-            // nothing to see here
-            if (current == null) break;
-
-            Deque<Response> consumers;
-            if (!workOffline)
-                consumers = consumersByGraph.get(current.graphId);
-            else {
-                Optional<Deque<Response>> opt = consumersByGraph.values().stream().filter(c -> !c.isEmpty()).findFirst();
-                if (opt.isPresent()) consumers = opt.get();
-                else consumers = null;
+            shard.nUndeliveredTasks.addAndGet(-tasks.size());
+            nUndeliveredTasks.addAndGet(-tasks.size());
+
+            if (!deliver(job, tasks, consumer)) {
+                // Delivery failed, put tasks back on (the end of) the queue. The consumer is dropped.
+                job.returnTasks(tasks);
+                if (!job.deleted) {
+                    shard.nUndeliveredTasks.addAndGet(tasks.size());
+                    nUndeliveredTasks.addAndGet(tasks.size());
+                }
             }
-            // deliver this job to only one consumer
-            // This way if there are multiple workers and multiple jobs the jobs will be fairly distributed, more or less
-            deliver(current, consumers.pop());
-            nWaitingConsumers--;
         }
-
-        // TODO: graph switching
-
-        // we've delivered everything we can, prevent anything else from happening until something changes
-        wait();
     }
 
     /**
-     * This uses a linear search through jobs, which should not be problematic unless there are thousands of
-     * simultaneous jobs.
+     * Find the job containing a task by looking up the range of task IDs it was enqueued in.
      * @return a Job object that contains the given task ID.
      */
     public Job getJobForTask (int taskId) {
-        for (Job job : jobs) {
-            if (job.containsTask(taskId)) {
-                return job;
-            }
+        Map.Entry<Integer, Job> entry = jobsByFirstTaskId.floorEntry(taskId);
+        if (entry != null && entry.getValue().containsTask(taskId)) {
+            return entry.getValue();
         }
         return null;
     }
@@ -596,11 +635,11 @@ public class Broker implements Runnable {
     /**
      * Attempt to hand some tasks from the given job to a waiting consumer connection.
      * The write will fail if the consumer has closed the connection but it hasn't been removed from the connection
-     * queue yet. This can happen because the Broker methods are synchronized, and the removal action may be waiting
-     * to get the monitor while we are trying to distribute tasks here.
+     * queue yet. This can happen because the removal action may still be waiting to run on another thread while we are
+     * trying to distribute tasks here. On failure the caller must put the tasks back.
      * @return whether the handoff succeeded.
      */
-    public synchronized boolean deliver (Job job, Response response) {
+    public boolean deliver (Job job, List<AnalystClusterRequest> tasks, Response response) {
 
         // Check up-front whether the connection is still open.
         if (!response.getRequest().getRequest().getConnection().isOpen()) {
@@ -608,11 +647,9 @@ public class Broker implements Runnable {
             return false;
         }
 
-        // Get up to N tasks from the tasksAwaitingDelivery deque
-        List<AnalystClusterRequest> tasks = new ArrayList<>();
-        while (tasks.size() < MAX_TASKS_PER_WORKER && !job.tasksAwaitingDelivery.isEmpty()) {
-            tasks.add(job.tasksAwaitingDelivery.poll());
-        }
+        // Move the tasks to delivered status before the consumer can see them. A fast consumer may report a task
+        // completed as soon as the response is resumed, and the completion is ignored if the task is not delivered yet.
+        job.markTasksDelivered(tasks);
 
         // Attempt to deliver the tasks to the given consumer.
         try {
@@ -623,18 +660,13 @@ public class Broker implements Runnable {
         } catch (IOException e) {
             // The connection was probably closed by the consumer, but treat it as a server error.
             LOG.debug("Consumer connection caused IO error, it will be removed.");
+            job.markTasksUndelivered(tasks);
             response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
             response.resume();
-            // Delivery failed, put tasks back on (the end of) the queue.
-            job.tasksAwaitingDelivery.addAll(tasks);
             return false;
         }
 
-        // Delivery succeeded, move tasks from undelivered to delivered status
         LOG.debug("Delivery of {} tasks succeeded.", tasks.size());
-        nUndeliveredTasks -= tasks.size();
-        job.markTasksDelivered(tasks);
-
         return true;
 
     }
@@ -644,10 +676,10 @@ public class Broker implements Runnable {
      * TODO maybe use unique delivery receipts instead of task IDs to handle redelivered tasks independently
      * @return whether the task was found and removed.
      */
-    public synchronized boolean markTaskCompleted (int taskId) {
+    public boolean markTaskCompleted (int taskId) {
         Job job = getJobForTask(taskId);
         if (job == null) {
-            LOG.error("Could not find a job containing task {}, and therefore could not mark the task as completed.");
+            LOG.error("Could not find a job containing task {}, and therefore could not mark the task as completed.", taskId);
             return false;
         }
         job.markTaskCompleted(taskId);
@@ -665,7 +697,6 @@ public class Broker implements Runnable {
         return highPriorityResponses.remove(taskId);
     }
 
-    // TODO: occasionally purge closed connections from consumersByGraph
     // TODO: worker catalog and graph affinity homeostasis
 
     @Override
@@ -682,39 +713,36 @@ public class Broker implements Runnable {
 
     /** find the job for a task, creating it if it does not exist */
     public Job findJob (AnalystClusterRequest task) {
-        Job job = findJob(task.jobId);
-
-        if (job != null)
+        return jobsById.computeIfAbsent(task.jobId, jobId -> {
+            Job job = new Job(jobId);
+            job.graphId = task.graphId;
+            getShard(job.graphId).addJob(job);
             return job;
-
-        job = new Job(task.jobId);
-        job.graphId = task.graphId;
-        jobs.insertAtTail(job);
-        return job;
+        });
     }
 
     /** find the job for a jobId, or null if it does not exist */
     public Job findJob (String jobId) {
-        for (Job job : jobs) {
-            if (job.jobId.equals(jobId)) {
-                return job;
-            }
-        }
-        return null;
+        return jobsById.get(jobId);
     }
 
     /** delete a job */
-    public synchronized boolean deleteJob (String jobId) {
-        Job job = findJob(jobId);
+    public boolean deleteJob (String jobId) {
+        Job job = jobsById.remove(jobId);
         if (job == null) return false;
-        nUndeliveredTasks -= job.tasksAwaitingDelivery.size();
-        return jobs.remove(job);
+        GraphShard shard = getShard(job.graphId);
+        shard.removeJob(job);
+        jobsByFirstTaskId.values().removeIf(j -> j == job);
+        int nRemoved = job.clearTasksAwaitingDelivery();
+        shard.nUndeliveredTasks.addAndGet(-nRemoved);
+        nUndeliveredTasks.addAndGet(-nRemoved);
+        return true;
     }
 
     private Multimap<String, String> activeJobsPerGraph = HashMultimap.create();
 
-    public synchronized boolean anyJobsActive() {
-        for (Job job : jobs) {
+    public boolean anyJobsActive() {
+        for (Job job : jobsById.values()) {
             if (!job.isComplete()) return true;
         }
         return false;
@@ -0,0 +1,71 @@
+package org.opentripplanner.analyst.broker;
+
+import org.glassfish.grizzly.http.server.Response;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The jobs and the waiting worker connections for a single graph. Tasks only ever go to workers on the same graph
+ * (except when working offline, where the broker puts everything in one shard), so each shard can match tasks to
+ * workers independently of all the others, and the broker never has to lock or scan all jobs to deliver work.
+ *
+ * Everything in here is a concurrent collection or an atomic counter, so any thread can deliver tasks.
+ */
+public class GraphShard {
+
+    final String graphId;
+
+    /**
+     * Jobs on this graph, in round-robin order. The job at the head is the next one to get a worker; it is moved to
+     * the tail when it does, so workers are shared fairly between jobs.
+     */
+    final Deque<Job> jobs = new ConcurrentLinkedDeque<>();
+
+    /** Suspended long-poll connections from workers waiting for tasks on this graph. */
+    final Deque<Response> consumers = new ConcurrentLinkedDeque<>();
+
+    /** The number of tasks awaiting delivery in all jobs on this graph. */
+    final AtomicInteger nUndeliveredTasks = new AtomicInteger();
+
+    GraphShard (String graphId) {
+        this.graphId = graphId;
+    }
+
+    /**
+     * Rotate through the jobs to find the next one with tasks awaiting delivery, moving it to the back of the line.
+     * Deleted jobs found along the way are dropped.
+     * @return the job, or null if no job on this graph has tasks awaiting delivery.
+     */
+    Job nextJobWithTasks () {
+        for (int i = jobs.size(); i > 0; i--) {
+            Job job = jobs.pollFirst();
+            if (job == null) return null;
+            if (job.deleted) continue;
+            jobs.addLast(job);
+            if (job.hasTasksAwaitingDelivery()) return job;
+        }
+        return null;
+    }
+
+    void addJob (Job job) {
+        jobs.addLast(job);
+    }
+
+    void removeJob (Job job) {
+        job.deleted = true;
+        // A concurrent rotation may put the job back, but it will be dropped the next time it comes up.
+        jobs.remove(job);
+    }
+
+    /** Remove consumers whose connections have been closed without us noticing. */
+    void purgeClosedConsumers () {
+        Iterator<Response> it = consumers.iterator();
+        while (it.hasNext()) {
+            if (!it.next().getRequest().getRequest().getConnection().isOpen()) it.remove();
+        }
+    }
+
+}
@@ -11,11 +11,19 @@ import org.opentripplanner.analyst.cluster.AnalystClusterRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * A job is accessed concurrently by the HTTP threads enqueueing tasks, delivering them to workers and marking them
+ * completed. Tasks are handed out from a concurrent queue without locking. The bookkeeping of which tasks are in
+ * flight or completed is guarded by the lock on this job, so contention is limited to workers on the same job.
+ * The counters are atomic so that job status can be read without taking any lock.
+ *
  * FIXME delivered tasks map is oblivious to multiple tasks having the same ID.
  * In fact we just generate numeric queue task IDs. Origin point IDs will be handled at the application layer.
  */
@@ -34,36 +42,95 @@ public class Job {
 
     /* Tasks in this job that have yet to be delivered, or that will be re-delivered due to completion timeout. */
     // maybe this should only be a list of IDs.
-    Queue<AnalystClusterRequest> tasksAwaitingDelivery = new ArrayDeque<>();
+    final Queue<AnalystClusterRequest> tasksAwaitingDelivery = new ConcurrentLinkedQueue<>();
 
     /* The tasks in this job keyed on their task ID. */
-    TIntObjectMap<AnalystClusterRequest> tasksById = new TIntObjectHashMap<>();
+    private final TIntObjectMap<AnalystClusterRequest> tasksById = new TIntObjectHashMap<>();
 
     /*
      * Completion timeouts for tasks that have been delivered.
      * A task whose ID is in this map has been delivered, has not been reported completed,
      * and is not awaiting re-delivery.
      */
-    TIntLongMap invisibleUntil = new TIntLongHashMap();
+    private final TIntLongMap invisibleUntil = new TIntLongHashMap();
 
     /* The IDs of all tasks that have been marked completed. */
-    TIntSet completedTasks = new TIntHashSet();
+    private final TIntSet completedTasks = new TIntHashSet();
+
+    /* Counters mirroring the sizes of the collections above, readable without holding the lock on this job. */
+    private final AtomicInteger nTasks = new AtomicInteger();
+    private final AtomicInteger nAwaitingDelivery = new AtomicInteger();
+    private final AtomicInteger nInvisible = new AtomicInteger();
+    private final AtomicInteger nCompleted = new AtomicInteger();
+
+    /* Set when the job is deleted, so that concurrent deliveries stop handing out its tasks. */
+    volatile boolean deleted = false;
 
     public Job (String jobId) {
         this.jobId = jobId;
     }
 
-    /** Adds a task to this Job, assigning it a task ID number. */
+    /** Adds a task to this Job. The task must already have been assigned a task ID number. */
     public void addTask (AnalystClusterRequest task) {
-        tasksById.put(task.taskId, task);
+        synchronized (this) {
+            tasksById.put(task.taskId, task);
+        }
+        nTasks.incrementAndGet();
+        nAwaitingDelivery.incrementAndGet();
         tasksAwaitingDelivery.add(task);
     }
 
-    public void markTasksDelivered(List<AnalystClusterRequest> tasks) {
+    /**
+     * Take up to n tasks off the delivery queue. This does not lock the job, so several threads can be handing out
+     * tasks from the same job at once.
+     */
+    public List<AnalystClusterRequest> pollTasks (int n) {
+        List<AnalystClusterRequest> tasks = new ArrayList<>(n);
+        while (tasks.size() < n) {
+            AnalystClusterRequest task = tasksAwaitingDelivery.poll();
+            if (task == null) break;
+            tasks.add(task);
+        }
+        nAwaitingDelivery.addAndGet(-tasks.size());
+        return tasks;
+    }
+
+    /** Put tasks that could not be delivered back on (the end of) the delivery queue. */
+    public void returnTasks (Collection<AnalystClusterRequest> tasks) {
+        tasksAwaitingDelivery.addAll(tasks);
+        nAwaitingDelivery.addAndGet(tasks.size());
+    }
+
+    /**
+     * Throw away all tasks awaiting delivery, when the job is deleted.
+     * @return the number of tasks removed.
+     */
+    public int clearTasksAwaitingDelivery () {
+        int n = 0;
+        while (tasksAwaitingDelivery.poll() != null) n++;
+        nAwaitingDelivery.addAndGet(-n);
+        return n;
+    }
+
+    public synchronized void markTasksDelivered(List<AnalystClusterRequest> tasks) {
         long deliveryTime = System.currentTimeMillis();
         long visibleAt = deliveryTime + INVISIBLE_DURATION_SEC * 1000;
         for (AnalystClusterRequest task : tasks) {
-            invisibleUntil.put(task.taskId, visibleAt);
+            if (invisibleUntil.put(task.taskId, visibleAt) == 0) {
+                nInvisible.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Undo markTasksDelivered for tasks that could not be written to the consumer after all. The caller puts them back
+     * on the delivery queue.
+     */
+    public synchronized void markTasksUndelivered(List<AnalystClusterRequest> tasks) {
+        for (AnalystClusterRequest task : tasks) {
+            if (invisibleUntil.remove(task.taskId) != 0) {
+                nInvisible.decrementAndGet();
+            }
         }
     }
 
@@ -72,7 +139,7 @@ public class Job {
      * completed, and make all these tasks visible again for delivery.
      * TODO maybe this should only be triggered when the awaiting delivery queue is empty to reduce double-delivery.
      */
-    public int redeliver () {
+    public synchronized int redeliver () {
         long now = System.currentTimeMillis();
         TIntLongIterator invisibleIterator = invisibleUntil.iterator();
         int nRedelivered = 0;
@@ -82,7 +149,9 @@ public class Job {
             long timeout = invisibleIterator.value();
             if (now > timeout) {
                 invisibleIterator.remove();
+                nInvisible.decrementAndGet();
                 tasksAwaitingDelivery.add(tasksById.get(taskId));
+                nAwaitingDelivery.incrementAndGet();
                 LOG.warn("Task {} of job {} was not completed in time, queueing it for re-delivery.", taskId, jobId);
                 nRedelivered += 1;
             }
@@ -90,7 +159,7 @@ public class Job {
         return nRedelivered;
     }
 
-    public void markTaskCompleted (int taskId) {
+    public synchronized void markTaskCompleted (int taskId) {
         if (tasksById.get(taskId) == null) {
             LOG.error("Tried to mark task {} completed, but it was not in job {}.", taskId, jobId);
             return;
@@ -98,33 +167,50 @@ public class Job {
         if (invisibleUntil.remove(taskId) != 0) {
             // If the taskId was found in the invisibleUntil map, the task was delivered and has not been slated for
             // re-delivery.
-            completedTasks.add(taskId);
+            nInvisible.decrementAndGet();
+            if (completedTasks.add(taskId)) {
+                nCompleted.incrementAndGet();
+            }
         } else {
             // If the taskId was not found in the invisibleUntil map, the task was never delivered, or timed out and was
             // slated for redelivery. We should ignore the completion message and let the re-delivery proceed to avoid
             // problems with redelivered tasks overwriting results in S3 after the job is considered finished.
             // TODO verify that there are no race conditions here.
-            LOG.warn("Ignoring late task completion message, task {} was queued for re-delivery.");
+            LOG.warn("Ignoring late task completion message, task {} was queued for re-delivery.", taskId);
         }
     }
 
     public int getTotalTaskCount() {
-        return tasksById.size();
+        return nTasks.get();
     }
 
     public int getCompletedTaskCount() {
-        return completedTasks.size();
+        return nCompleted.get();
+    }
+
+    /** @return the number of tasks that have been delivered to workers and are not yet completed or timed out. */
+    public int getInvisibleTaskCount() {
+        return nInvisible.get();
+    }
+
+    /** @return the number of tasks waiting to be delivered, including those queued for re-delivery. */
+    public int getAwaitingDeliveryCount() {
+        return nAwaitingDelivery.get();
+    }
+
+    public boolean hasTasksAwaitingDelivery() {
+        return !deleted && nAwaitingDelivery.get() > 0;
     }
 
     public boolean isComplete() {
-        return completedTasks.size() == tasksById.size();
+        return nCompleted.get() == nTasks.get();
     }
 
-    public boolean containsTask (int taskId) {
+    public synchronized boolean containsTask (int taskId) {
         AnalystClusterRequest req = tasksById.get(taskId);
         if (req != null) {
             if (!req.jobId.equals(this.jobId)) {
-                LOG.error("Task {} has a job ID that does not match the job in which it was discovered.");
+                LOG.error("Task {} has a job ID that does not match the job in which it was discovered.", taskId);
             }
             return true;
         }
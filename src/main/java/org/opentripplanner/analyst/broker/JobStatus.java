@@ -21,8 +21,8 @@ public class JobStatus {
 
     public JobStatus (Job job) {
         this.complete = job.getCompletedTaskCount();
-        this.inFlight = job.invisibleUntil.size();
-        this.remaining = job.tasksAwaitingDelivery.size();
+        this.inFlight = job.getInvisibleTaskCount();
+        this.remaining = job.getAwaitingDeliveryCount();
         this.jobId = job.jobId;
     }
 
@@ -11,7 +11,8 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
- *
+ * The workers seen recently and their graph affinities. Brokers call into this from several HTTP threads at once, so
+ * every access to its maps takes the lock on the catalog.
  */
 public class WorkerCatalog {
 
@@ -59,13 +60,18 @@ public class WorkerCatalog {
 
     }
 
+    /** Returns true if there is at least one worker with an affinity for this graphId. */
+    public synchronized boolean hasWorkers (String graphId) {
+        return workersByGraph.containsKey(graphId);
+    }
+
     /** Returns true if it is OK to steal a worker toward this graphId. */
-    boolean notEnoughWorkers (String graphId) {
+    synchronized boolean notEnoughWorkers (String graphId) {
         return targetWorkerCountPerGraph.get(graphId) > workersByGraph.get(graphId).size();
     }
 
     /** Returns true if it is OK to steal a worker _away_ from this graphId. */
-    boolean tooManyWorkers (String graphId) {
+    synchronized boolean tooManyWorkers (String graphId) {
         return targetWorkerCountPerGraph.get(graphId) < workersByGraph.get(graphId).size();
     }
 
@@ -77,7 +83,7 @@ public class WorkerCatalog {
         return null;
     }
 
-    public int size () {
+    public synchronized int size () {
         return workersByGraph.size();
     }
 
@@ -4,6 +4,7 @@ import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.conveyal.geojson.GeoJsonModule;
 import com.conveyal.r5.R5Main;
 import com.fasterxml.jackson.core.JsonParser;
@@ -41,14 +42,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.time.LocalDateTime;
@@ -159,6 +160,15 @@ public class AnalystWorker implements Runnable {
      */
     private ThreadPoolExecutor highPriorityExecutor, batchExecutor;
 
+    /**
+     * Uploads results to S3. The queue is bounded, and when it is full the computation thread does the upload itself,
+     * so results waiting to be uploaded can't pile up in memory if S3 is slower than the computation.
+     */
+    private ThreadPoolExecutor uploadExecutor;
+
+    /** Save results to S3 in the compact binary format of ResultEnvelopeWriter rather than as JSON. */
+    private boolean binaryResults;
+
     public AnalystWorker(Properties config) {
         // print out date on startup so that CloudWatch logs has a unique fingerprint
         LOG.info("Analyst worker starting at {}", LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME));
@@ -191,6 +201,14 @@ public class AnalystWorker implements Runnable {
         this.pointSetDatastore = new PointSetDatastore(10, null, false, config.getProperty("pointsets-bucket"));
         this.clusterGraphBuilder = new ClusterGraphBuilder(config.getProperty("graphs-bucket"));
 
+        binaryResults = "binary".equals(config.getProperty("result-format"));
+
+        int nUploadThreads = config.getProperty("upload-threads") != null ?
+                Integer.parseInt(config.getProperty("upload-threads")) : 4;
+        uploadExecutor = new ThreadPoolExecutor(nUploadThreads, nUploadThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(nUploadThreads * 4));
+        uploadExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+
         Boolean autoShutdown = Boolean.parseBoolean(config.getProperty("auto-shutdown"));
         this.autoShutdown = autoShutdown == null ? false : autoShutdown;
 
@@ -429,21 +447,30 @@ public class AnalystWorker implements Runnable {
             envelope.jobId = clusterRequest.jobId;
             envelope.destinationPointsetId = clusterRequest.destinationPointsetId;
             if (clusterRequest.outputLocation != null) {
-                // Convert the result envelope and its contents to JSON and gzip it in this thread.
-                // Transfer the results to Amazon S3 in another thread, piping between the two.
-                String s3key = String.join("/", clusterRequest.jobId, clusterRequest.id + ".json.gz");
-                PipedInputStream inPipe = new PipedInputStream();
-                PipedOutputStream outPipe = new PipedOutputStream(inPipe);
-                new Thread(() -> {
-                    s3.putObject(clusterRequest.outputLocation, s3key, inPipe, null);
-                }).start();
-                OutputStream gzipOutputStream = new GZIPOutputStream(outPipe);
-                // We could do the writeValue() in a thread instead, in which case both the DELETE and S3 options
-                // could consume it in the same way.
-                objectMapper.writeValue(gzipOutputStream, envelope);
+                // Convert the result envelope and its contents to JSON or binary and gzip it in this thread.
+                // Transfer the results to Amazon S3 on the upload executor, so this thread can move on to the next task.
+                long serializeStart = System.currentTimeMillis();
+                String s3key = String.join("/", clusterRequest.jobId,
+                        clusterRequest.id + (binaryResults ? ResultEnvelopeWriter.EXTENSION : ".json.gz"));
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                OutputStream gzipOutputStream = new GZIPOutputStream(buffer);
+                if (binaryResults) {
+                    ResultEnvelopeWriter.write(envelope, gzipOutputStream);
+                } else {
+                    objectMapper.writeValue(gzipOutputStream, envelope);
+                }
                 gzipOutputStream.close();
-                // Tell the broker the task has been handled and should not be re-delivered to another worker.
-                deleteRequest(clusterRequest);
+                byte[] result = buffer.toByteArray();
+                LOG.debug("Serialized result for task {} to {} bytes in {} ms", clusterRequest.taskId, result.length,
+                        System.currentTimeMillis() - serializeStart);
+                uploadExecutor.execute(() -> {
+                    ObjectMetadata metadata = new ObjectMetadata();
+                    metadata.setContentLength(result.length);
+                    s3.putObject(clusterRequest.outputLocation, s3key, new ByteArrayInputStream(result), metadata);
+                    // Tell the broker the task has been handled and should not be re-delivered to another worker.
+                    // If the upload failed the task will be re-delivered.
+                    deleteRequest(clusterRequest);
+                });
             } else {
                 // No output location was provided. Instead of saving the result on S3,
                 // return the result immediately via a connection held open by the broker and mark the task completed.
@@ -605,7 +632,8 @@ public class AnalystWorker implements Runnable {
 
     /** log queue status */
     private void logQueueStatus() {
-        LOG.info("Waiting tasks: high priority: {}, batch: {}", highPriorityExecutor.getQueue().size(), batchExecutor.getQueue().size());
+        LOG.info("Waiting tasks: high priority: {}, batch: {}, uploads: {}", highPriorityExecutor.getQueue().size(),
+                batchExecutor.getQueue().size(), uploadExecutor.getQueue().size());
     }
 
     /**
@@ -619,6 +647,8 @@ public class AnalystWorker implements Runnable {
      * auto-shutdown                Should this worker shut down its machine if it is idle (e.g. on throwaway cloud instances)
      * statistics-queue             SQS queue to which to send statistics (optional)
      * initial-graph-id             The graph ID for this worker to start on
+     * result-format                json (default) or binary, the format in which to save results to S3
+     * upload-threads               Number of threads uploading results to S3, default 4.
      */
     public static void main(String[] args) {
         LOG.info("Starting analyst worker");
@@ -0,0 +1,125 @@
+package org.opentripplanner.analyst.cluster;
+
+import com.google.protobuf.CodedInputStream;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import org.opentripplanner.analyst.Histogram;
+import org.opentripplanner.analyst.ResultSet;
+import org.opentripplanner.analyst.core.IsochroneData;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Reads back result envelopes written by {@link ResultEnvelopeWriter}, one at a time from a stream.
+ */
+public class ResultEnvelopeReader {
+
+    private final CodedInputStream in;
+
+    private boolean finished = false;
+
+    public ResultEnvelopeReader (InputStream stream) throws IOException {
+        in = CodedInputStream.newInstance(stream);
+        // The default limit guards against malicious protobuf messages, but a stream of results can be much larger.
+        in.setSizeLimit(Integer.MAX_VALUE);
+        if (in.readFixed32() != ResultEnvelopeWriter.MAGIC) {
+            throw new IOException("Not a binary result envelope stream.");
+        }
+        int version = in.readUInt32();
+        if (version != ResultEnvelopeWriter.VERSION) {
+            throw new IOException("Unsupported result envelope format version " + version);
+        }
+    }
+
+    /** @return the next envelope in the stream, or null if there are no more. */
+    public ResultEnvelope read () throws IOException {
+        if (finished || in.readRawByte() == 0) {
+            finished = true;
+            return null;
+        }
+        ResultEnvelope envelope = new ResultEnvelope();
+        envelope.profile = in.readBool();
+        envelope.jobId = readString();
+        envelope.id = readString();
+        envelope.destinationPointsetId = readString();
+        for (ResultEnvelope.Which which : ResultEnvelope.Which.values()) {
+            if (in.readBool()) {
+                envelope.put(which, readResultSet());
+            }
+        }
+        return envelope;
+    }
+
+    private ResultSet readResultSet () throws IOException {
+        ResultSet resultSet = new ResultSet();
+        resultSet.id = readString();
+
+        int nHistograms = in.readUInt32();
+        List<Histogram> histograms = new ArrayList<>(nHistograms);
+        resultSet.histograms = new HashMap<>();
+        for (int i = 0; i < nHistograms; i++) {
+            Histogram histogram = new Histogram();
+            histograms.add(histogram);
+            resultSet.histograms.put(readString(), histogram);
+        }
+        for (Histogram histogram : histograms) {
+            histogram.counts = readDeltas();
+        }
+        for (Histogram histogram : histograms) {
+            histogram.sums = readDeltas();
+        }
+
+        if (in.readBool()) {
+            int[] times = new int[in.readUInt32()];
+            int previous = 0;
+            for (int i = 0; i < times.length; i++) {
+                previous += in.readSInt32();
+                times[i] = previous == ResultEnvelopeWriter.UNREACHED ? Integer.MAX_VALUE : previous;
+            }
+            resultSet.times = times;
+        }
+
+        if (in.readBool()) {
+            WKBReader wkbReader = new WKBReader();
+            IsochroneData[] isochrones = new IsochroneData[in.readUInt32()];
+            for (int i = 0; i < isochrones.length; i++) {
+                int cutoffSec = in.readSInt32();
+                Geometry geometry = null;
+                if (in.readBool()) {
+                    try {
+                        geometry = wkbReader.read(in.readByteArray());
+                    } catch (ParseException e) {
+                        throw new IOException("Invalid isochrone geometry", e);
+                    }
+                }
+                isochrones[i] = new IsochroneData(cutoffSec, geometry);
+            }
+            resultSet.isochrones = isochrones;
+        }
+        return resultSet;
+    }
+
+    private int[] readDeltas () throws IOException {
+        int length = in.readUInt32();
+        if (length == 0) {
+            return null;
+        }
+        int[] values = new int[length - 1];
+        int previous = 0;
+        for (int i = 0; i < values.length; i++) {
+            previous += in.readSInt32();
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    private String readString () throws IOException {
+        return in.readBool() ? in.readString() : null;
+    }
+
+}
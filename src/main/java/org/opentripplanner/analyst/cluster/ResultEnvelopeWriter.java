@@ -0,0 +1,157 @@
+package org.opentripplanner.analyst.cluster;
+
+import com.google.protobuf.CodedOutputStream;
+import com.vividsolutions.jts.io.WKBWriter;
+import org.opentripplanner.analyst.ResultSet;
+import org.opentripplanner.analyst.core.IsochroneData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes result envelopes to a stream in a compact binary format, as an alternative to JSON. For large destination
+ * point sets most of a JSON result is the travel time to every target, written out as decimal text. Here all
+ * integers are protobuf-style varints, and travel times are delta coded from one target to the next, so nearby
+ * targets with similar travel times take one or two bytes each. Histograms are written column by column (all the
+ * counts, then all the sums) rather than one object at a time, which also compresses better if the stream is gzipped.
+ *
+ * Any number of envelopes can be written to one stream, and each is written out as it is given without building the
+ * whole result in memory. Read them back with {@link ResultEnvelopeReader}.
+ *
+ * Format: the magic number and version, then for each envelope a 1 byte, the envelope header (profile flag, job ID,
+ * ID, destination point set ID) and a presence flag followed by the contents for each of the ResultEnvelope.Which
+ * values in order. The stream ends with a 0 byte. Strings may be null and are written as a presence flag then UTF-8.
+ * Isochrone geometries are written as WKB.
+ */
+public class ResultEnvelopeWriter implements Closeable {
+
+    public static final int MAGIC = 0x4f545052; // "OTPR"
+
+    public static final int VERSION = 1;
+
+    /** File name extension used for gzipped results in this format. */
+    public static final String EXTENSION = ".dat.gz";
+
+    /** Value written in place of Integer.MAX_VALUE, which marks targets that were not reached. */
+    static final int UNREACHED = -1;
+
+    private final CodedOutputStream out;
+
+    private final OutputStream stream;
+
+    public ResultEnvelopeWriter (OutputStream stream) throws IOException {
+        this.stream = stream;
+        this.out = CodedOutputStream.newInstance(stream, 64 * 1024);
+        out.writeFixed32NoTag(MAGIC);
+        out.writeUInt32NoTag(VERSION);
+    }
+
+    public void write (ResultEnvelope envelope) throws IOException {
+        out.writeRawByte(1);
+        out.writeBoolNoTag(envelope.profile);
+        writeString(envelope.jobId);
+        writeString(envelope.id);
+        writeString(envelope.destinationPointsetId);
+        for (ResultEnvelope.Which which : ResultEnvelope.Which.values()) {
+            ResultSet resultSet = envelope.get(which);
+            out.writeBoolNoTag(resultSet != null);
+            if (resultSet != null) {
+                writeResultSet(resultSet);
+            }
+        }
+    }
+
+    private void writeResultSet (ResultSet resultSet) throws IOException {
+        writeString(resultSet.id);
+
+        // Histograms, in a stable order so identical results give identical output.
+        List<String> keys = new ArrayList<>();
+        if (resultSet.histograms != null) {
+            keys.addAll(resultSet.histograms.keySet());
+            Collections.sort(keys);
+        }
+        out.writeUInt32NoTag(keys.size());
+        for (String key : keys) {
+            writeString(key);
+        }
+        for (String key : keys) {
+            writeDeltas(resultSet.histograms.get(key).counts);
+        }
+        for (String key : keys) {
+            writeDeltas(resultSet.histograms.get(key).sums);
+        }
+
+        // Travel times to every target
+        out.writeBoolNoTag(resultSet.times != null);
+        if (resultSet.times != null) {
+            int[] times = resultSet.times;
+            out.writeUInt32NoTag(times.length);
+            int previous = 0;
+            for (int time : times) {
+                int t = time == Integer.MAX_VALUE ? UNREACHED : time;
+                out.writeSInt32NoTag(t - previous);
+                previous = t;
+            }
+        }
+
+        // Isochrones
+        out.writeBoolNoTag(resultSet.isochrones != null);
+        if (resultSet.isochrones != null) {
+            WKBWriter wkbWriter = new WKBWriter();
+            out.writeUInt32NoTag(resultSet.isochrones.length);
+            for (IsochroneData isochrone : resultSet.isochrones) {
+                out.writeSInt32NoTag(isochrone.cutoffSec);
+                out.writeBoolNoTag(isochrone.geometry != null);
+                if (isochrone.geometry != null) {
+                    out.writeByteArrayNoTag(wkbWriter.write(isochrone.geometry));
+                }
+            }
+        }
+    }
+
+    /** Write an array that may be null, as its length plus one (zero for null) followed by delta coded values. */
+    private void writeDeltas (int[] values) throws IOException {
+        if (values == null) {
+            out.writeUInt32NoTag(0);
+            return;
+        }
+        out.writeUInt32NoTag(values.length + 1);
+        int previous = 0;
+        for (int value : values) {
+            out.writeSInt32NoTag(value - previous);
+            previous = value;
+        }
+    }
+
+    private void writeString (String s) throws IOException {
+        out.writeBoolNoTag(s != null);
+        if (s != null) {
+            out.writeStringNoTag(s);
+        }
+    }
+
+    /** Write the end of stream marker and flush, without closing the underlying stream. */
+    public void finish () throws IOException {
+        out.writeRawByte(0);
+        out.flush();
+    }
+
+    /** Write the end of stream marker and close the underlying stream. */
+    @Override
+    public void close () throws IOException {
+        finish();
+        stream.close();
+    }
+
+    /** Convenience method to write a single envelope to a stream, closing the stream. */
+    public static void write (ResultEnvelope envelope, OutputStream stream) throws IOException {
+        try (ResultEnvelopeWriter writer = new ResultEnvelopeWriter(stream)) {
+            writer.write(envelope);
+        }
+    }
+
+}
@@ -19,19 +19,32 @@ import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
 import java.awt.image.IndexColorModel;
 import java.awt.image.WritableRaster;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
 
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridCoverageFactory;
 import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.opengis.geometry.DirectPosition;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
 import org.opentripplanner.analyst.TimeSurface;
 import org.opentripplanner.analyst.request.RenderRequest;
 import org.opentripplanner.analyst.request.TileRequest;
 import org.opentripplanner.api.parameter.Style;
-import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.graph.Vertex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -268,35 +281,194 @@ public abstract class Tile {
     
     final byte UNREACHABLE = Byte.MIN_VALUE;
 
+    /** The index in sampleVertices of the pixels which have no sample, or of the missing vertices of a sample. */
+    private static final int NO_SAMPLE = -2, NO_VERTEX = -1;
+
+    /** The distinct vertices of the samples of this tile. */
+    private Vertex[] vertices = new Vertex[0];
+
+    /**
+     * The samples of the pixels, row by row, in a compact form reused by every surface rendered on this tile: for
+     * pixel i, the indices in vertices of the two vertices of its sample are at 2i and 2i + 1, and their distances to
+     * the pixel in sampleDistances at the same indices.
+     */
+    private int[] sampleVertices, sampleDistances;
+
+    /**
+     * Find the samples of all the pixels of this tile, storing them in a compact form. If they cannot be found, all
+     * the pixels are left without a sample.
+     */
+    protected void findSamples(SampleSource sampleSource) {
+        int[] sampleVertices = new int[width * height * 2];
+        int[] sampleDistances = new int[width * height * 2];
+        Arrays.fill(sampleVertices, NO_SAMPLE);
+        TObjectIntMap<Vertex> vertexIndices = new TObjectIntHashMap<Vertex>(1000, 0.5f, NO_VERTEX);
+        List<Vertex> vertices = new ArrayList<Vertex>();
+        CoordinateReferenceSystem crs = gg.getCoordinateReferenceSystem2D();
+        int ns = 0;
+        try {
+            MathTransform tr = CRS.findMathTransform(crs, DefaultGeographicCRS.WGS84);
+            // grid coordinate object to be reused for examining each cell 
+            GridCoordinates2D coord = new GridCoordinates2D();
+            int i = 0;
+            for (int gy = 0; gy < height; gy++) {
+                for (int gx = 0; gx < width; gx++) {
+                    coord.x = gx;
+                    coord.y = gy;
+                    // find coordinates for current raster cell in tile CRS
+                    DirectPosition sourcePos = gg.gridToWorld(coord);
+                    // convert coordinates in tile CRS to WGS84
+                    tr.transform(sourcePos, sourcePos);
+                    // axis order can vary
+                    double lon = sourcePos.getOrdinate(0);
+                    double lat = sourcePos.getOrdinate(1);
+                    Sample s = sampleSource.getSample(lon, lat);
+                    if (s != null) {
+                        sampleVertices[i] = vertexIndex(s.v0, vertexIndices, vertices);
+                        sampleDistances[i] = s.d0;
+                        sampleVertices[i + 1] = vertexIndex(s.v1, vertexIndices, vertices);
+                        sampleDistances[i + 1] = s.d1;
+                        ns++;
+                    }
+                    i += 2;
+                }
+            }
+        } catch (Exception e) {
+            LOG.error("Could not find the samples of tile {}", gg.getEnvelope2D(), e);
+            Arrays.fill(sampleVertices, NO_SAMPLE);
+            vertices.clear();
+        }
+        LOG.debug("finished preparing tile. number of samples: {}, distinct vertices: {}", ns, vertices.size());
+        this.vertices = vertices.toArray(new Vertex[vertices.size()]);
+        this.sampleDistances = sampleDistances;
+        this.sampleVertices = sampleVertices;
+    }
+
+    private static int vertexIndex(Vertex v, TObjectIntMap<Vertex> vertexIndices, List<Vertex> vertices) {
+        if (v == null)
+            return NO_VERTEX;
+        int index = vertexIndices.get(v);
+        if (index == NO_VERTEX) {
+            index = vertices.size();
+            vertices.add(v);
+            vertexIndices.put(v, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return the samples of the pixels of this tile, row by row, null for the pixels which have none. The samples are
+     * made from the compact form stored in the tile, which is what rendering uses.
+     */
+    public Sample[] getSamples() {
+        prepareSamples();
+        Sample[] samples = new Sample[width * height];
+        for (int p = 0; p < samples.length; p++) {
+            int i = p * 2;
+            if (sampleVertices[i] != NO_SAMPLE) {
+                samples[p] = new Sample(vertex(sampleVertices[i]), sampleDistances[i],
+                        vertex(sampleVertices[i + 1]), sampleDistances[i + 1]);
+            }
+        }
+        return samples;
+    }
+
+    private Vertex vertex(int index) {
+        return index == NO_VERTEX ? null : vertices[index];
+    }
+
+    /** Make sure that the samples of this tile have been found before reading them. */
+    protected abstract void prepareSamples();
+
+    /** @return the number of pixels of this tile. */
+    public int getPixelCount() {
+        return width * height;
+    }
+
+    /**
+     * @return the time of each of the vertices of this tile in the given surface. Looking them up once per vertex
+     * rather than twice per pixel avoids most of the hash lookups, as neighbouring pixels share their vertices.
+     */
+    private int[] vertexTimes(TimeSurface surf) {
+        int[] times = new int[vertices.length];
+        for (int v = 0; v < times.length; v++) {
+            times[v] = surf.getTime(vertices[v]);
+        }
+        return times;
+    }
+
+    /** The same as Sample.eval(TimeSurface), on the compact samples and the times of the vertices of this tile. */
+    private long eval(int i, int[] vertexTimes, double walkSpeed) {
+        int m0 = Integer.MAX_VALUE;
+        int m1 = Integer.MAX_VALUE;
+        int v0 = sampleVertices[i];
+        if (v0 != NO_VERTEX) {
+            int s0 = vertexTimes[v0];
+            if (s0 != TimeSurface.UNREACHABLE) {
+                m0 = (int) (s0 + sampleDistances[i] / walkSpeed);
+            }
+        }
+        int v1 = sampleVertices[i + 1];
+        if (v1 != NO_VERTEX) {
+            int s1 = vertexTimes[v1];
+            if (s1 != TimeSurface.UNREACHABLE) {
+                m1 = (int) (s1 + sampleDistances[i + 1] / walkSpeed);
+            }
+        }
+        return (m0 < m1) ? m0 : m1;
+    }
+
+    /**
+     * Render the rows of this tile one after the other, giving up with a CancellationException as soon as the
+     * rendering is cancelled, e.g. because the clients waiting for the image have all disconnected. The rows are not
+     * rendered in parallel: tiles are rendered on the bounded executor of the TileImageCache, which already keeps its
+     * threads busy with different tiles.
+     */
+    private void forEachRow(BooleanSupplier cancelled, IntConsumer row) {
+        for (int y = 0; y < height; y++) {
+            if (cancelled.getAsBoolean())
+                throw new CancellationException("Tile rendering cancelled");
+            row.accept(y);
+        }
+    }
+
     public BufferedImage generateImage(TimeSurface surf, RenderRequest renderRequest) {
+        return generateImage(surf, renderRequest, () -> false);
+    }
+
+    public BufferedImage generateImage(TimeSurface surf, RenderRequest renderRequest, BooleanSupplier cancelled) {
         long t0 = System.currentTimeMillis();
+        prepareSamples();
         BufferedImage image = getEmptyImage(renderRequest.style);
         byte[] imagePixelData = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
-        int i = 0;
-        for (Sample s : getSamples()) {
-            byte pixel;
-            if (s != null) {
-                if (renderRequest.style == Style.BOARDINGS) {
-                    pixel = 0; // FIXME s.evalBoardings(surf);
-                } else {
-                    long t = s.eval(surf); // renderRequest.style
-                    if (t == Long.MAX_VALUE)
-                        pixel = UNREACHABLE;
-                    else {
-                        t /= 60;
-                        if (t < -120)
-                            t = -120;
-                        else if (t > 120)
-                            t = 120;
-                        pixel = (byte) t;
+        int[] vertexTimes = vertexTimes(surf);
+        boolean boardings = renderRequest.style == Style.BOARDINGS;
+        forEachRow(cancelled, y -> {
+            for (int p = y * width, end = p + width; p < end; p++) {
+                int i = p * 2;
+                byte pixel;
+                if (sampleVertices[i] != NO_SAMPLE) {
+                    if (boardings) {
+                        pixel = 0; // FIXME s.evalBoardings(surf);
+                    } else {
+                        long t = eval(i, vertexTimes, surf.walkSpeed); // renderRequest.style
+                        if (t == Long.MAX_VALUE)
+                            pixel = UNREACHABLE;
+                        else {
+                            t /= 60;
+                            if (t < -120)
+                                t = -120;
+                            else if (t > 120)
+                                t = 120;
+                            pixel = (byte) t;
+                        }
                     }
+                } else {
+                    pixel = UNREACHABLE;
                 }
-            } else {
-                pixel = UNREACHABLE;
+                imagePixelData[p] = pixel;
             }
-            imagePixelData[i] = pixel;
-            i++;
-        }
+        });
         long t1 = System.currentTimeMillis();
         LOG.debug("filled in tile image from SPT in {}msec", t1 - t0);
         return image;
@@ -306,27 +478,38 @@ public abstract class Tile {
             double k1, TimeSurface surfA,
             double k2, TimeSurface surfB,
             double intercept, RenderRequest renderRequest) {
+        return linearCombination(k1, surfA, k2, surfB, intercept, renderRequest, () -> false);
+    }
+
+    public BufferedImage linearCombination(
+            double k1, TimeSurface surfA,
+            double k2, TimeSurface surfB,
+            double intercept, RenderRequest renderRequest, BooleanSupplier cancelled) {
         long t0 = System.currentTimeMillis();
+        prepareSamples();
         BufferedImage image = getEmptyImage(renderRequest.style);
         byte[] imagePixelData = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
-        int i = 0;
-        for (Sample s : getSamples()) {
-            byte pixel = UNREACHABLE;
-            if (s != null) {
-                long t1 = s.eval(surfA);
-                long t2 = s.eval(surfB);
-                if (t1 != Long.MAX_VALUE && t2 != Long.MAX_VALUE) {
-                    double t = (k1 * t1 + k2 * t2) / 60 + intercept; 
-                    if (t < -120)
-                        t = -120;
-                    else if (t > 120)
-                        t = 120;
-                    pixel = (byte) t;
+        int[] vertexTimesA = vertexTimes(surfA);
+        int[] vertexTimesB = vertexTimes(surfB);
+        forEachRow(cancelled, y -> {
+            for (int p = y * width, end = p + width; p < end; p++) {
+                int i = p * 2;
+                byte pixel = UNREACHABLE;
+                if (sampleVertices[i] != NO_SAMPLE) {
+                    long t1 = eval(i, vertexTimesA, surfA.walkSpeed);
+                    long t2 = eval(i, vertexTimesB, surfB.walkSpeed);
+                    if (t1 != Long.MAX_VALUE && t2 != Long.MAX_VALUE) {
+                        double t = (k1 * t1 + k2 * t2) / 60 + intercept; 
+                        if (t < -120)
+                            t = -120;
+                        else if (t > 120)
+                            t = 120;
+                        pixel = (byte) t;
+                    }
                 }
+                imagePixelData[p] = pixel;
             }
-            imagePixelData[i] = pixel;
-            i++;
-        }
+        });
         long t1 = System.currentTimeMillis();
         LOG.debug("filled in tile image from SPT in {}msec", t1 - t0);
         return image;
@@ -338,8 +521,6 @@ public abstract class Tile {
         return gridCoverage;
     }
 
-    public abstract Sample[] getSamples();
-
     public static BufferedImage getLegend(Style style, int width, int height) {
         IndexColorModel model = modelsByStyle.get(style);
         if (width < 140 || width > 2000)
@@ -10,9 +10,11 @@ import java.io.OutputStream;
 import java.text.DateFormat;
 import java.util.Date;
 import java.util.TimeZone;
+import java.util.function.BooleanSupplier;
 
 import javax.imageio.ImageIO;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
@@ -42,29 +44,52 @@ public class Renderer {
         this.tileCache = tileCache;
     }
 
-    public Response getResponse (
+    /**
+     * Render a tile of one or two travel time surfaces, or fetch it from the tile image cache, and resume the given
+     * suspended response with the image.
+     */
+    public void getResponse (
+            TileImageCache tileImageCache, AsyncResponse asyncResponse,
             TileRequest tileRequest,
             TimeSurface surfA, TimeSurface surfB,
-            RenderRequest renderRequest) throws Exception {
+            RenderRequest renderRequest) {
 
-        Tile tile = tileCache.get(tileRequest);
-        BufferedImage image;
+        // Surfaces are never modified once created, and their IDs are not reused.
+        String version = surfB == null ? "surface " + surfA.id : "surfaces " + surfA.id + " " + surfB.id;
+        TileImageCache.Key key = new TileImageCache.Key(
+                "analyst/" + renderRequest.layer + "/" + renderRequest.style, version, tileRequest);
+        tileImageCache.resume(asyncResponse,
+                tileImageCache.get(key, cancelled -> renderImage(tileRequest, surfA, surfB, renderRequest, cancelled)),
+                image -> getResponse(tileRequest, image, surfA, renderRequest));
+    }
+
+    private BufferedImage renderImage (
+            TileRequest tileRequest,
+            TimeSurface surfA, TimeSurface surfB,
+            RenderRequest renderRequest, BooleanSupplier cancelled) {
+
+        Tile tile = getTile(tileRequest);
         switch (renderRequest.layer) {
         case DIFFERENCE :
-            image = tile.linearCombination(1, surfA, -1, surfB, 0, renderRequest);
-            break;
+            return tile.linearCombination(1, surfA, -1, surfB, 0, renderRequest, cancelled);
         case HAGERSTRAND :
             long elapsed = Math.abs(surfB.dateTime - surfA.dateTime);
-            image = tile.linearCombination(-1, surfA, -1, surfB, elapsed/60, renderRequest);
-            break;
+            return tile.linearCombination(-1, surfA, -1, surfB, elapsed/60, renderRequest, cancelled);
         case TRAVELTIME :
         default :
-            image = tile.generateImage(surfA, renderRequest);
+            return tile.generateImage(surfA, renderRequest, cancelled);
         }
-        
+    }
+
+    private Response getResponse (TileRequest tileRequest, BufferedImage image, TimeSurface surfA,
+            RenderRequest renderRequest) {
+
         // add a timestamp to the image if requested. 
         // of course this will make it useless as a raster for analysis, but it's good for animations.
         if (renderRequest.timestamp) {
+            // The cached image is shared with other requests, draw on a copy.
+            image = new BufferedImage(image.getColorModel(), image.copyData(null),
+                    image.isAlphaPremultiplied(), null);
             DateFormat df = DateFormat.getDateTimeInstance();
             df.setTimeZone(TimeZone.getTimeZone("America/New_York"));
             String ds = df.format(new Date(surfA.dateTime * 1000));
@@ -78,13 +103,21 @@ public class Renderer {
                 
         // geotiff kludge
         if (renderRequest.format.toString().equals("image/geotiff")) {
-            GridCoverage2D gc = tile.getGridCoverage2D(image);
+            GridCoverage2D gc = getTile(tileRequest).getGridCoverage2D(image);
             return generateStreamingGeotiffResponse(gc);
         } else {
             return generateStreamingImageResponse(image, renderRequest.format);
         }
     }
-    
+
+    private Tile getTile (TileRequest tileRequest) {
+        try {
+            return tileCache.get(tileRequest);
+        } catch (Exception e) {
+            throw new RuntimeException("Could not prepare tile " + tileRequest, e);
+        }
+    }
+
     private void shadowWrite(BufferedImage image, String... strings) {
         Graphics2D g2d = image.createGraphics();
         g2d.setFont(new Font("Sans", Font.PLAIN, 25));
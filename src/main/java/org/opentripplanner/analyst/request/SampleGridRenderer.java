@@ -17,12 +17,14 @@ import static org.apache.commons.math3.util.FastMath.toRadians;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.ToIntFunction;
 
 import org.apache.commons.math3.util.FastMath;
 import org.opentripplanner.common.geometry.AccumulativeGridSampler;
 import org.opentripplanner.common.geometry.AccumulativeGridSampler.AccumulativeMetric;
 import org.opentripplanner.common.geometry.ZSampleGrid.ZSamplePoint;
 import org.opentripplanner.common.geometry.IsolineBuilder;
+import org.opentripplanner.common.geometry.MarchingSquaresIsolineBuilder;
 import org.opentripplanner.common.geometry.SparseMatrixZSampleGrid;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.common.geometry.ZSampleGrid;
@@ -189,6 +191,15 @@ public class SampleGridRenderer {
             return String.format("[t/w=%f,w=%f,d=%f]", wTime / w, w, d);
         }
 
+        /**
+         * @return the time in seconds of a sample for a MarchingSquaresIsolineBuilder, undefined for the samples
+         * farther than d0 meters off-road, so that isolines match those of the IsolineMetric for the same d0.
+         */
+        public static ToIntFunction<WTWD> isolineTime(double d0) {
+            return z -> z.d > d0 || !(z.w > 0) ? MarchingSquaresIsolineBuilder.UNDEFINED :
+                    (int) Math.min(Integer.MAX_VALUE - 1, Math.round(z.wTime / z.w));
+        }
+
         public static class IsolineMetric implements IsolineBuilder.ZMetric<WTWD> {
             @Override
             public int cut(WTWD zA, WTWD zB, WTWD z0) {
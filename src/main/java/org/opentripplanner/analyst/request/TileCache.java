@@ -33,13 +33,16 @@ public class TileCache extends CacheLoader<TileRequest, Tile>
 
     public TileCache(Graph graph) {
         this.graph = graph;
+        // The weigher was never used, so the cache was bounded by the number of tiles whatever their size.
         this.tileCache = CacheBuilder.newBuilder()
                 .concurrencyLevel(concurrency)
-                .maximumSize(size)
+                .maximumWeight(size * 256L * 256L)
+                .weigher(this)
                 .build(this);
     }
 
     private LoadingCache<TileRequest, Tile> tileCache;
+    /** The capacity of the cache, in 256x256 pixel tiles. */
     public int size = 200;
     public int concurrency = 16;
 
@@ -60,7 +63,7 @@ public class TileCache extends CacheLoader<TileRequest, Tile>
     
     @Override
     public int weigh(TileRequest req, Tile tile) {
-        return tile.getSamples().length;
+        return tile.getPixelCount();
     }
     
 }
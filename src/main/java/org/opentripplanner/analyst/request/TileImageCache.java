@@ -0,0 +1,292 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.analyst.request;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.ConnectionCallback;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A cache of rendered map tile images shared by all the routers and tile layers of a server (graph inspector layers,
+ * travel time surfaces), bounded by the memory taken by the images rather than by their number.
+ *
+ * Tiles are rendered on a pool of rendering threads, so that a burst of tile requests from a slippy map does not take
+ * over the HTTP worker threads, and requests for a tile that is already being rendered wait for that rendering instead
+ * of starting another one. When too many tiles are waiting to be rendered, new ones fail at once with a
+ * RejectedExecutionException, which {@link #resume(AsyncResponse, CompletableFuture, Function)} turns into
+ * 503 Service Unavailable.
+ *
+ * Renderings that nobody waits for anymore are cancelled, see {@link #get(Key, Function)}.
+ *
+ * Cached images are shared between requests and must not be modified, copy them before drawing on them.
+ */
+public class TileImageCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TileImageCache.class);
+
+    private final Cache<Key, BufferedImage> images;
+
+    /** The tiles being rendered, so that concurrent requests for the same tile share a single rendering. */
+    private final ConcurrentMap<Key, Rendering> rendering = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor executor;
+
+    private final int retryAfterSeconds;
+
+    /**
+     * @param maxBytes the maximum total size of the cached images
+     * @param threads the number of tiles rendered at once
+     * @param maxQueued the number of tiles that may wait to be rendered
+     */
+    public TileImageCache(long maxBytes, int threads, int maxQueued, int retryAfterSeconds) {
+        this.images = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, BufferedImage image) -> weigh(image))
+                .build();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, maxQueued)),
+                new ThreadFactoryBuilder().setNameFormat("tile-renderer-%d").setDaemon(true).build());
+        this.retryAfterSeconds = retryAfterSeconds;
+        LOG.info("Rendering tiles on {} threads, caching up to {} MB of tile images.", threads, maxBytes >> 20);
+    }
+
+    /**
+     * @return the cached image for the given key, or the image being rendered for it, or else a new rendering of it
+     * by the given renderer on a rendering thread.
+     */
+    public CompletableFuture<BufferedImage> get(Key key, Supplier<BufferedImage> renderer) {
+        return get(key, cancelled -> renderer.get());
+    }
+
+    /**
+     * @return the cached image for the given key, or the image being rendered for it, or else a new rendering of it
+     * by the given renderer on a rendering thread. Each caller gets its own future, which may be cancelled without
+     * affecting the others. Once all the futures of a rendering have been cancelled, e.g. because all the clients
+     * waiting for that tile have disconnected, the rendering is cancelled: the renderer is given a test telling
+     * whether that happened, so that it can give up.
+     */
+    public CompletableFuture<BufferedImage> get(Key key, Function<BooleanSupplier, BufferedImage> renderer) {
+        BufferedImage image = images.getIfPresent(key);
+        if (image != null) {
+            return CompletableFuture.completedFuture(image);
+        }
+        while (true) {
+            Rendering existing = rendering.get(key);
+            if (existing != null) {
+                CompletableFuture<BufferedImage> waiter = existing.join();
+                if (waiter != null) {
+                    return waiter;
+                }
+                // That rendering was just cancelled and is no longer in the map, start another one.
+                continue;
+            }
+            Rendering newRendering = new Rendering(key);
+            if (rendering.putIfAbsent(key, newRendering) != null) {
+                continue;
+            }
+            CompletableFuture<BufferedImage> waiter = newRendering.join();
+            // A rendering of this tile may have finished between the two lookups above.
+            image = images.getIfPresent(key);
+            if (image != null) {
+                rendering.remove(key, newRendering);
+                newRendering.image.complete(image);
+                return waiter;
+            }
+            try {
+                executor.execute(() -> newRendering.render(renderer));
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Refusing to render tile {}, {} tiles waiting.", key, executor.getQueue().size());
+                rendering.remove(key, newRendering);
+                newRendering.image.completeExceptionally(e);
+            }
+            return waiter;
+        }
+    }
+
+    /**
+     * Resume a suspended response once an image is available, with the response made from it, with 503 Service
+     * Unavailable if it could not be rendered for lack of rendering threads, or else with the exception thrown by the
+     * renderer so that it goes through the usual exception mappers. If the client disconnects before that, the
+     * future is cancelled.
+     */
+    public <T> void resume(AsyncResponse asyncResponse, CompletableFuture<T> future, Function<T, Response> response) {
+        asyncResponse.register((ConnectionCallback) disconnected -> future.cancel(false));
+        future.whenComplete((value, throwable) -> {
+            if (future.isCancelled() || !asyncResponse.isSuspended()) {
+                return;
+            }
+            if (throwable instanceof CompletionException && throwable.getCause() != null) {
+                throwable = throwable.getCause();
+            }
+            if (throwable instanceof RejectedExecutionException) {
+                asyncResponse.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                        .header("Retry-After", retryAfterSeconds)
+                        .type(MediaType.TEXT_PLAIN)
+                        .entity("The server is busy, please retry later.")
+                        .build());
+            } else if (throwable != null) {
+                asyncResponse.resume(throwable);
+            } else {
+                try {
+                    asyncResponse.resume(response.apply(value));
+                } catch (Throwable t) {
+                    asyncResponse.resume(t);
+                }
+            }
+        });
+    }
+
+    /** @return the approximate number of bytes taken by the pixels of the image. */
+    private static int weigh(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        long bytes = (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    public long size() {
+        return images.size();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /** A tile being rendered, and the number of callers still waiting for it. */
+    private final class Rendering {
+
+        final Key key;
+
+        final CompletableFuture<BufferedImage> image = new CompletableFuture<>();
+
+        private int waiting = 0;
+
+        private volatile boolean cancelled = false;
+
+        Rendering(Key key) {
+            this.key = key;
+        }
+
+        /** @return a new future for the image of this rendering, or null if it has been cancelled. */
+        synchronized CompletableFuture<BufferedImage> join() {
+            if (cancelled) {
+                return null;
+            }
+            waiting++;
+            CompletableFuture<BufferedImage> waiter = new CompletableFuture<>();
+            waiter.whenComplete((i, t) -> {
+                if (waiter.isCancelled()) {
+                    leave();
+                }
+            });
+            image.whenComplete((i, t) -> {
+                if (t != null) {
+                    waiter.completeExceptionally(t);
+                } else {
+                    waiter.complete(i);
+                }
+            });
+            return waiter;
+        }
+
+        private synchronized void leave() {
+            if (--waiting == 0 && !image.isDone()) {
+                LOG.debug("Cancelling the rendering of tile {}, nobody is waiting for it.", key);
+                cancelled = true;
+                rendering.remove(key, this);
+                image.cancel(false);
+            }
+        }
+
+        void render(Function<BooleanSupplier, BufferedImage> renderer) {
+            try {
+                if (cancelled) {
+                    return;
+                }
+                long start = System.currentTimeMillis();
+                BufferedImage rendered = renderer.apply(() -> cancelled);
+                LOG.debug("Rendered tile {} in {} msec", key, System.currentTimeMillis() - start);
+                // Cache the image before it is no longer being rendered, so that it is always found in one place.
+                if (rendered != null) {
+                    images.put(key, rendered);
+                }
+                image.complete(rendered);
+            } catch (Throwable t) {
+                image.completeExceptionally(t);
+            } finally {
+                rendering.remove(key, this);
+            }
+        }
+
+    }
+
+    /**
+     * Identifies a tile image: the layer and the data it shows, and the area and size of the tile. The version must
+     * change whenever the data shown changes, e.g. the build time of the graph, or the ID of a travel time surface.
+     */
+    public static final class Key {
+
+        public final String layer;
+
+        public final String version;
+
+        public final TileRequest tile;
+
+        public Key(String layer, String version, TileRequest tile) {
+            this.layer = layer;
+            this.version = version;
+            this.tile = tile;
+        }
+
+        @Override
+        public int hashCode() {
+            return (layer.hashCode() * 31 + version.hashCode()) * 31 + tile.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) other;
+            return this.layer.equals(that.layer) && this.version.equals(that.version) && this.tile.equals(that.tile);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("<tile layer=%s version=%s %s>", layer, version, tile);
+        }
+
+    }
+
+}
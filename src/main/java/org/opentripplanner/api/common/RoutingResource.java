@@ -212,6 +212,19 @@ public abstract class RoutingResource {
     @QueryParam("showIntermediateStops")
     protected Boolean showIntermediateStops;
 
+    /** Whether walk steps should be returned for each leg. Leaving them out saves a lot of work on long
+     *  street itineraries when the client only needs the overview. */
+    @QueryParam("showWalkSteps")
+    protected Boolean showWalkSteps;
+
+    /** Whether the encoded geometry of each leg should be returned. */
+    @QueryParam("showLegGeometry")
+    protected Boolean showLegGeometry;
+
+    /** Whether walk steps should include elevation profiles. */
+    @QueryParam("showElevationProfile")
+    protected Boolean showElevationProfile;
+
     /**
      * Prevents unnecessary transfers by adding a cost for boarding a vehicle. This is the cost that
      * is used when boarding while walking.
@@ -472,6 +485,15 @@ public abstract class RoutingResource {
         if (showIntermediateStops != null)
             request.showIntermediateStops = showIntermediateStops;
 
+        if (showWalkSteps != null)
+            request.showWalkSteps = showWalkSteps;
+
+        if (showLegGeometry != null)
+            request.showLegGeometry = showLegGeometry;
+
+        if (showElevationProfile != null)
+            request.showElevationProfile = showElevationProfile;
+
         if (intermediatePlaces != null)
             request.setIntermediatePlacesFromStrings(intermediatePlaces);
 
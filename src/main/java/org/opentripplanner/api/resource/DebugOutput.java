@@ -50,6 +50,13 @@ public class DebugOutput {
     public long totalTime;
     public boolean timedOut;
 
+    /** The number of states visited and the largest priority queue size, over all searches for this request. */
+    public long visitedStates;
+    public int maxQueueSize;
+
+    /** The search budget limit that was reached (see RoutingRequest), or null if none was. */
+    public String budgetExceeded;
+
     /**
      * Record the time when we first began calculating a path for this request
      * (before any heuristic pre-calculation). Note that timings will not
@@ -71,6 +78,17 @@ public class DebugOutput {
         foundPaths.add(System.currentTimeMillis());
     }
 
+    /** Add the statistics of one search to the totals for this request. */
+    public void searchFinished(int visitedStates, int maxQueueSize) {
+        this.visitedStates += visitedStates;
+        this.maxQueueSize = Math.max(this.maxQueueSize, maxQueueSize);
+    }
+
+    /** Record that a search was aborted because it reached the given search budget limit. AStar logs the abort. */
+    public void budgetExceeded(String limit) {
+        budgetExceeded = limit;
+    }
+
     /** Record the time when we finished calculating paths for this request. */
     public void finishedCalculating() {
         finishedCalculating = System.currentTimeMillis();
@@ -13,14 +13,17 @@
 
 package org.opentripplanner.api.resource;
 
-import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 import javax.imageio.ImageIO;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
@@ -28,6 +31,7 @@ import javax.ws.rs.core.Response;
 
 import org.geotools.geometry.Envelope2D;
 import org.opentripplanner.analyst.core.SlippyTile;
+import org.opentripplanner.analyst.request.TileImageCache;
 import org.opentripplanner.analyst.request.TileRequest;
 import org.opentripplanner.api.common.RoutingResource;
 import org.opentripplanner.api.parameter.MIMEImageFormat;
@@ -35,6 +39,7 @@ import org.opentripplanner.api.parameter.MIMEImageFormat;
 import static org.opentripplanner.api.resource.ServerInfo.Q;
 
 import org.opentripplanner.inspector.TileRenderer;
+import org.opentripplanner.inspector.TileRendererManager;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
 
@@ -53,7 +58,7 @@ import org.opentripplanner.standalone.Router;
  * </pre>
  * 
  * Tile rendering goes through TileRendererManager which select the appropriate renderer for the
- * given layer.
+ * given layer. Rendered tiles are kept in the server-wide TileImageCache.
  * 
  * @see TileRendererManager
  * @see TileRenderer
@@ -87,22 +92,35 @@ public class GraphInspectorTileResource extends RoutingResource {
 
     @GET @Path("/tile/{layer}/{z}/{x}/{y}.{ext}")
     @Produces("image/*")
-    public Response tileGet() throws Exception {
+    public void tileGet(@Suspended AsyncResponse asyncResponse) throws Exception {
 
         // Re-use analyst
         Envelope2D env = SlippyTile.tile2Envelope(x, y, z);
         TileRequest tileRequest = new TileRequest(env, 256, 256);
 
         Router router = otpServer.getRouter(routerId);
-        BufferedImage image = router.tileRendererManager.renderTile(tileRequest, layer);
-
+        TileRendererManager tileRendererManager = router.tileRendererManager;
+        if (!tileRendererManager.getRenderers().containsKey(layer))
+            throw new IllegalArgumentException("Unknown layer: " + layer);
         MIMEImageFormat format = new MIMEImageFormat("image/" + ext);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 4);
-        ImageIO.write(image, format.type, baos);
-        CacheControl cc = new CacheControl();
-        cc.setMaxAge(3600);
-        cc.setNoCache(false);
-        return Response.ok(baos.toByteArray()).type(format.toString()).cacheControl(cc).build();
+        // The layers only show data saved with the graph, so the tiles stay valid until another graph is loaded.
+        TileImageCache.Key key = new TileImageCache.Key("inspector/" + layer,
+                routerId + "@" + router.graph.buildTime.getTime(), tileRequest);
+        final String tileLayer = layer;
+        TileImageCache cache = otpServer.tileImageCache;
+        cache.resume(asyncResponse, cache.get(key, () -> tileRendererManager.renderTile(tileRequest, tileLayer)),
+                image -> {
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 4);
+                    try {
+                        ImageIO.write(image, format.type, baos);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    CacheControl cc = new CacheControl();
+                    cc.setMaxAge(3600);
+                    cc.setNoCache(false);
+                    return Response.ok(baos.toByteArray()).type(format.toString()).cacheControl(cc).build();
+                });
     }
 
     /**
@@ -57,6 +57,21 @@ public abstract class GraphPathToTripPlanConverter {
      * Generates a TripPlan from a set of paths
      */
     public static TripPlan generatePlan(List<GraphPath> paths, RoutingRequest request) {
+        TripPlan plan = generateEmptyPlan(paths, request);
+        Iterator<Itinerary> itineraries = generateItineraries(paths, request, plan);
+        while (itineraries.hasNext()) {
+            plan.addItinerary(itineraries.next());
+        }
+        request.rctx.debugOutput.finishedRendering();
+        return plan;
+    }
+
+    /**
+     * Generates a TripPlan with the origin, destination and date of a set of paths but no itineraries. Together with
+     * {@link #generateItineraries(List, RoutingRequest, TripPlan)} this allows writing out a plan one itinerary at a
+     * time, without holding all of them in memory.
+     */
+    public static TripPlan generateEmptyPlan(List<GraphPath> paths, RoutingRequest request) {
 
         Locale requestedLocale = request.locale;
 
@@ -79,46 +94,62 @@ public abstract class GraphPathToTripPlanConverter {
         from.orig = request.from.name;
         to.orig = request.to.name;
 
-        TripPlan plan = new TripPlan(from, to, request.getDateTime());
+        return new TripPlan(from, to, request.getDateTime());
+    }
 
-        // Convert GraphPaths to Itineraries, keeping track of the best non-transit (e.g. walk/bike-only) option time
+    /**
+     * Lazily converts GraphPaths to the Itineraries of a plan made by
+     * {@link #generateEmptyPlan(List, RoutingRequest)}. Each path is only converted when the next itinerary is
+     * requested. Transit options whose walk/bike time is greater than that of the best walk/bike-only option are
+     * skipped without being converted, as these times can be found from the states alone.
+     */
+    public static Iterator<Itinerary> generateItineraries(List<GraphPath> paths, final RoutingRequest request,
+            final TripPlan plan) {
+        // Keep track of the best non-transit (e.g. walk/bike-only) option time
         long bestNonTransitTime = Long.MAX_VALUE;
-        List<Itinerary> itineraries = new LinkedList<>();
+        final List<GraphPath> included = new ArrayList<>(paths.size());
+        List<Itinerary> times = new ArrayList<>(paths.size());
         for (GraphPath path : paths) {
-            Itinerary itinerary = generateItinerary(path, request.showIntermediateStops, request.disableAlertFiltering, requestedLocale);
-            itinerary = adjustItinerary(request, itinerary);
-            if(itinerary.transitTime == 0 && itinerary.walkTime < bestNonTransitTime) {
-                bestNonTransitTime = itinerary.walkTime;
+            Itinerary itineraryTimes = new Itinerary();
+            calculateTimes(itineraryTimes, path.states.toArray(new State[path.states.size()]));
+            if (itineraryTimes.transitTime == 0 && itineraryTimes.walkTime < bestNonTransitTime) {
+                bestNonTransitTime = itineraryTimes.walkTime;
             }
-            itineraries.add(itinerary);
+            times.add(itineraryTimes);
         }
-
-        // Filter and add itineraries to plan
-        for (Itinerary itinerary : itineraries) {
+        for (int i = 0; i < paths.size(); i++) {
             // If this is a transit option whose walk/bike time is greater than that of the walk/bike-only option,
             // do not include in plan
-            if(itinerary.transitTime > 0 && itinerary.walkTime > bestNonTransitTime) continue;
-
-            plan.addItinerary(itinerary);
+            if (times.get(i).transitTime > 0 && times.get(i).walkTime > bestNonTransitTime) continue;
+            included.add(paths.get(i));
         }
 
-        if (plan != null) {
-            for (Itinerary i : plan.itinerary) {
+        return new Iterator<Itinerary>() {
+            private final Iterator<GraphPath> pathIterator = included.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return pathIterator.hasNext();
+            }
+
+            @Override
+            public Itinerary next() {
+                Itinerary itinerary = generateItinerary(pathIterator.next(), request);
+                itinerary = adjustItinerary(request, itinerary);
                 /* Communicate the fact that the only way we were able to get a response was by removing a slope limit. */
-                i.tooSloped = request.rctx.slopeRestrictionRemoved;
+                itinerary.tooSloped = request.rctx.slopeRestrictionRemoved;
                 /* fix up from/to on first/last legs */
-                if (i.legs.size() == 0) {
+                if (itinerary.legs.size() == 0) {
                     LOG.warn("itinerary has no legs");
-                    continue;
+                    return itinerary;
                 }
-                Leg firstLeg = i.legs.get(0);
+                Leg firstLeg = itinerary.legs.get(0);
                 firstLeg.from.orig = plan.from.orig;
-                Leg lastLeg = i.legs.get(i.legs.size() - 1);
+                Leg lastLeg = itinerary.legs.get(itinerary.legs.size() - 1);
                 lastLeg.to.orig = plan.to.orig;
+                return itinerary;
             }
-        }
-        request.rctx.debugOutput.finishedRendering();
-        return plan;
+        };
     }
 
     /**
@@ -146,6 +177,26 @@ public abstract class GraphPathToTripPlanConverter {
      * @return The generated itinerary
      */
     public static Itinerary generateItinerary(GraphPath path, boolean showIntermediateStops, boolean disableAlertFiltering, Locale requestedLocale) {
+        return generateItinerary(path, showIntermediateStops, disableAlertFiltering, true, true, requestedLocale);
+    }
+
+    /**
+     * Generate an itinerary from a {@link GraphPath}, including the optional parts requested. Elevation profiles are
+     * included in the walk steps according to {@link RoutingRequest#showElevationProfile}.
+     */
+    public static Itinerary generateItinerary(GraphPath path, RoutingRequest request) {
+        return generateItinerary(path, request.showIntermediateStops, request.disableAlertFiltering,
+                request.showWalkSteps, request.showLegGeometry, request.locale);
+    }
+
+    /**
+     * Generate an itinerary from a {@link GraphPath}. Optional parts that are not requested are not computed at all.
+     *
+     * @param showWalkSteps Whether to include walk steps (and their elevation profiles) in the legs or not
+     * @param showLegGeometry Whether to include the encoded geometry of each leg or not
+     */
+    public static Itinerary generateItinerary(GraphPath path, boolean showIntermediateStops,
+            boolean disableAlertFiltering, boolean showWalkSteps, boolean showLegGeometry, Locale requestedLocale) {
         Itinerary itinerary = new Itinerary();
 
         State[] states = new State[path.states.size()];
@@ -166,10 +217,13 @@ public abstract class GraphPathToTripPlanConverter {
         }
 
         for (State[] legStates : legsStates) {
-            itinerary.addLeg(generateLeg(graph, legStates, showIntermediateStops, disableAlertFiltering, requestedLocale));
+            itinerary.addLeg(generateLeg(graph, legStates, showIntermediateStops, disableAlertFiltering,
+                    showLegGeometry, requestedLocale));
         }
 
-        addWalkSteps(graph, itinerary.legs, legsStates, requestedLocale);
+        if (showWalkSteps) {
+            addWalkSteps(graph, itinerary.legs, legsStates, requestedLocale);
+        }
 
         fixupLegs(itinerary.legs, legsStates);
 
@@ -301,9 +355,11 @@ public abstract class GraphPathToTripPlanConverter {
      *
      * @param states The array of states to base the leg on
      * @param showIntermediateStops Whether to include intermediate stops in the leg or not
+     * @param showLegGeometry Whether to include the encoded geometry of the leg or not
      * @return The generated leg
      */
-    private static Leg generateLeg(Graph graph, State[] states, boolean showIntermediateStops, boolean disableAlertFiltering, Locale requestedLocale) {
+    private static Leg generateLeg(Graph graph, State[] states, boolean showIntermediateStops,
+            boolean disableAlertFiltering, boolean showLegGeometry, Locale requestedLocale) {
         Leg leg = new Leg();
 
         Edge[] edges = new Edge[states.length - 1];
@@ -325,10 +381,12 @@ public abstract class GraphPathToTripPlanConverter {
 
         addPlaces(leg, states, edges, showIntermediateStops, requestedLocale);
 
-        CoordinateArrayListSequence coordinates = makeCoordinates(edges);
-        Geometry geometry = GeometryUtils.getGeometryFactory().createLineString(coordinates);
+        if (showLegGeometry) {
+            CoordinateArrayListSequence coordinates = makeCoordinates(edges);
+            Geometry geometry = GeometryUtils.getGeometryFactory().createLineString(coordinates);
 
-        leg.legGeometry = PolylineEncoder.createEncodings(geometry);
+            leg.legGeometry = PolylineEncoder.createEncodings(geometry);
+        }
 
         leg.interlineWithPreviousLeg = states[0].getBackEdge() instanceof PatternInterlineDwell;
 
@@ -1067,8 +1125,10 @@ public abstract class GraphPathToTripPlanConverter {
         step.streetName = en.getName(wantedLocale);
         step.lon = en.getFromVertex().getX();
         step.lat = en.getFromVertex().getY();
-        step.elevation = encodeElevationProfile(s.getBackEdge(), 0,
-                s.getOptions().geoidElevation ? -graph.ellipsoidToGeoidDifference : 0);
+        if (s.getOptions().showElevationProfile) {
+            step.elevation = encodeElevationProfile(s.getBackEdge(), 0,
+                    s.getOptions().geoidElevation ? -graph.ellipsoidToGeoidDifference : 0);
+        }
         step.bogusName = en.hasBogusName();
         step.addAlerts(graph.streetNotesService.getNotes(s), wantedLocale);
         step.angle = DirectionUtils.getFirstAngle(s.getBackEdge().getGeometry());
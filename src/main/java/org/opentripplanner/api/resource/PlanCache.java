@@ -0,0 +1,240 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package org.opentripplanner.api.resource;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An optional cache of trip plans in front of the planner, for routers receiving many near-duplicate requests
+ * (embedded widgets, retries). Requests are normalized before lookup: the departure or arrival time is moved to the
+ * edge of its time bucket and coordinates are rounded to about ten meters, so requests that would snap to the same
+ * place at about the same time share a plan. The search itself is made with the normalized time, so that a plan is
+ * equally valid for all the requests sharing it. All the other routing options must be equal, as for SPT caching (see
+ * {@link RoutingRequest#equals(Object)}), and so must the options changing the output.
+ *
+ * A plan includes real-time data and alerts, so plans are only returned while the timetable snapshot and the alert
+ * patches they were made with are still the published ones. The whole cache is dropped when either changes.
+ *
+ * Configured with the "planCache" object in router-config.json; disabled when absent.
+ */
+public class PlanCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PlanCache.class);
+
+    /** Coordinates are rounded to this many steps per degree, i.e. 4 decimals or about 10 meters. */
+    private static final double COORDINATE_STEPS_PER_DEGREE = 1e4;
+
+    /** Stands in for the endpoints of normalized requests, which are compared separately. */
+    private static final GenericLocation ANY_PLACE = new GenericLocation();
+
+    private final Graph graph;
+
+    private final int timeBucketSeconds;
+
+    private final Cache<Key, Entry> cache;
+
+    /** The real-time state the cache contents were made with. */
+    private Object timetableSnapshot;
+
+    private Object alertPatches;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public PlanCache(Graph graph, int maxSize, int ttlSeconds, int timeBucketSeconds) {
+        this.graph = graph;
+        this.timeBucketSeconds = Math.max(1, timeBucketSeconds);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /** @return a cache configured from the given "planCache" node, or null if the node is missing. */
+    public static PlanCache fromConfig(Graph graph, JsonNode config) {
+        if (config == null || config.isMissingNode() || config.isNull()) {
+            return null;
+        }
+        int maxSize = config.path("maxSize").asInt(1000);
+        int ttlSeconds = config.path("ttlSeconds").asInt(60);
+        int timeBucketSeconds = config.path("timeBucketSeconds").asInt(60);
+        LOG.info("Caching up to {} plans for {} seconds, with {} second time buckets.", maxSize, ttlSeconds,
+                timeBucketSeconds);
+        return new PlanCache(graph, maxSize, ttlSeconds, timeBucketSeconds);
+    }
+
+    /**
+     * Make the cache key for a request, and move the time of the request to the edge of its time bucket: departures
+     * to the end of the bucket and arrivals to its start, so that a shared plan never leaves earlier or arrives later
+     * than any of the requests sharing it asked for. This must be done before searching, so that the search uses the
+     * same time as the key and the key records the real-time state the resulting plan will be made with.
+     */
+    public Key key(RoutingRequest request) {
+        request.dateTime = bucketTime(request.dateTime, request.arriveBy);
+        Object snapshot = currentTimetableSnapshot();
+        Object alerts = graph.getAlertPatchesVersion();
+        synchronized (this) {
+            if (snapshot != timetableSnapshot || alerts != alertPatches) {
+                cache.invalidateAll();
+                timetableSnapshot = snapshot;
+                alertPatches = alerts;
+            }
+        }
+        return new Key(request, snapshot, alerts);
+    }
+
+    private long bucketTime(long dateTime, boolean arriveBy) {
+        long start = dateTime - Math.floorMod(dateTime, (long) timeBucketSeconds);
+        return arriveBy || start == dateTime ? start : start + timeBucketSeconds;
+    }
+
+    /** @return the cached plan for this key, or null. The plan is shared and must not be modified. */
+    public TripPlan get(Key key) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.timetableSnapshot == key.timetableSnapshot
+                && entry.alertPatches == key.alertPatches) {
+            hits.incrementAndGet();
+            return entry.plan;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /** Cache a complete plan, which must not be modified afterwards. */
+    public void put(Key key, TripPlan plan) {
+        cache.put(key, new Entry(plan, key.timetableSnapshot, key.alertPatches));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private Object currentTimetableSnapshot() {
+        TimetableSnapshotSource source = graph.timetableSnapshotSource;
+        return source == null ? null : source.getTimetableSnapshot();
+    }
+
+    private static class Entry {
+        final TripPlan plan;
+        final Object timetableSnapshot;
+        final Object alertPatches;
+
+        Entry(TripPlan plan, Object timetableSnapshot, Object alertPatches) {
+            this.plan = plan;
+            this.timetableSnapshot = timetableSnapshot;
+            this.alertPatches = alertPatches;
+        }
+    }
+
+    /**
+     * A normalized request. Equality covers the routing and output options through a copy of the request with its
+     * endpoints replaced, plus the rounded endpoints and the locale.
+     */
+    public static class Key {
+
+        private final RoutingRequest options;
+
+        private final String routerId;
+
+        private final String endpoints;
+
+        private final String locale;
+
+        private final int hashCode;
+
+        /** The real-time state when the key was made, not part of equality. */
+        final Object timetableSnapshot;
+
+        final Object alertPatches;
+
+        Key(RoutingRequest request, Object timetableSnapshot, Object alertPatches) {
+            options = request.clone();
+            options.from = ANY_PLACE;
+            options.to = ANY_PLACE;
+            options.intermediatePlaces = null;
+            options.rctx = null;
+            routerId = request.routerId;
+            List<String> places = new ArrayList<>();
+            places.add(normalize(request.from));
+            places.add(normalize(request.to));
+            if (request.intermediatePlaces != null) {
+                for (GenericLocation place : request.intermediatePlaces) {
+                    places.add(normalize(place));
+                }
+            }
+            endpoints = places.toString();
+            locale = String.valueOf(request.locale);
+            hashCode = Objects.hash(options, routerId, endpoints, locale);
+            this.timetableSnapshot = timetableSnapshot;
+            this.alertPatches = alertPatches;
+        }
+
+        private static String normalize(GenericLocation place) {
+            if (place == null) {
+                return null;
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append(place.name).append('|');
+            if (place.lat != null && place.lng != null) {
+                sb.append(Math.round(place.lat * COORDINATE_STEPS_PER_DEGREE)).append(',');
+                sb.append(Math.round(place.lng * COORDINATE_STEPS_PER_DEGREE));
+            } else {
+                sb.append(place.place);
+            }
+            sb.append('|').append(place.edgeId).append('|').append(place.heading);
+            return sb.toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hashCode == other.hashCode
+                    && Objects.equals(routerId, other.routerId)
+                    && endpoints.equals(other.endpoints)
+                    && locale.equals(other.locale)
+                    && options.equals(other.options);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
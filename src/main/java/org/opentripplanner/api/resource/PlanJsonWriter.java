@@ -0,0 +1,184 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package org.opentripplanner.api.resource;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.spt.GraphPath;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes a planner Response as JSON directly to the HTTP response stream. The GraphPaths are converted to
+ * itineraries one at a time, each itinerary being written out as soon as it is complete, so the full TripPlan is
+ * never built and the client receives the first itinerary while the following ones are being converted. The JSON is
+ * the same as that of the complete Response serialized with the same ObjectMapper.
+ *
+ * Converting paths needs the routing context, so the routing request is cleaned up here once the plan is written
+ * rather than by the resource. If the writer is never used, for instance because the client went away, the resource
+ * calls {@link #cleanup()} itself when the response is complete.
+ */
+public class PlanJsonWriter implements StreamingOutput {
+
+    private final ObjectMapper mapper;
+
+    private final Response response;
+
+    /** The paths to convert, or null if there is no plan to write. */
+    private final List<GraphPath> paths;
+
+    private final RoutingRequest request;
+
+    /** A complete plan to write instead of converting paths, e.g. from the plan cache. */
+    private final TripPlan completePlan;
+
+    private PlanCache cache;
+
+    private PlanCache.Key cacheKey;
+
+    private final AtomicBoolean cleanedUp = new AtomicBoolean(false);
+
+    public PlanJsonWriter(ObjectMapper mapper, Response response, List<GraphPath> paths, RoutingRequest request) {
+        this.mapper = mapper;
+        this.response = response;
+        this.paths = paths;
+        this.request = request;
+        this.completePlan = null;
+    }
+
+    /** Write a complete plan, which is not modified. */
+    public PlanJsonWriter(ObjectMapper mapper, Response response, TripPlan plan) {
+        this.mapper = mapper;
+        this.response = response;
+        this.paths = null;
+        this.request = null;
+        this.completePlan = plan;
+    }
+
+    /** Keep the itineraries as they are written, and cache the plan if all of them could be converted. */
+    public void setCache(PlanCache cache, PlanCache.Key cacheKey) {
+        this.cache = cache;
+        this.cacheKey = cacheKey;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try {
+            JsonGenerator gen = mapper.getFactory().createGenerator(output);
+            // The container closes the stream itself.
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            gen.writeStartObject();
+            gen.writeObjectField("requestParameters", response.requestParameters);
+            if (completePlan != null) {
+                writePlanStart(gen, completePlan);
+                for (Itinerary itinerary : completePlan.itinerary) {
+                    gen.writeObject(itinerary);
+                }
+                writePlanEnd(gen);
+            } else if (paths != null) {
+                try {
+                    writePlan(gen);
+                } finally {
+                    response.debugOutput = request.rctx.debugOutput;
+                }
+            }
+            // Skip null fields, as the ObjectMapper does for the objects written below.
+            if (response.getError() != null) {
+                gen.writeObjectField("error", response.getError());
+            }
+            if (response.debugOutput != null) {
+                gen.writeObjectField("debugOutput", response.debugOutput);
+            }
+            if (response.elevationMetadata != null) {
+                gen.writeObjectField("elevationMetadata", response.elevationMetadata);
+            }
+            gen.writeEndObject();
+            gen.close();
+        } finally {
+            cleanup();
+        }
+    }
+
+    /**
+     * Release the routing context of the paths to convert, if any. Only the first call has an effect, so this can be
+     * called both after writing and when the response is complete.
+     */
+    public void cleanup() {
+        if (paths != null && cleanedUp.compareAndSet(false, true)) {
+            request.cleanup();
+        }
+    }
+
+    /**
+     * Write the plan field. The first itinerary is converted before anything is written, so that a path which
+     * cannot be converted gives an error without a plan, as with a complete Response. An error on a later
+     * itinerary ends the list of itineraries and is reported in the error field.
+     */
+    private void writePlan(JsonGenerator gen) throws IOException {
+        TripPlan plan;
+        Iterator<Itinerary> itineraries;
+        Itinerary itinerary = null;
+        try {
+            plan = GraphPathToTripPlanConverter.generateEmptyPlan(paths, request);
+            itineraries = GraphPathToTripPlanConverter.generateItineraries(paths, request, plan);
+            if (itineraries.hasNext()) {
+                itinerary = itineraries.next();
+            }
+        } catch (Exception e) {
+            PlannerResource.setError(response, e);
+            return;
+        }
+        writePlanStart(gen, plan);
+        while (itinerary != null) {
+            // Each itinerary is flushed to the client once written, and unless it is kept for the cache can then
+            // be garbage collected.
+            gen.writeObject(itinerary);
+            if (cache != null) {
+                plan.addItinerary(itinerary);
+            }
+            try {
+                itinerary = itineraries.hasNext() ? itineraries.next() : null;
+            } catch (Exception e) {
+                PlannerResource.setError(response, e);
+                itinerary = null;
+            }
+        }
+        writePlanEnd(gen);
+        if (cache != null && response.getError() == null) {
+            cache.put(cacheKey, plan);
+        }
+        request.rctx.debugOutput.finishedRendering();
+    }
+
+    private static void writePlanStart(JsonGenerator gen, TripPlan plan) throws IOException {
+        gen.writeObjectFieldStart("plan");
+        gen.writeObjectField("date", plan.date);
+        gen.writeObjectField("from", plan.from);
+        gen.writeObjectField("to", plan.to);
+        gen.writeArrayFieldStart("itineraries");
+    }
+
+    private static void writePlanEnd(JsonGenerator gen) throws IOException {
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+}
@@ -12,6 +12,7 @@
  along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package org.opentripplanner.api.resource;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.glassfish.grizzly.http.server.Request;
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.opentripplanner.api.common.RoutingResource;
@@ -22,6 +23,7 @@ import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.impl.GraphPathFinder;
 import org.opentripplanner.routing.spt.GraphPath;
 import org.opentripplanner.standalone.OTPServer;
+import org.opentripplanner.standalone.RequestScheduler;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,15 +32,20 @@ import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Providers;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static org.opentripplanner.api.resource.ServerInfo.Q;
@@ -59,9 +66,19 @@ public class PlannerResource extends RoutingResource {
     // We inject info about the incoming request so we can include the incoming query
     // parameters in the outgoing response. This is a TriMet requirement.
     // Jersey uses @Context to inject internal types and @InjectParam or @Resource for DI objects.
+    // The search runs on a routing thread (see RequestScheduler), so everything needed from the incoming request
+    // is read here on the HTTP worker thread.
     @GET
-    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML + Q, MediaType.TEXT_XML + Q })
-    public Response plan(@Context UriInfo uriInfo, @Context Request grizzlyRequest) {
+    @Produces({ MediaType.APPLICATION_XML + Q, MediaType.TEXT_XML + Q })
+    public void plan(@Suspended AsyncResponse asyncResponse, @Context UriInfo uriInfo,
+            @Context Request grizzlyRequest) {
+        Response response = new Response(uriInfo);
+        String clientIpAddress = grizzlyRequest.getRemoteAddr();
+        RequestScheduler scheduler = otpServer.requestScheduler;
+        scheduler.submit(scheduler.plan, asyncResponse, () -> plan(response, clientIpAddress));
+    }
+
+    private Response plan(Response response, String clientIpAddress) {
 
         /*
          * TODO: add Lang / Locale parameter, and thus get localized content (Messages & more...)
@@ -71,8 +88,7 @@ public class PlannerResource extends RoutingResource {
          *       out so it's used here too...
          */
 
-        // Create response object, containing a copy of all request parameters. Maybe they should be in the debug section of the response.
-        Response response = new Response(uriInfo);
+        // The response object contains a copy of all request parameters. Maybe they should be in the debug section of the response.
         RoutingRequest request = null;
         Router router = null;
         List<GraphPath> paths = null;
@@ -82,28 +98,126 @@ public class PlannerResource extends RoutingResource {
             request = super.buildRequest();
             router = otpServer.getRouter(request.routerId);
 
-            /* Find some good GraphPaths through the OTP Graph. */
-            GraphPathFinder gpFinder = new GraphPathFinder(router); // we could also get a persistent router-scoped GraphPathFinder but there's no setup cost here
-            paths = gpFinder.graphPathFinderEntryPoint(request);
+            /* Reuse the plan of an equivalent recent request if the plan cache is enabled. */
+            PlanCache.Key cacheKey = router.planCache == null ? null : router.planCache.key(request);
+            TripPlan plan = cacheKey == null ? null : router.planCache.get(cacheKey);
+            if (plan == null) {
+                /* Find some good GraphPaths through the OTP Graph. */
+                GraphPathFinder gpFinder = new GraphPathFinder(router); // we could also get a persistent router-scoped GraphPathFinder but there's no setup cost here
+                paths = gpFinder.graphPathFinderEntryPoint(request);
 
-            /* Convert the internal GraphPaths to a TripPlan object that is included in an OTP web service Response. */
-            TripPlan plan = GraphPathToTripPlanConverter.generatePlan(paths, request);
+                /* Convert the internal GraphPaths to a TripPlan object that is included in an OTP web service Response. */
+                plan = GraphPathToTripPlanConverter.generatePlan(paths, request);
+                if (cacheKey != null) {
+                    router.planCache.put(cacheKey, plan);
+                }
+            }
             response.setPlan(plan);
 
         } catch (Exception e) {
-            PlannerError error = new PlannerError(e);
-            if(!PlannerError.isPlanningError(e.getClass()))
-                LOG.warn("Error while planning path: ", e);
-            response.setError(error);
+            setError(response, e);
         } finally {
-            if (request != null) {
-                if (request.rctx != null) {
-                    response.debugOutput = request.rctx.debugOutput;
-                }
+            /* There is no routing context when the plan came from the cache. */
+            if (request != null && request.rctx != null) {
+                response.debugOutput = request.rctx.debugOutput;
                 request.cleanup(); // TODO verify that this cleanup step is being done on Analyst web services
             }
         }
 
+        finishResponse(response, router, request, paths, clientIpAddress);
+        return response;
+    }
+
+    /**
+     * The same as {@link #plan(AsyncResponse, UriInfo, Request)}, but the itineraries are converted one at a time while
+     * the JSON response is being written (see {@link PlanJsonWriter}). For long itineraries the conversion and
+     * serialization of a complete TripPlan can take longer than the search itself.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public void planJson(@Suspended AsyncResponse asyncResponse, @Context UriInfo uriInfo,
+            @Context Request grizzlyRequest, @Context Providers providers) {
+        Response response = new Response(uriInfo);
+        String clientIpAddress = grizzlyRequest.getRemoteAddr();
+        ObjectMapper mapper = providers.getContextResolver(ObjectMapper.class, MediaType.APPLICATION_JSON_TYPE)
+                .getContext(Response.class);
+        // Release the routing context even if the writer is never used, e.g. when the client goes away or the
+        // response is resumed by a timeout.
+        AtomicReference<PlanJsonWriter> pendingWriter = new AtomicReference<>();
+        asyncResponse.register((CompletionCallback) failure -> {
+            PlanJsonWriter writer = pendingWriter.get();
+            if (writer != null) {
+                writer.cleanup();
+            }
+        });
+        RequestScheduler scheduler = otpServer.requestScheduler;
+        scheduler.submit(scheduler.plan, asyncResponse, () -> {
+            PlanJsonWriter writer = planJson(response, clientIpAddress, mapper);
+            pendingWriter.set(writer);
+            if (!asyncResponse.isSuspended()) {
+                // The response was completed while planning, it will not be written.
+                writer.cleanup();
+            }
+            return writer;
+        });
+    }
+
+    private PlanJsonWriter planJson(Response response, String clientIpAddress, ObjectMapper mapper) {
+        RoutingRequest request = null;
+        Router router = null;
+        List<GraphPath> paths = null;
+        PlanCache.Key cacheKey = null;
+        TripPlan cachedPlan = null;
+        try {
+            request = super.buildRequest();
+            router = otpServer.getRouter(request.routerId);
+            if (router.planCache != null) {
+                cacheKey = router.planCache.key(request);
+                cachedPlan = router.planCache.get(cacheKey);
+            }
+            if (cachedPlan == null) {
+                GraphPathFinder gpFinder = new GraphPathFinder(router);
+                paths = gpFinder.graphPathFinderEntryPoint(request);
+            }
+        } catch (Exception e) {
+            setError(response, e);
+            paths = null;
+            /* There is nothing to convert, clean up now rather than after writing. */
+            if (request != null && request.rctx != null) {
+                response.debugOutput = request.rctx.debugOutput;
+                request.cleanup();
+            }
+        }
+
+        if (cachedPlan != null) {
+            finishResponse(response, router, request, paths, clientIpAddress);
+            return new PlanJsonWriter(mapper, response, cachedPlan);
+        }
+        PlanJsonWriter writer = new PlanJsonWriter(mapper, response, paths, request);
+        try {
+            finishResponse(response, router, request, paths, clientIpAddress);
+        } catch (RuntimeException e) {
+            writer.cleanup();
+            throw e;
+        }
+        if (cacheKey != null) {
+            writer.setCache(router.planCache, cacheKey);
+        }
+        return writer;
+    }
+
+    /** Report an exception thrown while planning or converting paths in the response. */
+    static void setError(Response response, Exception e) {
+        PlannerError error = new PlannerError(e);
+        if(!PlannerError.isPlanningError(e.getClass()))
+            LOG.warn("Error while planning path: ", e);
+        response.setError(error);
+    }
+
+    /** Add the elevation metadata to the response, and log the request if such logging is enabled. */
+    private void finishResponse(Response response, Router router, RoutingRequest request, List<GraphPath> paths,
+            String clientIpAddress) {
+
         /* Populate up the elevation metadata */
         response.elevationMetadata = new ElevationMetadata();
         response.elevationMetadata.ellipsoidToGeoidDifference = router.graph.ellipsoidToGeoidDifference;
@@ -112,7 +226,6 @@ public class PlannerResource extends RoutingResource {
         /* Log this request if such logging is enabled. */
         if (request != null && router != null && router.requestLogger != null) {
             StringBuilder sb = new StringBuilder();
-            String clientIpAddress = grizzlyRequest.getRemoteAddr();
             //sb.append(LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME));
             sb.append(clientIpAddress);
             sb.append(' ');
@@ -140,7 +253,6 @@ public class PlannerResource extends RoutingResource {
             }
             router.requestLogger.info(sb.toString());
         }
-        return response;
     }
 
 }
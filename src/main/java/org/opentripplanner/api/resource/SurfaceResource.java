@@ -11,7 +11,6 @@ import org.opentripplanner.analyst.TimeSurface;
 import org.opentripplanner.analyst.core.IsochroneData;
 import org.opentripplanner.analyst.core.SlippyTile;
 import org.opentripplanner.analyst.request.RenderRequest;
-import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
 import org.opentripplanner.analyst.request.TileRequest;
 import org.opentripplanner.api.common.ParameterException;
 import org.opentripplanner.api.common.RoutingResource;
@@ -21,7 +20,7 @@ import org.opentripplanner.api.parameter.IsoTimeParameter;
 import org.opentripplanner.api.parameter.Layer;
 import org.opentripplanner.api.parameter.MIMEImageFormat;
 import org.opentripplanner.api.parameter.Style;
-import org.opentripplanner.common.geometry.DelaunayIsolineBuilder;
+import org.opentripplanner.profile.IsochroneGenerator;
 import org.opentripplanner.routing.algorithm.EarliestArrivalSearch;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.spt.ShortestPathTree;
@@ -37,6 +36,8 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -44,7 +45,6 @@ import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -162,14 +162,18 @@ public class SurfaceResource extends RoutingResource {
 
     @Path("/{surfaceId}/isotiles/{z}/{x}/{y}.png")
     @GET @Produces("image/png")
-    public Response tileGet(@PathParam("surfaceId") Integer surfaceId,
+    public void tileGet(@PathParam("surfaceId") Integer surfaceId,
                             @PathParam("x") int x,
                             @PathParam("y") int y,
-                            @PathParam("z") int z) throws Exception {
+                            @PathParam("z") int z,
+                            @Suspended AsyncResponse asyncResponse) throws Exception {
 
         Envelope2D env = SlippyTile.tile2Envelope(x, y, z);
         TimeSurface surfA = otpServer.surfaceCache.get(surfaceId);
-        if (surfA == null) return badRequest("Unrecognized surface ID.");
+        if (surfA == null) {
+            asyncResponse.resume(badRequest("Unrecognized surface ID."));
+            return;
+        }
         	
         TileRequest tileRequest = new TileRequest(env, 256, 256);
        
@@ -178,7 +182,7 @@ public class SurfaceResource extends RoutingResource {
                 new RenderRequest(imageFormat, Layer.TRAVELTIME, Style.COLOR30, true, false);
         // TODO why can't the renderer be static?
         Router router = otpServer.getRouter(surfA.routerId);
-        return router.renderer.getResponse(tileRequest, surfA, null, renderRequest);
+        router.renderer.getResponse(otpServer.tileImageCache, asyncResponse, tileRequest, surfA, null, renderRequest);
     }
     /**
      * Renders a raster tile for showing the difference between two TimeSurfaces.
@@ -197,21 +201,24 @@ public class SurfaceResource extends RoutingResource {
     */
     @Path("/{surfaceId}/differencetiles/{compareToSurfaceId}/{z}/{x}/{y}.png")
     @GET @Produces("image/png")
-    public Response differenceTileGet(@PathParam("surfaceId") Integer surfaceId,
+    public void differenceTileGet(@PathParam("surfaceId") Integer surfaceId,
                             @PathParam("compareToSurfaceId") Integer compareToSurfaceId,
                             @PathParam("x") int x,
                             @PathParam("y") int y,
-                            @PathParam("z") int z) throws Exception {
+                            @PathParam("z") int z,
+                            @Suspended AsyncResponse asyncResponse) throws Exception {
 
         Envelope2D env = SlippyTile.tile2Envelope(x, y, z);
         TimeSurface surfA = otpServer.surfaceCache.get(surfaceId);
-        if (surfA == null) return badRequest("Unrecognized surface ID.");
-
         TimeSurface surfB = otpServer.surfaceCache.get(compareToSurfaceId);
-        if (surfB == null) return badRequest("Unrecognized surface ID.");
+        if (surfA == null || surfB == null) {
+            asyncResponse.resume(badRequest("Unrecognized surface ID."));
+            return;
+        }
 
         if ( ! surfA.routerId.equals(surfB.routerId)) {
-            return badRequest("Both surfaces must be from the same router to perform subtraction.");
+            asyncResponse.resume(badRequest("Both surfaces must be from the same router to perform subtraction."));
+            return;
         }
 
         TileRequest tileRequest = new TileRequest(env, 256, 256);
@@ -219,7 +226,7 @@ public class SurfaceResource extends RoutingResource {
         RenderRequest renderRequest = new RenderRequest(imageFormat, Layer.DIFFERENCE, Style.DIFFERENCE, true, false);
         // TODO why can't the renderer be static?
         Router router = otpServer.getRouter(surfA.routerId);
-        return router.renderer.getResponse(tileRequest, surfA, surfB, renderRequest);
+        router.renderer.getResponse(otpServer.tileImageCache, asyncResponse, tileRequest, surfA, surfB, renderRequest);
     }
 
     private Response badRequest(String message) {
@@ -232,7 +239,7 @@ public class SurfaceResource extends RoutingResource {
 
     /**
      * Use Laurent's accumulative grid sampler. Cutoffs in minutes.
-     * The grid and Delaunay triangulation are cached, so subsequent requests are very fast.
+     * The grid is cached, so subsequent requests are very fast.
      *
      * @param spacing the number of minutes between isochrones
      * @return a list of evenly-spaced isochrones up to the timesurface's cutoff point
@@ -244,19 +251,8 @@ public class SurfaceResource extends RoutingResource {
             // The sample grid was not built from the SPT; make a minimal one including only time from the vertices in this timesurface
             surf.makeSampleGridWithoutSPT();
         }
-        DelaunayIsolineBuilder<WTWD> isolineBuilder = new DelaunayIsolineBuilder<WTWD>(
-                surf.sampleGrid.delaunayTriangulate(), new WTWD.IsolineMetric());
-
-        List<IsochroneData> isochrones = new ArrayList<IsochroneData>();
-        for (int minutes = spacing, n = 0; minutes <= surf.cutoffMinutes && n < nMax; minutes += spacing, n++) {
-            int seconds = minutes * 60;
-            WTWD z0 = new WTWD();
-            z0.w = 1.0;
-            z0.wTime = seconds;
-            z0.d = 300; // meters. TODO set dynamically / properly, make sure it matches grid cell size?
-            IsochroneData isochrone = new IsochroneData(seconds, isolineBuilder.computeIsoline(z0));
-            isochrones.add(isochrone);
-         }
+        List<IsochroneData> isochrones =
+                IsochroneGenerator.getIsochronesAccumulative(surf.sampleGrid, spacing, surf.cutoffMinutes, nMax);
 
         long t1 = System.currentTimeMillis();
         LOG.debug("Computed {} isochrones in {} msec", isochrones.size(), (int) (t1 - t0));
@@ -269,7 +265,8 @@ public class SurfaceResource extends RoutingResource {
      */
     @Path("/{surfaceId}/raster")
     @GET @Produces("image/*")
-    public Response getRaster(
+    public void getRaster(
+            @Suspended AsyncResponse asyncResponse,
             @PathParam("surfaceId") Integer surfaceId,
             @QueryParam("width") @DefaultValue("1024") Integer width,
             @QueryParam("height") @DefaultValue("768") Integer height,
@@ -289,7 +286,7 @@ public class SurfaceResource extends RoutingResource {
 
         TileRequest tileRequest = new TileRequest(bbox, width, height);
         RenderRequest renderRequest = new RenderRequest(format, Layer.TRAVELTIME, Style.GRAY, false, false);
-        return router.renderer.getResponse(tileRequest, surface, null, renderRequest);
+        router.renderer.getResponse(otpServer.tileImageCache, asyncResponse, tileRequest, surface, null, renderRequest);
     }
 
 
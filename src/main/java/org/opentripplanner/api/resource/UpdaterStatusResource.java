@@ -1,5 +1,6 @@
 package org.opentripplanner.api.resource;
 
+import com.google.common.collect.Maps;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
 import org.opentripplanner.updater.GraphUpdater;
@@ -11,6 +12,7 @@ import javax.ws.rs.*;
 import javax.ws.rs.core.*;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import java.util.Map;
 
 /**
  * Report the status of the graph updaters via a web service.
@@ -40,6 +42,27 @@ public class UpdaterStatusResource {
         return Response.status(Response.Status.OK).entity(updaterManager.getUpdaterDescriptions()).build();
     }
 
+    /**
+     * Return the state of the graph writer queue: how many graph writes each updater has waiting,
+     * how long they waited before being run, and how many were run together in each writer pass.
+     */
+    @GET
+    @Path("/queue")
+    public Response getWriterQueue () {
+        GraphUpdaterManager updaterManager = router.graph.updaterManager;
+        if (updaterManager == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity("No updaters running.").build();
+        }
+        Map<String, Object> queue = Maps.newLinkedHashMap();
+        queue.put("windowMs", updaterManager.getWriterWindowMs());
+        queue.put("queued", updaterManager.getWriterQueueSize());
+        queue.put("passes", updaterManager.getWriterPasses());
+        queue.put("lastPassSize", updaterManager.getLastWriterPassSize());
+        queue.put("maxPassSize", updaterManager.getMaxWriterPassSize());
+        queue.put("updaters", updaterManager.getWriterQueueStats());
+        return Response.status(Response.Status.OK).entity(queue).build();
+    }
+
     /** Return status for a specific updater. */
     @GET
     @Path("/{updaterId}")
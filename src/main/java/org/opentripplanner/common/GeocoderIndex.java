@@ -0,0 +1,706 @@
+package org.opentripplanner.common;
+
+import com.google.common.collect.Iterables;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import org.onebusaway.gtfs.model.Stop;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.profile.StopCluster;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.GraphIndex;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index of stops, stop clusters and street corners by name, used by the built-in geocoder.
+ *
+ * All the distinct words appearing in names are kept in one sorted array, with for each word the places whose name
+ * contains it, so the words starting with a prefix are a range of that array found with two binary searches. Queries
+ * therefore need no disk directory, no query parser and no background indexing, and take well under a millisecond.
+ * The index is serializable: the graph builder can build it and save it with the graph (see the geocoderIndex build
+ * parameter), otherwise it is built the first time the geocoder is used.
+ *
+ * Names are split into words at anything that is not a letter or a digit, ignoring case and accents. In autocomplete
+ * mode every word of the query must be the beginning of a word of the name, in any order. Otherwise places match any
+ * of the query words, exactly or with a spelling mistake or two, any quoted phrase, or a stop code. Places matching
+ * more of the query come first, then places closer to the given focus point if any, then shorter names.
+ */
+public class GeocoderIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(GeocoderIndex.class);
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    /** Splits a query into words and quoted phrases. */
+    private static final Pattern QUERY_TOKEN = Pattern.compile("([^\"]\\S*|\".+?\")\\s*");
+
+    public static final int DEFAULT_MAX_RESULTS = 10;
+
+    public enum Category { STOP, CORNER, CLUSTER }
+
+    /** The stop clustering mode of the graph when the stop clusters were indexed. */
+    public final String stopClusterMode;
+
+    private final String[] names;
+
+    private final String[] ids;
+
+    private final String[] codes;
+
+    private final double[] lats;
+
+    private final double[] lons;
+
+    private final Category[] categories;
+
+    /** The distinct normalized words of all the names, sorted. */
+    private final String[] words;
+
+    /** For each word, the places whose name contains it, in increasing order. */
+    private final int[][] placesForWord;
+
+    /** For each place, the indexes of the words of its name, in increasing order. */
+    private final int[][] wordsForPlace;
+
+    /** The places with each normalized stop code, in increasing order. */
+    private final Map<String, int[]> placesForCode;
+
+    /**
+     * For each pair of consecutive characters, the indexes of the words containing it, in increasing order. This
+     * narrows down the words to compare with a misspelled one, and is rebuilt rather than saved with the graph.
+     */
+    private transient TIntObjectMap<int[]> wordsForBigram;
+
+    private GeocoderIndex(Builder builder, String stopClusterMode) {
+        this.stopClusterMode = stopClusterMode;
+        int nPlaces = builder.names.size();
+        names = builder.names.toArray(new String[nPlaces]);
+        ids = builder.ids.toArray(new String[nPlaces]);
+        codes = builder.codes.toArray(new String[nPlaces]);
+        lats = builder.lats.toArray();
+        lons = builder.lons.toArray();
+        categories = builder.categories.toArray(new Category[nPlaces]);
+        words = builder.placesForWord.keySet().toArray(new String[builder.placesForWord.size()]);
+        Arrays.sort(words);
+        placesForWord = new int[words.length][];
+        for (int w = 0; w < words.length; w++) {
+            placesForWord[w] = builder.placesForWord.get(words[w]).toArray();
+        }
+        wordsForPlace = new int[nPlaces][];
+        for (int p = 0; p < nPlaces; p++) {
+            String[] placeWords = builder.wordsForPlace.get(p);
+            int[] wordIndexes = new int[placeWords.length];
+            for (int i = 0; i < placeWords.length; i++) {
+                wordIndexes[i] = Arrays.binarySearch(words, placeWords[i]);
+            }
+            Arrays.sort(wordIndexes);
+            wordsForPlace[p] = wordIndexes;
+        }
+        placesForCode = new HashMap<>();
+        for (Map.Entry<String, TIntArrayList> entry : builder.placesForCode.entrySet()) {
+            placesForCode.put(entry.getKey(), entry.getValue().toArray());
+        }
+        indexBigrams();
+    }
+
+    private void indexBigrams() {
+        TIntObjectMap<TIntArrayList> lists = new TIntObjectHashMap<>();
+        for (int w = 0; w < words.length; w++) {
+            String word = words[w];
+            for (int i = 0; i + 1 < word.length(); i++) {
+                TIntArrayList list = lists.get(bigram(word, i));
+                if (list == null) {
+                    list = new TIntArrayList();
+                    lists.put(bigram(word, i), list);
+                }
+                // The words are visited in order, so a word repeating a bigram is already last in its list.
+                if (list.isEmpty() || list.get(list.size() - 1) != w) {
+                    list.add(w);
+                }
+            }
+        }
+        wordsForBigram = new TIntObjectHashMap<>(lists.size());
+        for (int bigram : lists.keys()) {
+            wordsForBigram.put(bigram, lists.get(bigram).toArray());
+        }
+    }
+
+    private static int bigram(String word, int i) {
+        return word.charAt(i) << 16 | word.charAt(i + 1);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        indexBigrams();
+    }
+
+    /**
+     * Index the stops, stop clusters and street corners of a graph by name.
+     */
+    public static GeocoderIndex build(GraphIndex graphIndex) {
+        long startTime = System.currentTimeMillis();
+        Builder builder = new Builder();
+        for (Stop stop : graphIndex.stopForId.values()) {
+            builder.add(Category.STOP, stop.getName(), stop.getId().toString(), stop.getCode(),
+                    stop.getLat(), stop.getLon());
+        }
+        graphIndex.clusterStopsAsNeeded();
+        for (StopCluster stopCluster : graphIndex.stopClusterForId.values()) {
+            builder.add(Category.CLUSTER, stopCluster.name, stopCluster.id, null, stopCluster.lat, stopCluster.lon);
+        }
+        for (StreetVertex sv : Iterables.filter(graphIndex.vertexForId.values(), StreetVertex.class)) {
+            String mainStreet = null;
+            String crossStreet = null;
+            // TODO score based on OSM street type, using intersection nodes instead of vertices.
+            for (StreetEdge pse : Iterables.filter(sv.getOutgoing(), StreetEdge.class)) {
+                if (mainStreet == null) mainStreet = pse.getName();
+                else crossStreet = pse.getName();
+            }
+            if (mainStreet == null || crossStreet == null) continue;
+            if (mainStreet.equals(crossStreet)) continue;
+            builder.add(Category.CORNER, mainStreet + " & " + crossStreet, null, null, sv.getLat(), sv.getLon());
+        }
+        GeocoderIndex index = builder.build(graphIndex.graph.stopClusterMode);
+        LOG.info("Built geocoder index of {} places and {} distinct words in {} msec", index.names.length,
+                index.words.length, System.currentTimeMillis() - startTime);
+        return index;
+    }
+
+    /** @return the number of places in the index. */
+    public int size() {
+        return names.length;
+    }
+
+    /** Fetch results for the geocoder using the OTP graph for stops, clusters and street names. */
+    public List<Result> query(String queryString, boolean autocomplete,
+                              boolean stops, boolean clusters, boolean corners) {
+        return query(queryString, autocomplete, stops, clusters, corners, Double.NaN, Double.NaN,
+                DEFAULT_MAX_RESULTS);
+    }
+
+    /**
+     * Fetch results for the geocoder using the OTP graph for stops, clusters and street names.
+     *
+     * @param autocomplete Whether we should use the query string to do a prefix match
+     * @param stops Search for stops, either by name or stop code
+     * @param clusters Search for clusters by their name
+     * @param corners Search for street corners using at least one of the street names
+     * @param lat the latitude of a point near which results are preferred, or NaN
+     * @param lon the longitude of a point near which results are preferred, or NaN
+     * @return list of results in in the format expected by GeocoderBuiltin.js in the OTP Leaflet client
+     */
+    public List<Result> query(String queryString, boolean autocomplete, boolean stops, boolean clusters,
+                              boolean corners, double lat, double lon, int maxResults) {
+        if (queryString == null || maxResults <= 0) {
+            return Collections.emptyList();
+        }
+        List<Term> terms = parse(queryString, autocomplete);
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // As in the Lucene index this replaces, not asking for any category means asking for all of them.
+        boolean allCategories = !(stops || clusters || corners);
+
+        // Find the places matching at least one term, or only those of the most selective term when all must match.
+        BitSet candidates = new BitSet(names.length);
+        if (autocomplete) {
+            Term mostSelective = terms.get(0);
+            for (Term term : terms) {
+                if (term.estimatedPlaces() < mostSelective.estimatedPlaces()) {
+                    mostSelective = term;
+                }
+            }
+            mostSelective.addPlaces(candidates);
+        } else {
+            for (Term term : terms) {
+                term.addPlaces(candidates);
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        for (int place = candidates.nextSetBit(0); place >= 0; place = candidates.nextSetBit(place + 1)) {
+            Category category = categories[place];
+            if (!allCategories && !(category == Category.STOP ? stops :
+                    category == Category.CLUSTER ? clusters : corners)) {
+                continue;
+            }
+            int score = 0;
+            for (Term term : terms) {
+                int termScore = term.score(place);
+                if (termScore == 0 && autocomplete) {
+                    score = 0;
+                    break;
+                }
+                score += termScore;
+            }
+            if (score > 0) {
+                double distance = Double.isNaN(lat) || Double.isNaN(lon) ? 0 :
+                        SphericalDistanceLibrary.fastDistance(lat, lon, lats[place], lons[place]);
+                hits.add(new Hit(place, score, distance));
+            }
+        }
+
+        // Keep the best results, with the worst of them at the head of the queue.
+        Comparator<Hit> byRank = Comparator.<Hit>comparingInt(h -> -h.score)
+                .thenComparingDouble(h -> h.distance)
+                .thenComparingInt(h -> names[h.place].length())
+                .thenComparingInt(h -> h.place);
+        PriorityQueue<Hit> best = new PriorityQueue<>(Math.min(maxResults, hits.size()) + 1, byRank.reversed());
+        for (Hit hit : hits) {
+            best.add(hit);
+            if (best.size() > maxResults) {
+                best.poll();
+            }
+        }
+        List<Hit> sorted = new ArrayList<>(best);
+        sorted.sort(byRank);
+        List<Result> results = new ArrayList<>(sorted.size());
+        for (Hit hit : sorted) {
+            results.add(result(hit.place));
+        }
+        return results;
+    }
+
+    private Result result(int place) {
+        Result result = new Result();
+        result.lat = lats[place];
+        result.lng = lons[place];
+        String code = codes[place] == null ? "" : "(" + codes[place] + ")";
+        result.description = categories[place].name().toLowerCase() + " " + names[place] + " " + code;
+        result.id = ids[place];
+        return result;
+    }
+
+    /** Split a query into terms, each being a word, a quoted phrase or a possible stop code. */
+    private List<Term> parse(String queryString, boolean autocomplete) {
+        List<Term> terms = new ArrayList<>();
+        if (autocomplete) {
+            for (String word : normalize(queryString)) {
+                terms.add(new PrefixTerm(word));
+            }
+            return terms;
+        }
+        Matcher m = QUERY_TOKEN.matcher(queryString);
+        while (m.find()) {
+            String token = m.group(1);
+            if (token.length() > 1 && token.startsWith("\"") && token.endsWith("\"")) {
+                String[] phrase = normalize(token.substring(1, token.length() - 1));
+                if (phrase.length > 0) {
+                    terms.add(new PhraseTerm(phrase));
+                }
+            } else {
+                // A token such as "st.-laurent" becomes several words, each of which can match on its own.
+                for (String word : normalize(token)) {
+                    terms.add(new FuzzyTerm(word));
+                }
+                int[] places = placesForCode.get(normalizeCode(token));
+                if (places != null) {
+                    terms.add(new CodeTerm(places));
+                }
+            }
+        }
+        return terms;
+    }
+
+    /** @return the distinct words of the given text, without case or accents. */
+    static String[] normalize(String text) {
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD);
+        folded = COMBINING_MARKS.matcher(folded).replaceAll("").toLowerCase(Locale.ROOT);
+        Set<String> words = new LinkedHashSet<>();
+        for (String word : NON_WORD.split(folded)) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    private static String normalizeCode(String code) {
+        return code.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** @return the index in words of the first word not less than the given one. */
+    private int lowerBound(String word) {
+        int index = Arrays.binarySearch(words, word);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /** @return true if the name of the given place contains a word in [from, to). */
+    private boolean placeHasWordInRange(int place, int from, int to) {
+        int[] placeWords = wordsForPlace[place];
+        int index = Arrays.binarySearch(placeWords, from);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < placeWords.length && placeWords[index] < to;
+    }
+
+    /**
+     * @return true if the Levenshtein distance between the two words is at most maxEdits, computing only the diagonal
+     * band of the distance matrix which can hold such distances.
+     */
+    static boolean withinEditDistance(String a, String b, int maxEdits) {
+        return withinEditDistance(a, b, maxEdits, new int[b.length() + 1], new int[b.length() + 1]);
+    }
+
+    /**
+     * Same as withinEditDistance(a, b, maxEdits), reusing the given rows of at least b.length() + 1 values when
+     * comparing a word with many others.
+     */
+    static boolean withinEditDistance(String a, String b, int maxEdits, int[] previous, int[] current) {
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > maxEdits) {
+            return false;
+        }
+        int big = maxEdits + 1;
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j <= maxEdits ? j : big;
+        }
+        for (int i = 1; i <= n; i++) {
+            Arrays.fill(current, 0, m + 1, big);
+            current[0] = i <= maxEdits ? i : big;
+            int rowMin = current[0];
+            int from = Math.max(1, i - maxEdits);
+            int to = Math.min(m, i + maxEdits);
+            for (int j = from; j <= to; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(previous[j - 1] + cost, Math.min(previous[j] + 1, current[j - 1] + 1));
+                current[j] = Math.min(d, big);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxEdits) {
+                return false;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m] <= maxEdits;
+    }
+
+    /** A part of a query, matching some of the places in the index. */
+    private abstract class Term {
+
+        /** @return an upper bound of the number of places matching this term, to pick the most selective one. */
+        abstract int estimatedPlaces();
+
+        /** Set the bits of all the places matching this term. */
+        abstract void addPlaces(BitSet places);
+
+        /** @return how well the given place matches this term, zero if it does not match at all. */
+        abstract int score(int place);
+
+    }
+
+    /** Matches the places with a word starting with the given one, better if it is the whole word. */
+    private class PrefixTerm extends Term {
+
+        final int from;
+
+        final int to;
+
+        final boolean exact;
+
+        PrefixTerm(String prefix) {
+            from = lowerBound(prefix);
+            // All the words starting with the prefix sort before the prefix followed by the highest character.
+            to = lowerBound(prefix + Character.MAX_VALUE);
+            exact = from < to && words[from].equals(prefix);
+        }
+
+        int estimatedPlaces() {
+            int n = 0;
+            for (int w = from; w < to && n < names.length; w++) {
+                n += placesForWord[w].length;
+            }
+            return n;
+        }
+
+        void addPlaces(BitSet places) {
+            for (int w = from; w < to; w++) {
+                for (int place : placesForWord[w]) {
+                    places.set(place);
+                }
+            }
+        }
+
+        int score(int place) {
+            if (exact && Arrays.binarySearch(wordsForPlace[place], from) >= 0) {
+                return 2;
+            }
+            return placeHasWordInRange(place, from, to) ? 1 : 0;
+        }
+
+    }
+
+    /** Matches the places with the given word, or one or two typing mistakes away from it. */
+    private class FuzzyTerm extends Term {
+
+        final int exact;
+
+        /** The indexes of the words within the allowed edit distance, in increasing order. */
+        final int[] similar;
+
+        FuzzyTerm(String word) {
+            int index = Arrays.binarySearch(words, word);
+            exact = index >= 0 ? index : -1;
+            int maxEdits = word.length() < 3 ? 0 : word.length() < 6 ? 1 : 2;
+            TIntArrayList similarWords = new TIntArrayList();
+            if (maxEdits > 0) {
+                BitSet candidates = candidates(word);
+                int[] previous = new int[word.length() + maxEdits + 1];
+                int[] current = new int[previous.length];
+                for (int w = candidates.nextSetBit(0); w >= 0; w = candidates.nextSetBit(w + 1)) {
+                    if (w != exact && withinEditDistance(word, words[w], maxEdits, previous, current)) {
+                        similarWords.add(w);
+                    }
+                }
+            }
+            similar = similarWords.toArray();
+        }
+
+        /**
+         * @return the words which may be within the allowed edit distance of the given one. Each edit changes at most
+         * two of the pairs of consecutive characters of a word, so a word one edit away from a word of four characters
+         * or more, or two edits away from one of six characters or more, shares at least one of its pairs. One edit
+         * can change both pairs of a three character word, but then it leaves the first character alone.
+         */
+        private BitSet candidates(String word) {
+            BitSet candidates = new BitSet(words.length);
+            for (int i = 0; i + 1 < word.length(); i++) {
+                int[] bigramWords = wordsForBigram.get(bigram(word, i));
+                if (bigramWords != null) {
+                    for (int w : bigramWords) {
+                        candidates.set(w);
+                    }
+                }
+            }
+            if (word.length() == 3) {
+                String first = word.substring(0, 1);
+                candidates.set(lowerBound(first), lowerBound(first + Character.MAX_VALUE));
+            }
+            return candidates;
+        }
+
+        int estimatedPlaces() {
+            int n = exact < 0 ? 0 : placesForWord[exact].length;
+            for (int w : similar) {
+                n += placesForWord[w].length;
+            }
+            return n;
+        }
+
+        void addPlaces(BitSet places) {
+            if (exact >= 0) {
+                for (int place : placesForWord[exact]) {
+                    places.set(place);
+                }
+            }
+            for (int w : similar) {
+                for (int place : placesForWord[w]) {
+                    places.set(place);
+                }
+            }
+        }
+
+        int score(int place) {
+            int[] placeWords = wordsForPlace[place];
+            if (exact >= 0 && Arrays.binarySearch(placeWords, exact) >= 0) {
+                return 2;
+            }
+            for (int w : placeWords) {
+                if (Arrays.binarySearch(similar, w) >= 0) {
+                    return 1;
+                }
+            }
+            return 0;
+        }
+
+    }
+
+    /** Matches the places whose name contains the given words one after the other. */
+    private class PhraseTerm extends Term {
+
+        final String[] phrase;
+
+        /** The index of each word of the phrase, or null if one of them appears in no name. */
+        final int[] phraseWords;
+
+        PhraseTerm(String[] phrase) {
+            this.phrase = phrase;
+            int[] indexes = new int[phrase.length];
+            for (int i = 0; i < phrase.length; i++) {
+                indexes[i] = Arrays.binarySearch(words, phrase[i]);
+                if (indexes[i] < 0) {
+                    indexes = null;
+                    break;
+                }
+            }
+            phraseWords = indexes;
+        }
+
+        int estimatedPlaces() {
+            if (phraseWords == null) return 0;
+            int n = Integer.MAX_VALUE;
+            for (int w : phraseWords) {
+                n = Math.min(n, placesForWord[w].length);
+            }
+            return n;
+        }
+
+        void addPlaces(BitSet places) {
+            if (phraseWords == null) return;
+            for (int place : placesForWord[phraseWords[0]]) {
+                if (score(place) > 0) {
+                    places.set(place);
+                }
+            }
+        }
+
+        int score(int place) {
+            if (phraseWords == null) return 0;
+            for (int w : phraseWords) {
+                if (Arrays.binarySearch(wordsForPlace[place], w) < 0) {
+                    return 0;
+                }
+            }
+            // All the words are there, check that they are in order. Repeated words are dropped from both the name
+            // and the phrase when they are normalized.
+            String[] nameWords = normalize(names[place]);
+            for (int start = 0; start + phrase.length <= nameWords.length; start++) {
+                int i = 0;
+                while (i < phrase.length && nameWords[start + i].equals(phrase[i])) {
+                    i++;
+                }
+                if (i == phrase.length) {
+                    return 2 * phrase.length;
+                }
+            }
+            return 0;
+        }
+
+    }
+
+    /** Matches the stops with a given stop code. */
+    private class CodeTerm extends Term {
+
+        final int[] places;
+
+        CodeTerm(int[] places) {
+            this.places = places;
+        }
+
+        int estimatedPlaces() {
+            return places.length;
+        }
+
+        void addPlaces(BitSet placeSet) {
+            for (int place : places) {
+                placeSet.set(place);
+            }
+        }
+
+        int score(int place) {
+            return Arrays.binarySearch(places, place) >= 0 ? 2 : 0;
+        }
+
+    }
+
+    private static class Hit {
+
+        final int place;
+
+        final int score;
+
+        final double distance;
+
+        Hit(int place, int score, double distance) {
+            this.place = place;
+            this.score = score;
+            this.distance = distance;
+        }
+
+    }
+
+    /** Accumulates places before they are sorted into the final arrays. */
+    static class Builder {
+
+        final List<String> names = new ArrayList<>();
+
+        final List<String> ids = new ArrayList<>();
+
+        final List<String> codes = new ArrayList<>();
+
+        final TDoubleArrayList lats = new TDoubleArrayList();
+
+        final TDoubleArrayList lons = new TDoubleArrayList();
+
+        final List<Category> categories = new ArrayList<>();
+
+        final List<String[]> wordsForPlace = new ArrayList<>();
+
+        final Map<String, TIntArrayList> placesForWord = new HashMap<>();
+
+        final Map<String, TIntArrayList> placesForCode = new HashMap<>();
+
+        void add(Category category, String name, String id, String code, double lat, double lon) {
+            if (name == null) return;
+            int place = names.size();
+            names.add(name);
+            ids.add(id);
+            codes.add(code);
+            lats.add(lat);
+            lons.add(lon);
+            categories.add(category);
+            String[] placeWords = normalize(name);
+            wordsForPlace.add(placeWords);
+            for (String word : placeWords) {
+                placesForWord.computeIfAbsent(word, w -> new TIntArrayList()).add(place);
+            }
+            if (code != null && !code.trim().isEmpty()) {
+                placesForCode.computeIfAbsent(normalizeCode(code), c -> new TIntArrayList()).add(place);
+            }
+        }
+
+        GeocoderIndex build(String stopClusterMode) {
+            return new GeocoderIndex(this, stopClusterMode);
+        }
+
+    }
+
+    /** This class matches the structure of the Geocoder responses expected by the OTP client. */
+    public static class Result {
+        public double lat;
+        public double lng;
+        public String description;
+        public String id;
+    }
+
+}
@@ -0,0 +1,403 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+/**
+ * An immutable hash map, where adding or removing an entry makes a new map that shares all of its structure with the
+ * old one except the path from the root to the changed entry. This is a hash array mapped trie: each level of the
+ * tree uses five more bits of the key hash to choose among up to 32 children, and only stores the children that are
+ * present, so a change copies about log32(n) small arrays instead of the whole map.
+ *
+ * This makes it cheap to hand out an unchanging view of a map that is still being modified, such as the timetables
+ * in a realtime snapshot: the reader just keeps a reference to the version it was given. Maps are safe to share
+ * between threads once published.
+ */
+public final class PersistentHashMap<K, V> implements Iterable<Map.Entry<K, V>> {
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    /** Number of hash bits consumed at each level of the trie. */
+    private static final int BITS = 5;
+
+    /** The root is null for an empty map, otherwise a Leaf, a Collision or a Node. */
+    private final Object root;
+
+    private final int size;
+
+    private PersistentHashMap(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int hash = hash(key);
+        Object o = root;
+        int shift = 0;
+        while (o != null) {
+            if (o instanceof Node) {
+                Node node = (Node) o;
+                int bit = 1 << ((hash >>> shift) & 31);
+                if ((node.bitmap & bit) == 0) return null;
+                o = node.slots[node.index(bit)];
+                shift += BITS;
+            } else if (o instanceof Leaf) {
+                Leaf leaf = (Leaf) o;
+                return leaf.hash == hash && Objects.equals(leaf.key, key) ? (V) leaf.value : null;
+            } else {
+                Leaf leaf = ((Collision) o).find(hash, key);
+                return leaf == null ? null : (V) leaf.value;
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /** @return a map with the given entry added or replaced, or this map if it already held exactly that entry. */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(value, "Null values are not supported.");
+        int[] sizeChange = new int[1];
+        Object newRoot = put(root, new Leaf(hash(key), key, value), 0, sizeChange);
+        return newRoot == root ? this : new PersistentHashMap<>(newRoot, size + sizeChange[0]);
+    }
+
+    /** @return a map without the given key, or this map if the key was not present. */
+    public PersistentHashMap<K, V> minus(Object key) {
+        int[] sizeChange = new int[1];
+        Object newRoot = remove(root, hash(key), key, 0, sizeChange);
+        return newRoot == root ? this : new PersistentHashMap<>(newRoot, size + sizeChange[0]);
+    }
+
+    /** @return a map without the entries matching the predicate, or this map if none match. */
+    public PersistentHashMap<K, V> minusIf(BiPredicate<? super K, ? super V> predicate) {
+        List<K> toRemove = new ArrayList<>();
+        forEach((k, v) -> {
+            if (predicate.test(k, v)) toRemove.add(k);
+        });
+        PersistentHashMap<K, V> result = this;
+        for (K key : toRemove) {
+            result = result.minus(key);
+        }
+        return result;
+    }
+
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Map.Entry<K, V> entry : this) {
+            action.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<>(root);
+    }
+
+    /**
+     * Count the trie nodes and entries in this map that are not shared with the given earlier version of it, i.e. the
+     * extra memory retained by keeping both versions. Shared subtrees are recognized by identity and skipped, so this
+     * takes time proportional to the number of changes rather than the size of the map.
+     */
+    public int countNodesNotSharedWith(PersistentHashMap<K, V> other) {
+        return countNew(root, other == null ? null : other.root);
+    }
+
+    private static int countNew(Object current, Object previous) {
+        if (current == previous || current == null) return 0;
+        if (!(current instanceof Node)) return 1;
+        Node node = (Node) current;
+        Node prev = previous instanceof Node ? (Node) previous : null;
+        int count = 1;
+        for (int bits = node.bitmap; bits != 0; bits &= bits - 1) {
+            int bit = Integer.lowestOneBit(bits);
+            Object child = node.slots[node.index(bit)];
+            Object prevChild = (prev != null && (prev.bitmap & bit) != 0) ? prev.slots[prev.index(bit)] : null;
+            count += countNew(child, prevChild);
+        }
+        return count;
+    }
+
+    private static int hash(Object key) {
+        int h = Objects.hashCode(key);
+        // spread the high bits downward, as the low bits are used first
+        return h ^ (h >>> 16);
+    }
+
+    private static Object put(Object o, Leaf leaf, int shift, int[] sizeChange) {
+        if (o == null) {
+            sizeChange[0] = 1;
+            return leaf;
+        }
+        if (o instanceof Leaf) {
+            Leaf existing = (Leaf) o;
+            if (existing.hash == leaf.hash && Objects.equals(existing.key, leaf.key)) {
+                return existing.value == leaf.value ? existing : leaf;
+            }
+            sizeChange[0] = 1;
+            if (existing.hash == leaf.hash) {
+                return new Collision(leaf.hash, new Leaf[] { existing, leaf });
+            }
+            return merge(existing, existing.hash, leaf, shift);
+        }
+        if (o instanceof Collision) {
+            Collision collision = (Collision) o;
+            if (collision.hash == leaf.hash) {
+                return collision.put(leaf, sizeChange);
+            }
+            sizeChange[0] = 1;
+            return merge(collision, collision.hash, leaf, shift);
+        }
+        Node node = (Node) o;
+        int bit = 1 << ((leaf.hash >>> shift) & 31);
+        int index = node.index(bit);
+        if ((node.bitmap & bit) == 0) {
+            sizeChange[0] = 1;
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            slots[index] = leaf;
+            System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+            return new Node(node.bitmap | bit, slots);
+        }
+        Object child = node.slots[index];
+        Object newChild = put(child, leaf, shift + BITS, sizeChange);
+        return newChild == child ? node : node.replace(index, newChild);
+    }
+
+    /** Make a subtree holding two things whose full hashes are known to differ. */
+    private static Object merge(Object a, int hashA, Leaf b, int shift) {
+        int bitA = 1 << ((hashA >>> shift) & 31);
+        int bitB = 1 << ((b.hash >>> shift) & 31);
+        if (bitA == bitB) {
+            return new Node(bitA, new Object[] { merge(a, hashA, b, shift + BITS) });
+        }
+        // slots are in bit order
+        Object[] slots = Integer.compareUnsigned(bitA, bitB) < 0 ? new Object[] { a, b } : new Object[] { b, a };
+        return new Node(bitA | bitB, slots);
+    }
+
+    private static Object remove(Object o, int hash, Object key, int shift, int[] sizeChange) {
+        if (o == null) return null;
+        if (o instanceof Leaf) {
+            Leaf leaf = (Leaf) o;
+            if (leaf.hash == hash && Objects.equals(leaf.key, key)) {
+                sizeChange[0] = -1;
+                return null;
+            }
+            return leaf;
+        }
+        if (o instanceof Collision) {
+            return ((Collision) o).remove(hash, key, sizeChange);
+        }
+        Node node = (Node) o;
+        int bit = 1 << ((hash >>> shift) & 31);
+        if ((node.bitmap & bit) == 0) return node;
+        int index = node.index(bit);
+        Object child = node.slots[index];
+        Object newChild = remove(child, hash, key, shift + BITS, sizeChange);
+        if (newChild == child) return node;
+        if (newChild == null) {
+            if (node.slots.length == 1) return null;
+            if (node.slots.length == 2 && !(node.slots[1 - index] instanceof Node)) {
+                // a single entry does not need a node of its own, lookups check the full hash anyway
+                return node.slots[1 - index];
+            }
+            Object[] slots = new Object[node.slots.length - 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+            return new Node(node.bitmap & ~bit, slots);
+        }
+        if (node.slots.length == 1 && !(newChild instanceof Node)) return newChild;
+        return node.replace(index, newChild);
+    }
+
+    /** A key and value. Leaves are never modified, so they can be handed out as map entries. */
+    private static final class Leaf implements Map.Entry<Object, Object> {
+        final int hash;
+        final Object key;
+        final Object value;
+
+        Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException("Persistent map entries cannot be modified.");
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /** An interior node holding only the children whose bits are set in the bitmap, in bit order. */
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        Node replace(int index, Object child) {
+            Object[] newSlots = slots.clone();
+            newSlots[index] = child;
+            return new Node(bitmap, newSlots);
+        }
+    }
+
+    /** Entries whose keys have exactly the same hash. */
+    private static final class Collision {
+        final int hash;
+        final Leaf[] leaves;
+
+        Collision(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        Leaf find(int hash, Object key) {
+            if (hash != this.hash) return null;
+            for (Leaf leaf : leaves) {
+                if (Objects.equals(leaf.key, key)) return leaf;
+            }
+            return null;
+        }
+
+        Collision put(Leaf leaf, int[] sizeChange) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (Objects.equals(leaves[i].key, leaf.key)) {
+                    if (leaves[i].value == leaf.value) return this;
+                    Leaf[] newLeaves = leaves.clone();
+                    newLeaves[i] = leaf;
+                    return new Collision(hash, newLeaves);
+                }
+            }
+            sizeChange[0] = 1;
+            Leaf[] newLeaves = new Leaf[leaves.length + 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+            newLeaves[leaves.length] = leaf;
+            return new Collision(hash, newLeaves);
+        }
+
+        Object remove(int hash, Object key, int[] sizeChange) {
+            if (hash != this.hash) return this;
+            for (int i = 0; i < leaves.length; i++) {
+                if (Objects.equals(leaves[i].key, key)) {
+                    sizeChange[0] = -1;
+                    if (leaves.length == 2) return leaves[1 - i];
+                    Leaf[] newLeaves = new Leaf[leaves.length - 1];
+                    System.arraycopy(leaves, 0, newLeaves, 0, i);
+                    System.arraycopy(leaves, i + 1, newLeaves, i, newLeaves.length - i);
+                    return new Collision(hash, newLeaves);
+                }
+            }
+            return this;
+        }
+    }
+
+    /** Depth-first walk over the leaves, keeping a stack of the nodes being visited and the next slot in each. */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Deque<Object[]> slotStack = new ArrayDeque<>();
+        private final Deque<Integer> indexStack = new ArrayDeque<>();
+        private Leaf next;
+
+        EntryIterator(Object root) {
+            if (root != null) {
+                slotStack.push(new Object[] { root });
+                indexStack.push(0);
+            }
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (!slotStack.isEmpty()) {
+                Object[] slots = slotStack.peek();
+                int i = indexStack.pop();
+                if (i >= slots.length) {
+                    slotStack.pop();
+                    continue;
+                }
+                indexStack.push(i + 1);
+                Object o = slots[i];
+                if (o instanceof Leaf) {
+                    next = (Leaf) o;
+                    return;
+                }
+                slotStack.push(o instanceof Node ? ((Node) o).slots : ((Collision) o).leaves);
+                indexStack.push(0);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next == null) throw new NoSuchElementException();
+            Leaf leaf = next;
+            advance();
+            return (Map.Entry<K, V>) (Map.Entry<?, ?>) leaf;
+        }
+    }
+
+}
@@ -14,8 +14,6 @@
 package org.opentripplanner.common.geometry;
 
 import java.io.ByteArrayOutputStream;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Variable-length integer encoding. This optimize integer storage when most of the values are
@@ -74,49 +72,77 @@ public class DlugoszVarLenIntPacker {
         return baos.toByteArray();
     }
 
-    public static int[] unpack(byte[] arr) {
-        if (arr == null)
-            return null;
-        List<Integer> retval = new ArrayList<Integer>(arr.length);
-        int i = 0;
-        while (i < arr.length) {
+    /** @return the number of bytes needed to pack the given value. */
+    public static int packedSize(int i) {
+        if (i >= -64 && i <= 63)
+            return 1;
+        if (i >= -8192 && i <= 8191)
+            return 2;
+        if (i >= -1048576 && i <= 1048575)
+            return 3;
+        if (i >= -67108864 && i <= 67108863)
+            return 4;
+        return 5;
+    }
+
+    /**
+     * Unpack n values starting at the given offset of a packed array, which may contain other values before and
+     * after them.
+     */
+    public static int[] unpack(byte[] arr, int offset, int n) {
+        int[] ret = new int[n];
+        int i = offset;
+        for (int k = 0; k < n; k++) {
             int v1 = arr[i] & 0xFF;
             i++;
             if ((v1 & 0x80) == 0x00) {
                 // 0xxx xxxx -> 7 bits value
-                int sv = (v1 & 0x7F) - 64;
-                retval.add(sv);
+                ret[k] = (v1 & 0x7F) - 64;
             } else if ((v1 & 0xC0) == 0x80) {
                 // 10xx xxxx + 8 -> 14 bits value
-                int sv = ((v1 & 0x3F) << 8) + (arr[i] & 0xFF) - 8192;
+                ret[k] = ((v1 & 0x3F) << 8) + (arr[i] & 0xFF) - 8192;
                 i++;
-                retval.add(sv);
             } else if ((v1 & 0xE0) == 0xC0) {
                 // 110 xxxx + 2x8 -> 21 bits value
-                int sv = ((v1 & 0x1F) << 16) + ((arr[i] & 0xFF) << 8) + (arr[i + 1] & 0xFF)
-                        - 1048576;
+                ret[k] = ((v1 & 0x1F) << 16) + ((arr[i] & 0xFF) << 8) + (arr[i + 1] & 0xFF) - 1048576;
                 i += 2;
-                retval.add(sv);
             } else if ((v1 & 0xF8) == 0xE0) {
                 // 1110 0xxx + 3x8 -> 27 bits value
-                int sv = ((v1 & 0x1F) << 24) + ((arr[i] & 0xFF) << 16) + ((arr[i + 1] & 0xFF) << 8)
+                ret[k] = ((v1 & 0x1F) << 24) + ((arr[i] & 0xFF) << 16) + ((arr[i + 1] & 0xFF) << 8)
                         + (arr[i + 2] & 0xFF) - 67108864;
                 i += 3;
-                retval.add(sv);
             } else {
                 // 1110 1xxx + 4x8 -> 35 bits value
                 long sv = (((long) v1 & 0x1F) << 32) + ((arr[i] & 0xFF) << 24)
                         + ((arr[i + 1] & 0xFF) << 16) + ((arr[i + 2] & 0xFF) << 8)
                         + (arr[i + 3] & 0xFF) - 2147483648L;
                 i += 4;
-                retval.add((int) sv);
+                ret[k] = (int) sv;
             }
         }
-        int[] bufret = new int[retval.size()];
-        i = 0;
-        for (int v : retval) {
-            bufret[i++] = v;
+        return ret;
+    }
+
+    public static int[] unpack(byte[] arr) {
+        if (arr == null)
+            return null;
+        // the first byte of each value tells how many bytes it takes
+        int n = 0;
+        int i = 0;
+        while (i < arr.length) {
+            int v1 = arr[i] & 0xFF;
+            if ((v1 & 0x80) == 0x00)
+                i += 1;
+            else if ((v1 & 0xC0) == 0x80)
+                i += 2;
+            else if ((v1 & 0xE0) == 0xC0)
+                i += 3;
+            else if ((v1 & 0xF8) == 0xE0)
+                i += 4;
+            else
+                i += 5;
+            n++;
         }
-        return bufret;
+        return unpack(arr, 0, n);
     }
 }
@@ -0,0 +1,242 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+import org.opentripplanner.common.geometry.ZSampleGrid.ZSamplePoint;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Compute isolines of a raster of integer values (e.g. travel times in seconds) with the marching squares algorithm.
+ *
+ * The raster is a flat array with one value per sample of a regular grid, which is much more compact than the sample
+ * point and edge objects of a DelaunayTriangulation, and each isoline is computed with a single scan of that array.
+ * The raster is never modified, so the isolines for several values can be computed in parallel, see
+ * {@link #computeIsolines(int[])}.
+ *
+ * A sample is inside the isoline for z0 when its value is lower than z0, the same as for the Delaunay isoline builder
+ * with a WTWD.IsolineMetric. UNDEFINED samples are always outside, and the isoline crosses the middle of the grid
+ * edges from a defined sample to an undefined one. The isoline is composed of a list of polygons, CCW shells with CW
+ * holes, as returned by DelaunayIsolineBuilder.
+ */
+public class MarchingSquaresIsolineBuilder {
+
+    /** The value of the samples which have no value, e.g. unreachable places. */
+    public static final int UNDEFINED = Integer.MAX_VALUE;
+
+    private final int[] values;
+
+    private final int width, height;
+
+    private final double x0, y0, dX, dY;
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    /**
+     * @param values The sample values, row by row from the bottom (lowest y) row, so the value of sample (x, y) is
+     *        values[y * width + x].
+     * @param x0 The x coordinate of sample (0, 0).
+     * @param y0 The y coordinate of sample (0, 0).
+     * @param dX The grid size along x, in the same units as x0.
+     * @param dY The grid size along y, in the same units as y0.
+     */
+    public MarchingSquaresIsolineBuilder(int[] values, int width, int height, double x0, double y0, double dX,
+            double dY) {
+        if (values.length != width * height)
+            throw new IllegalArgumentException("The raster must have width * height values.");
+        this.values = values;
+        this.width = width;
+        this.height = height;
+        this.x0 = x0;
+        this.y0 = y0;
+        this.dX = dX;
+        this.dY = dY;
+    }
+
+    /**
+     * Make a raster from the samples of a ZSampleGrid, keeping only an integer value for each sample.
+     *
+     * @param value The value of a sample, or UNDEFINED.
+     */
+    public static <TZ> MarchingSquaresIsolineBuilder fromSampleGrid(ZSampleGrid<TZ> grid, ToIntFunction<TZ> value) {
+        if (grid.size() == 0) {
+            return new MarchingSquaresIsolineBuilder(new int[0], 0, 0, 0, 0, 1, 1);
+        }
+        int xMin = grid.getXMin();
+        int yMin = grid.getYMin();
+        int width = grid.getXMax() - xMin + 1;
+        int height = grid.getYMax() - yMin + 1;
+        int[] values = new int[width * height];
+        Arrays.fill(values, UNDEFINED);
+        for (ZSamplePoint<TZ> point : grid) {
+            TZ z = point.getZ();
+            if (z != null) {
+                values[(point.getY() - yMin) * width + point.getX() - xMin] = value.applyAsInt(z);
+            }
+        }
+        Coordinate center = grid.getCenter();
+        Coordinate cellSize = grid.getCellSize();
+        return new MarchingSquaresIsolineBuilder(values, width, height, center.x + xMin * cellSize.x,
+                center.y + yMin * cellSize.y, cellSize.x, cellSize.y);
+    }
+
+    /** @return the isolines for each of the given values, computed in parallel. */
+    public List<Geometry> computeIsolines(int[] z0s) {
+        return Arrays.stream(z0s).parallel().mapToObj(this::computeIsoline).collect(Collectors.toList());
+    }
+
+    public Geometry computeIsoline(int z0) {
+        // The grid edges are indexed over the samples plus a border of undefined samples, which closes the isolines
+        // touching the side of the raster. For each edge crossed by the isoline, next is the following crossed edge
+        // when walking along the isoline with the inside on the left.
+        int[] next = new int[2 * (width + 2) * (height + 2)];
+        Arrays.fill(next, -1);
+        int[] crossedEdges = new int[4];
+        boolean[] exits = new boolean[4];
+        int[] cellEdges = new int[4];
+        boolean[] inside = new boolean[4];
+        for (int y = -1; y < height; y++) {
+            for (int x = -1; x < width; x++) {
+                // The corners and edges of the cell in counter-clockwise order, starting from the lower left corner.
+                int v00 = value(x, y), v10 = value(x + 1, y), v11 = value(x + 1, y + 1), v01 = value(x, y + 1);
+                inside[0] = v00 < z0;
+                inside[1] = v10 < z0;
+                inside[2] = v11 < z0;
+                inside[3] = v01 < z0;
+                if (inside[0] == inside[1] && inside[1] == inside[2] && inside[2] == inside[3])
+                    continue;
+                cellEdges[0] = edgeIndex(x, y, true);
+                cellEdges[1] = edgeIndex(x + 1, y, false);
+                cellEdges[2] = edgeIndex(x, y + 1, true);
+                cellEdges[3] = edgeIndex(x, y, false);
+                int n = 0;
+                for (int i = 0; i < 4; i++) {
+                    if (inside[i] != inside[(i + 1) % 4]) {
+                        crossedEdges[n] = cellEdges[i];
+                        exits[n] = inside[i];
+                        n++;
+                    }
+                }
+                // Going around the cell counter-clockwise the crossings alternate between leaving and entering the
+                // inside. The isoline goes from each exit to the following entry, which keeps the inside on its left.
+                // When two opposite corners are inside, the following entry is the right one if the center of the
+                // cell is inside, otherwise it is the previous one.
+                boolean centerInside = n == 4 && isCenterInside(v00, v10, v11, v01, z0);
+                for (int i = 0; i < n; i++) {
+                    if (exits[i]) {
+                        int entry = n == 2 || centerInside ? (i + 1) % n : (i + n - 1) % n;
+                        next[crossedEdges[i]] = crossedEdges[entry];
+                    }
+                }
+            }
+        }
+
+        List<LinearRing> rings = new ArrayList<LinearRing>();
+        for (int start = 0; start < next.length; start++) {
+            if (next[start] < 0)
+                continue;
+            List<Coordinate> ringPoints = new ArrayList<Coordinate>();
+            int edge = start;
+            while (edge >= 0 && next[edge] >= 0) {
+                ringPoints.add(crossing(edge, z0));
+                int following = next[edge];
+                next[edge] = -1;
+                edge = following;
+            }
+            if (edge != start)
+                throw new IllegalStateException("Isoline is not closed");
+            ringPoints.add(new Coordinate(ringPoints.get(0)));
+            // As in DelaunayIsolineBuilder, drop the smallest rings around single samples.
+            if (ringPoints.size() > 5) {
+                rings.add(geometryFactory.createLinearRing(ringPoints.toArray(new Coordinate[ringPoints.size()])));
+            }
+        }
+        List<Polygon> polygons = DelaunayIsolineBuilder.punchHoles(geometryFactory, rings);
+        return geometryFactory.createGeometryCollection(polygons.toArray(new Geometry[polygons.size()]));
+    }
+
+    /**
+     * @return the grid edges crossed by the isoline for z0, as line strings between their samples, and the points
+     *         where the isoline crosses them. This is the same kind of debug geometry as the one reported by
+     *         DelaunayIsolineBuilder, with the grid in place of the triangulation.
+     */
+    public Geometry getDebugGeometry(int z0) {
+        List<Geometry> debugGeom = new ArrayList<Geometry>();
+        for (int y = -1; y <= height; y++) {
+            for (int x = -1; x <= width; x++) {
+                boolean inside = value(x, y) < z0;
+                if (inside != value(x + 1, y) < z0)
+                    addDebugEdge(debugGeom, x, y, true, z0);
+                if (inside != value(x, y + 1) < z0)
+                    addDebugEdge(debugGeom, x, y, false, z0);
+            }
+        }
+        return geometryFactory.createGeometryCollection(debugGeom.toArray(new Geometry[debugGeom.size()]));
+    }
+
+    private void addDebugEdge(List<Geometry> debugGeom, int x, int y, boolean horizontal, int z0) {
+        Coordinate cA = new Coordinate(x0 + x * dX, y0 + y * dY);
+        Coordinate cB = horizontal ? new Coordinate(cA.x + dX, cA.y) : new Coordinate(cA.x, cA.y + dY);
+        debugGeom.add(geometryFactory.createLineString(new Coordinate[] { cA, cB }));
+        debugGeom.add(geometryFactory.createPoint(crossing(edgeIndex(x, y, horizontal), z0)));
+    }
+
+    private int value(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return UNDEFINED;
+        return values[y * width + x];
+    }
+
+    /** The center of a cell is inside if all its corners are defined and their average is inside. */
+    private static boolean isCenterInside(int v00, int v10, int v11, int v01, int z0) {
+        if (v00 == UNDEFINED || v10 == UNDEFINED || v11 == UNDEFINED || v01 == UNDEFINED)
+            return false;
+        return (long) v00 + v10 + v11 + v01 < 4L * z0;
+    }
+
+    /** @return the index of the edge from sample (x, y) to the right if horizontal, or else upwards. */
+    private int edgeIndex(int x, int y, boolean horizontal) {
+        return ((y + 1) * (width + 2) + x + 1) * 2 + (horizontal ? 0 : 1);
+    }
+
+    /** @return the point where the isoline crosses the given edge, interpolated between the values at its ends. */
+    private Coordinate crossing(int edgeIndex, int z0) {
+        boolean horizontal = (edgeIndex & 1) == 0;
+        int sample = edgeIndex >> 1;
+        int x = sample % (width + 2) - 1;
+        int y = sample / (width + 2) - 1;
+        int vA = value(x, y);
+        int vB = horizontal ? value(x + 1, y) : value(x, y + 1);
+        double k = vA < z0 ? interpolate(vA, vB, z0) : 1 - interpolate(vB, vA, z0);
+        return new Coordinate(x0 + (x + (horizontal ? k : 0)) * dX, y0 + (y + (horizontal ? 0 : k)) * dY);
+    }
+
+    /** @return where the value z0 is between the inside value and the outside one, from 0 to 1. */
+    private static double interpolate(int inside, int outside, int z0) {
+        if (outside == UNDEFINED)
+            return 0.5;
+        return (z0 - (double) inside) / ((double) outside - inside);
+    }
+
+}
@@ -0,0 +1,195 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.geometry;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Edge geometries for a whole graph, stored in one contiguous byte buffer. Edges hold an int offset into the buffer
+ * rather than their own arrays or LineStrings, and the LineString is only built when someone asks for it (which is
+ * mostly when producing API output, as geometries are not needed during a search).
+ *
+ * Each geometry is stored as a count followed by fixed-float coordinates delta coded from the previous point, all
+ * packed with {@link DlugoszVarLenIntPacker}. Street edges use {@link CompactLineString} coding, which leaves out the
+ * end points since they are given by the vertices. Identical geometries (such as those of a street and its back edge)
+ * are only stored once.
+ *
+ * Each graph has its own store, so that it is freed along with the graph. Edges get it from their from vertex when
+ * their geometry is set. Temporary edges created during a request should not be added here, as the store only ever
+ * grows.
+ *
+ * Geometries are only ever appended, and size is written after their bytes, so readers do not need to lock: reading
+ * size first makes all the geometries before it visible.
+ */
+public final class PackedGeometryStore implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Offset used for a geometry that is a straight line between the edge's vertices, or no geometry at all. */
+    public static final int STRAIGHT_LINE = -1;
+
+    /** Same precision as CompactLineString, about 0.11 meter at the equator. */
+    private static final double FIXED_FLOAT_MULT = 1.0e6;
+
+    private transient volatile byte[] buffer = new byte[1024];
+
+    private transient volatile int size = 0;
+
+    /**
+     * Offset of the first geometry with a given hash, used to find duplicates. This is only used while adding
+     * geometries, so it is not saved with the graph.
+     */
+    private transient TIntIntMap offsetByHash;
+
+    /**
+     * Add the intermediate points of a street geometry, as produced by {@link CompactLineString#compactLineString}.
+     * @return the offset of the geometry, or STRAIGHT_LINE if there are no intermediate points.
+     */
+    public int addCompactLineString(int[] coords) {
+        if (coords == null || coords.length == 0)
+            return STRAIGHT_LINE;
+        return add(coords);
+    }
+
+    /** Get back the intermediate points of a street geometry added with addCompactLineString. */
+    public int[] getCompactLineString(int offset) {
+        if (offset == STRAIGHT_LINE)
+            return CompactLineString.STRAIGHT_LINE;
+        return get(offset);
+    }
+
+    /**
+     * Add a complete geometry, including its end points.
+     * @return the offset of the geometry, or STRAIGHT_LINE if the geometry is null.
+     */
+    public int addLineString(LineString lineString) {
+        if (lineString == null)
+            return STRAIGHT_LINE;
+        Coordinate[] c = lineString.getCoordinates();
+        int[] coords = new int[c.length * 2];
+        int oix = 0;
+        int oiy = 0;
+        for (int i = 0; i < c.length; i++) {
+            // round before taking the delta so errors do not accumulate along the line
+            int ix = (int) Math.round(c[i].x * FIXED_FLOAT_MULT);
+            int iy = (int) Math.round(c[i].y * FIXED_FLOAT_MULT);
+            coords[i * 2] = ix - oix;
+            coords[i * 2 + 1] = iy - oiy;
+            oix = ix;
+            oiy = iy;
+        }
+        return add(coords);
+    }
+
+    /** @return a geometry added with addLineString, or null if the offset is STRAIGHT_LINE. */
+    public LineString getLineString(int offset) {
+        if (offset == STRAIGHT_LINE)
+            return null;
+        int[] coords = get(offset);
+        Coordinate[] c = new Coordinate[coords.length / 2];
+        int ix = 0;
+        int iy = 0;
+        for (int i = 0; i < c.length; i++) {
+            ix += coords[i * 2];
+            iy += coords[i * 2 + 1];
+            c[i] = new Coordinate(ix / FIXED_FLOAT_MULT, iy / FIXED_FLOAT_MULT);
+        }
+        return GeometryUtils.getGeometryFactory().createLineString(c);
+    }
+
+    private synchronized int add(int[] coords) {
+        byte[] packed = DlugoszVarLenIntPacker.pack(coords);
+        int hash = Arrays.hashCode(packed);
+        if (offsetByHash == null) {
+            offsetByHash = new TIntIntHashMap(1024, 0.5f, 0, -1);
+        }
+        int existing = offsetByHash.get(hash);
+        if (existing != -1 && sameAs(existing, coords.length, packed)) {
+            return existing;
+        }
+        int offset = size;
+        byte[] count = DlugoszVarLenIntPacker.pack(new int[] { coords.length });
+        ensureCapacity(offset + count.length + packed.length);
+        System.arraycopy(count, 0, buffer, offset, count.length);
+        System.arraycopy(packed, 0, buffer, offset + count.length, packed.length);
+        // publish the geometry to readers only once all its bytes are written
+        size = offset + count.length + packed.length;
+        if (existing == -1) {
+            offsetByHash.put(hash, offset);
+        }
+        return offset;
+    }
+
+    private int[] get(int offset) {
+        // read size before the buffer, see the class comment
+        if (offset >= size)
+            throw new IllegalArgumentException("No geometry at offset " + offset);
+        byte[] buf = buffer;
+        int n = DlugoszVarLenIntPacker.unpack(buf, offset, 1)[0];
+        return DlugoszVarLenIntPacker.unpack(buf, offset + DlugoszVarLenIntPacker.packedSize(n), n);
+    }
+
+    /** Check whether the geometry at the given offset has exactly the given packed coordinates. */
+    private boolean sameAs(int offset, int n, byte[] packed) {
+        int storedN = DlugoszVarLenIntPacker.unpack(buffer, offset, 1)[0];
+        if (storedN != n)
+            return false;
+        int start = offset + DlugoszVarLenIntPacker.packedSize(n);
+        if (start + packed.length > size)
+            return false;
+        for (int i = 0; i < packed.length; i++) {
+            if (buffer[start + i] != packed[i])
+                return false;
+        }
+        return true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            // readers may still be using the old buffer, which keeps everything they can have an offset for
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    /** @return the number of bytes used to store all the geometries. */
+    public int getSizeBytes() {
+        return size;
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        // don't save the unused end of the buffer
+        out.writeInt(size);
+        out.write(buffer, 0, size);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int n = in.readInt();
+        byte[] buf = new byte[n];
+        in.readFully(buf);
+        buffer = buf;
+        size = n;
+    }
+
+}
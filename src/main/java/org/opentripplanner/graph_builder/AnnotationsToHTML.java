@@ -72,7 +72,7 @@ public class AnnotationsToHTML implements GraphBuilderModule {
 
 
     @Override
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
 
         if (outPath == null) {
             LOG.error("Saving folder is empty!");
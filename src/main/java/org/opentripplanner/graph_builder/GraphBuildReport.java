@@ -0,0 +1,138 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A machine-readable record of where the time and memory went during a graph build, one entry per module.
+ * It is saved as JSON next to the graph so that builds can be compared over time.
+ *
+ * CPU time and allocated bytes are those of the thread that ran the module, so work the module hands off to other
+ * threads (e.g. parallel streams) is not counted. Peak heap is the peak since the module started, which includes
+ * memory used by any modules running at the same time.
+ */
+public class GraphBuildReport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GraphBuildReport.class);
+
+    public static final String REPORT_FILENAME = "build-report.json";
+
+    /** Whether modules were allowed to run concurrently. */
+    public boolean concurrent;
+
+    /** Wall clock time for the whole build in milliseconds. */
+    public long totalWallTimeMillis;
+
+    public List<ModuleReport> modules = new ArrayList<>();
+
+    public static class ModuleReport {
+        public String module;
+        public List<String> provides;
+        public List<String> prerequisites;
+        /** Names of the modules that had to finish before this one could start. */
+        public List<String> waitedFor = new ArrayList<>();
+        public String thread;
+        /** Milliseconds after the start of the build at which this module started. */
+        public long startMillis;
+        public long wallTimeMillis;
+        /** -1 if the JVM does not support measuring thread CPU time. */
+        public long cpuTimeMillis = -1;
+        /** -1 if the JVM does not support measuring thread allocation. */
+        public long allocatedBytes = -1;
+        public long peakHeapBytes;
+
+        ModuleReport (GraphBuilderModule module) {
+            this.module = module.getClass().getSimpleName();
+            this.provides = module.provides();
+            this.prerequisites = module.getPrerequisites();
+        }
+    }
+
+    /**
+     * Run the given module on the current thread, recording its resource usage.
+     * @param resetPeakHeap whether to reset the heap pools' peak usage first. This should only be done when no other
+     *                      module is running, otherwise it would hide their peaks.
+     */
+    static void measure (ModuleReport report, long buildStartMillis, boolean resetPeakHeap, Runnable module) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean cpuSupported = threads.isCurrentThreadCpuTimeSupported();
+        if (resetPeakHeap) {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+            }
+        }
+        report.thread = Thread.currentThread().getName();
+        long startMillis = System.currentTimeMillis();
+        report.startMillis = startMillis - buildStartMillis;
+        long startCpu = cpuSupported ? threads.getCurrentThreadCpuTime() : 0;
+        long startAllocated = allocatedBytes(threads);
+
+        module.run();
+
+        report.wallTimeMillis = System.currentTimeMillis() - startMillis;
+        if (cpuSupported) {
+            report.cpuTimeMillis = (threads.getCurrentThreadCpuTime() - startCpu) / 1000000;
+        }
+        if (startAllocated >= 0) {
+            report.allocatedBytes = allocatedBytes(threads) - startAllocated;
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) report.peakHeapBytes += pool.getPeakUsage().getUsed();
+        }
+    }
+
+    /** @return the bytes allocated so far by the current thread, or -1 if this JVM can't tell us. */
+    private static long allocatedBytes (ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+                return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    public void log () {
+        LOG.info("Graph build took {} ms of wall clock time{}.", totalWallTimeMillis,
+                concurrent ? ", running independent modules concurrently" : "");
+        for (ModuleReport m : modules) {
+            LOG.info(String.format("%-32s start %8d ms  wall %8d ms  cpu %8d ms  alloc %6d MB  peak heap %6d MB",
+                    m.module, m.startMillis, m.wallTimeMillis, m.cpuTimeMillis,
+                    m.allocatedBytes / 1024 / 1024, m.peakHeapBytes / 1024 / 1024));
+        }
+    }
+
+    public void save (File file) {
+        try {
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, this);
+            LOG.info("Wrote graph build report to {}", file);
+        } catch (IOException e) {
+            LOG.error("Could not write graph build report to {}", file, e);
+        }
+    }
+
+}
@@ -18,6 +18,7 @@ import com.google.common.collect.Lists;
 import org.opentripplanner.graph_builder.model.GtfsBundle;
 import org.opentripplanner.graph_builder.module.DirectTransferGenerator;
 import org.opentripplanner.graph_builder.module.EmbedConfig;
+import org.opentripplanner.graph_builder.module.GeocoderIndexModule;
 import org.opentripplanner.graph_builder.module.GtfsModule;
 import org.opentripplanner.graph_builder.module.PruneFloatingIslands;
 import org.opentripplanner.graph_builder.module.StreetLinkerModule;
@@ -49,14 +50,16 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 /**
  * This makes a Graph out of various inputs like GTFS and OSM.
- * It is modular: GraphBuilderModules are placed in a list and run in sequence.
+ * It is modular: GraphBuilderModules are placed in a list and run in sequence, or concurrently where their declared
+ * prerequisites allow it.
  */
 public class GraphBuilder implements Runnable {
     
@@ -79,6 +82,9 @@ public class GraphBuilder implements Runnable {
     /** Should the graph be serialized to disk after being created or not? */
     public boolean serializeGraph = true;
 
+    /** Should modules that do not depend on each other be run at the same time? See {@link ModuleScheduler}. */
+    public boolean concurrentModules = false;
+
     public void addModule(GraphBuilderModule loader) {
         _graphBuilderModules.add(loader);
     }
@@ -152,9 +158,14 @@ public class GraphBuilder implements Runnable {
             builder.checkInputs();
         }
         
-        HashMap<Class<?>, Object> extra = new HashMap<Class<?>, Object>();
-        for (GraphBuilderModule load : _graphBuilderModules)
-            load.buildGraph(graph, extra);
+        // Modules may run concurrently and share this map.
+        Map<Class<?>, Object> extra = new ConcurrentHashMap<>();
+        GraphBuildReport report = new ModuleScheduler(_graphBuilderModules).run(graph, extra, concurrentModules);
+        report.log();
+        LOG.info("Edge geometries take {} MB.", graph.getGeometryStore().getSizeBytes() / 1024 / 1024);
+        if (graphFile != null) {
+            report.save(new File(graphFile.getParentFile(), GraphBuildReport.REPORT_FILENAME));
+        }
 
         graph.summarizeBuilderAnnotations();
         if (serializeGraph) {
@@ -310,11 +321,15 @@ public class GraphBuilder implements Runnable {
                 graphBuilder.addModule(new DirectTransferGenerator());
             }
         }
+        if (builderParams.geocoderIndex) {
+            graphBuilder.addModule(new GeocoderIndexModule());
+        }
         graphBuilder.addModule(new EmbedConfig(builderConfig, routerConfig));
         if (builderParams.htmlAnnotations) {
             graphBuilder.addModule(new AnnotationsToHTML(params.build, builderParams.maxHtmlAnnotationsPerFile));
         }
         graphBuilder.serializeGraph = ( ! params.inMemory ) || params.preFlight;
+        graphBuilder.concurrentModules = builderParams.concurrentModules;
         return graphBuilder;
     }
 
@@ -0,0 +1,161 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder;
+
+import org.opentripplanner.graph_builder.GraphBuildReport.ModuleReport;
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs graph builder modules, either one after the other in list order or concurrently as a DAG derived from what
+ * each module declares in provides() and getPrerequisites().
+ *
+ * A module depends on an earlier module in the list if the earlier one provides something the later one reads or also
+ * provides, or if the later one provides something the earlier one reads. Modules that declare nothing at all depend
+ * on, and are depended on by, every other module. The list order is therefore always a valid order, and the concurrent
+ * schedule only overlaps modules which declare that they touch different parts of the graph (e.g. loading OSM and
+ * loading GTFS).
+ */
+public class ModuleScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ModuleScheduler.class);
+
+    private final List<GraphBuilderModule> modules;
+
+    /** For each module, the indexes of the earlier modules that must finish before it starts. */
+    private final List<List<Integer>> dependencies = new ArrayList<>();
+
+    public ModuleScheduler (List<GraphBuilderModule> modules) {
+        this.modules = modules;
+        for (int i = 0; i < modules.size(); i++) {
+            List<Integer> deps = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                if (dependsOn(modules.get(i), modules.get(j))) deps.add(j);
+            }
+            dependencies.add(deps);
+        }
+    }
+
+    /** @return true if the later module must not start before the earlier one has finished. */
+    static boolean dependsOn (GraphBuilderModule later, GraphBuilderModule earlier) {
+        List<String> laterProvides = later.provides();
+        List<String> laterReads = later.getPrerequisites();
+        List<String> earlierProvides = earlier.provides();
+        List<String> earlierReads = earlier.getPrerequisites();
+        if ((laterProvides.isEmpty() && laterReads.isEmpty()) || (earlierProvides.isEmpty() && earlierReads.isEmpty())) {
+            return true;
+        }
+        return !Collections.disjoint(earlierProvides, laterReads)
+            || !Collections.disjoint(earlierProvides, laterProvides)
+            || !Collections.disjoint(laterProvides, earlierReads);
+    }
+
+    /**
+     * Run all the modules on the given graph.
+     * @param extra the objects modules pass on to later modules, which must be a concurrent map when running
+     *              modules concurrently.
+     * @param concurrent if true, run modules whose dependencies are satisfied at the same time.
+     * @return a report of the resources used by each module.
+     */
+    public GraphBuildReport run (Graph graph, Map<Class<?>, Object> extra, boolean concurrent) {
+        GraphBuildReport report = new GraphBuildReport();
+        report.concurrent = concurrent;
+        List<ModuleReport> moduleReports = new ArrayList<>();
+        for (int i = 0; i < modules.size(); i++) {
+            ModuleReport moduleReport = new ModuleReport(modules.get(i));
+            for (int dep : dependencies.get(i)) {
+                moduleReport.waitedFor.add(modules.get(dep).getClass().getSimpleName());
+            }
+            moduleReports.add(moduleReport);
+        }
+        long buildStart = System.currentTimeMillis();
+        if (concurrent) {
+            runConcurrently(graph, extra, moduleReports, buildStart);
+        } else {
+            for (int i = 0; i < modules.size(); i++) {
+                GraphBuilderModule module = modules.get(i);
+                GraphBuildReport.measure(moduleReports.get(i), buildStart, true, () -> module.buildGraph(graph, extra));
+            }
+        }
+        report.totalWallTimeMillis = System.currentTimeMillis() - buildStart;
+        report.modules = moduleReports;
+        return report;
+    }
+
+    private void runConcurrently (Graph graph, Map<Class<?>, Object> extra, List<ModuleReport> moduleReports,
+                                  long buildStart) {
+        int n = modules.size();
+        boolean[] started = new boolean[n];
+        boolean[] finished = new boolean[n];
+        int nFinished = 0;
+        int nRunning = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, n));
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+        try {
+            while (nFinished < n) {
+                // Start every module whose dependencies have all finished, in list order.
+                for (int i = 0; i < n; i++) {
+                    if (started[i]) continue;
+                    boolean ready = true;
+                    for (int dep : dependencies.get(i)) {
+                        if (!finished[dep]) {
+                            ready = false;
+                            break;
+                        }
+                    }
+                    if (!ready) continue;
+                    final int index = i;
+                    final boolean resetPeakHeap = nRunning == 0;
+                    LOG.info("Starting graph builder module {}", moduleReports.get(i).module);
+                    completion.submit(() -> {
+                        GraphBuildReport.measure(moduleReports.get(index), buildStart, resetPeakHeap,
+                                () -> modules.get(index).buildGraph(graph, extra));
+                        return index;
+                    });
+                    started[i] = true;
+                    nRunning++;
+                }
+                Future<Integer> done = completion.take();
+                int index = done.get();
+                finished[index] = true;
+                nFinished++;
+                nRunning--;
+                LOG.info("Finished graph builder module {}", moduleReports.get(index).module);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while building graph.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
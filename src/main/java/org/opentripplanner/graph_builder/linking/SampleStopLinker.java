@@ -2,6 +2,7 @@ package org.opentripplanner.graph_builder.linking;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
@@ -18,6 +19,8 @@ import org.opentripplanner.routing.vertextype.OsmVertex;
 import org.opentripplanner.routing.vertextype.TransitStop;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
 
 /**
  * Link transit stops to the street network in a non-destructive manner; i.e. don't
@@ -60,8 +63,17 @@ public class SampleStopLinker {
 
         SampleFactory sf = graph.getSampleFactory();
 
-        for (TransitStop tstop : Iterables.filter(graph.getVertices(), TransitStop.class)) {
-            Sample s = sf.getSample(tstop.getLon(), tstop.getLat());
+        // Sampling does not modify the graph, so find all the samples in parallel and then make the edges serially,
+        // in stop index order so the result is deterministic.
+        List<TransitStop> tstops = Lists.newArrayList(Iterables.filter(graph.getVertices(), TransitStop.class));
+        tstops.sort((s0, s1) -> Integer.compare(s0.getIndex(), s1.getIndex()));
+        Sample[] samples = new Sample[tstops.size()];
+        IntStream.range(0, samples.length).parallel()
+                .forEach(i -> samples[i] = sf.getSample(tstops.get(i).getLon(), tstops.get(i).getLat()));
+
+        for (int i = 0; i < samples.length; i++) {
+            TransitStop tstop = tstops.get(i);
+            Sample s = samples[i];
 
             // TODO: stop unlinked annotation
             if (s == null)
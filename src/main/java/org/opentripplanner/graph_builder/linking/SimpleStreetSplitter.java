@@ -44,7 +44,9 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -123,19 +125,81 @@ public class SimpleStreetSplitter {
         this(graph, null, null, true);
     }
 
-    /** Link all relevant vertices to the street network */
-    public void link () {	
-        for (Vertex v : graph.getVertices()) {
-            if (v instanceof TransitStop || v instanceof BikeRentalStationVertex || v instanceof BikeParkVertex)
-                if (!link(v)) {
-                    if (v instanceof TransitStop)
-                        LOG.warn(graph.addBuilderAnnotation(new StopUnlinked((TransitStop) v)));
-                    else if (v instanceof BikeRentalStationVertex)
-                        LOG.warn(graph.addBuilderAnnotation(new BikeRentalStationUnlinked((BikeRentalStationVertex) v)));
-                    else if (v instanceof BikeParkVertex)
-                        LOG.warn(graph.addBuilderAnnotation(new BikeParkUnlinked((BikeParkVertex) v)));
-                };
+    /**
+     * Link all relevant vertices to the street network.
+     *
+     * This is done in two phases. First the candidate edges for every vertex are found in parallel; this only reads
+     * the graph and the spatial index, so it is safe to do concurrently. Then all the splits are applied serially,
+     * grouped by edge, so that all of the vertices linking to the same edge are applied in a single pass along it.
+     * Vertices are processed in index order and splits along each edge in linear order, so the result does not depend
+     * on the order in which threads finish.
+     *
+     * Unlike linking the vertices one by one, the edges a vertex links to are chosen on the graph as it was before any
+     * of them were split: a vertex never links to a link edge or split vertex made for another vertex, only to the
+     * part of its original street edge that contains its projection. Two vertices projecting onto the same point of an
+     * edge share the split vertex made for the first one.
+     */
+    public void link () {
+        List<Vertex> vertices = graph.getVertices().stream()
+            .filter(v -> v instanceof TransitStop || v instanceof BikeRentalStationVertex || v instanceof BikeParkVertex)
+            .sorted((v1, v2) -> Integer.compare(v1.getIndex(), v2.getIndex()))
+            .collect(Collectors.toList());
+
+        LOG.info("Finding candidate street edges for {} vertices...", vertices.size());
+        final TraverseModeSet walk = new TraverseModeSet(TraverseMode.WALK);
+        List<List<SplitRequest>> requestsByVertex = vertices.parallelStream()
+            .map(v -> findSplitRequests(v, walk))
+            .collect(Collectors.toList());
+
+        // group the splits by edge. LinkedHashMap and the sorted vertex list keep this deterministic.
+        Map<StreetEdge, List<SplitRequest>> requestsByEdge = new LinkedHashMap<>();
+        for (int i = 0; i < vertices.size(); i++) {
+            List<SplitRequest> requests = requestsByVertex.get(i);
+            if (requests.isEmpty()) {
+                Vertex v = vertices.get(i);
+                if (v instanceof TransitStop)
+                    LOG.warn(graph.addBuilderAnnotation(new StopUnlinked((TransitStop) v)));
+                else if (v instanceof BikeRentalStationVertex)
+                    LOG.warn(graph.addBuilderAnnotation(new BikeRentalStationUnlinked((BikeRentalStationVertex) v)));
+                else if (v instanceof BikeParkVertex)
+                    LOG.warn(graph.addBuilderAnnotation(new BikeParkUnlinked((BikeParkVertex) v)));
+                continue;
+            }
+            for (SplitRequest request : requests) {
+                requestsByEdge.computeIfAbsent(request.edge, e -> new ArrayList<>()).add(request);
+            }
+        }
+
+        LOG.info("Splitting {} street edges...", requestsByEdge.size());
+        for (Map.Entry<StreetEdge, List<SplitRequest>> entry : requestsByEdge.entrySet()) {
+            List<SplitRequest> requests = entry.getValue();
+            // walk along the edge from its start, always splitting the part of the edge that remains after the
+            // previous split. The locations on the original edge are only used to order the splits: link() projects
+            // each vertex again onto the remainder, as the segment indices and fractions of the remainder differ.
+            Collections.sort(requests, (r1, r2) -> {
+                int c = r1.location.compareTo(r2.location);
+                return c != 0 ? c : Integer.compare(r1.vertex.getIndex(), r2.vertex.getIndex());
+            });
+            StreetEdge remainder = entry.getKey();
+            for (SplitRequest request : requests) {
+                remainder = link(request.vertex, remainder, request.xscale, null);
+            }
+        }
+    }
+
+    /**
+     * Find the edges a vertex should be linked to, without modifying the graph, so that this can be called from many
+     * threads at once.
+     * @return the edges to link to and where along them to link, or an empty list if there are no edges nearby.
+     */
+    private List<SplitRequest> findSplitRequests (Vertex vertex, TraverseModeSet traverseModeSet) {
+        final double xscale = Math.cos(vertex.getLat() * Math.PI / 180);
+        List<StreetEdge> bestEdges = findBestEdges(vertex, traverseModeSet, xscale);
+        List<SplitRequest> requests = new ArrayList<>(bestEdges.size());
+        for (StreetEdge edge : bestEdges) {
+            requests.add(new SplitRequest(vertex, edge, xscale, project(vertex, edge, xscale)));
         }
+        return requests;
     }
 
     /** Link this vertex into the graph to the closest walkable edge */
@@ -143,12 +207,39 @@ public class SimpleStreetSplitter {
         return link(vertex, TraverseMode.WALK, null);
     }
 
+    /**
+     * Find the walkable street edges a vertex at the given location would be linked to, without modifying the graph.
+     * This allows the search to be done before the vertex is created on the graph writer thread, as long as nothing is
+     * linked with this splitter at the same time.
+     * @return the edges to pass to {@link #link(Vertex, List)}, or an empty list if there are no edges nearby.
+     */
+    public List<StreetEdge> findLinkEdges (Coordinate coordinate) {
+        final double xscale = Math.cos(coordinate.y * Math.PI / 180);
+        return findBestEdges(coordinate, new TraverseModeSet(TraverseMode.WALK), xscale);
+    }
+
+    /**
+     * Link a vertex to the street edges found for its location by {@link #findLinkEdges(Coordinate)}. If any of them
+     * has been split since, the edges are searched for again.
+     */
+    public boolean link (Vertex vertex, List<StreetEdge> edges) {
+        for (StreetEdge edge : edges) {
+            if (!edge.getToVertex().getIncoming().contains(edge)) {
+                return link(vertex);
+            }
+        }
+        if (edges.isEmpty()) {
+            return false;
+        }
+        final double xscale = Math.cos(vertex.getLat() * Math.PI / 180);
+        for (StreetEdge edge : edges) {
+            link(vertex, edge, xscale, null);
+        }
+        return true;
+    }
+
     /** Link this vertex into the graph */
     public boolean link(Vertex vertex, TraverseMode traverseMode, RoutingRequest options) {
-        // find nearby street edges
-        // TODO: we used to use an expanding-envelope search, which is more efficient in
-        // dense areas. but first let's see how inefficient this is. I suspect it's not too
-        // bad and the gains in simplicity are considerable.
         final double radiusDeg = SphericalDistanceLibrary.metersToDegrees(MAX_SEARCH_RADIUS_METERS);
 
         Envelope env = new Envelope(vertex.getCoordinate());
@@ -166,39 +257,10 @@ public class SimpleStreetSplitter {
         } else {
             traverseModeSet = new TraverseModeSet(traverseMode);
         }
-        // We sort the list of candidate edges by distance to the stop
-        // This should remove any issues with things coming out of the spatial index in different orders
-        // Then we link to everything that is within DUPLICATE_WAY_EPSILON_METERS of of the best distance
-        // so that we capture back edges and duplicate ways.
-        List<StreetEdge> candidateEdges = idx.query(env).stream()
-            .filter(streetEdge -> streetEdge instanceof  StreetEdge)
-            .map(edge -> (StreetEdge) edge)
-            // note: not filtering by radius here as distance calculation is expensive
-            // we do that below.
-            .filter(edge -> edge.canTraverse(traverseModeSet) &&
-                // only link to edges still in the graph.
-                edge.getToVertex().getIncoming().contains(edge))
-            .collect(Collectors.toList());
 
-        // make a map of distances
-        final TIntDoubleMap distances = new TIntDoubleHashMap();
-
-        for (StreetEdge e : candidateEdges) {
-            distances.put(e.getId(), distance(vertex, e, xscale));
-        }
-
-        // sort the list
-        Collections.sort(candidateEdges, (o1, o2) -> {
-            double diff = distances.get(o1.getId()) - distances.get(o2.getId());
-            if (diff < 0)
-                return -1;
-            if (diff > 0)
-                return 1;
-            return 0;
-        });
+        List<StreetEdge> bestEdges = findBestEdges(vertex, traverseModeSet, xscale);
 
-        // find the closest candidate edges
-        if (candidateEdges.isEmpty() || distances.get(candidateEdges.get(0).getId()) > radiusDeg) {
+        if (bestEdges.isEmpty()) {
             //We only link to stops if we are searching for origin/destination and for that we need transitStopIndex
             if (destructiveSplitting || transitStopIndex == null) {
                 return false;
@@ -251,21 +313,6 @@ public class SimpleStreetSplitter {
                 return true;
             }
         } else {
-
-            // find the best edges
-            List<StreetEdge> bestEdges = Lists.newArrayList();
-
-            // add edges until there is a break of epsilon meters.
-            // we do this to enforce determinism. if there are a lot of edges that are all extremely close to each other,
-            // we want to be sure that we deterministically link to the same ones every time. Any hard cutoff means things can
-            // fall just inside or beyond the cutoff depending on floating-point operations.
-            int i = 0;
-            do {
-                bestEdges.add(candidateEdges.get(i++));
-            } while (i < candidateEdges.size() &&
-                distances.get(candidateEdges.get(i).getId()) - distances
-                    .get(candidateEdges.get(i - 1).getId()) < duplicateDeg);
-
             for (StreetEdge edge : bestEdges) {
                 link(vertex, edge, xscale, options);
             }
@@ -274,13 +321,87 @@ public class SimpleStreetSplitter {
         }
     }
 
-    /** split the edge and link in the transit stop */
-    private void link(Vertex tstop, StreetEdge edge, double xscale, RoutingRequest options) {
-        // TODO: we've already built this line string, we should save it
+    /**
+     * Find the closest street edges to a vertex which are traversable by the given modes, including all those which are
+     * within DUPLICATE_WAY_EPSILON_METERS of the closest one. This does not modify the graph or the spatial index.
+     * @return the best edges, or an empty list if there is no edge within MAX_SEARCH_RADIUS_METERS.
+     */
+    private List<StreetEdge> findBestEdges (Vertex vertex, TraverseModeSet traverseModeSet, double xscale) {
+        return findBestEdges(vertex.getCoordinate(), traverseModeSet, xscale);
+    }
+
+    private List<StreetEdge> findBestEdges (Coordinate coordinate, TraverseModeSet traverseModeSet, double xscale) {
+        // find nearby street edges
+        // TODO: we used to use an expanding-envelope search, which is more efficient in
+        // dense areas. but first let's see how inefficient this is. I suspect it's not too
+        // bad and the gains in simplicity are considerable.
+        final double radiusDeg = SphericalDistanceLibrary.metersToDegrees(MAX_SEARCH_RADIUS_METERS);
+
+        Envelope env = new Envelope(coordinate);
+        env.expandBy(radiusDeg / xscale, radiusDeg);
+
+        double duplicateDeg = SphericalDistanceLibrary.metersToDegrees(DUPLICATE_WAY_EPSILON_METERS);
+
+        // We sort the list of candidate edges by distance to the stop
+        // This should remove any issues with things coming out of the spatial index in different orders
+        // Then we link to everything that is within DUPLICATE_WAY_EPSILON_METERS of of the best distance
+        // so that we capture back edges and duplicate ways.
+        List<StreetEdge> candidateEdges = idx.query(env).stream()
+            .filter(streetEdge -> streetEdge instanceof  StreetEdge)
+            .map(edge -> (StreetEdge) edge)
+            // note: not filtering by radius here as distance calculation is expensive
+            // we do that below.
+            .filter(edge -> edge.canTraverse(traverseModeSet) &&
+                // only link to edges still in the graph.
+                edge.getToVertex().getIncoming().contains(edge))
+            .collect(Collectors.toList());
+
+        // make a map of distances
+        final TIntDoubleMap distances = new TIntDoubleHashMap();
+
+        for (StreetEdge e : candidateEdges) {
+            distances.put(e.getId(), distance(coordinate, e, xscale));
+        }
+
+        // sort the list
+        Collections.sort(candidateEdges, (o1, o2) -> {
+            double diff = distances.get(o1.getId()) - distances.get(o2.getId());
+            if (diff < 0)
+                return -1;
+            if (diff > 0)
+                return 1;
+            return 0;
+        });
+
+        // find the closest candidate edges
+        if (candidateEdges.isEmpty() || distances.get(candidateEdges.get(0).getId()) > radiusDeg) {
+            return Collections.emptyList();
+        }
+
+        // find the best edges
+        List<StreetEdge> bestEdges = Lists.newArrayList();
+
+        // add edges until there is a break of epsilon meters.
+        // we do this to enforce determinism. if there are a lot of edges that are all extremely close to each other,
+        // we want to be sure that we deterministically link to the same ones every time. Any hard cutoff means things can
+        // fall just inside or beyond the cutoff depending on floating-point operations.
+        int i = 0;
+        do {
+            bestEdges.add(candidateEdges.get(i++));
+        } while (i < candidateEdges.size() &&
+            distances.get(candidateEdges.get(i).getId()) - distances
+                .get(candidateEdges.get(i - 1).getId()) < duplicateDeg);
+
+        return bestEdges;
+    }
+
+    /**
+     * split the edge and link in the transit stop
+     * @return the part of the edge beyond the link point, which is the original edge if it was not split.
+     */
+    private StreetEdge link(Vertex tstop, StreetEdge edge, double xscale, RoutingRequest options) {
         LineString orig = edge.getGeometry();
-        LineString transformed = equirectangularProject(orig, xscale);
-        LocationIndexedLine il = new LocationIndexedLine(transformed);
-        LinearLocation ll = il.project(new Coordinate(tstop.getLon() * xscale, tstop.getLat()));
+        LinearLocation ll = project(tstop, edge, xscale);
 
         // if we're very close to one end of the line or the other, or endwise, don't bother to split,
         // cut to the chase and link directly
@@ -317,7 +438,14 @@ public class SimpleStreetSplitter {
             // split the edge, get the split vertex
             SplitterVertex v0 = split(edge, ll, temporaryVertex != null, endVertex);
             makeLinkEdges(tstop, v0);
+
+            // find the second half of the split edge, so further splits along this edge can be applied to it
+            for (StreetEdge e : Iterables.filter(v0.getOutgoing(), StreetEdge.class)) {
+                if (e.getToVertex() == edge.getToVertex())
+                    return e;
+            }
         }
+        return edge;
     }
 
 
@@ -447,11 +575,18 @@ public class SimpleStreetSplitter {
         new StreetBikeRentalLink(to, from);
     }
 
-    /** projected distance from stop to edge, in latitude degrees */
-    private static double distance (Vertex tstop, StreetEdge edge, double xscale) {
+    /** location of the closest point to a stop along an edge, in the equirectangular projection */
+    private static LinearLocation project (Vertex tstop, StreetEdge edge, double xscale) {
+        LineString transformed = equirectangularProject(edge.getGeometry(), xscale);
+        LocationIndexedLine il = new LocationIndexedLine(transformed);
+        return il.project(new Coordinate(tstop.getLon() * xscale, tstop.getLat()));
+    }
+
+    /** projected distance from a point (longitude, latitude) to edge, in latitude degrees */
+    private static double distance (Coordinate c, StreetEdge edge, double xscale) {
         // use JTS internal tools wherever possible
         LineString transformed = equirectangularProject(edge.getGeometry(), xscale);
-        return transformed.distance(geometryFactory.createPoint(new Coordinate(tstop.getLon() * xscale, tstop.getLat())));
+        return transformed.distance(geometryFactory.createPoint(new Coordinate(c.x * xscale, c.y)));
     }
 
     /** projected distance from stop to edge, in latitude degrees */
@@ -474,6 +609,21 @@ public class SimpleStreetSplitter {
         return geometryFactory.createLineString(coords);
     }
 
+    /** A link from a vertex to a point along a street edge, found during the parallel phase of {@link #link()}. */
+    private static class SplitRequest {
+        final Vertex vertex;
+        final StreetEdge edge;
+        final double xscale;
+        final LinearLocation location;
+
+        SplitRequest(Vertex vertex, StreetEdge edge, double xscale, LinearLocation location) {
+            this.vertex = vertex;
+            this.edge = edge;
+            this.xscale = xscale;
+            this.location = location;
+        }
+    }
+
     /**
      * Used to link origin and destination points to graph non destructively.
      *
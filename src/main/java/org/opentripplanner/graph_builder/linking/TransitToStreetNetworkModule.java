@@ -14,8 +14,8 @@
 package org.opentripplanner.graph_builder.linking;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.opentripplanner.graph_builder.services.GraphBuilderModule;
 import org.opentripplanner.routing.graph.Graph;
@@ -31,15 +31,15 @@ public class TransitToStreetNetworkModule implements GraphBuilderModule {
     private static final Logger LOG = LoggerFactory.getLogger(TransitToStreetNetworkModule.class);
 
     public List<String> provides() {
-        return Arrays.asList("street to transit", "linking");
+        return Arrays.asList("street to transit", "linking", "streets");
     }
 
     public List<String> getPrerequisites() {
-        return Arrays.asList("streets"); // why not "transit" ?
+        return Arrays.asList("streets", "transit");
     }
 
     @Override
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
         LOG.info("Linking transit stops to streets...");
         // split streets
         //NetworkLinker linker = new NetworkLinker(graph, extra);
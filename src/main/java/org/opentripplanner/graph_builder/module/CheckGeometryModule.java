@@ -15,8 +15,8 @@ package org.opentripplanner.graph_builder.module;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.graph_builder.annotation.BogusEdgeGeometry;
@@ -55,7 +55,7 @@ public class CheckGeometryModule implements GraphBuilderModule {
     private static final double MAX_VERTEX_SHAPE_ERROR = 150;
 
     @Override
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
         for (Vertex gv : graph.getVertices()) {
             if (Double.isNaN(gv.getCoordinate().x) || Double.isNaN(gv.getCoordinate().y)) {
                 LOG.warn("Vertex " + gv + " has NaN location; this will cause doom.");
@@ -26,9 +26,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -51,11 +51,11 @@ public class DirectTransferGenerator implements GraphBuilderModule {
     }
 
     public List<String> getPrerequisites() {
-        return Arrays.asList("street to transit");
+        return Arrays.asList("street to transit", "elevation");
     }
 
     @Override
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
         /* Initialize graph index which is needed by the nearby stop finder. */
         if (graph.index == null) {
             graph.index = new GraphIndex(graph);
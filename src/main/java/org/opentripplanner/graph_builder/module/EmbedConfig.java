@@ -7,7 +7,7 @@ import com.fasterxml.jackson.databind.ObjectWriter;
 import org.opentripplanner.graph_builder.services.GraphBuilderModule;
 import org.opentripplanner.routing.graph.Graph;
 
-import java.util.HashMap;
+import java.util.Map;
 
 /**
  * A graph builder that will embed the JSON graph builder and router configuration into the Graph.
@@ -27,7 +27,7 @@ public class EmbedConfig implements GraphBuilderModule {
     }
 
     @Override
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
         try {
             graph.builderConfig = serializedConfiguration(builderConfig);
             graph.routerConfig = serializedConfiguration(routerConfig);
@@ -0,0 +1,43 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module;
+
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.GraphIndex;
+
+import java.util.Map;
+
+/**
+ * A graph builder module that builds the index of place names used by the built-in geocoder, so that it is saved with
+ * the graph instead of being built when a server first receives a geocoding request. It must run after all the
+ * modules adding stops and streets.
+ */
+public class GeocoderIndexModule implements GraphBuilderModule {
+
+    @Override
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
+        if (graph.index == null) {
+            graph.index = new GraphIndex(graph);
+        }
+        graph.geocoderIndex = null;
+        graph.index.getGeocoderIndex();
+    }
+
+    @Override
+    public void checkInputs() {
+
+    }
+
+}
@@ -15,8 +15,8 @@ package org.opentripplanner.graph_builder.module;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.opentripplanner.graph_builder.services.GraphBuilderModule;
 import org.opentripplanner.routing.graph.Edge;
@@ -45,7 +45,7 @@ public class GraphCoherencyCheckerModule implements GraphBuilderModule {
     private static final Logger LOG = LoggerFactory.getLogger(GraphCoherencyCheckerModule.class);
 
     @Override
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
         boolean coherent = true;
         LOG.info("checking graph coherency...");
         for (Vertex v : graph.getVertices()) {
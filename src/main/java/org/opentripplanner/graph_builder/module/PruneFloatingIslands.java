@@ -14,9 +14,8 @@
 package org.opentripplanner.graph_builder.module;
 
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.opentripplanner.common.StreetUtils;
 import org.opentripplanner.graph_builder.linking.TransitToStreetNetworkModule;
@@ -56,7 +55,8 @@ public class PruneFloatingIslands implements GraphBuilderModule {
     private StreetLinkerModule transitToStreetNetwork;
 
     public List<String> provides() {
-        return Collections.emptyList();
+        // removes street vertices and edges
+        return Arrays.asList("streets");
     }
 
     public List<String> getPrerequisites() {
@@ -69,7 +69,7 @@ public class PruneFloatingIslands implements GraphBuilderModule {
     }
 
     @Override
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
         LOG.info("Pruning isolated islands in street network");
         
         StreetUtils.pruneFloatingIslands(graph, pruningThresholdIslandWithoutStops, 
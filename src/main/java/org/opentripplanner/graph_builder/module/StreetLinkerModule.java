@@ -14,8 +14,8 @@
 package org.opentripplanner.graph_builder.module;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.opentripplanner.graph_builder.linking.SimpleStreetSplitter;
 import org.opentripplanner.graph_builder.services.GraphBuilderModule;
@@ -34,17 +34,18 @@ public class StreetLinkerModule implements GraphBuilderModule {
     private static final Logger LOG = LoggerFactory.getLogger(StreetLinkerModule.class);
 
     public List<String> provides() {
-        return Arrays.asList("street to transit", "linking");
+        // splitting changes the streets, so nothing else that reads them should run at the same time
+        return Arrays.asList("street to transit", "linking", "streets");
     }
 
     public List<String> getPrerequisites() {
-        return Arrays.asList("streets"); // don't include transit, because we also link P+Rs and bike rental stations,
-        // which you could have without transit. However, if you have transit, this module should be run after it
-        // is loaded.
+        // We also link P+Rs and bike rental stations, which you could have without transit. That's fine because
+        // prerequisites that no module provides are ignored, but if you have transit this module runs after it.
+        return Arrays.asList("streets", "transit");
     }
 
     @Override
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
         if(graph.hasStreets) {
             LOG.info("Linking transit stops, bike rental stations, bike parking areas, and park-and-rides to graph . . .");
             SimpleStreetSplitter linker = new SimpleStreetSplitter(graph);
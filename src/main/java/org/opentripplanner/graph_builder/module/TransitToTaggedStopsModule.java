@@ -17,8 +17,8 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This module takes advantage of the fact that in some cities, an authoritative linking location for GTFS stops is
@@ -45,11 +45,11 @@ public class TransitToTaggedStopsModule implements GraphBuilderModule {
     }
 
     public List<String> getPrerequisites() {
-        return Arrays.asList("streets"); // why not "transit" ?
+        return Arrays.asList("streets", "transit");
     }
 
     @Override
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
         LOG.info("Linking transit stops to tagged bus stops...");
 
         index = new StreetVertexIndexServiceImpl(graph);
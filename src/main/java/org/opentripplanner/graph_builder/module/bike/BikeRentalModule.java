@@ -14,7 +14,7 @@
 package org.opentripplanner.graph_builder.module.bike;
 
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Map;
 
 import org.opentripplanner.graph_builder.services.GraphBuilderModule;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
@@ -43,7 +43,7 @@ public class BikeRentalModule implements GraphBuilderModule {
     }
 
     @Override
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
 
         LOG.info("Building bike rental stations from static source...");
         BikeRentalStationService service = graph.getService(BikeRentalStationService.class, true);
@@ -28,8 +28,8 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
 
 /**
@@ -57,7 +57,7 @@ public class BusRouteStreetMatcher implements GraphBuilderModule {
        An EdgesForRoute instance is generated by MapBuilder and StreetMatcher, then retrieved later by the
        NetworkLinkerLibrary later (actually in LinkRequests).
      */
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
 
         //Mapbuilder needs transit index
         graph.index(new DefaultStreetVertexIndexFactory());
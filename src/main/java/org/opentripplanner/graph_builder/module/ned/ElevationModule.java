@@ -42,6 +42,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * {@link org.opentripplanner.graph_builder.services.GraphBuilderModule} plugin that applies elevation data to street data that has already
@@ -82,7 +83,8 @@ public class ElevationModule implements GraphBuilderModule {
     }
 
     public List<String> getPrerequisites() {
-        return Arrays.asList("streets");
+        // splitting streets to link stops discards elevation, so apply it after linking
+        return Arrays.asList("streets", "linking");
     }
     
     public void setGridCoverageFactory(ElevationGridCoverageFactory factory) {
@@ -94,7 +96,7 @@ public class ElevationModule implements GraphBuilderModule {
     }
 
     @Override
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
         gridCoverageFactory.setGraph(graph);
         Coverage gridCov = gridCoverageFactory.getGridCoverage();
 
@@ -157,7 +157,7 @@ public class OpenStreetMapModule implements GraphBuilderModule {
     }
 
     @Override
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
         OSMDatabase osmdb = new OSMDatabase();
         Handler handler = new Handler(graph, osmdb);
         for (OpenStreetMapProvider provider : _providers) {
@@ -218,7 +218,7 @@ public class OpenStreetMapModule implements GraphBuilderModule {
             this.osmdb = osmdb;
         }
 
-        public void buildGraph(HashMap<Class<?>, Object> extra) {
+        public void buildGraph(Map<Class<?>, Object> extra) {
 
             if (staticBikeRental) {
                 processBikeRentalNodes();
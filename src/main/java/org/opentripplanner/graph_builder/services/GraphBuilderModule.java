@@ -13,8 +13,9 @@
 
 package org.opentripplanner.graph_builder.services;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.opentripplanner.routing.graph.Graph;
 
@@ -22,9 +23,26 @@ import org.opentripplanner.routing.graph.Graph;
 public interface GraphBuilderModule {
 
     /** Process whatever inputs were supplied to this module and add the resulting elements to the given graph. */
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra);
+    public void buildGraph(Graph graph, Map<Class<?>, Object> extra);
 
     /** Check that all inputs to the graphbuilder are valid; throw an exception if not. */
     public void checkInputs();
 
+    /**
+     * The names of the things this module adds to or changes in the graph (e.g. "streets", "transit"). These are used
+     * by the ModuleScheduler to decide which modules may run concurrently. A module that declares neither provides()
+     * nor getPrerequisites() is never run concurrently with any other module.
+     */
+    public default List<String> provides() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * The names of the things this module reads from the graph. If an earlier module provides one of them, this
+     * module will not be started until that module has finished. Prerequisites that no module provides are ignored.
+     */
+    public default List<String> getPrerequisites() {
+        return Collections.emptyList();
+    }
+
 }
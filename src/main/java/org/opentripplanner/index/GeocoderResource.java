@@ -1,7 +1,6 @@
 package org.opentripplanner.index;
 
-import org.opentripplanner.common.LuceneIndex;
-import org.opentripplanner.routing.graph.GraphIndex;
+import org.opentripplanner.common.GeocoderIndex;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
 
@@ -23,18 +22,12 @@ import javax.ws.rs.core.Response;
 @Produces(MediaType.APPLICATION_JSON)
 public class GeocoderResource {
 
-    private final LuceneIndex index;
+    private final GeocoderIndex index;
 
     public GeocoderResource (@Context OTPServer otpServer, @PathParam("routerId") String routerId) {
         Router router = otpServer.getRouter(routerId);
-        GraphIndex graphIndex = router.graph.index;
-        synchronized (graphIndex) {
-            if (graphIndex.luceneIndex == null) {
-                // Synchronously lazy-initialize the Lucene index
-                graphIndex.luceneIndex = new LuceneIndex(graphIndex, otpServer.basePath, false);
-            }
-            index = graphIndex.luceneIndex;
-        }
+        // Synchronously lazy-initialize the geocoder index if it was not saved with the graph
+        index = router.graph.index.getGeocoderIndex();
     }
 
     /**
@@ -45,6 +38,9 @@ public class GeocoderResource {
      * @param stops Search for stops, either by name or stop code
      * @param clusters Search for clusters by their name
      * @param corners Search for street corners using at least one of the street names
+     * @param lat The latitude of a point near which results should be preferred, e.g. the center of the map
+     * @param lon The longitude of that point
+     * @param maxResults The number of results to return
      * @return list of results in in the format expected by GeocoderBuiltin.js in the OTP Leaflet client
      */
     @GET
@@ -52,9 +48,13 @@ public class GeocoderResource {
                                 @QueryParam("autocomplete") @DefaultValue("false") boolean autocomplete,
                                 @QueryParam("stops") @DefaultValue("true") boolean stops,
                                 @QueryParam("clusters") @DefaultValue("false") boolean clusters,
-                                @QueryParam("corners") @DefaultValue("true") boolean corners
+                                @QueryParam("corners") @DefaultValue("true") boolean corners,
+                                @QueryParam("lat") Double lat,
+                                @QueryParam("lon") Double lon,
+                                @QueryParam("maxResults") @DefaultValue("10") int maxResults
                                 ) {
-        return Response.status(Response.Status.OK).entity(index.query(query, autocomplete, stops, clusters, corners)).build();
+        return Response.status(Response.Status.OK).entity(index.query(query, autocomplete, stops, clusters, corners,
+                lat == null ? Double.NaN : lat, lon == null ? Double.NaN : lon, maxResults)).build();
     }
 
 }
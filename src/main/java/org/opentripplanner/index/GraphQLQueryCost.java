@@ -0,0 +1,150 @@
+package org.opentripplanner.index;
+
+import graphql.language.Argument;
+import graphql.language.ArrayValue;
+import graphql.language.Definition;
+import graphql.language.Document;
+import graphql.language.Field;
+import graphql.language.FragmentDefinition;
+import graphql.language.FragmentSpread;
+import graphql.language.InlineFragment;
+import graphql.language.IntValue;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.language.Value;
+import graphql.language.VariableReference;
+import graphql.parser.Parser;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Estimates the cost of a GraphQL query before it is executed, so that queries which would take far too long can be
+ * refused up front rather than tying up the server.
+ *
+ * The cost is the number of field values the query would resolve: each field counts once for every time its parent
+ * object appears in the results. The number of elements of a list field is taken from the arguments limiting it if
+ * there are any (ids, first, last, numberOfDepartures), from the size of the graph for the lists of all stops,
+ * routes etc. at the top level, and is otherwise assumed to be defaultListSize. This only looks at the syntax of the
+ * query and errs on the side of overestimating.
+ */
+public class GraphQLQueryCost {
+
+    /** Selections nested deeper than this are assumed to come from recursive fragments, which are invalid anyway. */
+    private static final int MAX_DEPTH = 50;
+
+    /** The names of all fields returning lists, whatever their parent type. */
+    private final Set<String> listFields;
+
+    /** The number of elements of the lists returned by fields of the query type. */
+    private final Map<String, Integer> rootListSizes;
+
+    /** The number of elements assumed for other lists. */
+    public int defaultListSize = 10;
+
+    public GraphQLQueryCost(Set<String> listFields, Map<String, Integer> rootListSizes) {
+        this.listFields = listFields;
+        this.rootListSizes = rootListSizes;
+    }
+
+    /**
+     * @return the estimated cost of the query with the given variables, or zero if it cannot be parsed, in which case
+     * executing it will report the error.
+     */
+    public double cost(String query, Map<String, Object> variables) {
+        Document document;
+        try {
+            document = new Parser().parseDocument(query);
+        } catch (RuntimeException e) {
+            return 0;
+        }
+        Map<String, FragmentDefinition> fragments = new HashMap<>();
+        for (Definition definition : document.getDefinitions()) {
+            if (definition instanceof FragmentDefinition) {
+                fragments.put(((FragmentDefinition) definition).getName(), (FragmentDefinition) definition);
+            }
+        }
+        double cost = 0;
+        for (Definition definition : document.getDefinitions()) {
+            if (definition instanceof OperationDefinition) {
+                cost += cost(((OperationDefinition) definition).getSelectionSet(), 1, true, 0, fragments, variables);
+            }
+        }
+        return cost;
+    }
+
+    private double cost(SelectionSet selectionSet, double multiplier, boolean root, int depth,
+            Map<String, FragmentDefinition> fragments, Map<String, Object> variables) {
+        if (selectionSet == null) {
+            return 0;
+        }
+        if (depth > MAX_DEPTH) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double cost = 0;
+        for (Selection selection : selectionSet.getSelections()) {
+            if (selection instanceof Field) {
+                Field field = (Field) selection;
+                cost += multiplier;
+                // The viewer field returns the query type again.
+                boolean viewer = root && field.getName().equals("viewer");
+                cost += cost(field.getSelectionSet(), multiplier * listSize(field, root, variables), viewer,
+                        depth + 1, fragments, variables);
+            } else if (selection instanceof InlineFragment) {
+                cost += cost(((InlineFragment) selection).getSelectionSet(), multiplier, root, depth + 1,
+                        fragments, variables);
+            } else if (selection instanceof FragmentSpread) {
+                FragmentDefinition fragment = fragments.get(((FragmentSpread) selection).getName());
+                if (fragment != null) {
+                    cost += cost(fragment.getSelectionSet(), multiplier, root, depth + 1, fragments, variables);
+                }
+            }
+        }
+        return cost;
+    }
+
+    /** @return the estimated number of values returned by the given field, one unless it returns a list. */
+    private int listSize(Field field, boolean root, Map<String, Object> variables) {
+        for (Argument argument : field.getArguments()) {
+            Object value = value(argument.getValue(), variables);
+            switch (argument.getName()) {
+            case "ids":
+                if (value instanceof List) {
+                    return ((List) value).size();
+                }
+                break;
+            case "first":
+            case "last":
+            case "numberOfDepartures":
+                if (value instanceof Number) {
+                    return Math.max(1, ((Number) value).intValue());
+                }
+                break;
+            }
+        }
+        if (!listFields.contains(field.getName())) {
+            return 1;
+        }
+        if (root && rootListSizes.containsKey(field.getName())) {
+            return Math.max(1, rootListSizes.get(field.getName()));
+        }
+        return defaultListSize;
+    }
+
+    private static Object value(Value value, Map<String, Object> variables) {
+        if (value instanceof VariableReference) {
+            return variables == null ? null : variables.get(((VariableReference) value).getName());
+        }
+        if (value instanceof IntValue) {
+            return Double.valueOf(String.valueOf(((IntValue) value).getValue()));
+        }
+        if (value instanceof ArrayValue) {
+            return ((ArrayValue) value).getValues();
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.opentripplanner.index;
+
+import org.onebusaway.gtfs.model.Stop;
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.opentripplanner.index.model.StopTimesInPattern;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.edgetype.TimetableSnapshot;
+import org.opentripplanner.routing.graph.GraphIndex;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * State shared by all the data fetchers while executing one GraphQL query, passed to them as the query context.
+ *
+ * A departure board query asks for the stop times of many stops, and without this each of them would fetch the
+ * real-time snapshot and look up the services running on each date again, and the stop times of a stop that appears
+ * several times in the results (e.g. as a stop of several routes) would be computed once per appearance. Here the
+ * snapshot is fetched once, so that the whole query also sees consistent real-time data, and the services running
+ * and stop times are memoized for the duration of the query.
+ *
+ * The data fetchers run in parallel on the GraphQL executor threads, so everything here must be thread safe.
+ */
+public class GraphQLRequestContext {
+
+    private final GraphIndex index;
+
+    /** The real-time timetable snapshot for the whole query, or null if there are no real-time updates. */
+    public final TimetableSnapshot snapshot;
+
+    /** The time the query started, used in place of a start time of zero meaning "now". */
+    public final long now;
+
+    private final Map<ServiceDate, BitSet> servicesRunning = new ConcurrentHashMap<>();
+
+    private final Map<List<Object>, List<StopTimesInPattern>> stopTimes = new ConcurrentHashMap<>();
+
+    public GraphQLRequestContext(GraphIndex index) {
+        this.index = index;
+        this.snapshot = index.getTimetableSnapshot();
+        this.now = System.currentTimeMillis() / 1000;
+    }
+
+    /** The services running on the given date, looked up only once per query. */
+    public BitSet servicesRunning(ServiceDate date) {
+        return servicesRunning.computeIfAbsent(date, index::servicesRunning);
+    }
+
+    public ServiceDay serviceDay(ServiceDate date, String agencyId) {
+        return index.serviceDay(date, agencyId, servicesRunning(date));
+    }
+
+    /** See {@link GraphIndex#stopTimesForStop(Stop, long, int, int)}. */
+    public List<StopTimesInPattern> stopTimesForStop(Stop stop, long startTime, int timeRange,
+            int numberOfDepartures) {
+        long time = startTime == 0 ? now : startTime;
+        return stopTimes.computeIfAbsent(Arrays.asList(stop, time, timeRange, numberOfDepartures),
+                key -> index.stopTimesForStop(stop, time, timeRange, numberOfDepartures, snapshot,
+                        this::serviceDay));
+    }
+
+    /** See {@link GraphIndex#getStopTimesForStop(Stop, ServiceDate)}. */
+    public List<StopTimesInPattern> getStopTimesForStop(Stop stop, ServiceDate serviceDate) {
+        return stopTimes.computeIfAbsent(Arrays.asList(stop, serviceDate),
+                key -> index.getStopTimesForStop(stop, serviceDate, snapshot, this::serviceDay));
+    }
+
+}
@@ -45,6 +45,7 @@ import org.opentripplanner.routing.graph.GraphIndex;
 import org.opentripplanner.routing.services.StreetVertexIndexService;
 import org.opentripplanner.routing.vertextype.TransitStop;
 import org.opentripplanner.standalone.OTPServer;
+import org.opentripplanner.standalone.RequestScheduler;
 import org.opentripplanner.standalone.Router;
 import org.opentripplanner.util.PolylineEncoder;
 import org.opentripplanner.util.model.EncodedPolylineBean;
@@ -59,6 +60,8 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -92,11 +95,13 @@ public class IndexAPI {
 
     private final GraphIndex index;
     private final StreetVertexIndexService streetIndex;
+    private final RequestScheduler scheduler;
 
     public IndexAPI (@Context OTPServer otpServer, @PathParam("routerId") String routerId) {
         Router router = otpServer.getRouter(routerId);
         index = router.graph.index;
         streetIndex = router.graph.streetIndex;
+        scheduler = otpServer.requestScheduler;
     }
 
    /* Needed to check whether query parameter map is empty, rather than chaining " && x == null"s */
@@ -582,21 +587,23 @@ public class IndexAPI {
     @POST
     @Path("/graphql")
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response getGraphQL (HashMap<String, Object> query) {
+    public void getGraphQL (HashMap<String, Object> query, @Suspended AsyncResponse asyncResponse) {
         Map<String, Object> variables;
         if (query.get("variables") instanceof Map) {
             variables = (Map) query.get("variables");
         } else {
             variables = new HashMap<>();
         }
-        return index.getGraphQLResponse((String) query.get("query"), variables);
+        /* GraphQL queries can be arbitrarily expensive, run them on a routing thread. */
+        scheduler.submit(scheduler.index, asyncResponse,
+                () -> index.getGraphQLResponse((String) query.get("query"), variables));
     }
 
     @POST
     @Path("/graphql")
     @Consumes("application/graphql")
-    public Response getGraphQL (String query) {
-        return index.getGraphQLResponse(query, new HashMap<>());
+    public void getGraphQL (String query, @Suspended AsyncResponse asyncResponse) {
+        scheduler.submit(scheduler.index, asyncResponse, () -> index.getGraphQLResponse(query, new HashMap<>()));
     }
 
 //    @GET
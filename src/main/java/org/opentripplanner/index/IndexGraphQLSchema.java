@@ -17,6 +17,7 @@ import graphql.schema.GraphQLNonNull;
 import graphql.schema.GraphQLObjectType;
 import graphql.schema.GraphQLOutputType;
 import graphql.schema.GraphQLSchema;
+import graphql.schema.GraphQLType;
 import graphql.schema.GraphQLTypeReference;
 import graphql.schema.TypeResolver;
 import org.onebusaway.gtfs.model.Agency;
@@ -31,6 +32,7 @@ import org.opentripplanner.index.model.StopTimesInPattern;
 import org.opentripplanner.index.model.TripTimeShort;
 import org.opentripplanner.profile.StopCluster;
 import org.opentripplanner.routing.edgetype.SimpleTransfer;
+import org.opentripplanner.routing.edgetype.TimetableSnapshot;
 import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.graph.GraphIndex;
 import org.opentripplanner.routing.trippattern.RealTimeState;
@@ -78,6 +80,8 @@ public class IndexGraphQLSchema {
         .value("MODIFIED", RealTimeState.MODIFIED, "The trip information has been updated and resulted in a different trip pattern compared to the trip pattern of the scheduled trip.")
         .build();
 
+    private final GraphIndex index;
+
     private final GtfsRealtimeFuzzyTripMatcher fuzzyTripMatcher;
 
     public GraphQLOutputType agencyType = new GraphQLTypeReference("Agency");
@@ -104,6 +108,8 @@ public class IndexGraphQLSchema {
 
     public GraphQLSchema indexSchema;
 
+    public GraphQLQueryCost queryCost;
+
     private Relay relay = new Relay();
 
     private GraphQLInterfaceType nodeInterface = relay.nodeInterface(new TypeResolver() {
@@ -132,6 +138,7 @@ public class IndexGraphQLSchema {
 
     public IndexGraphQLSchema(GraphIndex index) {
 
+        this.index = index;
         fuzzyTripMatcher = new GtfsRealtimeFuzzyTripMatcher(index);
         index.clusterStopsAsNeeded();
 
@@ -322,7 +329,7 @@ public class IndexGraphQLSchema {
                     .build())
                 .dataFetcher(environment -> {
                     try {  // TODO: Add our own scalar types for at least serviceDate and AgencyAndId
-                        return index.getStopTimesForStop(
+                        return context(environment).getStopTimesForStop(
                             (Stop) environment.getSource(),
                             ServiceDate.parseString(environment.getArgument("date")));
                     } catch (ParseException e) {
@@ -349,7 +356,7 @@ public class IndexGraphQLSchema {
                     .defaultValue(5)
                     .build())
                 .dataFetcher(environment ->
-                    index.stopTimesForStop((Stop) environment.getSource(),
+                    context(environment).stopTimesForStop((Stop) environment.getSource(),
                         Long.parseLong(environment.getArgument("startTime")),
                         (int) environment.getArgument("timeRange"),
                         (int) environment.getArgument("numberOfDepartures")))
@@ -373,7 +380,7 @@ public class IndexGraphQLSchema {
                     .defaultValue(5)
                     .build())
                 .dataFetcher(environment ->
-                    index.stopTimesForStop(
+                    context(environment).stopTimesForStop(
                         (Stop) environment.getSource(),
                         Long.parseLong(environment.getArgument("startTime")),
                         (int) environment.getArgument("timeRange"),
@@ -558,11 +565,11 @@ public class IndexGraphQLSchema {
                 .dataFetcher(environment -> {
                     try {
                         Trip trip = (Trip) environment.getSource();
-                        return TripTimeShort.fromTripTimes(
-                            index.graph.timetableSnapshotSource.getTimetableSnapshot()
-                                .resolve(index.patternForTrip.get(trip),
-                                    ServiceDate.parseString(environment.getArgument("serviceDay")))
-                                , trip);
+                        TripPattern pattern = index.patternForTrip.get(trip);
+                        TimetableSnapshot snapshot = context(environment).snapshot;
+                        return TripTimeShort.fromTripTimes(snapshot == null ? pattern.scheduledTimetable :
+                            snapshot.resolve(pattern,
+                                ServiceDate.parseString(environment.getArgument("serviceDay"))), trip);
                     } catch (ParseException e) {
                          return null; // Invalid date format
                     }
@@ -1066,5 +1073,40 @@ public class IndexGraphQLSchema {
         indexSchema = GraphQLSchema.newSchema()
             .query(queryType)
             .build();
+
+        Set<String> listFields = new HashSet<>();
+        listFields.add("edges"); // of the Relay connection returned by stopsByRadius
+        for (GraphQLOutputType type : Arrays.asList(queryType, agencyType, clusterType, coordinateType, patternType,
+            routeType, stoptimeType, stopType, tripType, stopAtDistanceType, stoptimesInPatternType)) {
+            if (!(type instanceof GraphQLObjectType)) continue;
+            for (GraphQLFieldDefinition field : ((GraphQLObjectType) type).getFieldDefinitions()) {
+                GraphQLType fieldType = field.getType();
+                if (fieldType instanceof GraphQLNonNull) {
+                    fieldType = ((GraphQLNonNull) fieldType).getWrappedType();
+                }
+                if (fieldType instanceof GraphQLList) {
+                    listFields.add(field.getName());
+                }
+            }
+        }
+        Map<String, Integer> rootListSizes = new HashMap<>();
+        rootListSizes.put("agencies", index.getAllAgencies().size());
+        rootListSizes.put("stops", index.stopForId.size());
+        rootListSizes.put("routes", index.routeForId.size());
+        rootListSizes.put("trips", index.tripForId.size());
+        rootListSizes.put("patterns", index.patternForId.size());
+        rootListSizes.put("clusters", index.stopClusterForId.size());
+        queryCost = new GraphQLQueryCost(listFields, rootListSizes);
+    }
+
+    /**
+     * @return the state shared by the data fetchers of the query being executed, or a new one if the query was
+     * executed without it.
+     */
+    private GraphQLRequestContext context(DataFetchingEnvironment environment) {
+        if (environment.getContext() instanceof GraphQLRequestContext) {
+            return (GraphQLRequestContext) environment.getContext();
+        }
+        return new GraphQLRequestContext(index);
     }
 }
@@ -1,12 +1,15 @@
 package org.opentripplanner.profile;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
 import org.apache.commons.math3.util.FastMath;
 import org.opentripplanner.analyst.PointSet;
 import org.opentripplanner.analyst.core.IsochroneData;
 import org.opentripplanner.analyst.request.SampleGridRenderer;
 import org.opentripplanner.common.geometry.AccumulativeGridSampler;
-import org.opentripplanner.common.geometry.DelaunayIsolineBuilder;
+import org.opentripplanner.common.geometry.MarchingSquaresIsolineBuilder;
 import org.opentripplanner.common.geometry.SparseMatrixZSampleGrid;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.common.geometry.ZSampleGrid;
@@ -75,31 +78,25 @@ public abstract class IsochroneGenerator {
 
 
     /**
-     * Make isochrones from a grid. This more general function should probably be reused by SurfaceResource.
-     * FIXME code duplication: function ripped off from SurfaceResource
+     * Make isochrones from a grid, computing all the cutoffs in parallel out of a single raster of the grid times.
      * @param spacingMinutes the number of minutes between isochrones
      * @return a list of evenly-spaced isochrones
      */
     public static List<IsochroneData> getIsochronesAccumulative(ZSampleGrid<WTWD> grid,
                                                           int spacingMinutes, int cutoffMinutes, int nMax) {
 
-        DelaunayIsolineBuilder<WTWD> isolineBuilder = new DelaunayIsolineBuilder<>(
-                grid.delaunayTriangulate(), new WTWD.IsolineMetric());
-
-        List<IsochroneData> isochrones = new ArrayList<>();
+        TIntList cutoffs = new TIntArrayList();
         for (int minutes = spacingMinutes, n = 0; minutes <= cutoffMinutes && n < nMax; minutes += spacingMinutes, n++) {
-            int seconds = minutes * 60;
-            SampleGridRenderer.WTWD z0 = new SampleGridRenderer.WTWD();
-            z0.w = 1.0;
-            z0.wTime = seconds;
-            z0.d = GRID_SIZE_METERS;
-            IsochroneData isochrone = new IsochroneData(seconds, isolineBuilder.computeIsoline(z0));
-            isochrones.add(isochrone);
-            if (n + 1 >= nMax) {
-                break;
-            }
+            cutoffs.add(minutes * 60);
         }
+        MarchingSquaresIsolineBuilder isolineBuilder =
+                MarchingSquaresIsolineBuilder.fromSampleGrid(grid, WTWD.isolineTime(GRID_SIZE_METERS));
+        List<Geometry> geometries = isolineBuilder.computeIsolines(cutoffs.toArray());
 
+        List<IsochroneData> isochrones = new ArrayList<>();
+        for (int i = 0; i < cutoffs.size(); i++) {
+            isochrones.add(new IsochroneData(cutoffs.get(i), geometries.get(i)));
+        }
         return isochrones;
     }
 
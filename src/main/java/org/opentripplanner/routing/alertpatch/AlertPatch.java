@@ -57,6 +57,11 @@ public class AlertPatch implements Serializable {
 
     private List<TimePeriod> timePeriods = new ArrayList<TimePeriod>();
 
+    /** The start of the earliest and the end of the latest time period, to quickly skip inactive patches. */
+    private long activeStart = Long.MAX_VALUE;
+
+    private long activeEnd = Long.MIN_VALUE;
+
     private String agency;
 
     private AgencyAndId route;
@@ -86,6 +91,9 @@ public class AlertPatch implements Serializable {
     }
 
     public boolean displayDuring(State state) {
+        if (state.getTimeSeconds() < activeStart || state.getStartTimeSeconds() >= activeEnd) {
+            return false;
+        }
         for (TimePeriod timePeriod : timePeriods) {
             if (state.getTimeSeconds() >= timePeriod.startTime) {
                 if (state.getStartTimeSeconds() < timePeriod.endTime) {
@@ -240,6 +248,25 @@ public class AlertPatch implements Serializable {
 
     public void setTimePeriods(List<TimePeriod> periods) {
         timePeriods = periods;
+        activeStart = Long.MAX_VALUE;
+        activeEnd = Long.MIN_VALUE;
+        for (TimePeriod period : periods) {
+            activeStart = Math.min(activeStart, period.startTime);
+            activeEnd = Math.max(activeEnd, period.endTime);
+        }
+    }
+
+    /** @return true if any of the time periods of this patch contains the given time, in seconds since the epoch. */
+    public boolean isActiveAt(long time) {
+        if (time < activeStart || time >= activeEnd) {
+            return false;
+        }
+        for (TimePeriod period : timePeriods) {
+            if (time >= period.startTime && time < period.endTime) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public String getAgency() {
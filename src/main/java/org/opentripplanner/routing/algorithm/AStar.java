@@ -67,6 +67,7 @@ public class AStar {
         RemainingWeightHeuristic heuristic;
         public RoutingContext rctx;
         public int nVisited;
+        int maxQueueSize;
         public List<State> targetAcceptedStates;
         public RunStatus status;
         private RoutingRequest options;
@@ -120,10 +121,16 @@ public class AStar {
         // Since initial states can be multiple, heuristic cannot depend on the initial state.
         // Initializing the bidirectional heuristic is a pretty complicated operation that involves searching through
         // the streets around the origin and destination.
-        runState.heuristic.initialize(runState.options, abortTime);
-        if (abortTime < Long.MAX_VALUE  && System.currentTimeMillis() > abortTime) {
+        long initializationAbortTime = phaseAbortTime(abortTime, options.maxPrecalculationSeconds);
+        runState.heuristic.initialize(runState.options, initializationAbortTime);
+        if (initializationAbortTime < Long.MAX_VALUE  && System.currentTimeMillis() > initializationAbortTime) {
             LOG.warn("Timeout during initialization of goal direction heuristic.");
-            options.rctx.debugOutput.timedOut = true;
+            if (initializationAbortTime < abortTime) {
+                options.rctx.debugOutput.budgetExceeded("maxPrecalculationSeconds");
+            } else {
+                options.rctx.debugOutput.timedOut = true;
+            }
+            options.rctx.aborted = true;
             runState = null; // Search timed out
             return;
         }
@@ -234,19 +241,41 @@ public class AStar {
     }
     
     void runSearch(long abortTime){
+        long searchAbortTime = phaseAbortTime(abortTime, runState.options.maxSearchSeconds);
+        int maxVisitedStates = runState.options.maxVisitedStates;
+        int maxQueueSize = runState.options.maxQueueSize;
         /* the core of the A* algorithm */
         while (!runState.pq.empty()) { // Until the priority queue is empty:
             /*
              * Terminate based on timeout?
              */
-            if (abortTime < Long.MAX_VALUE  && System.currentTimeMillis() > abortTime) {
+            if (searchAbortTime < Long.MAX_VALUE  && System.currentTimeMillis() > searchAbortTime) {
                 LOG.warn("Search timeout. origin={} target={}", runState.rctx.origin, runState.rctx.target);
                 // Rather than returning null to indicate that the search was aborted/timed out,
                 // we instead set a flag in the routing context and return the SPT anyway. This
                 // allows returning a partial list results even when a timeout occurs.
                 runState.options.rctx.aborted = true; // signal search cancellation up to higher stack frames
-                runState.options.rctx.debugOutput.timedOut = true; // signal timeout in debug output object
+                if (searchAbortTime < abortTime) {
+                    runState.options.rctx.debugOutput.budgetExceeded("maxSearchSeconds");
+                } else {
+                    runState.options.rctx.debugOutput.timedOut = true; // signal timeout in debug output object
+                }
+                break;
+            }
 
+            /*
+             * Terminate based on the search budget? These checks are cheap enough to make on every iteration.
+             */
+            int queueSize = runState.pq.size();
+            if (queueSize > runState.maxQueueSize) {
+                runState.maxQueueSize = queueSize;
+            }
+            if (runState.nVisited >= maxVisitedStates || queueSize > maxQueueSize) {
+                LOG.warn("Search budget exceeded after visiting {} states with {} in the queue. origin={} target={}",
+                        runState.nVisited, queueSize, runState.rctx.origin, runState.rctx.target);
+                runState.options.rctx.aborted = true;
+                runState.options.rctx.debugOutput.budgetExceeded(
+                        queueSize > maxQueueSize ? "maxQueueSize" : "maxVisitedStates");
                 break;
             }
             
@@ -296,6 +325,18 @@ public class AStar {
             }
 
         }
+        runState.options.rctx.debugOutput.searchFinished(runState.nVisited, runState.maxQueueSize);
+    }
+
+    /**
+     * @return the earlier of the given absolute abort time and the end of a search phase limited to the given number
+     * of seconds from now, where zero or less means the phase is not limited.
+     */
+    private static long phaseAbortTime(long abortTime, double maxPhaseSeconds) {
+        if (maxPhaseSeconds <= 0) {
+            return abortTime;
+        }
+        return Math.min(abortTime, System.currentTimeMillis() + (long) (maxPhaseSeconds * 1000));
     }
 
     /** @return the shortest path, or null if none is found */
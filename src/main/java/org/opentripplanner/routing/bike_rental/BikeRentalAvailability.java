@@ -0,0 +1,80 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.bike_rental;
+
+import java.util.BitSet;
+
+/**
+ * The number of bikes and spaces available at the stations of a bike rental updater, kept apart from the graph so
+ * that availability changes don't require any change to the station vertices or their edges. Each station has a
+ * fixed slot in the arrays. Every update publishes a new immutable version of the arrays, so a reader always sees
+ * the figures of a single update.
+ */
+public class BikeRentalAvailability {
+
+    /** One version of the availability of all stations. */
+    public static class Version {
+
+        public final long version;
+
+        private final int[] bikesAvailable;
+
+        private final int[] spacesAvailable;
+
+        private final BitSet inService;
+
+        private Version(long version, int[] bikesAvailable, int[] spacesAvailable, BitSet inService) {
+            this.version = version;
+            this.bikesAvailable = bikesAvailable;
+            this.spacesAvailable = spacesAvailable;
+            this.inService = inService;
+        }
+
+        /** @return false if the station was not in the last update, or was added after this version. */
+        public boolean isInService(int slot) {
+            return inService.get(slot);
+        }
+
+        public int getBikesAvailable(int slot) {
+            return slot < bikesAvailable.length ? bikesAvailable[slot] : 0;
+        }
+
+        public int getSpacesAvailable(int slot) {
+            return slot < spacesAvailable.length ? spacesAvailable[slot] : 0;
+        }
+
+        public int size() {
+            return bikesAvailable.length;
+        }
+    }
+
+    private volatile Version current = new Version(0, new int[0], new int[0], new BitSet());
+
+    /** @return the most recently published version. */
+    public Version getCurrent() {
+        return current;
+    }
+
+    /**
+     * Make a new version visible to readers. The arrays must not be modified afterwards.
+     * @param inService the slots of the stations that are part of this update
+     */
+    public synchronized void publish(int[] bikesAvailable, int[] spacesAvailable, BitSet inService) {
+        if (bikesAvailable.length != spacesAvailable.length) {
+            throw new IllegalArgumentException("Bike and space arrays must have the same length.");
+        }
+        current = new Version(current.version + 1, bikesAvailable, spacesAvailable, inService);
+    }
+
+}
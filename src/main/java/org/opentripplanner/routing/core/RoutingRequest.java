@@ -109,6 +109,25 @@ public class RoutingRequest implements Cloneable, Serializable {
     /** The maximum duration of a returned itinerary, in hours. */
     public double maxHours = Double.MAX_VALUE;
 
+    /*
+     * Search budget. These bound the work done by each A* search, whatever the origin and destination, and are meant
+     * to be set by the server in the router config routingDefaults rather than by clients. A search that exceeds its
+     * budget is aborted like one that times out: paths found by earlier searches are still returned, and the debug
+     * output records which limit was reached.
+     */
+
+    /** The maximum number of states visited (taken off the priority queue) in one search. */
+    public int maxVisitedStates = Integer.MAX_VALUE;
+
+    /** The maximum number of states waiting in the priority queue during a search. */
+    public int maxQueueSize = Integer.MAX_VALUE;
+
+    /** The maximum time spent initializing the goal direction heuristic, in seconds. Zero means no limit. */
+    public double maxPrecalculationSeconds = 0;
+
+    /** The maximum time spent in the main loop of one search, in seconds. Zero means no limit. */
+    public double maxSearchSeconds = 0;
+
     /** The set of TraverseModes that a user is willing to use. Defaults to WALK | TRANSIT. */
     public TraverseModeSet modes = new TraverseModeSet("TRANSIT,WALK"); // defaults in constructor overwrite this
 
@@ -136,6 +155,15 @@ public class RoutingRequest implements Cloneable, Serializable {
     /** Whether the planner should return intermediate stops lists for transit legs. */
     public boolean showIntermediateStops = false;
 
+    /** Whether the planner should return walk steps for each leg. */
+    public boolean showWalkSteps = true;
+
+    /** Whether the planner should return the encoded geometry of each leg. */
+    public boolean showLegGeometry = true;
+
+    /** Whether the planner should return elevation profiles in walk steps. */
+    public boolean showElevationProfile = true;
+
     /** max walk/bike speed along streets, in meters per second */
     public double walkSpeed;
 
@@ -877,7 +905,8 @@ public class RoutingRequest implements Cloneable, Serializable {
      * Equality does not mean that the fields of the two RoutingRequests are identical, but that they will produce the same SPT. This is particularly
      * important when the batch field is set to 'true'. Does not consider the RoutingContext, to allow SPT caching. Intermediate places are also not
      * included because the TSP solver will factor a single intermediate places routing request into several routing requests without intermediates
-     * before searching.
+     * before searching. The options that only change how itineraries are output are compared too, so that equal
+     * requests also give the same plan.
      */
     @Override
     public boolean equals(Object o) {
@@ -953,7 +982,15 @@ public class RoutingRequest implements Cloneable, Serializable {
                 && Objects.equal(startingTransitTripId, other.startingTransitTripId)
                 && useTraffic == other.useTraffic
                 && disableAlertFiltering == other.disableAlertFiltering
-                && geoidElevation == other.geoidElevation;
+                && geoidElevation == other.geoidElevation
+                && maxVisitedStates == other.maxVisitedStates
+                && maxQueueSize == other.maxQueueSize
+                && maxPrecalculationSeconds == other.maxPrecalculationSeconds
+                && maxSearchSeconds == other.maxSearchSeconds
+                && showIntermediateStops == other.showIntermediateStops
+                && showWalkSteps == other.showWalkSteps
+                && showLegGeometry == other.showLegGeometry
+                && showElevationProfile == other.showElevationProfile;
     }
 
     /**
@@ -983,7 +1020,12 @@ public class RoutingRequest implements Cloneable, Serializable {
                 + new Boolean(reverseOptimizeOnTheFly).hashCode() * 95112799
                 + new Boolean(ignoreRealtimeUpdates).hashCode() * 154329
                 + new Boolean(disableRemainingWeightHeuristic).hashCode() * 193939
-                + new Boolean(useTraffic).hashCode() * 10169;
+                + new Boolean(useTraffic).hashCode() * 10169
+                + maxVisitedStates * 1046527 + maxQueueSize * 16769023
+                + new Double(maxPrecalculationSeconds).hashCode() * 2017
+                + new Double(maxSearchSeconds).hashCode() * 49999
+                + (showIntermediateStops ? 1 : 0) + (showWalkSteps ? 2 : 0)
+                + (showLegGeometry ? 4 : 0) + (showElevationProfile ? 8 : 0);
         if (batch) {
             hashCode *= -1;
             // batch mode, only one of two endpoints matters
@@ -59,6 +59,16 @@ public class ServiceDay implements Serializable {
         init(graph, cs, timeZone);
     }
 
+    /**
+     * Make a ServiceDay from an already computed set of service codes running on the given date, which is not copied
+     * and must not be modified afterwards.
+     */
+    public ServiceDay(ServiceDate serviceDate, TimeZone timeZone, BitSet serviceIdsRunning) {
+        this.serviceDate = new ServiceDate(serviceDate);
+        this.midnight = serviceDate.getAsDate(timeZone).getTime() / 1000;
+        this.serviceIdsRunning = serviceIdsRunning;
+    }
+
     private void init(Graph graph, CalendarService cs, TimeZone timeZone) {
         Date d = serviceDate.getAsDate(timeZone);
         this.midnight = d.getTime() / 1000;
@@ -0,0 +1,95 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.edgetype;
+
+import org.opentripplanner.routing.trippattern.TripTimes;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The departures of the TripTimes in a Timetable at each stop of its pattern, sorted by departure time, so that the
+ * next departures after a given time can be found with a binary search instead of scanning every trip. TripTimes are
+ * not necessarily sorted at every stop since vehicles can overtake each other, and real-time updates reorder them.
+ *
+ * This is built lazily by {@link Timetable#getDepartureIndex()} for the timetables that are actually queried. Real-time
+ * timetables are indexed separately from the scheduled one, so the index always reflects the timetable snapshot the
+ * departures are read from. Departures from frequency entries are not included.
+ */
+public final class DepartureIndex {
+
+    /** For each stop in the pattern, the departure times of the trips, in increasing order. */
+    private final int[][] departures;
+
+    /** For each stop in the pattern, the index in the timetable of the trip making each departure. */
+    private final int[][] trips;
+
+    DepartureIndex(Timetable timetable) {
+        List<TripTimes> tripTimes = timetable.tripTimes;
+        int nStops = timetable.pattern.stopPattern.size;
+        departures = new int[nStops][];
+        trips = new int[nStops][];
+        long[] packed = new long[tripTimes.size()];
+        for (int s = 0; s < nStops; s++) {
+            int n = 0;
+            for (int t = 0; t < tripTimes.size(); t++) {
+                int departure = tripTimes.get(t).getDepartureTime(s);
+                if (departure == -1) continue;
+                // Sort departure times and trip indexes together: the (signed) time in the high bits, the index below.
+                packed[n++] = ((long) departure << 32) | t;
+            }
+            Arrays.sort(packed, 0, n);
+            int[] stopDepartures = new int[n];
+            int[] stopTrips = new int[n];
+            for (int i = 0; i < n; i++) {
+                stopDepartures[i] = (int) (packed[i] >> 32);
+                stopTrips[i] = (int) packed[i];
+            }
+            departures[s] = stopDepartures;
+            trips[s] = stopTrips;
+        }
+    }
+
+    /** @return the number of departures at the given stop in the pattern. */
+    public int size(int stopIndex) {
+        return departures[stopIndex].length;
+    }
+
+    /** @return the position of the first departure at the given stop at or after the given time. */
+    public int firstDepartureAtOrAfter(int stopIndex, int time) {
+        int[] stopDepartures = departures[stopIndex];
+        int low = 0;
+        int high = stopDepartures.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (stopDepartures[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** @return the departure time at the given position at the given stop. */
+    public int getDepartureTime(int stopIndex, int position) {
+        return departures[stopIndex][position];
+    }
+
+    /** @return the index in the timetable of the trip departing at the given position at the given stop. */
+    public int getTripIndex(int stopIndex, int position) {
+        return trips[stopIndex][position];
+    }
+
+}
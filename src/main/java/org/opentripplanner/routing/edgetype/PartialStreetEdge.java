@@ -39,6 +39,12 @@ public class PartialStreetEdge extends StreetWithElevationEdge {
      */
     private StreetEdge parentEdge;
 
+    /**
+     * Partial edges are created during requests, so they keep their own geometry rather than adding it to the
+     * graph's geometry store. This is set from the superclass constructor, so it must not have an initializer.
+     */
+    private LineString geometry;
+
     public PartialStreetEdge(StreetEdge parentEdge, StreetVertex v1, StreetVertex v2,
                              LineString geometry, I18NString name, double length) {
         super(v1, v2, geometry, name, length, parentEdge.getPermission(), false);
@@ -53,6 +59,19 @@ public class PartialStreetEdge extends StreetWithElevationEdge {
         this(parentEdge, v1, v2, geometry, new NonLocalizedString(name), length);
     }
 
+    @Override
+    protected void setGeometry(LineString geometry) {
+        this.geometry = geometry;
+    }
+
+    @Override
+    public LineString getGeometry() {
+        if (geometry == null) {
+            return super.getGeometry();
+        }
+        return geometry;
+    }
+
     /**
      * Partial edges are always partial.
      */
@@ -16,6 +16,7 @@ package org.opentripplanner.routing.edgetype;
 import java.util.Locale;
 import org.onebusaway.gtfs.model.Stop;
 import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.PackedGeometryStore;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.gtfs.GtfsLibrary;
 import org.opentripplanner.routing.core.RoutingRequest;
@@ -39,7 +40,10 @@ public class PatternHop extends TablePatternEdge implements OnboardEdge, HopEdge
 
     public int stopIndex;
 
-    private LineString geometry = null;
+    /** Offset of the shape of this hop in the geometry store of its graph, or STRAIGHT_LINE if there is no shape. */
+    private PackedGeometryStore geometryStore;
+
+    private int geometryOffset = PackedGeometryStore.STRAIGHT_LINE;
 
     public PatternHop(PatternStopVertex from, PatternStopVertex to, Stop begin, Stop end, int stopIndex) {
         super(from, to);
@@ -122,18 +126,19 @@ public class PatternHop extends TablePatternEdge implements OnboardEdge, HopEdge
     }
 
     public void setGeometry(LineString geometry) {
-        this.geometry = geometry;
+        this.geometryStore = geometryStore();
+        this.geometryOffset = geometryStore.addLineString(geometry);
     }
 
     public LineString getGeometry() {
-        if (geometry == null) {
+        if (geometryOffset == PackedGeometryStore.STRAIGHT_LINE) {
 
             Coordinate c1 = new Coordinate(begin.getLon(), begin.getLat());
             Coordinate c2 = new Coordinate(end.getLon(), end.getLat());
 
-            geometry = GeometryUtils.getGeometryFactory().createLineString(new Coordinate[] { c1, c2 });
+            return GeometryUtils.getGeometryFactory().createLineString(new Coordinate[] { c1, c2 });
         }
-        return geometry;
+        return geometryStore.getLineString(geometryOffset);
     }
 
     @Override
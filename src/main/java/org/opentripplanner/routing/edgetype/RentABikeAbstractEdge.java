@@ -44,6 +44,11 @@ public abstract class RentABikeAbstractEdge extends Edge {
         this.networks = networks;
     }
 
+    /** @return the networks of the station, or null if it accepts bikes of any network. */
+    public Set<String> getNetworks() {
+        return networks;
+    }
+
     protected State traverseRent(State s0) {
         RoutingRequest options = s0.getOptions();
         /*
@@ -58,6 +63,9 @@ public abstract class RentABikeAbstractEdge extends Edge {
             return null;
 
         BikeRentalStationVertex dropoff = (BikeRentalStationVertex) tov;
+        if (!dropoff.isInService()) {
+            return null;
+        }
         if (options.useBikeRentalAvailabilityInformation && dropoff.getBikesAvailable() == 0) {
             return null;
         }
@@ -82,6 +90,9 @@ public abstract class RentABikeAbstractEdge extends Edge {
         if (!s0.isBikeRenting() || !hasCompatibleNetworks(networks, s0.getBikeRentalNetworks()))
             return null;
         BikeRentalStationVertex pickup = (BikeRentalStationVertex) tov;
+        if (!pickup.isInService()) {
+            return null;
+        }
         if (options.useBikeRentalAvailabilityInformation && pickup.getSpacesAvailable() == 0) {
             return null;
         }
@@ -13,6 +13,7 @@
 
 package org.opentripplanner.routing.edgetype;
 
+import org.opentripplanner.common.geometry.PackedGeometryStore;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.StateEditor;
@@ -35,13 +36,16 @@ public class SimpleTransfer extends Edge {
 
     private double distance;
     
-    private LineString geometry;
+    /** Offset of the geometry in the geometry store of the graph, or STRAIGHT_LINE if there is no geometry. */
+    private PackedGeometryStore geometryStore;
+    private int geometryOffset;
     private List<Edge> edges;
 
     public SimpleTransfer(TransitStop from, TransitStop to, double distance, LineString geometry, List<Edge> edges) {
         super(from, to);
         this.distance = distance;
-        this.geometry = geometry;
+        this.geometryStore = geometryStore();
+        this.geometryOffset = geometryStore.addLineString(geometry);
         this.edges = edges;
     }
 
@@ -99,7 +103,10 @@ public class SimpleTransfer extends Edge {
     
     @Override
     public LineString getGeometry(){
-	   return this.geometry;
+	   if (geometryOffset == PackedGeometryStore.STRAIGHT_LINE) {
+	       return null;
+	   }
+	   return geometryStore.getLineString(geometryOffset);
    }
 
     public List<Edge> getEdges() { return this.edges; }
@@ -96,7 +96,10 @@ public class StreetEdge extends Edge implements Cloneable {
      */
     protected float bicycleSafetyFactor;
 
-    private int[] compactGeometry;
+    /** Where this edge's intermediate points are kept in the geometry store of its graph. */
+    private PackedGeometryStore geometryStore;
+
+    private int geometryOffset = PackedGeometryStore.STRAIGHT_LINE;
     
     private I18NString name;
 
@@ -665,21 +668,42 @@ public class StreetEdge extends Edge implements Cloneable {
 	}
 
 	public LineString getGeometry() {
-		return CompactLineString.uncompactLineString(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), compactGeometry, isBack());
+		return CompactLineString.uncompactLineString(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), getCompactGeometry(), isBack());
 	}
 
-	private void setGeometry(LineString geometry) {
-		this.compactGeometry = CompactLineString.compactLineString(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), isBack() ? (LineString)geometry.reverse() : geometry, isBack());
+	/**
+	 * Store the geometry in the geometry store of the graph. This is called from the constructor; subclasses for
+	 * temporary edges override it (and getGeometry) to keep the geometry out of the store.
+	 */
+	protected void setGeometry(LineString geometry) {
+		int[] compactGeometry = CompactLineString.compactLineString(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), isBack() ? (LineString)geometry.reverse() : geometry, isBack());
+		this.geometryStore = geometryStore();
+		this.geometryOffset = geometryStore.addCompactLineString(compactGeometry);
 	}
 
+	/**
+	 * The geometry store already keeps only one copy of identical geometries, so this just checks that this edge and
+	 * its back edge do share their geometry.
+	 */
 	public void shareData(StreetEdge reversedEdge) {
-	    if (Arrays.equals(compactGeometry, reversedEdge.compactGeometry)) {
-	        compactGeometry = reversedEdge.compactGeometry;
+	    boolean sameStore = geometryStore == reversedEdge.geometryStore;
+	    if (sameStore && geometryOffset == reversedEdge.geometryOffset) {
+	        return;
+	    }
+	    if (sameStore && Arrays.equals(getCompactGeometry(), reversedEdge.getCompactGeometry())) {
+	        geometryOffset = reversedEdge.geometryOffset;
 	    } else {
 	        LOG.warn("Can't share geometry between {} and {}", this, reversedEdge);
 	    }
 	}
 
+	private int[] getCompactGeometry() {
+	    if (geometryOffset == PackedGeometryStore.STRAIGHT_LINE) {
+	        return null;
+	    }
+	    return geometryStore.getCompactLineString(geometryOffset);
+	}
+
 	public boolean isWheelchairAccessible() {
 		return BitSetUtils.get(flags, WHEELCHAIR_ACCESSIBLE_FLAG_INDEX);
 	}
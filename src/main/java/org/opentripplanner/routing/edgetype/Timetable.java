@@ -87,6 +87,9 @@ public class Timetable implements Serializable {
      * Helps determine whether a particular pattern is worth searching for departures at a given time. 
      */
     private transient int minTime, maxTime;
+
+    /** The departures at each stop sorted by time, built when first needed. Reset whenever the trips change. */
+    private transient volatile DepartureIndex departureIndex;
     
     /** Construct an empty Timetable. */
     public Timetable(TripPattern pattern) {
@@ -260,6 +263,7 @@ public class Timetable implements Serializable {
      * actions to compact the data structure such as trimming and deduplicating arrays.
      */
     public void finish() {
+        departureIndex = null;
         int nStops = pattern.stopPattern.size;
         int nHops = nStops - 1;
         /* Find lower bounds on dwell and running times at each stop. */
@@ -338,6 +342,7 @@ public class Timetable implements Serializable {
      * @return old trip times of trip
      */
     public TripTimes setTripTimes(int tripIndex, TripTimes tt) {
+        departureIndex = null;
         return tripTimes.set(tripIndex, tt);
     }
 
@@ -385,6 +390,20 @@ public class Timetable implements Serializable {
             LOG.trace("tripId {} found at index {} in timetable.", tripId, tripIndex);
         }
 
+        return createUpdatedTripTimes(tripUpdate, tripIndex, timeZone, updateServiceDate);
+    }
+
+    /**
+     * Apply the TripUpdate to the TripTimes at the given index in this Timetable, which the caller
+     * has already looked up, e.g. from an index of all the trips in the timetable when applying many
+     * updates at once. The TripUpdate must have a TripDescriptor for the trip at that index.
+     *
+     * @see #createUpdatedTripTimes(TripUpdate, TimeZone, ServiceDate)
+     */
+    public TripTimes createUpdatedTripTimes(TripUpdate tripUpdate, int tripIndex, TimeZone timeZone,
+            ServiceDate updateServiceDate) {
+        TripDescriptor tripDescriptor = tripUpdate.getTrip();
+        String tripId = tripDescriptor.getTripId();
         TripTimes newTimes = new TripTimes(getTripTimes(tripIndex));
 
         if (tripDescriptor.hasScheduleRelationship() && tripDescriptor.getScheduleRelationship()
@@ -518,6 +537,7 @@ public class Timetable implements Serializable {
      * Here we don't know if it's a scheduled trip or a realtime-added trip.
      */
     public void addTripTimes(TripTimes tt) {
+        departureIndex = null;
         tripTimes.add(tt);
     }
 
@@ -555,6 +575,20 @@ public class Timetable implements Serializable {
         return minDwellTimes[stopIndex];
     }
 
+    /**
+     * @return the departures of the trips in this timetable at each stop sorted by time. This is built on first use,
+     * so the trips must not be changed while it is being used.
+     */
+    public DepartureIndex getDepartureIndex() {
+        DepartureIndex index = departureIndex;
+        if (index == null) {
+            // Several threads may build the index at once, which is harmless.
+            index = new DepartureIndex(this);
+            departureIndex = index;
+        }
+        return index;
+    }
+
     public boolean isValidFor(ServiceDate serviceDate) {
         return this.serviceDate == null || this.serviceDate.equals(serviceDate);
     }
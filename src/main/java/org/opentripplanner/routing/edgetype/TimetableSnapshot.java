@@ -14,9 +14,9 @@
 package org.opentripplanner.routing.edgetype;
 
 import java.util.*;
-import java.util.Map.Entry;
 
 import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.opentripplanner.common.PersistentHashMap;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,12 +96,10 @@ public class TimetableSnapshot {
 
     private static final Logger LOG = LoggerFactory.getLogger(TimetableSnapshot.class);
     
-    // Use HashMap not Map so we can clone.
-    // if this turns out to be slow/spacious we can use an array with integer pattern indexes
-    // The SortedSet members are copy-on-write
-    // FIXME: this could be made into a flat hashtable with compound keys.
-    private HashMap<TripPattern, SortedSet<Timetable>> timetables =
-            new HashMap<TripPattern, SortedSet<Timetable>>();
+    // These maps are persistent: every change makes a new version sharing most of its structure with
+    // the old one, so a commit only has to hand the current version over to the read-only snapshot.
+    // The SortedSet members are copy-on-write.
+    private PersistentHashMap<TripPattern, SortedSet<Timetable>> timetables = PersistentHashMap.empty();
 
     /**
      * <p>
@@ -109,11 +107,20 @@ public class TimetableSnapshot {
      * service date as a result of a call to {@link #update(String feedId, TripPattern, TripTimes, ServiceDate)}
      * with trip times of a trip that didn't exist yet in the trip pattern.
      * </p>
-     * <p>
-     * This is a HashMap and not a Map so the clone function is available.
-     * </p>
      */
-    private HashMap<TripIdAndServiceDate, TripPattern> lastAddedTripPattern = new HashMap<>();
+    private PersistentHashMap<TripIdAndServiceDate, TripPattern> lastAddedTripPattern = PersistentHashMap.empty();
+
+    /** The timetables as of the last commit, to measure how much memory each new snapshot retains. */
+    private PersistentHashMap<TripPattern, SortedSet<Timetable>> committedTimetables = PersistentHashMap.empty();
+
+    /** Duration of the last commit in nanoseconds. */
+    private long lastCommitNanos = 0;
+
+    /** Number of timetables that were new in the last commit. */
+    private int lastCommitTimetables = 0;
+
+    /** Number of map nodes the last committed snapshot does not share with the one before it. */
+    private int lastCommitRetainedNodes = 0;
     
     /**
      * Boolean value indicating that timetable snapshot is read only if true. Once it is true, it shouldn't
@@ -204,7 +211,7 @@ public class TimetableSnapshot {
             if(old.serviceDate != null)
                 sortedTimetables.remove(old);
             sortedTimetables.add(tt);
-            timetables.put(pattern, sortedTimetables);
+            timetables = timetables.plus(pattern, sortedTimetables);
             dirtyTimetables.add(tt);
             dirty = true;
         }
@@ -218,7 +225,7 @@ public class TimetableSnapshot {
             // Remember this pattern for the added trip id and service date
             String tripId = updatedTripTimes.trip.getId().getId();
             TripIdAndServiceDate tripIdAndServiceDate = new TripIdAndServiceDate(feedId, tripId, serviceDate);
-            lastAddedTripPattern.put(tripIdAndServiceDate, pattern);
+            lastAddedTripPattern = lastAddedTripPattern.plus(tripIdAndServiceDate, pattern);
         } else {
             // Set updated trip times of trip
             tt.setTripTimes(tripIndex, updatedTripTimes);
@@ -230,8 +237,9 @@ public class TimetableSnapshot {
     }
 
     /**
-     * This produces a small delay of typically around 50ms, which is almost entirely due to
-     * the indexing step. Cloning the map is much faster (2ms).
+     * The time taken is almost entirely due to indexing the timetables that changed since the last
+     * commit. The maps are persistent, so the new snapshot simply shares them with this buffer,
+     * and the cost does not depend on how many timetables are held in total.
      * It is perhaps better to index timetables as they are changed to avoid experiencing all
      * this lag at once, but we want to avoid re-indexing when receiving multiple updates for
      * the same timetable in rapid succession. This compromise is expressed by the
@@ -243,27 +251,50 @@ public class TimetableSnapshot {
         return commit(false);
     }
 
-    @SuppressWarnings("unchecked")
     public TimetableSnapshot commit(boolean force) {
         if (readOnly) {
             throw new ConcurrentModificationException("This TimetableSnapshot is read-only.");
         }
         
-        TimetableSnapshot ret = new TimetableSnapshot();
         if (!force && !this.isDirty()) return null;
+        long startTime = System.nanoTime();
+        TimetableSnapshot ret = new TimetableSnapshot();
         for (Timetable tt : dirtyTimetables) {
             tt.finish(); // summarize, index, etc. the new timetables
         }
-        ret.timetables = (HashMap<TripPattern, SortedSet<Timetable>>) this.timetables.clone();
-        ret.lastAddedTripPattern = (HashMap<TripIdAndServiceDate, TripPattern>)
-                this.lastAddedTripPattern.clone();
+        ret.timetables = this.timetables;
+        ret.lastAddedTripPattern = this.lastAddedTripPattern;
+        ret.readOnly = true; // mark the snapshot as henceforth immutable
+
+        lastCommitNanos = System.nanoTime() - startTime;
+        lastCommitTimetables = dirtyTimetables.size();
+        lastCommitRetainedNodes = timetables.countNodesNotSharedWith(committedTimetables);
+        committedTimetables = timetables;
+        LOG.debug("Committed {} new timetables in {} ms, retaining {} new map nodes.", lastCommitTimetables,
+                lastCommitNanos / 1000000.0, lastCommitRetainedNodes);
         this.dirtyTimetables.clear();
         this.dirty = false;
-
-        ret.readOnly = true; // mark the snapshot as henceforth immutable
         return ret;
     }
 
+    /** @return the duration of the last commit of this buffer in nanoseconds. */
+    public long getLastCommitNanos() {
+        return lastCommitNanos;
+    }
+
+    /** @return the number of timetables that were changed or added in the last commit of this buffer. */
+    public int getLastCommitTimetables() {
+        return lastCommitTimetables;
+    }
+
+    /**
+     * @return the number of timetable map nodes held by the last committed snapshot but not by the one before
+     *         it, i.e. the extra memory retained while both are in use.
+     */
+    public int getLastCommitRetainedNodes() {
+        return lastCommitRetainedNodes;
+    }
+
     /**
      * Clear all data of snapshot for the provided feed id
      *
@@ -290,7 +321,9 @@ public class TimetableSnapshot {
      * @return true if the timetable changed as a result of the call
      */
     protected boolean clearTimetable(String feedId) {
-        return timetables.keySet().removeIf(tripPattern -> feedId.equals(tripPattern.getFeedId()));
+        PersistentHashMap<TripPattern, SortedSet<Timetable>> old = timetables;
+        timetables = timetables.minusIf((tripPattern, sortedTimetables) -> feedId.equals(tripPattern.getFeedId()));
+        return timetables != old;
     }
 
     /**
@@ -300,7 +333,10 @@ public class TimetableSnapshot {
      * @return true if the lastAddedTripPattern changed as a result of the call
      */
     protected boolean clearLastAddedTripPattern(String feedId) {
-        return lastAddedTripPattern.keySet().removeIf(lastAddedTripPattern -> feedId.equals(lastAddedTripPattern.getFeedId()));
+        PersistentHashMap<TripIdAndServiceDate, TripPattern> old = lastAddedTripPattern;
+        lastAddedTripPattern = lastAddedTripPattern.minusIf((tripIdAndServiceDate, pattern) ->
+                feedId.equals(tripIdAndServiceDate.getFeedId()));
+        return lastAddedTripPattern != old;
     }
 
     /**
@@ -312,34 +348,35 @@ public class TimetableSnapshot {
         }
 
         boolean modified = false;
-        for (Iterator<TripPattern> it = timetables.keySet().iterator(); it.hasNext();){
-            TripPattern pattern = it.next();
-            SortedSet<Timetable> sortedTimetables = timetables.get(pattern);
+        PersistentHashMap<TripPattern, SortedSet<Timetable>> updatedTimetables = timetables;
+        for (Map.Entry<TripPattern, SortedSet<Timetable>> entry : timetables) {
+            TripPattern pattern = entry.getKey();
+            SortedSet<Timetable> sortedTimetables = entry.getValue();
             SortedSet<Timetable> toKeepTimetables =
                     new TreeSet<Timetable>(new SortedTimetableComparator());
             for(Timetable timetable : sortedTimetables) {
                 if(serviceDate.compareTo(timetable.serviceDate) < 0) {
                     toKeepTimetables.add(timetable);
-                } else {
-                    modified = true;
                 }
             }
 
+            // Only replace the patterns that changed, so the rest stay shared with the last snapshot
             if(toKeepTimetables.isEmpty()) {
-                it.remove();
-            } else {
-                timetables.put(pattern, toKeepTimetables);
+                updatedTimetables = updatedTimetables.minus(pattern);
+                modified = true;
+            } else if (toKeepTimetables.size() < sortedTimetables.size()) {
+                updatedTimetables = updatedTimetables.plus(pattern, toKeepTimetables);
+                modified = true;
             }
         }
+        timetables = updatedTimetables;
         
         // Also remove last added trip pattern for days that are purged
-        for (Iterator<Entry<TripIdAndServiceDate, TripPattern>> iterator = lastAddedTripPattern
-                .entrySet().iterator(); iterator.hasNext();) {
-            TripIdAndServiceDate tripIdAndServiceDate = iterator.next().getKey();
-            if (serviceDate.compareTo(tripIdAndServiceDate.getServiceDate()) >= 0) {
-                iterator.remove();
-                modified = true;
-            }
+        PersistentHashMap<TripIdAndServiceDate, TripPattern> old = lastAddedTripPattern;
+        lastAddedTripPattern = lastAddedTripPattern.minusIf((tripIdAndServiceDate, pattern) ->
+                serviceDate.compareTo(tripIdAndServiceDate.getServiceDate()) >= 0);
+        if (lastAddedTripPattern != old) {
+            modified = true;
         }
 
         return modified;
@@ -13,6 +13,7 @@
 
 package org.opentripplanner.routing.edgetype;
 
+import org.opentripplanner.common.geometry.PackedGeometryStore;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.StateEditor;
 import org.opentripplanner.routing.core.TraverseMode;
@@ -33,7 +34,10 @@ public class TransferEdge extends Edge {
     
     double distance;
 
-    private LineString geometry = null;
+    /** Offset of the geometry in the geometry store of the graph, or STRAIGHT_LINE if there is no geometry. */
+    private PackedGeometryStore geometryStore;
+
+    private int geometryOffset = PackedGeometryStore.STRAIGHT_LINE;
 
     private boolean wheelchairAccessible = true;
 
@@ -66,7 +70,10 @@ public class TransferEdge extends Edge {
     }
 
     public LineString getGeometry() {
-        return geometry;
+        if (geometryOffset == PackedGeometryStore.STRAIGHT_LINE) {
+            return null;
+        }
+        return geometryStore.getLineString(geometryOffset);
     }
 
     public TraverseMode getMode() {
@@ -98,7 +105,8 @@ public class TransferEdge extends Edge {
     }
 
     public void setGeometry(LineString geometry) {
-        this.geometry  = geometry;
+        this.geometryStore = geometryStore();
+        this.geometryOffset = geometryStore.addLineString(geometry);
     }
 
     public void setWheelchairAccessible(boolean wheelchairAccessible) {
@@ -16,6 +16,7 @@ package org.opentripplanner.routing.graph;
 import com.vividsolutions.jts.geom.LineString;
 import org.onebusaway.gtfs.model.Trip;
 import org.opentripplanner.common.MavenVersion;
+import org.opentripplanner.common.geometry.PackedGeometryStore;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.util.IncrementingIdGenerator;
@@ -70,6 +71,16 @@ public abstract class Edge implements Serializable {
         tov.addIncoming(this);
     }
 
+    /**
+     * @return the store for the geometry of this edge: the one of the graph its from vertex was created in, or a new
+     * store of its own if that vertex is in no graph (as in some tests). Edges keep the store they get here along with
+     * their offset into it, so that reading the geometry back does not depend on what happens to the graph's vertices.
+     */
+    protected PackedGeometryStore geometryStore() {
+        PackedGeometryStore store = fromv.getGeometryStore();
+        return store != null ? store : new PackedGeometryStore();
+    }
+
     public Vertex getFromVertex() {
         return fromv;
     }
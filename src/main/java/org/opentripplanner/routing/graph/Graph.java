@@ -31,9 +31,12 @@ import org.onebusaway.gtfs.model.calendar.ServiceDate;
 import org.onebusaway.gtfs.services.calendar.CalendarService;
 import org.opentripplanner.analyst.core.GeometryIndex;
 import org.opentripplanner.analyst.request.SampleFactory;
+import org.opentripplanner.common.GeocoderIndex;
 import org.opentripplanner.common.MavenVersion;
+import org.opentripplanner.common.PersistentHashMap;
 import org.opentripplanner.common.TurnRestriction;
 import org.opentripplanner.common.geometry.GraphUtils;
+import org.opentripplanner.common.geometry.PackedGeometryStore;
 import org.opentripplanner.graph_builder.annotation.GraphBuilderAnnotation;
 import org.opentripplanner.graph_builder.annotation.NoFutureDates;
 import org.opentripplanner.model.GraphBundle;
@@ -77,7 +80,13 @@ public class Graph implements Serializable {
     // TODO Remove this field, use Router.routerId ?
     public String routerId;
 
-    private final Map<Edge, Set<AlertPatch>> alertPatches = new HashMap<Edge, Set<AlertPatch>>(0);
+    /**
+     * The alert patches of each edge. The map and the arrays in it are never modified but replaced, so itineraries can
+     * look up the alerts of their edges without locking.
+     */
+    private transient volatile PersistentHashMap<Edge, AlertPatch[]> alertPatches = PersistentHashMap.empty();
+
+    private static final AlertPatch[] NO_ALERT_PATCHES = new AlertPatch[0];
 
     private final Map<Edge, List<TurnRestriction>> turnRestrictions = Maps.newHashMap();
 
@@ -88,10 +97,14 @@ public class Graph implements Serializable {
 
     private long transitServiceEnds = 0;
 
-    private Map<Class<?>, Object> _services = new HashMap<Class<?>, Object>();
+    /** Concurrent, as graph builder modules running at the same time may add services. */
+    private Map<Class<?>, Object> _services = new ConcurrentHashMap<Class<?>, Object>();
 
     private TransferTable transferTable = new TransferTable();
 
+    /** The geometries of this graph's edges, which only hold offsets into it. */
+    private final PackedGeometryStore geometryStore = new PackedGeometryStore();
+
     private GraphBundle bundle;
 
     /* vertex index by name is reconstructed from edges */
@@ -201,6 +214,9 @@ public class Graph implements Serializable {
     /** How should we cluster stops? */
     public String stopClusterMode = "proximity";
 
+    /** The index of place names for the built-in geocoder, if it was built with the graph. */
+    public GeocoderIndex geocoderIndex;
+
     /** The difference in meters between the WGS84 ellipsoid height and geoid height at the graph's center */
     public Double ellipsoidToGeoidDifference = 0.0;
 
@@ -249,8 +265,8 @@ public class Graph implements Serializable {
      */
     public void removeEdge(Edge e) {
         if (e != null) {
-            synchronized (alertPatches) {   // This synchronization is somewhat silly because this
-                alertPatches.remove(e);     // method isn't thread-safe anyway, but it is consistent
+            synchronized (this) {   // This synchronization is somewhat silly because this
+                alertPatches = alertPatches.minus(e);  // method isn't thread-safe anyway, but it is consistent
             }
 
             turnRestrictions.remove(e);
@@ -339,17 +355,14 @@ public class Graph implements Serializable {
      */
     public void addAlertPatch(Edge edge, AlertPatch alertPatch) {
         if (edge == null || alertPatch == null) return;
-        synchronized (alertPatches) {
-            Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
+        synchronized (this) {
+            AlertPatch[] alertPatches = this.alertPatches.get(edge);
             if (alertPatches == null) {
-                this.alertPatches.put(edge, Collections.singleton(alertPatch));
-            } else if (alertPatches instanceof HashSet) {
-                alertPatches.add(alertPatch);
-            } else {
-                alertPatches = new HashSet<AlertPatch>(alertPatches);
-                if (alertPatches.add(alertPatch)) {
-                    this.alertPatches.put(edge, alertPatches);
-                }
+                this.alertPatches = this.alertPatches.plus(edge, new AlertPatch[] { alertPatch });
+            } else if (!Arrays.asList(alertPatches).contains(alertPatch)) {
+                alertPatches = Arrays.copyOf(alertPatches, alertPatches.length + 1);
+                alertPatches[alertPatches.length - 1] = alertPatch;
+                this.alertPatches = this.alertPatches.plus(edge, alertPatches);
             }
         }
     }
@@ -362,33 +375,47 @@ public class Graph implements Serializable {
      */
     public void removeAlertPatch(Edge edge, AlertPatch alertPatch) {
         if (edge == null || alertPatch == null) return;
-        synchronized (alertPatches) {
-            Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-            if (alertPatches != null && alertPatches.contains(alertPatch)) {
-                if (alertPatches.size() < 2) {
-                    this.alertPatches.remove(edge);
+        synchronized (this) {
+            AlertPatch[] alertPatches = this.alertPatches.get(edge);
+            if (alertPatches != null) {
+                int i = Arrays.asList(alertPatches).indexOf(alertPatch);
+                if (i == -1) {
+                    return;
+                }
+                if (alertPatches.length < 2) {
+                    this.alertPatches = this.alertPatches.minus(edge);
                 } else {
-                    alertPatches.remove(alertPatch);
+                    AlertPatch[] remaining = new AlertPatch[alertPatches.length - 1];
+                    System.arraycopy(alertPatches, 0, remaining, 0, i);
+                    System.arraycopy(alertPatches, i + 1, remaining, i, remaining.length - i);
+                    this.alertPatches = this.alertPatches.plus(edge, remaining);
                 }
             }
         }
     }
 
     /**
-     * Get the {@link AlertPatch} {@link Set} that belongs to an {@link Edge} and build a new array.
+     * Get the {@link AlertPatch}es that belong to an {@link Edge}. This does not lock or allocate anything, so it can
+     * be called for every edge of every itinerary.
      * @param edge
-     * @return The {@link AlertPatch} array that belongs to the {@link Edge}
+     * @return The {@link AlertPatch} array that belongs to the {@link Edge}, which must not be modified
      */
     public AlertPatch[] getAlertPatches(Edge edge) {
         if (edge != null) {
-            synchronized (alertPatches) {
-                Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-                if (alertPatches != null) {
-                    return alertPatches.toArray(new AlertPatch[alertPatches.size()]);
-                }
+            AlertPatch[] alertPatches = this.alertPatches.get(edge);
+            if (alertPatches != null) {
+                return alertPatches;
             }
         }
-        return new AlertPatch[0];
+        return NO_ALERT_PATCHES;
+    }
+
+    /**
+     * @return an object that is replaced by a different one whenever alert patches are added to or removed from edges,
+     *         for use by caches of results that include alerts.
+     */
+    public Object getAlertPatchesVersion() {
+        return alertPatches;
     }
 
     /**
@@ -455,8 +482,13 @@ public class Graph implements Serializable {
         return (v != null) && vertices.get(v.getLabel()) == v;
     }
 
+    public PackedGeometryStore getGeometryStore() {
+        return geometryStore;
+    }
+
     @SuppressWarnings("unchecked")
     public <T> T putService(Class<T> serviceType, T service) {
+        if (service == null) return (T) _services.remove(serviceType);
         return (T) _services.put(serviceType, service);
     }
 
@@ -480,7 +512,9 @@ public class Graph implements Serializable {
             } catch (IllegalAccessException e) {
                 throw new RuntimeException(e);
             }
-            _services.put(serviceType, t);
+            @SuppressWarnings("unchecked")
+            T existing = (T) _services.putIfAbsent(serviceType, t);
+            if (existing != null) t = existing;
         }
         return t;
     }
@@ -623,6 +657,7 @@ public class Graph implements Serializable {
     private void readObject(ObjectInputStream inputStream) throws ClassNotFoundException,
             IOException {
         inputStream.defaultReadObject();
+        alertPatches = PersistentHashMap.empty();
     }
 
     /**
@@ -633,7 +668,7 @@ public class Graph implements Serializable {
      * If the graphBuilderAnnotations field of this graph is null, the annotation is not actually saved, but the message is still returned. This
      * allows annotation registration to be turned off, saving memory and disk space when the user is not interested in annotations.
      */
-    public String addBuilderAnnotation(GraphBuilderAnnotation gba) {
+    public synchronized String addBuilderAnnotation(GraphBuilderAnnotation gba) {
         String ret = gba.getMessage();
         if (this.graphBuilderAnnotations != null)
             this.graphBuilderAnnotations.add(gba);
@@ -648,7 +683,7 @@ public class Graph implements Serializable {
      * Adds mode of transport to transit modes in graph
      * @param mode
      */
-    public void addTransitMode(TraverseMode mode) {
+    public synchronized void addTransitMode(TraverseMode mode) {
         transitModes.add(mode);
     }
 
@@ -741,7 +776,7 @@ public class Graph implements Serializable {
             // vertex list is transient because it can be reconstructed from edges
             LOG.debug("Loading edges...");
             List<Edge> edges = (ArrayList<Edge>) in.readObject();
-            graph.vertices = new HashMap<String, Vertex>();
+            graph.vertices = new ConcurrentHashMap<String, Vertex>();
             
             for (Edge e : edges) {
                 graph.vertices.put(e.getFromVertex().getLabel(), e.getFromVertex());
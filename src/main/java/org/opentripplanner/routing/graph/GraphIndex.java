@@ -3,6 +3,7 @@ package org.opentripplanner.routing.graph;
 import com.google.common.collect.ArrayListMultimap;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -27,11 +28,13 @@ import org.onebusaway.gtfs.model.Stop;
 import org.onebusaway.gtfs.model.Trip;
 import org.onebusaway.gtfs.model.calendar.ServiceDate;
 import org.onebusaway.gtfs.services.calendar.CalendarService;
-import org.opentripplanner.common.LuceneIndex;
+import org.opentripplanner.common.GeocoderIndex;
 import org.opentripplanner.common.geometry.HashGridSpatialIndex;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.common.model.P2;
+import org.opentripplanner.index.GraphQLQueryCost;
+import org.opentripplanner.index.GraphQLRequestContext;
 import org.opentripplanner.index.IndexGraphQLSchema;
 import org.opentripplanner.index.model.StopTimesInPattern;
 import org.opentripplanner.index.model.TripTimeShort;
@@ -45,6 +48,7 @@ import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.ServiceDay;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.DepartureIndex;
 import org.opentripplanner.routing.edgetype.TablePatternEdge;
 import org.opentripplanner.routing.edgetype.Timetable;
 import org.opentripplanner.routing.edgetype.TimetableSnapshot;
@@ -66,6 +70,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
 
 /**
  * This class contains all the transient indexes of graph elements -- those that are not
@@ -102,8 +107,7 @@ public class GraphIndex {
     private final CalendarService calendarService;
     private final Map<AgencyAndId,Integer> serviceCodes;
 
-    /* Full-text search extensions */
-    public LuceneIndex luceneIndex;
+    /* Full-text search extensions, see getGeocoderIndex() */
 
     /* Separate transfers for profile routing */
     public Multimap<StopCluster, ProfileTransfer> transfersFromStopCluster;
@@ -117,6 +121,11 @@ public class GraphIndex {
 
     public GraphQL graphQL;
 
+    /** Estimates the cost of GraphQL queries, which are refused if it is over maxGraphQLQueryCost. */
+    public GraphQLQueryCost graphQLQueryCost;
+
+    public double maxGraphQLQueryCost = Double.POSITIVE_INFINITY;
+
     /** Store distances from each stop to all nearby street intersections. Useful in speeding up analyst requests. */
     private transient StopTreeCache stopTreeCache = null;
 
@@ -178,7 +187,9 @@ public class GraphIndex {
         calendarService = graph.getCalendarService();
         serviceCodes = graph.serviceCodes;
         this.graph = graph;
-        graphQL = new GraphQL(new IndexGraphQLSchema(this).indexSchema, Executors.newCachedThreadPool(
+        IndexGraphQLSchema schema = new IndexGraphQLSchema(this);
+        graphQLQueryCost = schema.queryCost;
+        graphQL = new GraphQL(schema.indexSchema, Executors.newCachedThreadPool(
             new ThreadFactoryBuilder().setNameFormat("GraphQLExecutor-" + graph.routerId + "-%d").build()
         ));
         LOG.info("Done indexing graph.");
@@ -201,6 +212,19 @@ public class GraphIndex {
         }
     }
 
+    /**
+     * @return the geocoder index saved with the graph, or one built now if there is none or its stop clusters were
+     * made with another clustering mode than the one currently configured.
+     */
+    public synchronized GeocoderIndex getGeocoderIndex() {
+        GeocoderIndex geocoderIndex = graph.geocoderIndex;
+        if (geocoderIndex == null || !geocoderIndex.stopClusterMode.equals(graph.stopClusterMode)) {
+            geocoderIndex = GeocoderIndex.build(this);
+            graph.geocoderIndex = geocoderIndex;
+        }
+        return geocoderIndex;
+    }
+
     private void analyzeServices() {
         // This is a mess because CalendarService, CalendarServiceData, etc. are all in OBA.
         // TODO catalog days of the week and exceptions for each service day.
@@ -363,6 +387,29 @@ public class GraphIndex {
         return services;
     }
 
+    /**
+     * Make a ServiceDay for the given agency from the set of services running on its date, as returned by
+     * servicesRunning. This is cheaper than the ServiceDay constructors, which look up the services again every time.
+     */
+    public ServiceDay serviceDay(ServiceDate date, String agencyId, BitSet servicesRunning) {
+        return new ServiceDay(date, calendarService.getTimeZoneForAgencyId(agencyId), servicesRunning);
+    }
+
+    /** @return a function making ServiceDays, which looks up the services running on each date only once. */
+    private BiFunction<ServiceDate, String, ServiceDay> serviceDays() {
+        Map<ServiceDate, BitSet> servicesForDate = new HashMap<>();
+        return (date, agencyId) ->
+                serviceDay(date, agencyId, servicesForDate.computeIfAbsent(date, this::servicesRunning));
+    }
+
+    /** @return the current real-time timetable snapshot, or null if there are no real-time updates. */
+    public TimetableSnapshot getTimetableSnapshot() {
+        if (graph.timetableSnapshotSource == null) {
+            return null;
+        }
+        return graph.timetableSnapshotSource.getTimetableSnapshot();
+    }
+
     /**
      * Wraps the other servicesRunning whose parameter is an OBA ServiceDate.
      * Joda LocalDate is a similar class.
@@ -403,15 +450,21 @@ public class GraphIndex {
      * @return
      */
     public List<StopTimesInPattern> stopTimesForStop(Stop stop, long startTime, int timeRange, int numberOfDepartures) {
+        return stopTimesForStop(stop, startTime, timeRange, numberOfDepartures, getTimetableSnapshot(), serviceDays());
+    }
+
+    /**
+     * Fetch upcoming vehicle departures from a stop as above, using the given real-time snapshot (which may be null)
+     * and making ServiceDays with the given function, so that callers fetching departures for many stops can share
+     * them.
+     */
+    public List<StopTimesInPattern> stopTimesForStop(Stop stop, long startTime, int timeRange, int numberOfDepartures,
+            TimetableSnapshot snapshot, BiFunction<ServiceDate, String, ServiceDay> serviceDays) {
 
         if (startTime == 0) {
             startTime = System.currentTimeMillis() / 1000;
         }
         List<StopTimesInPattern> ret = new ArrayList<>();
-        TimetableSnapshot snapshot = null;
-        if (graph.timetableSnapshotSource != null) {
-            snapshot = graph.timetableSnapshotSource.getTimetableSnapshot();
-        }
         ServiceDate[] serviceDates = {new ServiceDate().previous(), new ServiceDate(), new ServiceDate().next()};
 
         for (TripPattern pattern : patternsForStop.get(stop)) {
@@ -428,7 +481,7 @@ public class GraphIndex {
 
             // Loop through all possible days
             for (ServiceDate serviceDate : serviceDates) {
-                ServiceDay sd = new ServiceDay(graph, serviceDate, calendarService, pattern.route.getAgency().getId());
+                ServiceDay sd = serviceDays.apply(serviceDate, pattern.route.getAgency().getId());
                 Timetable tt;
                 if (snapshot != null){
                     tt = snapshot.resolve(pattern, serviceDate);
@@ -439,15 +492,24 @@ public class GraphIndex {
                 if (!tt.temporallyViable(sd, startTime, timeRange, true)) continue;
 
                 int secondsSinceMidnight = sd.secondsSinceMidnight(startTime);
+                DepartureIndex departures = tt.getDepartureIndex();
                 int sidx = 0;
                 for (Stop currStop : pattern.stopPattern.stops) {
                     if (currStop == stop) {
-                        for (TripTimes t : tt.tripTimes) {
-                            if (!sd.serviceRunning(t.serviceCode)) continue;
-                            if (t.getDepartureTime(sidx) != -1 &&
-                                    t.getDepartureTime(sidx) >= secondsSinceMidnight) {
-                                pq.insertWithOverflow(new TripTimeShort(t, sidx, stop, sd));
+                        // Departures are sorted by time, so scan from the first one after the start time until
+                        // enough trips running on this day have been found, or the departures are later than all
+                        // of those already found.
+                        int found = 0;
+                        for (int d = departures.firstDepartureAtOrAfter(sidx, secondsSinceMidnight);
+                             d < departures.size(sidx) && found < numberOfDepartures; d++) {
+                            if (pq.size() == numberOfDepartures &&
+                                    sd.time(departures.getDepartureTime(sidx, d)) >= departureTime(pq.top())) {
+                                break;
                             }
+                            TripTimes t = tt.getTripTimes(departures.getTripIndex(sidx, d));
+                            if (!sd.serviceRunning(t.serviceCode)) continue;
+                            pq.insertWithOverflow(new TripTimeShort(t, sidx, stop, sd));
+                            found++;
                         }
 
                         // TODO: This needs to be adapted after #1647 is merged
@@ -480,6 +542,11 @@ public class GraphIndex {
         return ret;
     }
 
+    /** @return the departure time of a stop time in seconds since the epoch. */
+    private static long departureTime(TripTimeShort tripTimeShort) {
+        return tripTimeShort.serviceDay + tripTimeShort.realtimeDeparture;
+    }
+
     /**
      * Get a list of all trips that pass through a stop during a single ServiceDate. Useful when creating complete stop
      * timetables for a single day.
@@ -489,11 +556,13 @@ public class GraphIndex {
      * @return
      */
     public List<StopTimesInPattern> getStopTimesForStop(Stop stop, ServiceDate serviceDate) {
+        return getStopTimesForStop(stop, serviceDate, getTimetableSnapshot(), serviceDays());
+    }
+
+    /** The same as above, using the given real-time snapshot (which may be null) and function making ServiceDays. */
+    public List<StopTimesInPattern> getStopTimesForStop(Stop stop, ServiceDate serviceDate,
+            TimetableSnapshot snapshot, BiFunction<ServiceDate, String, ServiceDay> serviceDays) {
         List<StopTimesInPattern> ret = new ArrayList<>();
-        TimetableSnapshot snapshot = null;
-        if (graph.timetableSnapshotSource != null) {
-            snapshot = graph.timetableSnapshotSource.getTimetableSnapshot();
-        }
         Collection<TripPattern> patterns = patternsForStop.get(stop);
         for (TripPattern pattern : patterns) {
             StopTimesInPattern stopTimes = new StopTimesInPattern(pattern);
@@ -503,7 +572,7 @@ public class GraphIndex {
             } else {
                 tt = pattern.scheduledTimetable;
             }
-            ServiceDay sd = new ServiceDay(graph, serviceDate, calendarService, pattern.route.getAgency().getId());
+            ServiceDay sd = serviceDays.apply(serviceDate, pattern.route.getAgency().getId());
             int sidx = 0;
             for (Stop currStop : pattern.stopPattern.stops) {
                 if (currStop == stop) {
@@ -634,7 +703,20 @@ public class GraphIndex {
     }
     
     public Response getGraphQLResponse(String query, Map<String, Object> variables) {
-        ExecutionResult executionResult = graphQL.execute(query, null, null, variables);
+        if (maxGraphQLQueryCost < Double.POSITIVE_INFINITY) {
+            double cost = graphQLQueryCost.cost(query, variables);
+            if (cost > maxGraphQLQueryCost) {
+                LOG.warn("Refusing GraphQL query with estimated cost {}: {}", cost, query);
+                HashMap<String, Object> error = new HashMap<>();
+                error.put("message", String.format("The query is too expensive (estimated cost %.0f, maximum %.0f). " +
+                        "Ask for fewer objects or limit the lists in it.", cost, maxGraphQLQueryCost));
+                HashMap<String, Object> content = new HashMap<>();
+                content.put("errors", Collections.singletonList(error));
+                return Response.status(Response.Status.BAD_REQUEST).entity(content).build();
+            }
+        }
+        // The context is shared by all the data fetchers of this query.
+        ExecutionResult executionResult = graphQL.execute(query, null, new GraphQLRequestContext(this), variables);
         Response.ResponseBuilder res = Response.status(Response.Status.OK);
         HashMap<String, Object> content = new HashMap<>();
         if (!executionResult.getErrors().isEmpty()) {
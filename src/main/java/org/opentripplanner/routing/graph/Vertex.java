@@ -19,11 +19,13 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.bind.annotation.XmlTransient;
 
 import org.opentripplanner.common.MavenVersion;
 import org.opentripplanner.common.geometry.DirectionUtils;
+import org.opentripplanner.common.geometry.PackedGeometryStore;
 import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,7 +44,8 @@ public abstract class Vertex implements Serializable, Cloneable {
 
     private static final Logger LOG = LoggerFactory.getLogger(Vertex.class);
 
-    private static int maxIndex = 0;
+    /** Vertices may be created from several threads at once, e.g. by graph builder modules running concurrently. */
+    private static final AtomicInteger maxIndex = new AtomicInteger();
 
     private int index;
     
@@ -56,6 +59,9 @@ public abstract class Vertex implements Serializable, Cloneable {
 
     private final double y;
     
+    /** The geometry store of the graph this vertex was created in, or null for a temporary vertex. */
+    private PackedGeometryStore geometryStore;
+
     private transient Edge[] incoming = new Edge[0];
 
     private transient Edge[] outgoing = new Edge[0];
@@ -67,10 +73,12 @@ public abstract class Vertex implements Serializable, Cloneable {
         this.label = label;
         this.x = x;
         this.y = y;
-        this.index = maxIndex  ++;
+        this.index = maxIndex.getAndIncrement();
         // null graph means temporary vertex
-        if (g != null)
+        if (g != null) {
+            this.geometryStore = g.getGeometryStore();
             g.addVertex(this);
+        }
         this.name = new NonLocalizedString("(no name provided)");
     }
 
@@ -265,7 +273,13 @@ public abstract class Vertex implements Serializable, Cloneable {
     }
 
     public static int getMaxIndex() {
-        return maxIndex;
+        return maxIndex.get();
+    }
+
+    /** The geometry store of the graph this vertex was created in, or null for a temporary vertex. */
+    @XmlTransient
+    public PackedGeometryStore getGeometryStore() {
+        return geometryStore;
     }
 
 
@@ -280,7 +294,7 @@ public abstract class Vertex implements Serializable, Cloneable {
         in.defaultReadObject();
         this.incoming = new Edge[0];
         this.outgoing = new Edge[0];
-        index = maxIndex++;
+        index = maxIndex.getAndIncrement();
     }
 
     /* UTILITY METHODS FOR SEARCHING, GRAPH BUILDING, AND GENERATING WALKSTEPS */
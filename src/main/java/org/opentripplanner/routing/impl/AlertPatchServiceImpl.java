@@ -14,34 +14,94 @@
 package org.opentripplanner.routing.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
-import javax.ws.rs.core.Context;
-
 import org.onebusaway.gtfs.model.AgencyAndId;
+import org.opentripplanner.common.PersistentHashMap;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.services.AlertPatchService;
-import org.opentripplanner.routing.services.GraphService;
-
-import com.google.common.collect.LinkedListMultimap;
-import com.google.common.collect.ListMultimap;
-import org.opentripplanner.standalone.OTPApplication;
-import org.opentripplanner.standalone.OTPServer;
 
+/**
+ * Keeps the alert patches applied to a graph, indexed by ID, stop, route and trip. The indexes are immutable and
+ * replaced as a whole on each change, so they can be read by any number of API threads without locking while an
+ * updater applies new alerts.
+ */
 public class AlertPatchServiceImpl implements AlertPatchService {
 
     private Graph graph;
 
-    private Map<String, AlertPatch> alertPatches = new HashMap<String, AlertPatch>();
-    private ListMultimap<AgencyAndId, AlertPatch> patchesByRoute = LinkedListMultimap.create();
-    private ListMultimap<AgencyAndId, AlertPatch> patchesByStop = LinkedListMultimap.create();
+    /** One version of all the alert patches and their indexes. */
+    private static class Index {
+
+        static final Index EMPTY = new Index(PersistentHashMap.empty(), PersistentHashMap.empty(),
+                PersistentHashMap.empty(), PersistentHashMap.empty());
+
+        final PersistentHashMap<String, AlertPatch> byId;
+        final PersistentHashMap<AgencyAndId, List<AlertPatch>> byStop;
+        final PersistentHashMap<AgencyAndId, List<AlertPatch>> byRoute;
+        final PersistentHashMap<AgencyAndId, List<AlertPatch>> byTrip;
+
+        Index(PersistentHashMap<String, AlertPatch> byId, PersistentHashMap<AgencyAndId, List<AlertPatch>> byStop,
+                PersistentHashMap<AgencyAndId, List<AlertPatch>> byRoute,
+                PersistentHashMap<AgencyAndId, List<AlertPatch>> byTrip) {
+            this.byId = byId;
+            this.byStop = byStop;
+            this.byRoute = byRoute;
+            this.byTrip = byTrip;
+        }
+
+        Index plus(AlertPatch alertPatch) {
+            return new Index(byId.plus(alertPatch.getId(), alertPatch),
+                    plus(byStop, alertPatch.getStop(), alertPatch),
+                    plus(byRoute, alertPatch.getRoute(), alertPatch),
+                    plus(byTrip, alertPatch.getTrip(), alertPatch));
+        }
+
+        Index minus(AlertPatch alertPatch) {
+            return new Index(byId.minus(alertPatch.getId()),
+                    minus(byStop, alertPatch.getStop(), alertPatch),
+                    minus(byRoute, alertPatch.getRoute(), alertPatch),
+                    minus(byTrip, alertPatch.getTrip(), alertPatch));
+        }
+
+        private static PersistentHashMap<AgencyAndId, List<AlertPatch>> plus(
+                PersistentHashMap<AgencyAndId, List<AlertPatch>> index, AgencyAndId key, AlertPatch alertPatch) {
+            if (key == null) {
+                return index;
+            }
+            List<AlertPatch> patches = index.get(key);
+            List<AlertPatch> updated = new ArrayList<>(patches == null ? 1 : patches.size() + 1);
+            if (patches != null) {
+                updated.addAll(patches);
+            }
+            updated.add(alertPatch);
+            return index.plus(key, Collections.unmodifiableList(updated));
+        }
+
+        private static PersistentHashMap<AgencyAndId, List<AlertPatch>> minus(
+                PersistentHashMap<AgencyAndId, List<AlertPatch>> index, AgencyAndId key, AlertPatch alertPatch) {
+            if (key == null) {
+                return index;
+            }
+            List<AlertPatch> patches = index.get(key);
+            if (patches == null || !patches.contains(alertPatch)) {
+                return index;
+            }
+            if (patches.size() == 1) {
+                return index.minus(key);
+            }
+            List<AlertPatch> updated = new ArrayList<>(patches);
+            updated.remove(alertPatch);
+            return index.plus(key, Collections.unmodifiableList(updated));
+        }
+    }
+
+    private volatile Index index = Index.EMPTY;
 
     public AlertPatchServiceImpl(Graph graph) {
         this.graph = graph;
@@ -49,90 +109,81 @@ public class AlertPatchServiceImpl implements AlertPatchService {
 
     @Override
     public Collection<AlertPatch> getAllAlertPatches() {
-        return alertPatches.values();
+        List<AlertPatch> result = new ArrayList<>(index.byId.size());
+        index.byId.forEach((id, alertPatch) -> result.add(alertPatch));
+        return result;
     }
 
     @Override
     public Collection<AlertPatch> getStopPatches(AgencyAndId stop) {
-        List<AlertPatch> result = patchesByStop.get(stop);
-        if (result == null) {
-            result = Collections.emptyList();
-        }
-        return result;
+        return get(index.byStop, stop);
     }
 
     @Override
     public Collection<AlertPatch> getRoutePatches(AgencyAndId route) {
-        List<AlertPatch> result = patchesByRoute.get(route);
+        return get(index.byRoute, route);
+    }
+
+    @Override
+    public Collection<AlertPatch> getTripPatches(AgencyAndId trip) {
+        return get(index.byTrip, trip);
+    }
+
+    private static Collection<AlertPatch> get(PersistentHashMap<AgencyAndId, List<AlertPatch>> index,
+            AgencyAndId key) {
+        List<AlertPatch> result = index.get(key);
         if (result == null) {
             result = Collections.emptyList();
         }
         return result;
-
     }
 
+    /**
+     * Apply a patch to the graph. A patch that is equal to the one already applied with the same ID is left as it is,
+     * so feeds that repeat the same alerts in every message don't cause any changes to the graph.
+     */
     @Override
     public synchronized void apply(AlertPatch alertPatch) {
-        if (alertPatches.containsKey(alertPatch.getId())) {
-            expire(alertPatches.get(alertPatch.getId()));
+        AlertPatch existing = index.byId.get(alertPatch.getId());
+        if (existing != null) {
+            if (existing.equals(alertPatch)) {
+                return;
+            }
+            expire(existing);
         }
 
         alertPatch.apply(graph);
-        alertPatches.put(alertPatch.getId(), alertPatch);
-
-        AgencyAndId stop = alertPatch.getStop();
-        if (stop != null) {
-            patchesByStop.put(stop, alertPatch);
-        }
-        AgencyAndId route = alertPatch.getRoute();
-        if (route != null) {
-            patchesByRoute.put(route, alertPatch);
-        }
+        index = index.plus(alertPatch);
     }
 
     @Override
-    public void expire(Set<String> purge) {
+    public synchronized void expire(Set<String> purge) {
         for (String patchId : purge) {
-            if (alertPatches.containsKey(patchId)) {
-                expire(alertPatches.get(patchId));
+            AlertPatch alertPatch = index.byId.get(patchId);
+            if (alertPatch != null) {
+                expire(alertPatch);
             }
         }
-
-        alertPatches.keySet().removeAll(purge);
     }
 
     @Override
-    public void expireAll() {
-        for (AlertPatch alertPatch : alertPatches.values()) {
+    public synchronized void expireAll() {
+        for (AlertPatch alertPatch : getAllAlertPatches()) {
             expire(alertPatch);
         }
-        alertPatches.clear();
     }
 
     @Override
-    public void expireAllExcept(Set<String> retain) {
-        ArrayList<String> toRemove = new ArrayList<String>();
-
-        for (Entry<String, AlertPatch> entry : alertPatches.entrySet()) {
-            final String key = entry.getKey();
-            if (!retain.contains(key)) {
-                toRemove.add(key);
-                expire(entry.getValue());
+    public synchronized void expireAllExcept(Set<String> retain) {
+        for (AlertPatch alertPatch : getAllAlertPatches()) {
+            if (!retain.contains(alertPatch.getId())) {
+                expire(alertPatch);
             }
         }
-        alertPatches.keySet().removeAll(toRemove);
     }
 
     private void expire(AlertPatch alertPatch) {
-        AgencyAndId stop = alertPatch.getStop();
-        if (stop != null) {
-            patchesByStop.remove(stop, alertPatch);
-        }
-        AgencyAndId route = alertPatch.getRoute();
-        if (route != null) {
-            patchesByRoute.remove(route, alertPatch);
-        }
-
+        index = index.minus(alertPatch);
         alertPatch.remove(graph);
     }
 }
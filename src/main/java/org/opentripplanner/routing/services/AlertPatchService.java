@@ -26,6 +26,8 @@ public interface AlertPatchService {
 
     Collection<AlertPatch> getRoutePatches(AgencyAndId route);
 
+    Collection<AlertPatch> getTripPatches(AgencyAndId trip);
+
     void apply(AlertPatch alertPatch);
 
     void expire(Set<String> ids);
@@ -13,7 +13,6 @@
 
 package org.opentripplanner.routing.services.notes;
 
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.SetMultimap;
 import org.opentripplanner.routing.edgetype.PartialStreetEdge;
 import org.opentripplanner.routing.graph.Edge;
@@ -30,9 +29,10 @@ public class DynamicStreetNotesSource implements StreetNotesSource {
     private static final long serialVersionUID = 1L;
 
     /**
-     * Notes for street edges. Volatile in order to guarantee that the access to notesForEdge is safe.
+     * Notes for street edges. The index is immutable and replaced as a whole, volatile in order to
+     * guarantee that the access to notesForEdge is safe.
      */
-    private volatile SetMultimap<Edge, MatcherAndAlert> notesForEdge = HashMultimap.create();
+    private volatile StreetNotesIndex notesForEdge = StreetNotesIndex.EMPTY;
 
     public DynamicStreetNotesSource() {
     }
@@ -49,17 +49,24 @@ public class DynamicStreetNotesSource implements StreetNotesSource {
         if (edge instanceof PartialStreetEdge) {
             edge = ((PartialStreetEdge) edge).getParentEdge();
         }
-        Set<MatcherAndAlert> maas = notesForEdge.get(edge);
-        if (maas == null || maas.isEmpty()) {
-            return null;
-        }
-        return maas;
+        return notesForEdge.getNotes(edge);
     }
 
     /*
      * Update the NotesSource with a new set of notes.
      */
-    public void setNotes(SetMultimap<Edge, MatcherAndAlert> notes){
+    public void setNotes(StreetNotesIndex notes){
         this.notesForEdge = notes;
     }
+
+    /*
+     * Update the NotesSource with a new set of notes, given as a multimap.
+     */
+    public void setNotes(SetMultimap<Edge, MatcherAndAlert> notes){
+        StreetNotesIndex.Builder builder = new StreetNotesIndex.Builder();
+        for (Edge edge : notes.keySet()) {
+            builder.addNotes(edge, notes.get(edge));
+        }
+        this.notesForEdge = builder.build();
+    }
 }
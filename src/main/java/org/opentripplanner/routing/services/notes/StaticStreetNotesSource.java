@@ -14,6 +14,7 @@
 package org.opentripplanner.routing.services.notes;
 
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -49,6 +50,14 @@ public class StaticStreetNotesSource implements StreetNotesSource, Serializable
     private final SetMultimap<Edge, MatcherAndAlert> notesForEdge = HashMultimap
             .<Edge, MatcherAndAlert> create();
 
+    /**
+     * Edge IDs that may have notes, a superset of the keys of notesForEdge. Looking up an edge
+     * without notes in the multimap allocates an empty view collection, and nearly all edges have
+     * no notes, so this is checked first. Rebuilt lazily after deserialization, once the edges are
+     * complete.
+     */
+    private transient volatile BitSet edgesWithNotes = new BitSet();
+
     /**
      * Set of unique matchers, kept during building phase, used for interning (lots of note/matchers
      * are identical).
@@ -62,6 +71,9 @@ public class StaticStreetNotesSource implements StreetNotesSource, Serializable
         if (LOG.isDebugEnabled())
             LOG.debug("Adding note {} to {} with matcher {}", note, edge, matcher);
         notesForEdge.put(edge, buildMatcherAndAlert(matcher, note));
+        if (edge.getId() >= 0) {
+            getEdgesWithNotes().set(edge.getId());
+        }
     }
 
     /**
@@ -74,6 +86,10 @@ public class StaticStreetNotesSource implements StreetNotesSource, Serializable
         if (edge instanceof PartialStreetEdge) {
             edge = ((PartialStreetEdge) edge).getParentEdge();
         }
+        int id = edge.getId();
+        if (id >= 0 && !getEdgesWithNotes().get(id)) {
+            return null;
+        }
         Set<MatcherAndAlert> maas = notesForEdge.get(edge);
         if (maas == null || maas.isEmpty()) {
             return null;
@@ -91,6 +107,21 @@ public class StaticStreetNotesSource implements StreetNotesSource, Serializable
         if (LOG.isDebugEnabled())
             LOG.debug("Removing notes for edge: {}", edge);
         notesForEdge.removeAll(edge);
+        // The bit is left set, as another edge may share this ID; the bitset is only a filter.
+    }
+
+    private BitSet getEdgesWithNotes() {
+        BitSet bits = edgesWithNotes;
+        if (bits == null) {
+            bits = new BitSet();
+            for (Edge edge : notesForEdge.keySet()) {
+                if (edge.getId() >= 0) {
+                    bits.set(edge.getId());
+                }
+            }
+            edgesWithNotes = bits;
+        }
+        return bits;
     }
 
     /**
@@ -0,0 +1,132 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.services.notes;
+
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import org.opentripplanner.routing.graph.Edge;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable table of notes keyed on edge ID, with a bitset telling which edge IDs have notes at
+ * all. Only a small fraction of edges have notes, so most lookups are answered by a single bit test
+ * without hashing the edge or allocating anything.
+ *
+ * Edge IDs are not guaranteed to be unique once a graph has been reloaded (edges created after
+ * loading start counting from zero again), so the bitset is only used as a filter and the edge
+ * itself is compared before returning its notes.
+ *
+ * Build instances with a {@link Builder}; a new table is published as a whole when notes change.
+ */
+public class StreetNotesIndex {
+
+    public static final StreetNotesIndex EMPTY = new Builder().build();
+
+    private final BitSet edgesWithNotes;
+
+    private final TIntObjectMap<Entry> entries;
+
+    private final int size;
+
+    private StreetNotesIndex(BitSet edgesWithNotes, TIntObjectMap<Entry> entries, int size) {
+        this.edgesWithNotes = edgesWithNotes;
+        this.entries = entries;
+        this.size = size;
+    }
+
+    /** @return false if the edge certainly has no notes in this table. */
+    public boolean mayHaveNotes(Edge edge) {
+        int id = edge.getId();
+        return id >= 0 && edgesWithNotes.get(id);
+    }
+
+    /** @return the notes attached to this edge, or null if there are none. */
+    public Set<MatcherAndAlert> getNotes(Edge edge) {
+        if (!mayHaveNotes(edge)) {
+            return null;
+        }
+        for (Entry entry = entries.get(edge.getId()); entry != null; entry = entry.next) {
+            if (entry.edge == edge) {
+                return entry.notes;
+            }
+        }
+        return null;
+    }
+
+    /** @return the number of edges having notes. */
+    public int size() {
+        return size;
+    }
+
+    /** One edge and its notes, chained with any other edges sharing the same ID. */
+    private static class Entry {
+        final Edge edge;
+        final Set<MatcherAndAlert> notes;
+        final Entry next;
+
+        Entry(Edge edge, Set<MatcherAndAlert> notes, Entry next) {
+            this.edge = edge;
+            this.notes = notes;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Accumulates notes for edges, then builds an immutable table. Not thread safe; meant to be
+     * filled by a single updater before the result is handed over to the graph writer.
+     */
+    public static class Builder {
+
+        private final Map<Edge, Set<MatcherAndAlert>> notesForEdge = new HashMap<>();
+
+        public Builder addNote(Edge edge, MatcherAndAlert note) {
+            Set<MatcherAndAlert> notes = notesForEdge.get(edge);
+            if (notes == null) {
+                notes = new HashSet<>(4);
+                notesForEdge.put(edge, notes);
+            }
+            notes.add(note);
+            return this;
+        }
+
+        public Builder addNotes(Edge edge, Iterable<MatcherAndAlert> notes) {
+            for (MatcherAndAlert note : notes) {
+                addNote(edge, note);
+            }
+            return this;
+        }
+
+        public StreetNotesIndex build() {
+            BitSet edgesWithNotes = new BitSet();
+            TIntObjectMap<Entry> entries = new TIntObjectHashMap<>(Math.max(10, notesForEdge.size() * 2));
+            for (Map.Entry<Edge, Set<MatcherAndAlert>> e : notesForEdge.entrySet()) {
+                Edge edge = e.getKey();
+                int id = edge.getId();
+                if (id < 0) {
+                    continue;
+                }
+                Set<MatcherAndAlert> notes = Collections.unmodifiableSet(e.getValue());
+                entries.put(id, new Entry(edge, notes, entries.get(id)));
+                edgesWithNotes.set(id);
+            }
+            return new StreetNotesIndex(edgesWithNotes, entries, notesForEdge.size());
+        }
+    }
+}
@@ -115,24 +115,20 @@ public class StreetNotesService implements Serializable {
      */
     public Set<Alert> getNotes(State state) {
         Edge edge = state.getBackEdge();
-        Set<MatcherAndAlert> maas = new HashSet<MatcherAndAlert>();
-
+        Set<Alert> notes = null;
+        /* Most edges have no notes at all: in that case nothing is allocated. */
         for (StreetNotesSource source : sources) {
-            Set<MatcherAndAlert> maas2 = source.getNotes(edge);
-            if (maas2 != null)
-                maas.addAll(maas2);
-        }
-        if (maas == null || maas.isEmpty()) {
-            return null;
-        }
-
-        Set<Alert> notes = new HashSet<Alert>(maas.size());
-        for (MatcherAndAlert maa : maas) {
-            if (maa.getMatcher().matches(state))
-                notes.add(maa.getNote());
+            Set<MatcherAndAlert> maas = source.getNotes(edge);
+            if (maas == null)
+                continue;
+            for (MatcherAndAlert maa : maas) {
+                if (maa.getMatcher().matches(state)) {
+                    if (notes == null)
+                        notes = new HashSet<Alert>(maas.size());
+                    notes.add(maa.getNote());
+                }
+            }
         }
-        if (notes.isEmpty())
-            return null;
         return notes;
     }
 
@@ -14,6 +14,7 @@
 package org.opentripplanner.routing.vertextype;
 
 import org.opentripplanner.common.MavenVersion;
+import org.opentripplanner.routing.bike_rental.BikeRentalAvailability;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
@@ -23,6 +24,10 @@ import org.opentripplanner.routing.graph.Vertex;
  * It is connected to the streets by a StreetBikeRentalLink.
  * To allow transitions on and off a bike, it has RentABike* loop edges.
  *
+ * Stations kept up to date by a bike rental updater read their availability from the updater's
+ * {@link BikeRentalAvailability} table, so updates don't need to modify the vertex. Other stations
+ * use the figures stored in the vertex itself.
+ *
  * @author laurent
  * 
  */
@@ -35,7 +40,13 @@ public class BikeRentalStationVertex extends Vertex {
     private int spacesAvailable;
 
     private String id;
-    
+
+    /** The availability table of the updater of this station, or null if it has none. */
+    private transient volatile BikeRentalAvailability availability = null;
+
+    /** The slot of this station in the availability table. */
+    private transient int availabilitySlot = -1;
+
     public BikeRentalStationVertex(Graph g, BikeRentalStation station) {
         //FIXME: raw_name can be null if bike station is made from graph updater
         super(g, "bike rental station " + station.id, station.x, station.y,
@@ -46,11 +57,29 @@ public class BikeRentalStationVertex extends Vertex {
     }
 
     public int getBikesAvailable() {
-        return bikesAvailable;
+        BikeRentalAvailability availability = this.availability;
+        return availability == null ? bikesAvailable : availability.getCurrent().getBikesAvailable(availabilitySlot);
     }
 
     public int getSpacesAvailable() {
-        return spacesAvailable;
+        BikeRentalAvailability availability = this.availability;
+        return availability == null ? spacesAvailable : availability.getCurrent().getSpacesAvailable(availabilitySlot);
+    }
+
+    /** @return false if the station has disappeared from the realtime data, in which case it cannot be used. */
+    public boolean isInService() {
+        BikeRentalAvailability availability = this.availability;
+        return availability == null || availability.getCurrent().isInService(availabilitySlot);
+    }
+
+    /** Read the availability of this station from the given slot of an availability table from now on. */
+    public void setAvailability(BikeRentalAvailability availability, int slot) {
+        this.availabilitySlot = slot;
+        this.availability = availability;
+    }
+
+    public boolean hasAvailability() {
+        return availability != null;
     }
 
     public void setBikesAvailable(int bikes) {
@@ -109,6 +109,37 @@ public class CommandLineParameters implements Cloneable {
     @Parameter(names = {"--disableFileCache"}, description = "Disable http server static file cache. Handy for development.")
     public boolean disableFileCache = false;
 
+    @Parameter(names = {"--routingThreads"},
+            description = "Number of threads handling trip planning and GraphQL requests. Defaults to the number of cores.")
+    public int routingThreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"--maxPlanRequests"},
+            description = "Maximum number of trip planning requests handled at once. Defaults to one less than the " +
+                    "number of routing threads, leaving one for other requests.")
+    public Integer maxPlanRequests;
+
+    @Parameter(names = {"--maxIndexRequests"},
+            description = "Maximum number of GraphQL requests handled at once. Defaults to the number of routing threads.")
+    public Integer maxIndexRequests;
+
+    @Parameter(names = {"--maxQueuedRequests"},
+            description = "Maximum number of requests of each type waiting to be handled. When it is reached, further " +
+                    "requests are refused with 503 Service Unavailable until the queue shortens.")
+    public int maxQueuedRequests = 50;
+
+    @Parameter(names = {"--retryAfter"},
+            description = "Number of seconds after which clients should retry a refused request (Retry-After header).")
+    public int retryAfterSeconds = 5;
+
+    @Parameter(names = {"--tileRenderThreads"},
+            description = "Number of threads rendering map tiles (inspector layers, travel time surfaces). " +
+                    "Defaults to the number of cores.")
+    public int tileRenderThreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"--tileCacheSize"},
+            description = "Maximum size in megabytes of the rendered map tiles kept in memory.")
+    public int tileCacheMegabytes = 128;
+
     @Parameter(names = {"--router"}, validateWith = RouterId.class,
             description = "One or more router IDs to build and/or serve, first one being the default.")
     public List<String> routerIds;
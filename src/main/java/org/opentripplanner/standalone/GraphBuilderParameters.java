@@ -129,6 +129,16 @@ public class GraphBuilderParameters {
      */
     public final int pruningThresholdIslandWithStops;
 
+    /**
+     * Run graph builder modules that do not depend on each other (e.g. loading OSM and loading GTFS) at the same time.
+     */
+    public final boolean concurrentModules;
+
+    /**
+     * Build the index of stop and street names used by the built-in geocoder and save it with the graph.
+     */
+    public final boolean geocoderIndex;
+
     /**
      * Set all parameters from the given Jackson JSON tree, applying defaults.
      * Supplying MissingNode.getInstance() will cause all the defaults to be applied.
@@ -158,6 +168,8 @@ public class GraphBuilderParameters {
         maxInterlineDistance = config.path("maxInterlineDistance").asInt(200);
         pruningThresholdIslandWithoutStops = config.path("islandWithoutStopsMaxSize").asInt(40);
         pruningThresholdIslandWithStops = config.path("islandWithStopsMaxSize").asInt(5);
+        concurrentModules = config.path("concurrentModules").asBoolean(false);
+        geocoderIndex = config.path("geocoderIndex").asBoolean(false);
     }
 
 }
@@ -57,14 +57,14 @@ public class GrizzlyServer {
         sslConfig.setKeyStoreFile(new File(params.basePath, "keystore").getAbsolutePath());
         sslConfig.setKeyStorePass("opentrip");
 
-        /* OTP is CPU-bound, so we want only as many worker threads as we have cores. */
+        /* OTP is CPU-bound, so we want only as many worker threads as we have cores. Trip planning and GraphQL
+           requests are handed off to the RequestScheduler, so these threads are not tied up by long searches. */
         ThreadPoolConfig threadPoolConfig = ThreadPoolConfig.defaultConfig()
             .setCorePoolSize(1)
             .setMaxPoolSize(Runtime.getRuntime().availableProcessors());
 
         /* HTTP (non-encrypted) listener */
         NetworkListener httpListener = new NetworkListener("otp_insecure", params.bindAddress, params.port);
-        // OTP is CPU-bound, we don't want more threads than cores. TODO: We should switch to async handling.
         httpListener.setSecure(false);
 
         /* HTTPS listener */
@@ -140,5 +140,7 @@ public class GrizzlyServer {
         // Clean up graceful shutdown hook before shutting down Grizzly.
         Runtime.getRuntime().removeShutdownHook(shutdownThread);
         httpServer.shutdown();
+        server.requestScheduler.shutdown();
+        server.tileImageCache.shutdown();
     }
 }
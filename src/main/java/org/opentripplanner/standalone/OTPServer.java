@@ -7,6 +7,7 @@ import org.glassfish.hk2.utilities.binding.AbstractBinder;
 import org.opentripplanner.analyst.DiskBackedPointSetCache;
 import org.opentripplanner.analyst.PointSetCache;
 import org.opentripplanner.analyst.SurfaceCache;
+import org.opentripplanner.analyst.request.TileImageCache;
 import org.opentripplanner.routing.error.GraphNotFoundException;
 import org.opentripplanner.routing.services.GraphService;
 import org.opentripplanner.scripting.impl.ScriptingService;
@@ -34,6 +35,12 @@ public class OTPServer {
 
     public CommandLineParameters params;
 
+    /** Runs trip planning and other expensive requests off the HTTP worker threads, with admission control. */
+    public RequestScheduler requestScheduler;
+
+    /** Renders map tiles off the HTTP worker threads and caches them for all routers. */
+    public TileImageCache tileImageCache;
+
     public OTPServer (CommandLineParameters params, GraphService gs) {
         LOG.info("Wiring up and configuring server.");
 
@@ -41,6 +48,9 @@ public class OTPServer {
 
         // Core OTP modules
         this.graphService = gs;
+        this.requestScheduler = RequestScheduler.fromParameters(params);
+        this.tileImageCache = new TileImageCache(params.tileCacheMegabytes * 1024L * 1024L,
+                Math.max(1, params.tileRenderThreads), params.maxQueuedRequests, params.retryAfterSeconds);
 
         // Optional Analyst Modules.
         if (params.analyst) {
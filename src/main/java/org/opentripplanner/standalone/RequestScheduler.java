@@ -0,0 +1,177 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package org.opentripplanner.standalone;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs expensive requests (trip planning, GraphQL) on a dedicated pool of routing threads rather than on the HTTP
+ * server worker threads, which stay available for cheap requests and static content.
+ *
+ * Each type of request has its own lane with a limit on the number of requests handled at once and on the number
+ * waiting. Requests beyond those limits are refused right away with 503 Service Unavailable and a Retry-After header,
+ * rather than all types of requests slowing down together under a burst of load. Limiting trip planning to fewer
+ * requests than there are routing threads keeps a thread available for the other lanes.
+ *
+ * Resources hand over their work with {@link #submit(Lane, AsyncResponse, Callable)} from a JAX-RS method taking a
+ * suspended AsyncResponse. The work must not use request scoped objects injected with @Context, which are only
+ * valid on the HTTP worker thread; read what is needed from them before submitting.
+ */
+public class RequestScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestScheduler.class);
+
+    public final Lane plan;
+
+    public final Lane index;
+
+    private final ExecutorService executor;
+
+    private final int retryAfterSeconds;
+
+    public RequestScheduler(int threads, int maxPlanRequests, int maxIndexRequests, int maxQueued,
+            int retryAfterSeconds) {
+        // The lanes bound the number of tasks given to the executor, so its own queue needs no bound.
+        this.executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("routing-%d").setDaemon(true).build());
+        this.plan = new Lane("plan", maxPlanRequests, maxQueued);
+        this.index = new Lane("index", maxIndexRequests, maxQueued);
+        this.retryAfterSeconds = retryAfterSeconds;
+        LOG.info("Handling requests on {} routing threads, at most {} plan and {} index requests at once, " +
+                "{} waiting.", threads, maxPlanRequests, maxIndexRequests, maxQueued);
+    }
+
+    public static RequestScheduler fromParameters(CommandLineParameters params) {
+        int threads = Math.max(1, params.routingThreads);
+        int maxPlanRequests = params.maxPlanRequests != null ? params.maxPlanRequests : Math.max(1, threads - 1);
+        int maxIndexRequests = params.maxIndexRequests != null ? params.maxIndexRequests : threads;
+        return new RequestScheduler(threads, maxPlanRequests, maxIndexRequests, params.maxQueuedRequests,
+                params.retryAfterSeconds);
+    }
+
+    /**
+     * Handle a request in the given lane, resuming the response with the result of the work, or with the exception
+     * it throws so that it goes through the usual exception mappers. If the lane is full the response is resumed
+     * with 503 Service Unavailable at once.
+     */
+    public void submit(Lane lane, AsyncResponse asyncResponse, Callable<?> work) {
+        Runnable task = () -> {
+            if (!asyncResponse.isSuspended()) {
+                // The client went away or the request timed out while waiting.
+                return;
+            }
+            try {
+                asyncResponse.resume(work.call());
+            } catch (Throwable t) {
+                asyncResponse.resume(t);
+            }
+        };
+        if (!lane.offer(task)) {
+            LOG.debug("Refusing {} request, {} handled and {} waiting.", lane.name, lane.getRunning(), lane.getWaiting());
+            asyncResponse.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", retryAfterSeconds)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("The server is busy, please retry later.")
+                    .build());
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * One type of request, with its own limits. Tasks beyond the number that may run at once wait in the lane rather
+     * than in the executor, so that they never delay the tasks of other lanes.
+     */
+    public class Lane {
+
+        public final String name;
+
+        private final int maxRunning;
+
+        private final int maxWaiting;
+
+        private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+
+        private int running = 0;
+
+        private long handled = 0;
+
+        private long refused = 0;
+
+        Lane(String name, int maxRunning, int maxWaiting) {
+            this.name = name;
+            this.maxRunning = Math.max(1, maxRunning);
+            this.maxWaiting = Math.max(0, maxWaiting);
+        }
+
+        /** @return false if the lane is full and the task was not accepted. */
+        synchronized boolean offer(Runnable task) {
+            if (running < maxRunning) {
+                running++;
+                executor.execute(() -> run(task));
+            } else if (waiting.size() < maxWaiting) {
+                waiting.add(task);
+            } else {
+                refused++;
+                return false;
+            }
+            return true;
+        }
+
+        /** Run a task, then the next waiting one if any, keeping the slot this task was given. */
+        private void run(Runnable task) {
+            while (task != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOG.error("Error while handling a {} request", name, e);
+                }
+                synchronized (this) {
+                    handled++;
+                    task = waiting.poll();
+                    if (task == null) {
+                        running--;
+                    }
+                }
+            }
+        }
+
+        public synchronized int getRunning() {
+            return running;
+        }
+
+        public synchronized int getWaiting() {
+            return waiting.size();
+        }
+
+        public synchronized long getHandled() {
+            return handled;
+        }
+
+        public synchronized long getRefused() {
+            return refused;
+        }
+    }
+}
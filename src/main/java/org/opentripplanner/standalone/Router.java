@@ -9,6 +9,7 @@ import ch.qos.logback.core.FileAppender;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.opentripplanner.analyst.request.*;
 import org.opentripplanner.analyst.scenario.ScenarioStore;
+import org.opentripplanner.api.resource.PlanCache;
 import org.opentripplanner.inspector.TileRendererManager;
 import org.opentripplanner.reflect.ReflectiveInitializer;
 import org.opentripplanner.routing.core.RoutingRequest;
@@ -62,6 +63,9 @@ public class Router {
     /** Storage for non-destructive alternatives analysis scenarios. */
     public ScenarioStore scenarioStore = new ScenarioStore();
 
+    /** Cache of recent trip plans, null unless enabled in the router config. */
+    public PlanCache planCache = null;
+
     public Router(String id, Graph graph) {
         this.id = id;
         this.graph = graph;
@@ -134,6 +138,17 @@ public class Router {
             LOG.info("Incoming requests will not be logged.");
         }
 
+        this.planCache = PlanCache.fromConfig(graph, config.get("planCache"));
+        if (planCache == null) {
+            LOG.info("Trip plans will not be cached.");
+        }
+
+        JsonNode maxGraphQLQueryCost = config.get("maxGraphQLQueryCost");
+        if (maxGraphQLQueryCost != null && graph.index != null) {
+            graph.index.maxGraphQLQueryCost = maxGraphQLQueryCost.asDouble();
+            LOG.info("Refusing GraphQL queries with an estimated cost over {}.", graph.index.maxGraphQLQueryCost);
+        }
+
         JsonNode boardTimes = config.get("boardTimes");
         if (boardTimes != null && boardTimes.isObject()) {
             graph.boardTimes = new EnumMap<>(TraverseMode.class);
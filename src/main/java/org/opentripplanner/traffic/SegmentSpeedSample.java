@@ -6,10 +6,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
-import java.time.DayOfWeek;
-import java.time.Instant;
-import java.time.OffsetDateTime;
-import java.time.ZoneOffset;
 
 /**
  * Represents speeds at particular times of day.
@@ -33,24 +29,19 @@ public class SegmentSpeedSample implements Serializable {
 
     /** Get a speed estimate in meters per second for the time specified (in milliseconds since the epoch) */
     public double getSpeed (long time) {
-        if (hourBins == null)
-            return decodeSpeed(average);
-
-        // figure out the hour bin
-        Instant instant = Instant.ofEpochMilli(time);
-
-        OffsetDateTime dt = instant.atOffset(ZoneOffset.UTC);
+        return decodeSpeed(getEncodedSpeed(StreetSpeedSnapshot.getHourOfWeek(time)));
+    }
 
-        // 0 (Monday) to 6 (Sunday) after subtraction
-        int day = DayOfWeek.from(dt).getValue() - 1;
-        int hour = dt.getHour();
+    /** Get the encoded speed for the given hour of the week, with 0 being midnight Monday morning GMT. */
+    short getEncodedSpeed (int hourOfWeek) {
+        if (hourBins == null)
+            return average;
 
-        int hourBin = day * 24 + hour;
-        return decodeSpeed(hourBins[hourBin]);
+        return hourBins[hourOfWeek];
     }
 
     /** Decode a speed to meters per second from its short representation */
-    private double decodeSpeed (short speed) {
+    static double decodeSpeed (short speed) {
         return (((double) speed) - Short.MIN_VALUE) / 100d;
     }
 
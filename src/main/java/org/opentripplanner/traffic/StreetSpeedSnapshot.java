@@ -2,28 +2,106 @@ package org.opentripplanner.traffic;
 
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Edge;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
  * A source of speeds for traversing streets.
+ *
+ * The speed samples are matched to street edges once, when the snapshot is built, and the speeds are stored in one
+ * array by hour of week and edge. Looking up a speed during a search is then just a few array reads, without creating
+ * any objects.
  */
 public class StreetSpeedSnapshot {
-    private final Map<Segment, SegmentSpeedSample> samples;
+
+    public static final int HOURS_PER_WEEK = 7 * 24;
+
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000;
+
+    /** The epoch began on a Thursday, which is hour 72 of a week beginning on Monday. */
+    private static final int EPOCH_HOUR_OF_WEEK = 3 * 24;
+
+    /** The position of each edge's speeds in the speed array, indexed by edge ID, or -1 if there is no speed. */
+    private final int[] slotForEdgeId;
+
+    /**
+     * The edge at each slot, to check that the edge asking for a speed is the one the slot was built for. Edges
+     * created after the snapshot (e.g. temporary edges for a request) may reuse the ID of an edge in the graph.
+     */
+    private final StreetEdge[] edgeForSlot;
+
+    /** Encoded speeds (see SegmentSpeedSample), at index hourOfWeek * nSlots + slot. */
+    private final short[] speeds;
 
     /** Get the speed for traversing the given edge with the given mode at the given time. Returns NaN if there is no speed information available. */
     public double getSpeed (StreetEdge edge, TraverseMode traverseMode, long timeMillis) {
         if (traverseMode != TraverseMode.CAR)
             return Double.NaN;
 
-        SegmentSpeedSample sample = samples.get(new Segment(edge));
+        return getSpeed(edge, getHourOfWeek(timeMillis));
+    }
+
+    /** Get the speed for driving on the given edge during the given hour of the week. Returns NaN if there is no speed information available. */
+    public double getSpeed (StreetEdge edge, int hourOfWeek) {
+        int id = edge.getId();
+        if (id < 0 || id >= slotForEdgeId.length)
+            return Double.NaN;
+
+        int slot = slotForEdgeId[id];
+        if (slot < 0 || edgeForSlot[slot] != edge)
+            return Double.NaN;
+
+        return SegmentSpeedSample.decodeSpeed(speeds[hourOfWeek * edgeForSlot.length + slot]);
+    }
+
+    /** @return the hour of the week in UTC for the given time, with 0 being midnight Monday morning. */
+    public static int getHourOfWeek (long timeMillis) {
+        long hoursSinceEpoch = Math.floorDiv(timeMillis, MILLIS_PER_HOUR);
+        return (int) Math.floorMod(hoursSinceEpoch + EPOCH_HOUR_OF_WEEK, (long) HOURS_PER_WEEK);
+    }
+
+    /**
+     * Match the speed samples to the given edges, which should be all the edges in the graph.
+     * Edges that are not street edges or have no speed sample are left out.
+     */
+    public StreetSpeedSnapshot (Map<Segment, SegmentSpeedSample> samples, Collection<Edge> edges) {
+        List<StreetEdge> matchedEdges = new ArrayList<>();
+        List<SegmentSpeedSample> matchedSamples = new ArrayList<>();
+        int maxId = -1;
+        for (Edge e : edges) {
+            if (!(e instanceof StreetEdge))
+                continue;
+
+            SegmentSpeedSample sample = samples.get(new Segment((StreetEdge) e));
+            if (sample == null)
+                continue;
 
-        if (sample == null) return Double.NaN;
+            matchedEdges.add((StreetEdge) e);
+            matchedSamples.add(sample);
+            maxId = Math.max(maxId, e.getId());
+        }
 
-        return sample.getSpeed(timeMillis);
+        int nSlots = matchedEdges.size();
+        slotForEdgeId = new int[maxId + 1];
+        Arrays.fill(slotForEdgeId, -1);
+        edgeForSlot = matchedEdges.toArray(new StreetEdge[nSlots]);
+        speeds = new short[HOURS_PER_WEEK * nSlots];
+        for (int slot = 0; slot < nSlots; slot++) {
+            slotForEdgeId[edgeForSlot[slot].getId()] = slot;
+            SegmentSpeedSample sample = matchedSamples.get(slot);
+            for (int hour = 0; hour < HOURS_PER_WEEK; hour++) {
+                speeds[hour * nSlots + slot] = sample.getEncodedSpeed(hour);
+            }
+        }
     }
 
-    public StreetSpeedSnapshot (Map<Segment, SegmentSpeedSample> samples) {
-        this.samples = samples;
+    /** @return the number of edges that have speeds. */
+    public int size () {
+        return edgeForSlot.length;
     }
 }
@@ -78,6 +78,10 @@ public abstract class GraphUpdaterConfigurator {
      */
     private static GraphUpdaterManager applyConfigurationToGraph(Graph graph, GraphUpdaterManager updaterManager, JsonNode config) {
 
+        // Graph writes submitted within this many milliseconds of each other are run in one pass
+        updaterManager.setWriterWindowMs(config.path("updaterWriteWindowMs").asLong(0));
+        updaterManager.setMaxWriterPassMs(config.path("updaterMaxWritePassMs").asLong(1000));
+
         for (JsonNode configItem : config.path("updaters")) {
 
             // For each sub-node, determine which kind of updater is being created.
@@ -17,17 +17,24 @@ import com.beust.jcommander.internal.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,7 +48,17 @@ import org.slf4j.LoggerFactory;
  * Each updater will run in its own thread. When changes to the graph have to be made by these
  * updaters, this should be done via the execute method of this manager to prevent race conditions
  * between graph write operations.
- * 
+ *
+ * Graph writer runnables are not run one by one as they arrive, but in passes: all the runnables
+ * submitted within a short window are run together, after which a single timetable snapshot is
+ * committed. With many updaters this avoids making a new snapshot for each of their messages, and
+ * keeps an updater that submits many small writes from delaying the others.
+ *
+ * While a pass runs, routing requests keep getting the snapshot committed at the end of the
+ * previous one. A pass stops taking runnables off the queue after maxWriterPassMs, so a write
+ * becomes visible to routing at most writerWindowMs + maxWriterPassMs after it was submitted, plus
+ * the time taken by the longest single runnable and by the wait for the writer thread when the
+ * queue is longer than a pass.
  */
 public class GraphUpdaterManager {
 
@@ -51,6 +68,12 @@ public class GraphUpdaterManager {
      * Text used for naming threads when the graph lacks a routerId.
      */
     private static String DEFAULT_ROUTER_ID = "(default)";
+
+    /**
+     * Maximum number of graph writer runnables in one writer pass, so that a new snapshot is made
+     * regularly even if the updaters keep the queue busy.
+     */
+    private static final int MAX_PASS_SIZE = 1000;
     
     /**
      * Thread factory used to create new threads.
@@ -66,6 +89,47 @@ public class GraphUpdaterManager {
      */
     private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
+    /**
+     * Graph writer runnables waiting for the next writer pass.
+     */
+    private final ConcurrentLinkedQueue<QueuedWriter> writerQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * True if a writer pass has been scheduled that has not started taking runnables off the queue.
+     */
+    private final AtomicBoolean writerPassScheduled = new AtomicBoolean(false);
+
+    /**
+     * How long to wait after a runnable is submitted before running a writer pass, so that the
+     * runnables submitted in the meantime are run in the same pass. With the default of 0, a pass
+     * runs as soon as the writer thread is free and takes all the runnables that have queued up
+     * while the previous pass was running.
+     */
+    private long writerWindowMs = 0;
+
+    /**
+     * How long a writer pass may keep taking runnables off the queue before committing a snapshot,
+     * which bounds how long routing requests can see a snapshot older than the applied writes.
+     */
+    private long maxWriterPassMs = 1000;
+
+    /**
+     * Statistics on the graph writer runnables of each updater, keyed on the updater, or on the
+     * class of the runnable if it was not submitted from the thread of an updater.
+     */
+    private final Map<Object, GraphWriterQueueStats> writerStats = new ConcurrentHashMap<>();
+
+    /**
+     * The updater each updater thread is running, to know where graph writer runnables come from.
+     */
+    private final ThreadLocal<GraphUpdater> currentUpdater = new ThreadLocal<>();
+
+    private long writerPasses = 0;
+
+    private int lastPassSize = 0;
+
+    private int maxPassSize = 0;
+
     /**
      * Pool with updaters
      */
@@ -130,6 +194,8 @@ public class GraphUpdaterManager {
             // This should not happen
             LOG.warn("Interrupted while waiting for scheduled task to finish.");
         }
+        // Writer passes scheduled but not started yet were dropped by the scheduler
+        cancelQueuedWriters();
     }
 
     /**
@@ -142,6 +208,7 @@ public class GraphUpdaterManager {
         updaterPool.execute(new Runnable() {
             @Override
             public void run() {
+                currentUpdater.set(updater);
                 try {
                     updater.setup();
                     try {
@@ -159,12 +226,14 @@ public class GraphUpdaterManager {
     /**
      * This is the method to use to modify the graph from the updaters. The runnables will be
      * scheduled after each other, guaranteeing that only one of these runnables will be active at
-     * any time.
+     * any time. Runnables are run in the order they were submitted, in the next writer pass.
      * 
      * @param runnable is a graph writer runnable
+     * @return a future that completes once the runnable has been executed, which can be used to
+     *         limit the number of runnables an updater has waiting
      */
-    public void execute(GraphWriterRunnable runnable) {
-        executeReturningFuture(runnable);
+    public Future<?> execute(GraphWriterRunnable runnable) {
+        return executeReturningFuture(runnable);
     }
 
     /**
@@ -187,18 +256,174 @@ public class GraphUpdaterManager {
 
     private Future<?> executeReturningFuture(final GraphWriterRunnable runnable) {
         // TODO: check for high water mark?
-        Future<?> future = scheduler.submit(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    runnable.run(graph);
-                } catch (Exception e) {
-                    LOG.error("Error while running graph writer {}:", runnable.getClass().getName(),
-                            e);
-                }
+        QueuedWriter writer = new QueuedWriter(runnable, getWriterStats(runnable));
+        writer.stats.enqueued();
+        writerQueue.add(writer);
+        if (writerPassScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(this::runWriterPass, writerWindowMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                writerPassRejected();
             }
-        });
-        return future;
+        }
+        return writer;
+    }
+
+    /**
+     * The scheduler refused a writer pass, because the manager is stopping. Nothing left in the
+     * queue will ever run, so cancel it rather than leaving its futures to block forever.
+     */
+    private void writerPassRejected() {
+        LOG.warn("Graph writer pass rejected, the graph updater manager is stopping.");
+        // Reset the flag first, so that a writer added from now on schedules (or cancels) its own pass
+        writerPassScheduled.set(false);
+        cancelQueuedWriters();
+    }
+
+    private void cancelQueuedWriters() {
+        QueuedWriter writer;
+        while ((writer = writerQueue.poll()) != null) {
+            if (writer.cancel(false)) {
+                writer.stats.cancelled();
+            }
+        }
+    }
+
+    /**
+     * Run all the graph writer runnables that are waiting, committing the timetable snapshot only
+     * once at the end. Always runs on the scheduler thread.
+     */
+    private void runWriterPass() {
+        // Runnables submitted from now on are run in the next pass
+        writerPassScheduled.set(false);
+        final TimetableSnapshotSource deferredSource = graph.timetableSnapshotSource;
+        if (deferredSource != null) {
+            deferredSource.deferSnapshotCommit();
+        }
+        final long passStart = System.currentTimeMillis();
+        int passSize = 0;
+        try {
+            QueuedWriter writer;
+            while (passSize < MAX_PASS_SIZE && System.currentTimeMillis() - passStart < maxWriterPassMs
+                    && (writer = writerQueue.poll()) != null) {
+                writer.run();
+                passSize += 1;
+            }
+        } finally {
+            // The snapshot source may have been created or replaced by one of the runnables, and
+            // the one deferred at the start of the pass must not stay deferred.
+            TimetableSnapshotSource snapshotSource = graph.timetableSnapshotSource;
+            if (deferredSource != null && deferredSource != snapshotSource) {
+                deferredSource.commitDeferredSnapshot();
+            }
+            if (snapshotSource != null) {
+                snapshotSource.commitDeferredSnapshot();
+            }
+        }
+        synchronized (this) {
+            writerPasses += 1;
+            lastPassSize = passSize;
+            maxPassSize = Math.max(maxPassSize, passSize);
+        }
+        LOG.debug("Graph writer pass ran {} runnables.", passSize);
+        if (!writerQueue.isEmpty() && writerPassScheduled.compareAndSet(false, true)) {
+            // The pass was cut short by its size or duration, continue right away
+            try {
+                scheduler.execute(this::runWriterPass);
+            } catch (RejectedExecutionException e) {
+                writerPassRejected();
+            }
+        }
+    }
+
+    private GraphWriterQueueStats getWriterStats(GraphWriterRunnable runnable) {
+        GraphUpdater updater = currentUpdater.get();
+        if (updater != null) {
+            return writerStats.computeIfAbsent(updater, u -> new GraphWriterQueueStats(
+                    updaterList.indexOf(u) + ": " + u.getClass().getSimpleName()));
+        }
+        return writerStats.computeIfAbsent(runnable.getClass(),
+                c -> new GraphWriterQueueStats(runnable.getClass().getName()));
+    }
+
+    /**
+     * A graph writer runnable waiting for a writer pass, which is also the future returned to the
+     * updater that submitted it.
+     */
+    private class QueuedWriter extends FutureTask<Void> {
+
+        final GraphWriterQueueStats stats;
+
+        final long enqueueTime = System.nanoTime();
+
+        QueuedWriter(final GraphWriterRunnable runnable, final GraphWriterQueueStats stats) {
+            super(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runnable.run(graph);
+                    } catch (Exception e) {
+                        LOG.error("Error while running graph writer {}:", runnable.getClass().getName(),
+                                e);
+                    }
+                }
+            }, null);
+            this.stats = stats;
+        }
+
+        @Override
+        public void run() {
+            long startTime = System.nanoTime();
+            super.run();
+            stats.executed(startTime - enqueueTime, System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * @param writerWindowMs how long to wait after a graph writer runnable is submitted before
+     *        running it, so that other runnables submitted in the meantime are run in the same pass
+     */
+    public void setWriterWindowMs(long writerWindowMs) {
+        this.writerWindowMs = writerWindowMs;
+    }
+
+    public long getWriterWindowMs() {
+        return writerWindowMs;
+    }
+
+    /**
+     * @param maxWriterPassMs how long a writer pass may keep running graph writer runnables before
+     *        committing a snapshot, the ones still waiting being run in the next pass
+     */
+    public void setMaxWriterPassMs(long maxWriterPassMs) {
+        this.maxWriterPassMs = maxWriterPassMs;
+    }
+
+    public long getMaxWriterPassMs() {
+        return maxWriterPassMs;
+    }
+
+    /** @return statistics on the graph writer runnables submitted by each updater. */
+    public Collection<GraphWriterQueueStats> getWriterQueueStats() {
+        return writerStats.values();
+    }
+
+    /** @return the number of graph writer runnables waiting for the writer thread. */
+    public int getWriterQueueSize() {
+        return writerQueue.size();
+    }
+
+    public synchronized long getWriterPasses() {
+        return writerPasses;
+    }
+
+    /** @return the number of graph writer runnables run in the last writer pass. */
+    public synchronized int getLastWriterPassSize() {
+        return lastPassSize;
+    }
+
+    public synchronized int getMaxWriterPassSize() {
+        return maxPassSize;
     }
 
     public int size() {
@@ -0,0 +1,95 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.updater;
+
+/**
+ * Statistics on the graph writer runnables submitted by one updater. The lag is the time a runnable waited in the
+ * queue before the graph writer thread started running it, so it shows how long updates take to become visible
+ * beyond the time needed to apply them.
+ */
+public class GraphWriterQueueStats {
+
+    private final String source;
+
+    private int queued = 0;
+
+    private long executed = 0;
+
+    private long totalLagNanos = 0;
+
+    private long maxLagNanos = 0;
+
+    private long lastLagNanos = 0;
+
+    private long totalRunNanos = 0;
+
+    public GraphWriterQueueStats(String source) {
+        this.source = source;
+    }
+
+    synchronized void enqueued() {
+        queued += 1;
+    }
+
+    /** A runnable was dropped from the queue without being run, e.g. when the manager stopped. */
+    synchronized void cancelled() {
+        queued -= 1;
+    }
+
+    synchronized void executed(long lagNanos, long runNanos) {
+        queued -= 1;
+        executed += 1;
+        totalLagNanos += lagNanos;
+        maxLagNanos = Math.max(maxLagNanos, lagNanos);
+        lastLagNanos = lagNanos;
+        totalRunNanos += runNanos;
+    }
+
+    /** @return a description of the updater that submitted the runnables. */
+    public String getSource() {
+        return source;
+    }
+
+    /** @return the number of runnables waiting for the graph writer thread. */
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    public synchronized long getExecuted() {
+        return executed;
+    }
+
+    public synchronized double getLastLagMillis() {
+        return lastLagNanos / 1e6;
+    }
+
+    public synchronized double getMaxLagMillis() {
+        return maxLagNanos / 1e6;
+    }
+
+    public synchronized double getMeanLagMillis() {
+        return executed == 0 ? 0 : totalLagNanos / 1e6 / executed;
+    }
+
+    public synchronized double getMeanRunMillis() {
+        return executed == 0 ? 0 : totalRunNanos / 1e6 / executed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: %d queued, %d executed, %.1f ms mean lag (%.1f ms max), %.1f ms mean run time",
+                source, queued, executed, getMeanLagMillis(), getMaxLagMillis(), getMeanRunMillis());
+    }
+
+}
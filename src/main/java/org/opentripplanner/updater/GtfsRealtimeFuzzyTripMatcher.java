@@ -10,8 +10,15 @@ import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.graph.GraphIndex;
 import org.opentripplanner.routing.trippattern.TripTimes;
 
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
 import java.text.ParseException;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class is used for matching TripDescriptors without trip_ids to scheduled GTFS data and to
@@ -19,11 +26,29 @@ import java.util.BitSet;
  *
  * The class should only be used if we know that the feed producer is unable to produce trip_ids
  * in the GTFS-RT feed.
+ *
+ * Some feeds describe every vehicle this way, so scheduled trips are indexed on route, direction
+ * and first departure time the first time a match is requested. The index is built from the
+ * GraphIndex given to the constructor; a reloaded graph gets a new GraphIndex and new matchers.
  */
 public class GtfsRealtimeFuzzyTripMatcher {
 
+    /** Do not keep the running services of more days than this, feeds only refer to a few dates. */
+    private static final int MAX_CACHED_DATES = 16;
+
+    private static final TripTimes[] NO_TRIPS = new TripTimes[0];
+
     private GraphIndex index;
 
+    /**
+     * Scheduled trips by route, then by start time and direction (see {@link #key(int, int)}).
+     * Built lazily, immutable once published.
+     */
+    private volatile Map<Route, TIntObjectMap<TripTimes[]>> tripsByStartTime;
+
+    /** The services running on recently requested dates. */
+    private final Map<ServiceDate, BitSet> servicesByDate = new ConcurrentHashMap<>();
+
     public GtfsRealtimeFuzzyTripMatcher(GraphIndex index) {
         this.index = index;
     }
@@ -74,16 +99,73 @@ public class GtfsRealtimeFuzzyTripMatcher {
 
     public Trip getTrip (Route route, int direction,
                           int startTime, ServiceDate date) {
-        BitSet services = index.servicesRunning(date);
-        for (TripPattern pattern : index.patternsForRoute.get(route)) {
-            if (pattern.directionId != direction) continue;
-            for (TripTimes times : pattern.scheduledTimetable.tripTimes) {
-                if (times.getScheduledDepartureTime(0) == startTime &&
-                        services.get(times.serviceCode)) {
-                    return times.trip;
-                }
+        TIntObjectMap<TripTimes[]> trips = getTripsByStartTime().get(route);
+        if (trips == null) {
+            return null;
+        }
+        TripTimes[] candidates = trips.get(key(startTime, direction));
+        if (candidates == null) {
+            return null;
+        }
+        BitSet services = servicesRunning(date);
+        for (TripTimes times : candidates) {
+            if (services.get(times.serviceCode)) {
+                return times.trip;
             }
         }
         return null;
     }
+
+    private BitSet servicesRunning (ServiceDate date) {
+        BitSet services = servicesByDate.get(date);
+        if (services == null) {
+            if (servicesByDate.size() >= MAX_CACHED_DATES) {
+                servicesByDate.clear();
+            }
+            services = index.servicesRunning(date);
+            servicesByDate.put(date, services);
+        }
+        return services;
+    }
+
+    private Map<Route, TIntObjectMap<TripTimes[]>> getTripsByStartTime () {
+        Map<Route, TIntObjectMap<TripTimes[]>> trips = tripsByStartTime;
+        if (trips == null) {
+            synchronized (this) {
+                trips = tripsByStartTime;
+                if (trips == null) {
+                    trips = indexTrips();
+                    tripsByStartTime = trips;
+                }
+            }
+        }
+        return trips;
+    }
+
+    /** Index the scheduled trips of all patterns, keeping the order in which they were searched before. */
+    private Map<Route, TIntObjectMap<TripTimes[]>> indexTrips () {
+        Map<Route, TIntObjectMap<TripTimes[]>> trips = new HashMap<>();
+        for (Route route : index.patternsForRoute.keySet()) {
+            TIntObjectMap<TripTimes[]> tripsForRoute = new TIntObjectHashMap<>();
+            for (TripPattern pattern : index.patternsForRoute.get(route)) {
+                for (TripTimes times : pattern.scheduledTimetable.tripTimes) {
+                    int key = key(times.getScheduledDepartureTime(0), pattern.directionId);
+                    TripTimes[] existing = tripsForRoute.get(key);
+                    if (existing == null) {
+                        existing = NO_TRIPS;
+                    }
+                    TripTimes[] extended = Arrays.copyOf(existing, existing.length + 1);
+                    extended[existing.length] = times;
+                    tripsForRoute.put(key, extended);
+                }
+            }
+            trips.put(route, tripsForRoute);
+        }
+        return trips;
+    }
+
+    /** Combine a start time in seconds and a direction ID (0, 1 or -1 for unknown) into one int. */
+    private static int key (int startTime, int direction) {
+        return (startTime << 2) | (direction & 3);
+    }
 }
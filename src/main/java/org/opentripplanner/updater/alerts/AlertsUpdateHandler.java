@@ -54,8 +54,10 @@ public class AlertsUpdateHandler {
     private GtfsRealtimeFuzzyTripMatcher fuzzyTripMatcher;
 
     public void update(FeedMessage message) {
-        alertPatchService.expire(patchIds);
-        patchIds.clear();
+        // Patches that are the same as in the previous message are left in place, only those that
+        // changed or are no longer in the feed are removed from the graph.
+        Set<String> previousPatchIds = patchIds;
+        patchIds = new HashSet<String>();
 
         for (FeedEntity entity : message.getEntityList()) {
             if (!entity.hasAlert()) {
@@ -65,6 +67,9 @@ public class AlertsUpdateHandler {
             String id = entity.getId();
             handleAlert(id, alert);
         }
+
+        previousPatchIds.removeAll(patchIds);
+        alertPatchService.expire(previousPatchIds);
     }
 
     private void handleAlert(String id, GtfsRealtime.Alert alert) {
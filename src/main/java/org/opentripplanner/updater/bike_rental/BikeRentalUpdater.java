@@ -13,22 +13,29 @@
 
 package org.opentripplanner.updater.bike_rental;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 import com.fasterxml.jackson.databind.JsonNode;
+import com.vividsolutions.jts.geom.Coordinate;
 import org.opentripplanner.graph_builder.linking.SimpleStreetSplitter;
+import org.opentripplanner.routing.bike_rental.BikeRentalAvailability;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
 import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
 import org.opentripplanner.routing.edgetype.RentABikeOffEdge;
 import org.opentripplanner.routing.edgetype.RentABikeOnEdge;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.vertextype.BikeRentalStationVertex;
 import org.opentripplanner.updater.GraphUpdaterManager;
 import org.opentripplanner.updater.GraphWriterRunnable;
@@ -36,8 +43,6 @@ import org.opentripplanner.updater.JsonConfigurable;
 import org.opentripplanner.updater.PollingGraphUpdater;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.util.Map.Entry;
-import java.util.concurrent.ExecutionException;
 
 /**
  * Dynamic bike-rental station updater which encapsulate one BikeRentalDataSource.
@@ -51,6 +56,13 @@ import java.util.concurrent.ExecutionException;
  * bike1.sourceType = jcdecaux
  * bike1.url = https://api.jcdecaux.com/vls/v1/stations?contract=Xxx?apiKey=Zzz
  * </pre>
+ *
+ * The number of bikes and spaces at each station is published in a {@link BikeRentalAvailability}
+ * table rather than written into the graph. Station vertices are only created for stations that
+ * have never been seen before, and are kept when a station disappears from the feed: it is marked
+ * as out of service instead, so stations that come and go don't split the streets again each time
+ * they reappear. The streets new stations will be linked to are found on the polling thread, so
+ * the graph writer only has to split them.
  */
 public class BikeRentalUpdater extends PollingGraphUpdater {
 
@@ -60,7 +72,19 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
 
     private static final String DEFAULT_NETWORK_LIST = "default";
 
-    Map<BikeRentalStation, BikeRentalStationVertex> verticesByStation = new HashMap<BikeRentalStation, BikeRentalStationVertex>();
+    /** Station vertices by station networks and ID. Only used on the graph writer thread. */
+    private final Map<StationKey, BikeRentalStationVertex> verticesByStation = new HashMap<>();
+
+    /** Stations currently listed in the bike rental station service. Only used on the graph writer thread. */
+    private Set<BikeRentalStation> activeStations = new HashSet<>();
+
+    /** The slot of each station in the availability table. Only used on the polling thread. */
+    private final Map<StationKey, Integer> slotsByStation = new HashMap<>();
+
+    private final BikeRentalAvailability availability = new BikeRentalAvailability();
+
+    /** The last graph writer runnable submitted, which must have finished before linking more stations. */
+    private Future<?> pendingUpdate = null;
 
     private BikeRentalDataSource source;
 
@@ -137,8 +161,25 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
             @Override
             public void run(Graph graph) {
                 service = graph.getService(BikeRentalStationService.class, true);
+                /*
+                 * Reuse the station vertices already in the graph, for instance those made when building the
+                 * graph. They are keyed on their networks as well as their ID, so the stations of another
+                 * network are never matched with the stations of this updater, even when their IDs collide.
+                 */
+                for (Vertex v : graph.getVertices()) {
+                    if (v instanceof BikeRentalStationVertex) {
+                        BikeRentalStationVertex vertex = (BikeRentalStationVertex) v;
+                        if (!vertex.hasAvailability()) {
+                            verticesByStation.put(new StationKey(networksOf(vertex), vertex.getId()), vertex);
+                        }
+                    }
+                }
             }
         });
+        // The graph writer runnable has finished, so its results can be read on this thread
+        for (StationKey key : verticesByStation.keySet()) {
+            slotsByStation.put(key, slotsByStation.size());
+        }
     }
 
     @Override
@@ -150,70 +191,154 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
         }
         List<BikeRentalStation> stations = source.getStations();
 
+        // The linker may only be used here once the previous update has been applied
+        if (pendingUpdate != null) {
+            try {
+                pendingUpdate.get();
+            } catch (ExecutionException e) {
+                // The new stations of the failed update that did not get a vertex are linked by the next one
+                LOG.error("Error while applying the previous bike rental update from {}:", source, e.getCause());
+            }
+            pendingUpdate = null;
+        }
+
+        Set<String> defaultNetworks = new HashSet<String>(Arrays.asList(network));
+        Map<BikeRentalStation, List<StreetEdge>> newStations = new HashMap<>();
+        for (BikeRentalStation station : stations) {
+            if (station.networks == null) {
+                /* API did not provide a network list, use default */
+                station.networks = defaultNetworks;
+            }
+            StationKey key = new StationKey(station.networks, station.id);
+            if (!slotsByStation.containsKey(key)) {
+                slotsByStation.put(key, slotsByStation.size());
+                newStations.put(station, linker.findLinkEdges(new Coordinate(station.x, station.y)));
+            }
+        }
+
+        // Stations missing from this update are out of service until they reappear
+        int[] bikesAvailable = new int[slotsByStation.size()];
+        int[] spacesAvailable = new int[slotsByStation.size()];
+        BitSet inService = new BitSet(slotsByStation.size());
+        int[] slots = new int[stations.size()];
+        for (int i = 0; i < slots.length; i++) {
+            BikeRentalStation station = stations.get(i);
+            int slot = slotsByStation.get(new StationKey(station.networks, station.id));
+            slots[i] = slot;
+            bikesAvailable[slot] = station.bikesAvailable;
+            spacesAvailable[slot] = station.spacesAvailable;
+            inService.set(slot);
+        }
+
         // Create graph writer runnable to apply these stations to the graph
-        BikeRentalGraphWriterRunnable graphWriterRunnable = new BikeRentalGraphWriterRunnable(stations);
-        updaterManager.execute(graphWriterRunnable);
+        BikeRentalGraphWriterRunnable graphWriterRunnable = new BikeRentalGraphWriterRunnable(stations, slots, newStations,
+                bikesAvailable, spacesAvailable, inService);
+        pendingUpdate = updaterManager.execute(graphWriterRunnable);
     }
 
     @Override
     public void teardown() {
     }
 
+    /** @return the networks of the rental edge of a station vertex, or null if it has none. */
+    private static Set<String> networksOf(BikeRentalStationVertex vertex) {
+        for (Edge e : vertex.getOutgoing()) {
+            if (e instanceof RentABikeOnEdge) {
+                return ((RentABikeOnEdge) e).getNetworks();
+            }
+        }
+        return null;
+    }
+
+    /** Identifies a station by its networks and ID, as IDs are only unique within a network. */
+    private static final class StationKey {
+
+        private final Set<String> networks;
+
+        private final String id;
+
+        StationKey(Set<String> networks, String id) {
+            this.networks = networks;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StationKey))
+                return false;
+            StationKey other = (StationKey) o;
+            return Objects.equals(networks, other.networks) && Objects.equals(id, other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(networks, id);
+        }
+    }
+
     private class BikeRentalGraphWriterRunnable implements GraphWriterRunnable {
 
         private List<BikeRentalStation> stations;
 
-        public BikeRentalGraphWriterRunnable(List<BikeRentalStation> stations) {
+        /** The slot of each station in the availability table. */
+        private int[] slots;
+
+        /** The stations seen for the first time, with the street edges to link them to. */
+        private Map<BikeRentalStation, List<StreetEdge>> newStations;
+
+        private int[] bikesAvailable;
+
+        private int[] spacesAvailable;
+
+        private BitSet inService;
+
+        public BikeRentalGraphWriterRunnable(List<BikeRentalStation> stations, int[] slots,
+                Map<BikeRentalStation, List<StreetEdge>> newStations, int[] bikesAvailable, int[] spacesAvailable,
+                BitSet inService) {
             this.stations = stations;
+            this.slots = slots;
+            this.newStations = newStations;
+            this.bikesAvailable = bikesAvailable;
+            this.spacesAvailable = spacesAvailable;
+            this.inService = inService;
         }
 
 		@Override
         public void run(Graph graph) {
             // Apply stations to graph
             Set<BikeRentalStation> stationSet = new HashSet<BikeRentalStation>();
-            Set<String> defaultNetworks = new HashSet<String>(Arrays.asList(network));
-            /* add any new stations and update bike counts for existing stations */
-            for (BikeRentalStation station : stations) {
-                if (station.networks == null) {
-                    /* API did not provide a network list, use default */
-                    station.networks = defaultNetworks;
-                }
+            /* add any new stations and update the listing of existing stations */
+            for (int i = 0; i < stations.size(); i++) {
+                BikeRentalStation station = stations.get(i);
                 service.addBikeRentalStation(station);
                 stationSet.add(station);
-                BikeRentalStationVertex vertex = verticesByStation.get(station);
+                StationKey key = new StationKey(station.networks, station.id);
+                BikeRentalStationVertex vertex = verticesByStation.get(key);
                 if (vertex == null) {
                     vertex = new BikeRentalStationVertex(graph, station);
-                    if (!linker.link(vertex)) {
+                    List<StreetEdge> edges = newStations.get(station);
+                    boolean linked = edges == null ? linker.link(vertex) : linker.link(vertex, edges);
+                    if (!linked) {
                         // the toString includes the text "Bike rental station"
                         LOG.warn("{} not near any streets; it will not be usable.", station);
                     }
-                    verticesByStation.put(station, vertex);
+                    verticesByStation.put(key, vertex);
                     new RentABikeOnEdge(vertex, vertex, station.networks);
                     if (station.allowDropoff)
                         new RentABikeOffEdge(vertex, vertex, station.networks);
-                } else {
-                    vertex.setBikesAvailable(station.bikesAvailable);
-                    vertex.setSpacesAvailable(station.spacesAvailable);
                 }
-            }
-            /* remove existing stations that were not present in the update */
-            List<BikeRentalStation> toRemove = new ArrayList<BikeRentalStation>();
-            for (Entry<BikeRentalStation, BikeRentalStationVertex> entry : verticesByStation.entrySet()) {
-                BikeRentalStation station = entry.getKey();
-                if (stationSet.contains(station))
-                    continue;
-                BikeRentalStationVertex vertex = entry.getValue();
-                if (graph.containsVertex(vertex)) {
-                    graph.removeVertexAndEdges(vertex);
+                if (!vertex.hasAvailability()) {
+                    vertex.setAvailability(availability, slots[i]);
                 }
-                toRemove.add(station);
-                service.removeBikeRentalStation(station);
-                // TODO: need to unsplit any streets that were split
             }
-            for (BikeRentalStation station : toRemove) {
-                // post-iteration removal to avoid concurrent modification
-                verticesByStation.remove(station);
+            /* stations that were not present in the update keep their vertex but are no longer listed */
+            for (BikeRentalStation station : activeStations) {
+                if (!stationSet.contains(station)) {
+                    service.removeBikeRentalStation(station);
+                }
             }
+            activeStations = stationSet;
+            availability.publish(bikesAvailable, spacesAvailable, inService);
         }
     }
 }
@@ -15,8 +15,6 @@ package org.opentripplanner.updater.stoptime;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.List;
 import com.fasterxml.jackson.databind.JsonNode;
 
@@ -25,9 +23,6 @@ import org.opentripplanner.updater.JsonConfigurable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.transit.realtime.GtfsRealtime;
-import com.google.transit.realtime.GtfsRealtime.FeedEntity;
-import com.google.transit.realtime.GtfsRealtime.FeedMessage;
 import com.google.transit.realtime.GtfsRealtime.TripUpdate;
 
 /** Reads the GTFS-RT from a local file. */
@@ -56,37 +51,29 @@ public class GtfsRealtimeFileTripUpdateSource implements TripUpdateSource, JsonC
 
     @Override
     public List<TripUpdate> getUpdates() {
-        FeedMessage feedMessage = null;
-        List<FeedEntity> feedEntityList = null;
         List<TripUpdate> updates = null;
         fullDataset = true;
-        try {
-            InputStream is = new FileInputStream(file);
-            if (is != null) {
-                // Decode message
-                feedMessage = FeedMessage.PARSER.parseFrom(is);
-                feedEntityList = feedMessage.getEntityList();
-                
-                // Change fullDataset value if this is an incremental update
-                if (feedMessage.hasHeader()
-                        && feedMessage.getHeader().hasIncrementality()
-                        && feedMessage.getHeader().getIncrementality()
-                                .equals(GtfsRealtime.FeedHeader.Incrementality.DIFFERENTIAL)) {
-                    fullDataset = false;
-                }
-                
-                // Create List of TripUpdates
-                updates = new ArrayList<TripUpdate>(feedEntityList.size());
-                for (FeedEntity feedEntity : feedEntityList) {
-                    if (feedEntity.hasTripUpdate()) updates.add(feedEntity.getTripUpdate());
-                }
-            }
+        try (GtfsRealtimeTripUpdateReader reader = new GtfsRealtimeTripUpdateReader(new FileInputStream(file))) {
+            updates = reader.readAll();
+            // Change fullDataset value if this is an incremental update
+            fullDataset = reader.isFullDataset();
         } catch (Exception e) {
             LOG.warn("Failed to parse gtfs-rt feed at " + file + ":", e);
+            updates = null;
         }
         return updates;
     }
 
+    @Override
+    public TripUpdateReader openUpdates() {
+        try {
+            return new GtfsRealtimeTripUpdateReader(new FileInputStream(file));
+        } catch (Exception e) {
+            LOG.warn("Failed to open gtfs-rt feed at " + file + ":", e);
+            return null;
+        }
+    }
+
     @Override
     public boolean getFullDatasetValueOfLastUpdates() {
         return fullDataset;
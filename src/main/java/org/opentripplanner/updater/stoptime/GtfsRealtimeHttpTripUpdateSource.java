@@ -13,8 +13,8 @@
 
 package org.opentripplanner.updater.stoptime;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.List;
 
 import com.fasterxml.jackson.databind.JsonNode;
@@ -25,9 +25,6 @@ import org.opentripplanner.util.HttpUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.transit.realtime.GtfsRealtime;
-import com.google.transit.realtime.GtfsRealtime.FeedEntity;
-import com.google.transit.realtime.GtfsRealtime.FeedMessage;
 import com.google.transit.realtime.GtfsRealtime.TripUpdate;
 
 public class GtfsRealtimeHttpTripUpdateSource implements TripUpdateSource, JsonConfigurable {
@@ -59,37 +56,40 @@ public class GtfsRealtimeHttpTripUpdateSource implements TripUpdateSource, JsonC
 
     @Override
     public List<TripUpdate> getUpdates() {
-        FeedMessage feedMessage = null;
-        List<FeedEntity> feedEntityList = null;
         List<TripUpdate> updates = null;
         fullDataset = true;
-        try {
-            InputStream is = HttpUtils.getData(url);
-            if (is != null) {
-                // Decode message
-                feedMessage = FeedMessage.PARSER.parseFrom(is);
-                feedEntityList = feedMessage.getEntityList();
-                
+        try (GtfsRealtimeTripUpdateReader reader = open()) {
+            if (reader != null) {
+                updates = reader.readAll();
                 // Change fullDataset value if this is an incremental update
-                if (feedMessage.hasHeader()
-                        && feedMessage.getHeader().hasIncrementality()
-                        && feedMessage.getHeader().getIncrementality()
-                                .equals(GtfsRealtime.FeedHeader.Incrementality.DIFFERENTIAL)) {
-                    fullDataset = false;
-                }
-                
-                // Create List of TripUpdates
-                updates = new ArrayList<TripUpdate>(feedEntityList.size());
-                for (FeedEntity feedEntity : feedEntityList) {
-                    if (feedEntity.hasTripUpdate()) updates.add(feedEntity.getTripUpdate());
-                }
+                fullDataset = reader.isFullDataset();
             }
         } catch (Exception e) {
             LOG.warn("Failed to parse gtfs-rt feed from " + url + ":", e);
+            updates = null;
         }
         return updates;
     }
 
+    /**
+     * Start downloading the feed, and decode its trip updates as they are read. This avoids
+     * holding the whole message in memory at once, which matters for large feeds.
+     */
+    @Override
+    public TripUpdateReader openUpdates() {
+        try {
+            return open();
+        } catch (Exception e) {
+            LOG.warn("Failed to fetch gtfs-rt feed from " + url + ":", e);
+            return null;
+        }
+    }
+
+    private GtfsRealtimeTripUpdateReader open() throws IOException {
+        InputStream is = HttpUtils.getData(url);
+        return is == null ? null : new GtfsRealtimeTripUpdateReader(is);
+    }
+
     @Override
     public boolean getFullDatasetValueOfLastUpdates() {
         return fullDataset;
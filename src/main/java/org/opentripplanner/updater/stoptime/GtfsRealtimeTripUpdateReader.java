@@ -0,0 +1,128 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.updater.stoptime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.WireFormat;
+import com.google.transit.realtime.GtfsRealtime;
+import com.google.transit.realtime.GtfsRealtime.FeedEntity;
+import com.google.transit.realtime.GtfsRealtime.FeedHeader;
+import com.google.transit.realtime.GtfsRealtime.FeedMessage;
+import com.google.transit.realtime.GtfsRealtime.TripUpdate;
+
+/**
+ * Decodes the trip updates in a GTFS-RT FeedMessage straight from a stream, one FeedEntity at a
+ * time, instead of parsing the whole message first. Memory use depends on how many updates are
+ * read at once rather than on the size of the feed, and the first updates can be applied while
+ * the rest of the message is still being downloaded.
+ */
+public class GtfsRealtimeTripUpdateReader implements TripUpdateReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GtfsRealtimeTripUpdateReader.class);
+
+    /** Protobuf tags of the header and entity fields: the field number followed by 3 bits of wire type. */
+    private static final int HEADER_TAG =
+            FeedMessage.HEADER_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+    private static final int ENTITY_TAG =
+            FeedMessage.ENTITY_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+    private final InputStream stream;
+
+    private final CodedInputStream in;
+
+    private FeedHeader header = null;
+
+    private boolean finished = false;
+
+    private int nEntities = 0;
+
+    public GtfsRealtimeTripUpdateReader(InputStream stream) {
+        this.stream = stream;
+        this.in = CodedInputStream.newInstance(stream);
+    }
+
+    @Override
+    public List<TripUpdate> read(int maxUpdates) throws IOException {
+        if (finished) {
+            return null;
+        }
+        List<TripUpdate> updates = new ArrayList<>(Math.min(maxUpdates, 1024));
+        while (updates.size() < maxUpdates) {
+            // The size limit guards against corrupt messages, but applies to everything read from
+            // the stream so far. Each entity is checked against it on its own instead.
+            in.resetSizeCounter();
+            int tag = in.readTag();
+            if (tag == 0) {
+                finished = true;
+                break;
+            } else if (tag == ENTITY_TAG) {
+                FeedEntity entity = in.readMessage(FeedEntity.PARSER, ExtensionRegistryLite.getEmptyRegistry());
+                nEntities += 1;
+                if (entity.hasTripUpdate()) {
+                    updates.add(entity.getTripUpdate());
+                }
+            } else if (tag == HEADER_TAG) {
+                if (nEntities > 0) {
+                    LOG.warn("GTFS-RT header found after {} entities, the incrementality of the message may be wrong.",
+                            nEntities);
+                }
+                header = in.readMessage(FeedHeader.PARSER, ExtensionRegistryLite.getEmptyRegistry());
+            } else {
+                in.skipField(tag);
+            }
+        }
+        if (finished && updates.isEmpty()) {
+            return null;
+        }
+        return updates;
+    }
+
+    /** @return the header of the message, or null if it has not been read yet. */
+    public FeedHeader getHeader() {
+        return header;
+    }
+
+    @Override
+    public boolean isFullDataset() {
+        return header == null || !header.hasIncrementality()
+                || header.getIncrementality() != GtfsRealtime.FeedHeader.Incrementality.DIFFERENTIAL;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
+    /** Read all the trip updates in a message. */
+    public List<TripUpdate> readAll() throws IOException {
+        List<TripUpdate> updates = new ArrayList<>();
+        List<TripUpdate> part;
+        while ((part = read(Integer.MAX_VALUE)) != null) {
+            updates.addAll(part);
+        }
+        return updates;
+    }
+
+}
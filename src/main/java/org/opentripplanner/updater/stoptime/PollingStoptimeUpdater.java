@@ -13,8 +13,11 @@
 
 package org.opentripplanner.updater.stoptime;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import org.opentripplanner.updater.*;
@@ -76,6 +79,17 @@ public class PollingStoptimeUpdater extends PollingGraphUpdater {
      */
     private GtfsRealtimeFuzzyTripMatcher fuzzyTripMatcher;
 
+    /**
+     * The snapshot source of the graph, set once it has been created on the graph writer thread.
+     */
+    private volatile TimetableSnapshotSource snapshotSource;
+
+    /**
+     * Maximum number of trip updates decoded and applied at once. Large messages are applied in
+     * several parts, so the memory used does not depend on the size of the feed.
+     */
+    private int batchSize = 2000;
+
     @Override
     public void setGraphUpdaterManager(GraphUpdaterManager updaterManager) {
         this.updaterManager = updaterManager;
@@ -112,6 +126,7 @@ public class PollingStoptimeUpdater extends PollingGraphUpdater {
             this.maxSnapshotFrequency = maxSnapshotFrequency;
         }
         this.purgeExpiredData = config.path("purgeExpiredData").asBoolean(true);
+        this.batchSize = config.path("batchSize").asInt(batchSize);
         if (config.path("fuzzyTripMatching").asBoolean(false)) {
             this.fuzzyTripMatcher = new GtfsRealtimeFuzzyTripMatcher(graph.index);
         }
@@ -145,25 +160,64 @@ public class PollingStoptimeUpdater extends PollingGraphUpdater {
                 if (fuzzyTripMatcher != null) {
                     snapshotSource.fuzzyTripMatcher = fuzzyTripMatcher;
                 }
+                PollingStoptimeUpdater.this.snapshotSource = snapshotSource;
             }
         });
     }
 
     /**
      * Repeatedly makes blocking calls to an UpdateStreamer to retrieve new stop time updates, and
-     * applies those updates to the graph.
+     * applies those updates to the graph. Each message is read in parts of at most batchSize
+     * updates. While one part is applied by the graph writer the next one is decoded and
+     * prepared, but no further parts are read until the graph writer has caught up.
      */
     @Override
-    public void runPolling() {
+    public void runPolling() throws Exception {
         // Get update lists from update source
-        List<TripUpdate> updates = updateSource.getUpdates();
-        boolean fullDataset = updateSource.getFullDatasetValueOfLastUpdates();
-
-        if (updates != null) {
-            // Handle trip updates via graph writer runnable
-            TripUpdateGraphWriterRunnable runnable =
-                    new TripUpdateGraphWriterRunnable(fullDataset, updates, feedId);
-            updaterManager.execute(runnable);
+        TripUpdateReader reader = updateSource.openUpdates();
+        if (reader == null) {
+            return;
+        }
+
+        Future<?> pending = null;
+        boolean firstPart = true;
+        boolean lastPartQueued = false;
+        try {
+            List<TripUpdate> updates = reader.read(batchSize);
+            boolean fullDataset = reader.isFullDataset();
+            if (updates == null) {
+                // A message without any updates is still applied as a single part, so that a full
+                // dataset without updates reverts all the trips updated by earlier messages.
+                updates = Collections.emptyList();
+            }
+            while (updates != null) {
+                // Read ahead to find out whether this is the last part
+                List<TripUpdate> nextUpdates = reader.read(batchSize);
+                boolean lastPart = nextUpdates == null;
+
+                // Match and validate the updates on this thread, so the graph writer thread only has to
+                // apply them to the buffer. Handle trip updates via graph writer runnable.
+                TripUpdateBatch batch = snapshotSource.prepareTripUpdates(updates, feedId, firstPart, lastPart);
+                if (pending != null) {
+                    pending.get();
+                }
+                pending = updaterManager.execute(new TripUpdateGraphWriterRunnable(fullDataset, batch));
+                firstPart = false;
+                lastPartQueued = lastPart;
+                updates = nextUpdates;
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to read gtfs-rt feed {}: {}", updateSource, e.toString());
+        } finally {
+            if (!firstPart && !lastPartQueued) {
+                // Finish the message with the parts already applied, but don't treat them as the full
+                // dataset: trips missing from the unread parts must not be reverted. This also happens
+                // when preparing a part or applying the previous one failed.
+                TripUpdateBatch batch = snapshotSource.prepareTripUpdates(
+                        Collections.<TripUpdate>emptyList(), feedId, false, true);
+                updaterManager.execute(new TripUpdateGraphWriterRunnable(false, batch));
+            }
+            reader.close();
         }
     }
 
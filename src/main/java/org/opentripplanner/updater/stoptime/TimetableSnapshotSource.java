@@ -17,11 +17,16 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
 
 import org.onebusaway.gtfs.model.Agency;
 import org.onebusaway.gtfs.model.AgencyAndId;
@@ -39,6 +44,7 @@ import org.opentripplanner.routing.graph.GraphIndex;
 import org.opentripplanner.routing.trippattern.RealTimeState;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.updater.GtfsRealtimeFuzzyTripMatcher;
+import org.opentripplanner.updater.stoptime.TripUpdateBatch.PreparedUpdate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,10 +72,48 @@ public class TimetableSnapshotSource {
      */
     private static final long MAX_ARRIVAL_DEPARTURE_TIME = 48 * 60 * 60;
 
+    /**
+     * Messages with at least this many trip updates are prepared using several threads.
+     */
+    private static final int MIN_PARALLEL_UPDATES = 64;
+
     public int logFrequency = 2000;
 
     private int appliedBlockCount = 0;
 
+    /**
+     * Statistics on the updates applied for each feed.
+     */
+    private final Map<String, TripUpdateMetrics> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Fingerprints of the trip updates in the buffer, to skip those that did not change.
+     */
+    private final TripUpdateFingerprints fingerprints = new TripUpdateFingerprints();
+
+    /**
+     * For each feed whose full dataset is being applied in several parts, the trips seen so far.
+     * Only used while holding the buffer lock.
+     */
+    private final Map<String, Set<TripUpdateFingerprints.Key>> tripsInFullDataset = new HashMap<>();
+
+    /**
+     * Feeds for which only some parts of a message have been applied to the buffer yet.
+     */
+    private final Set<String> feedsInProgress = ConcurrentHashMap.newKeySet();
+
+    /**
+     * True while the graph updater manager runs a pass of graph writers, at the end of which it
+     * commits the snapshot once with {@link #commitDeferredSnapshot()}.
+     */
+    private volatile boolean commitDeferred = false;
+
+    /**
+     * True if messages were applied while the snapshot commit was deferred. Only used while holding
+     * the buffer lock.
+     */
+    private boolean commitPending = false;
+
     /**
      * If a timetable snapshot is requested less than this number of milliseconds after the previous
      * snapshot, just return the same one. Throttles the potentially resource-consuming task of
@@ -134,8 +178,9 @@ public class TimetableSnapshotSource {
     public TimetableSnapshot getTimetableSnapshot() {
         TimetableSnapshot snapshotToReturn;
 
-        // Try to get a lock on the buffer
-        if (bufferLock.tryLock()) {
+        // Try to get a lock on the buffer, unless a message is only partly applied or the graph
+        // writer will commit a new snapshot shortly
+        if (!commitDeferred && feedsInProgress.isEmpty() && bufferLock.tryLock()) {
             // Make a new snapshot if necessary
             try {
                 snapshotToReturn = getTimetableSnapshot(false);
@@ -170,14 +215,10 @@ public class TimetableSnapshotSource {
     /**
      * Method to apply a trip update list to the most recent version of the timetable snapshot. A
      * GTFS-RT feed is always applied against a single static feed (indicated by feedId).
-<<<<<<< HEAD
-     * 
-=======
      *
      * However, multi-feed support is not completed and we currently assume there is only one static
      * feed when matching IDs.
      *
->>>>>>> 7296be8ffd532a13afb0bec263a9f436ab787022
      * @param graph graph to update (needed for adding/changing stop patterns)
      * @param fullDataset true iff the list with updates represent all updates that are active right
      *        now, i.e. all previous updates should be disregarded
@@ -189,96 +230,401 @@ public class TimetableSnapshotSource {
             LOG.warn("updates is null");
             return;
         }
+        applyTripUpdates(graph, fullDataset, prepareTripUpdates(updates, feedId));
+    }
+
+    /**
+     * Match trip updates to trips, validate them and compute the new trip times of scheduled trips,
+     * without touching the buffer. This only reads the graph, so it does not take the buffer lock
+     * and can be called from any thread, for example the polling thread of an updater, leaving
+     * only {@link #applyTripUpdates(Graph, boolean, TripUpdateBatch)} for the graph writer thread.
+     * Large messages are prepared in parallel, with the updates to scheduled trips grouped by
+     * pattern so the trips of each pattern are only indexed once. No trip times are computed for
+     * updates that are the same as the last one applied for their trip.
+     *
+     * @param updates GTFS-RT TripUpdate's from one message
+     * @param feedId feed id the trip ids in the updates belong to
+     * @return the prepared updates, to be applied in one go
+     */
+    public TripUpdateBatch prepareTripUpdates(final List<TripUpdate> updates, final String feedId) {
+        return prepareTripUpdates(updates, feedId, true, true);
+    }
+
+    /**
+     * Prepare one part of a message that is too large to be held in memory all at once. The parts
+     * must be applied in order, and no new snapshot is made until the last part has been applied.
+     *
+     * @see #prepareTripUpdates(List, String)
+     */
+    public TripUpdateBatch prepareTripUpdates(final List<TripUpdate> updates, final String feedId,
+            final boolean firstPart, final boolean lastPart) {
+        final long startTime = System.nanoTime();
+        final PreparedUpdate[] prepared = new PreparedUpdate[updates.size()];
+        final boolean parallel = updates.size() >= MIN_PARALLEL_UPDATES;
+
+        // Match and validate each update
+        IntStream indexes = IntStream.range(0, updates.size());
+        (parallel ? indexes.parallel() : indexes).forEach(i ->
+                prepared[i] = prepareTripUpdate(updates.get(i), feedId));
+
+        // Compute the new trip times of scheduled trips, one pattern at a time
+        final Map<TripPattern, List<PreparedUpdate>> scheduledUpdatesByPattern = new HashMap<>();
+        for (PreparedUpdate update : prepared) {
+            if (update != null && update.pattern != null && !update.unchanged) {
+                scheduledUpdatesByPattern.computeIfAbsent(update.pattern, p -> new ArrayList<>()).add(update);
+            }
+        }
+        Collection<List<PreparedUpdate>> groups = scheduledUpdatesByPattern.values();
+        (parallel ? groups.parallelStream() : groups.stream()).forEach(this::createUpdatedTripTimes);
+
+        final List<PreparedUpdate> accepted = new ArrayList<>(prepared.length);
+        for (PreparedUpdate update : prepared) {
+            if (update != null) {
+                accepted.add(update);
+            }
+        }
+        return new TripUpdateBatch(feedId, accepted, prepared.length - accepted.size(), firstPart, lastPart,
+                startTime, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Apply trip updates prepared with {@link #prepareTripUpdates(List, String)} to the buffer,
+     * and make a new snapshot.
+     *
+     * @param graph graph to update (needed for adding/changing stop patterns)
+     * @param fullDataset true iff the batch represents all updates that are active right now,
+     *        i.e. all previous updates should be disregarded
+     * @param batch the prepared updates, which are applied atomically together with the other
+     *        parts of the same message
+     */
+    public void applyTripUpdates(final Graph graph, final boolean fullDataset, final TripUpdateBatch batch) {
+        final String feedId = batch.feedId;
+        final ApplyResult result;
 
         // Acquire lock on buffer
+        final long lockTime = System.nanoTime();
         bufferLock.lock();
 
         try {
-            if (fullDataset) {
-                // Remove all updates from the buffer
-                buffer.clear(feedId);
+            if (batch.firstPart) {
+                if (fullDataset) {
+                    tripsInFullDataset.put(feedId, new HashSet<>());
+                }
+                if (!batch.lastPart) {
+                    // Don't hand out snapshots with only some parts of the message applied
+                    feedsInProgress.add(feedId);
+                }
             }
 
-            LOG.debug("message contains {} trip updates", updates.size());
-            int uIndex = 0;
-            for (TripUpdate tripUpdate : updates) {
-                if (fuzzyTripMatcher != null && tripUpdate.hasTrip()) {
-                    final TripDescriptor trip = fuzzyTripMatcher.match(feedId, tripUpdate.getTrip());
-                    tripUpdate = tripUpdate.toBuilder().setTrip(trip).build();
+            // Only the updates that changed since the last message are applied. Instead of
+            // clearing the buffer before a full dataset, the trips that are no longer in the
+            // feed are reverted once the whole message has been applied.
+            LOG.debug("message contains {} trip updates", batch.size());
+            final Set<TripUpdateFingerprints.Key> tripsSeen = tripsInFullDataset.get(feedId);
+            result = applyPreparedUpdates(graph, fullDataset, tripsSeen, batch);
+
+            if (batch.lastPart) {
+                if (fullDataset && tripsSeen != null) {
+                    revertTripsMissingFrom(feedId, tripsSeen);
                 }
+                tripsInFullDataset.remove(feedId);
+                feedsInProgress.remove(feedId);
+                LOG.debug("end of update message");
 
-                if (!tripUpdate.hasTrip()) {
-                    LOG.warn("Missing TripDescriptor in gtfs-rt trip update: \n{}", tripUpdate);
-                    continue;
+                if (commitDeferred) {
+                    commitPending = true;
+                } else {
+                    commitSnapshot();
                 }
+            }
+        } finally {
+            // Always release lock
+            bufferLock.unlock();
+        }
+
+        final long endTime = System.nanoTime();
+        final int rejected = batch.rejected + result.rejected;
+        final TripUpdateMetrics feedMetrics = metrics.computeIfAbsent(feedId, TripUpdateMetrics::new);
+        feedMetrics.record(batch.size(), batch.size() - rejected - result.unchanged, rejected, result.unchanged,
+                batch.prepareNanos, endTime - lockTime, batch.startTime, batch.firstPart, batch.lastPart);
+        if (batch.lastPart) {
+            LOG.debug("Trip updates for {}", feedMetrics);
+        }
+    }
 
-                ServiceDate serviceDate = new ServiceDate();
-                final TripDescriptor tripDescriptor = tripUpdate.getTrip();
+    /**
+     * Make a snapshot after each message in anticipation of incoming requests. Only called while
+     * holding the buffer lock.
+     */
+    private void commitSnapshot() {
+        // Purge data if necessary (and force new snapshot if anything was purged)
+        // Make sure that the public (locking) getTimetableSnapshot function is not called.
+        if (purgeExpiredData) {
+            final boolean modified = purgeExpiredData();
+            getTimetableSnapshot(modified);
+        } else {
+            getTimetableSnapshot(false);
+        }
+    }
 
-                if (tripDescriptor.hasStartDate()) {
-                    try {
-                        serviceDate = ServiceDate.parseString(tripDescriptor.getStartDate());
-                    } catch (final ParseException e) {
-                        LOG.warn("Failed to parse start date in gtfs-rt trip update: \n{}", tripUpdate);
-                        continue;
+    /**
+     * Don't commit a new snapshot after each message until {@link #commitDeferredSnapshot()} is
+     * called, so that several messages applied in a row are published together.
+     */
+    public void deferSnapshotCommit() {
+        commitDeferred = true;
+    }
+
+    /**
+     * Commit a snapshot for the messages applied since {@link #deferSnapshotCommit()} was called,
+     * and go back to committing a snapshot after each message.
+     */
+    public void commitDeferredSnapshot() {
+        bufferLock.lock();
+        try {
+            commitDeferred = false;
+            if (commitPending) {
+                commitPending = false;
+                commitSnapshot();
+            }
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /** Counts of what happened while applying the updates of a batch. */
+    private static class ApplyResult {
+        int rejected = 0;
+        int unchanged = 0;
+    }
+
+    /**
+     * Apply the updates of a batch to the buffer in order, skipping those that are the same as the
+     * last one applied for their trip.
+     *
+     * @param tripsSeen if the batch is part of a full dataset, the trips seen so far in the message
+     */
+    private ApplyResult applyPreparedUpdates(final Graph graph, final boolean fullDataset,
+            final Set<TripUpdateFingerprints.Key> tripsSeen, final TripUpdateBatch batch) {
+        final String feedId = batch.feedId;
+        final ApplyResult result = new ApplyResult();
+        int uIndex = 0;
+        for (PreparedUpdate update : batch.updates) {
+            final TripUpdate tripUpdate = update.tripUpdate;
+            final ServiceDate serviceDate = update.serviceDate;
+            final TripUpdateFingerprints.Record previous =
+                    update.key == null ? null : fingerprints.get(update.key);
+
+            if (update.key != null && tripsSeen != null) {
+                tripsSeen.add(update.key);
+            }
+            if (previous != null && previous.fingerprint.equals(update.fingerprint)) {
+                result.unchanged++;
+                continue;
+            }
+            if (update.unchanged && update.pattern != null && update.updatedTripTimes == null) {
+                // The trip changed after this update was prepared, so its trip times are still needed
+                update.updatedTripTimes = update.pattern.scheduledTimetable.createUpdatedTripTimes(
+                        tripUpdate, timeZone, serviceDate);
+            }
+            if (previous != null && previous.scheduleRelationship != update.scheduleRelationship
+                    && (previous.scheduleRelationship == TripDescriptor.ScheduleRelationship.ADDED
+                    || previous.scheduleRelationship == TripDescriptor.ScheduleRelationship.MODIFIED)) {
+                // The new update will not replace the trip created by the previous one
+                revertTrip(update.key, previous);
+            }
+
+            uIndex += 1;
+            LOG.debug("trip update #{} ({} updates) :",
+                    uIndex, tripUpdate.getStopTimeUpdateCount());
+            LOG.trace("{}", tripUpdate);
+
+            // Apply the update according to its kind
+            boolean applied = false;
+            switch (update.scheduleRelationship) {
+                case SCHEDULED:
+                    applied = handleScheduledTrip(update, feedId);
+                    break;
+                case ADDED:
+                    applied = validateAndHandleAddedTrip(graph, tripUpdate, feedId, serviceDate);
+                    break;
+                case UNSCHEDULED:
+                    applied = handleUnscheduledTrip(tripUpdate, feedId, serviceDate);
+                    break;
+                case CANCELED:
+                    applied = handleCanceledTrip(tripUpdate, feedId, serviceDate);
+                    break;
+                case MODIFIED:
+                    applied = validateAndHandleModifiedTrip(graph, tripUpdate, feedId, serviceDate);
+                    break;
+            }
+
+            if (applied) {
+                appliedBlockCount++;
+                if (update.key != null) {
+                    fingerprints.put(update.key, new TripUpdateFingerprints.Record(update.fingerprint,
+                            update.scheduleRelationship));
+                }
+            } else {
+                result.rejected++;
+                LOG.warn("Failed to apply TripUpdate.");
+                LOG.trace(" Contents: {}", tripUpdate);
+                if (previous != null) {
+                    fingerprints.remove(update.key);
+                    if (fullDataset) {
+                        // A full dataset replaces the previous update for this trip, even if the new one is invalid
+                        revertTrip(update.key, previous);
                     }
-                } else {
-                    // TODO: figure out the correct service date. For the special case that a trip
-                    // starts for example at 40:00, yesterday would probably be a better guess.
                 }
+            }
 
-                uIndex += 1;
-                LOG.debug("trip update #{} ({} updates) :",
-                        uIndex, tripUpdate.getStopTimeUpdateCount());
-                LOG.trace("{}", tripUpdate);
-
-                // Determine what kind of trip update this is
-                boolean applied = false;
-                final TripDescriptor.ScheduleRelationship tripScheduleRelationship = determineTripScheduleRelationship(
-                        tripUpdate);
-                switch (tripScheduleRelationship) {
-                    case SCHEDULED:
-                        applied = handleScheduledTrip(tripUpdate, feedId, serviceDate);
-                        break;
-                    case ADDED:
-                        applied = validateAndHandleAddedTrip(graph, tripUpdate, feedId, serviceDate);
-                        break;
-                    case UNSCHEDULED:
-                        applied = handleUnscheduledTrip(tripUpdate, feedId, serviceDate);
-                        break;
-                    case CANCELED:
-                        applied = handleCanceledTrip(tripUpdate, feedId, serviceDate);
-                        break;
-                    case MODIFIED:
-                        applied = validateAndHandleModifiedTrip(graph, tripUpdate, feedId, serviceDate);
-                        break;
-                }
+            if (appliedBlockCount % logFrequency == 0) {
+                LOG.info("Applied {} trip updates.", appliedBlockCount);
+            }
+        }
+        return result;
+    }
 
-                if (applied) {
-                    appliedBlockCount++;
-                } else {
-                    LOG.warn("Failed to apply TripUpdate.");
-                    LOG.trace(" Contents: {}", tripUpdate);
-                }
+    /** Revert the trips of a feed that had updates in the last full dataset but not in this one. */
+    private void revertTripsMissingFrom(final String feedId, final Set<TripUpdateFingerprints.Key> tripsSeen) {
+        for (TripUpdateFingerprints.Key key : fingerprints.getKeys(feedId)) {
+            if (!tripsSeen.contains(key)) {
+                revertTrip(key, fingerprints.get(key));
+                fingerprints.remove(key);
+            }
+        }
+    }
 
-                if (appliedBlockCount % logFrequency == 0) {
-                    LOG.info("Applied {} trip updates.", appliedBlockCount);
-                }
+    /**
+     * Undo the effect of a trip update on the buffer, as if the buffer had been cleared before
+     * applying the other updates of the feed. Trips that were added are cancelled rather than
+     * removed, which has the same effect on routing.
+     */
+    private void revertTrip(final TripUpdateFingerprints.Key key, final TripUpdateFingerprints.Record record) {
+        switch (record.scheduleRelationship) {
+            case ADDED:
+                cancelPreviouslyAddedTrip(key.feedId, key.tripId, key.serviceDate);
+                break;
+            case MODIFIED:
+                cancelPreviouslyAddedTrip(key.feedId, key.tripId, key.serviceDate);
+                revertScheduledTrip(key);
+                break;
+            default:
+                revertScheduledTrip(key);
+                break;
+        }
+    }
+
+    /** Put the scheduled trip times of a trip back in the buffer, undoing any update applied to it. */
+    private void revertScheduledTrip(final TripUpdateFingerprints.Key key) {
+        final TripPattern pattern = getPatternForTripId(key.feedId, key.tripId);
+        if (pattern == null) {
+            return;
+        }
+        final Timetable timetable = pattern.scheduledTimetable;
+        final int tripIndex = timetable.getTripIndex(key.tripId);
+        if (tripIndex != -1) {
+            buffer.update(key.feedId, pattern, timetable.getTripTimes(tripIndex), key.serviceDate);
+        }
+    }
+
+    /** @return statistics on the trip updates applied so far, for each feed. */
+    public Collection<TripUpdateMetrics> getMetrics() {
+        return metrics.values();
+    }
+
+    /** @return statistics on the trip updates applied so far for the given feed, or null if there were none. */
+    public TripUpdateMetrics getMetrics(String feedId) {
+        return metrics.get(feedId);
+    }
+
+    /**
+     * Match a single trip update to a trip and determine how it should be handled. Only reads the
+     * graph, so this can be called from several threads at once.
+     *
+     * @return the prepared update, or null if it must be skipped
+     */
+    private PreparedUpdate prepareTripUpdate(TripUpdate tripUpdate, final String feedId) {
+        if (fuzzyTripMatcher != null && tripUpdate.hasTrip()) {
+            final TripDescriptor trip = fuzzyTripMatcher.match(feedId, tripUpdate.getTrip());
+            tripUpdate = tripUpdate.toBuilder().setTrip(trip).build();
+        }
+
+        if (!tripUpdate.hasTrip()) {
+            LOG.warn("Missing TripDescriptor in gtfs-rt trip update: \n{}", tripUpdate);
+            return null;
+        }
+
+        ServiceDate serviceDate = new ServiceDate();
+        final TripDescriptor tripDescriptor = tripUpdate.getTrip();
+
+        if (tripDescriptor.hasStartDate()) {
+            try {
+                serviceDate = ServiceDate.parseString(tripDescriptor.getStartDate());
+            } catch (final ParseException e) {
+                LOG.warn("Failed to parse start date in gtfs-rt trip update: \n{}", tripUpdate);
+                return null;
             }
-            LOG.debug("end of update message");
-
-            // Make a snapshot after each message in anticipation of incoming requests
-            // Purge data if necessary (and force new snapshot if anything was purged)
-            // Make sure that the public (locking) getTimetableSnapshot function is not called.
-            if (purgeExpiredData) {
-                final boolean modified = purgeExpiredData();
-                getTimetableSnapshot(modified);
+        } else {
+            // TODO: figure out the correct service date. For the special case that a trip
+            // starts for example at 40:00, yesterday would probably be a better guess.
+        }
+
+        // Determine what kind of trip update this is
+        final TripDescriptor.ScheduleRelationship tripScheduleRelationship = determineTripScheduleRelationship(
+                tripUpdate);
+        final PreparedUpdate update = new PreparedUpdate(tripUpdate, serviceDate, tripScheduleRelationship);
+        if (tripDescriptor.hasTripId()) {
+            update.key = new TripUpdateFingerprints.Key(feedId, tripDescriptor.getTripId(), serviceDate);
+            update.fingerprint = TripUpdateFingerprints.fingerprint(tripUpdate);
+            final TripUpdateFingerprints.Record previous = fingerprints.get(update.key);
+            update.unchanged = previous != null && previous.fingerprint.equals(update.fingerprint);
+        }
+
+        if (tripScheduleRelationship == TripDescriptor.ScheduleRelationship.SCHEDULED) {
+            // This does not include Agency ID or feed ID, trips are feed-unique and we currently assume a single static feed.
+            final String tripId = tripDescriptor.getTripId();
+            final TripPattern pattern = getPatternForTripId(feedId, tripId);
+
+            if (pattern == null) {
+                LOG.warn("No pattern found for tripId {}, skipping TripUpdate.", tripId);
+            } else if (tripUpdate.getStopTimeUpdateCount() < 1) {
+                LOG.warn("TripUpdate contains no updates, skipping.");
             } else {
-                getTimetableSnapshot(false);
+                // The trip times are computed once all updates have been matched to patterns
+                update.pattern = pattern;
             }
-        } finally {
-            // Always release lock
-            bufferLock.unlock();
+        }
+        return update;
+    }
+
+    /**
+     * Apply updates on the *scheduled* time table of their pattern. All the updates must be for
+     * trips in the same pattern.
+     */
+    private void createUpdatedTripTimes(final List<PreparedUpdate> updates) {
+        final Timetable timetable = updates.get(0).pattern.scheduledTimetable;
+        if (updates.size() == 1) {
+            PreparedUpdate update = updates.get(0);
+            update.updatedTripTimes = timetable.createUpdatedTripTimes(update.tripUpdate, timeZone,
+                    update.serviceDate);
+            return;
+        }
+        // Index the trips once rather than searching the timetable for every update
+        final Map<String, Integer> tripIndexes = Maps.newHashMapWithExpectedSize(timetable.tripTimes.size());
+        for (int i = timetable.tripTimes.size() - 1; i >= 0; i--) {
+            // Keep the first index for each trip id, as a linear search would
+            tripIndexes.put(timetable.tripTimes.get(i).trip.getId().getId(), i);
+        }
+        for (PreparedUpdate update : updates) {
+            final String tripId = update.tripUpdate.getTrip().getTripId();
+            final Integer tripIndex = tripIndexes.get(tripId);
+            if (tripIndex == null) {
+                LOG.info("tripId {} not found in pattern.", tripId);
+                continue;
+            }
+            update.updatedTripTimes = timetable.createUpdatedTripTimes(update.tripUpdate, tripIndex,
+                    timeZone, update.serviceDate);
         }
     }
 
@@ -323,25 +669,8 @@ public class TimetableSnapshotSource {
         return tripScheduleRelationship;
     }
 
-    private boolean handleScheduledTrip(final TripUpdate tripUpdate, final String feedId, final ServiceDate serviceDate) {
-        final TripDescriptor tripDescriptor = tripUpdate.getTrip();
-        // This does not include Agency ID or feed ID, trips are feed-unique and we currently assume a single static feed.
-        final String tripId = tripDescriptor.getTripId();
-        final TripPattern pattern = getPatternForTripId(feedId, tripId);
-
-        if (pattern == null) {
-            LOG.warn("No pattern found for tripId {}, skipping TripUpdate.", tripId);
-            return false;
-        }
-
-        if (tripUpdate.getStopTimeUpdateCount() < 1) {
-            LOG.warn("TripUpdate contains no updates, skipping.");
-            return false;
-        }
-
-        // Apply update on the *scheduled* time table and set the updated trip times in the buffer
-        final TripTimes updatedTripTimes = pattern.scheduledTimetable.createUpdatedTripTimes(tripUpdate,
-                timeZone, serviceDate);
+    private boolean handleScheduledTrip(final PreparedUpdate update, final String feedId) {
+        final TripTimes updatedTripTimes = update.updatedTripTimes;
 
         if (updatedTripTimes == null) {
             return false;
@@ -350,7 +679,7 @@ public class TimetableSnapshotSource {
         // Make sure that updated trip times have the correct real time state
         updatedTripTimes.setRealTimeState(RealTimeState.UPDATED);
 
-        final boolean success = buffer.update(feedId, pattern, updatedTripTimes, serviceDate);
+        final boolean success = buffer.update(feedId, update.pattern, updatedTripTimes, update.serviceDate);
         return success;
     }
 
@@ -933,6 +1262,7 @@ public class TimetableSnapshotSource {
         LOG.debug("purging expired realtime data");
 
         lastPurgeDate = previously;
+        fingerprints.purge(previously);
 
         return buffer.purgeExpiredData(previously);
     }
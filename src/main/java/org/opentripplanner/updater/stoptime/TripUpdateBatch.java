@@ -0,0 +1,111 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.updater.stoptime;
+
+import java.util.List;
+
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.trippattern.TripTimes;
+
+import com.google.common.hash.HashCode;
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
+import com.google.transit.realtime.GtfsRealtime.TripUpdate;
+
+/**
+ * One message of GTFS-RT trip updates for a feed, matched to trips and validated, with the new TripTimes for
+ * scheduled trips already computed. Making a batch only reads the graph, so
+ * {@link TimetableSnapshotSource#prepareTripUpdates(List, String)} can do it in parallel and outside the buffer lock,
+ * e.g. on the polling thread of an updater. Only applying the batch to the buffer needs to happen on the graph writer
+ * thread.
+ */
+public class TripUpdateBatch {
+
+    /** A single trip update that is ready to be applied to the buffer. */
+    static class PreparedUpdate {
+
+        final TripUpdate tripUpdate;
+
+        final ServiceDate serviceDate;
+
+        final TripDescriptor.ScheduleRelationship scheduleRelationship;
+
+        /** For scheduled trips, the pattern the trip belongs to. */
+        TripPattern pattern;
+
+        /** For scheduled trips, the updated trip times, or null if they could not be computed. */
+        TripTimes updatedTripTimes;
+
+        /** The trip this update is for, or null if it has no trip id. */
+        TripUpdateFingerprints.Key key;
+
+        /** The fingerprint of the trip update, see {@link TripUpdateFingerprints#fingerprint}. */
+        HashCode fingerprint;
+
+        /**
+         * True if this update was the same as the one already applied for its trip when it was
+         * prepared, in which case its trip times were not computed.
+         */
+        boolean unchanged;
+
+        PreparedUpdate(TripUpdate tripUpdate, ServiceDate serviceDate,
+                TripDescriptor.ScheduleRelationship scheduleRelationship) {
+            this.tripUpdate = tripUpdate;
+            this.serviceDate = serviceDate;
+            this.scheduleRelationship = scheduleRelationship;
+        }
+    }
+
+    final String feedId;
+
+    /** The updates that passed preparation, in the order they appeared in the message. */
+    final List<PreparedUpdate> updates;
+
+    /** Number of updates in the message that were rejected during preparation. */
+    final int rejected;
+
+    /** False for the later parts of a message that is read and applied in several batches. */
+    final boolean firstPart;
+
+    /** False for all but the last part of a message that is read and applied in several batches. */
+    final boolean lastPart;
+
+    /** When preparation started, according to System.nanoTime(). */
+    final long startTime;
+
+    /** Time taken to prepare the batch in nanoseconds. */
+    final long prepareNanos;
+
+    TripUpdateBatch(String feedId, List<PreparedUpdate> updates, int rejected, boolean firstPart, boolean lastPart,
+            long startTime, long prepareNanos) {
+        this.feedId = feedId;
+        this.updates = updates;
+        this.rejected = rejected;
+        this.firstPart = firstPart;
+        this.lastPart = lastPart;
+        this.startTime = startTime;
+        this.prepareNanos = prepareNanos;
+    }
+
+    public String getFeedId() {
+        return feedId;
+    }
+
+    /** @return the number of trip updates in the message, or part of a message, this batch was made from. */
+    public int size() {
+        return updates.size() + rejected;
+    }
+
+}
@@ -0,0 +1,139 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.updater.stoptime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
+import com.google.transit.realtime.GtfsRealtime.TripUpdate;
+
+/**
+ * Remembers a fingerprint of the last trip update successfully applied for each trip and service
+ * day, so that trip updates which have not changed since the last message can be skipped. Polled
+ * feeds resend every trip on every poll, even though most predictions are the same as last time.
+ *
+ * Fingerprints are read while preparing updates on updater threads and changed while applying
+ * them on the graph writer thread.
+ */
+public class TripUpdateFingerprints {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    /** Identifies the trip a trip update is for. */
+    static class Key {
+
+        final String feedId;
+
+        final String tripId;
+
+        final ServiceDate serviceDate;
+
+        Key(String feedId, String tripId, ServiceDate serviceDate) {
+            this.feedId = feedId;
+            this.tripId = tripId;
+            this.serviceDate = serviceDate;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(feedId, tripId, serviceDate);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return Objects.equals(tripId, other.tripId) && Objects.equals(serviceDate, other.serviceDate)
+                    && Objects.equals(feedId, other.feedId);
+        }
+    }
+
+    /** What was applied for a trip, with enough information to undo it. */
+    static class Record {
+
+        final HashCode fingerprint;
+
+        final TripDescriptor.ScheduleRelationship scheduleRelationship;
+
+        Record(HashCode fingerprint, TripDescriptor.ScheduleRelationship scheduleRelationship) {
+            this.fingerprint = fingerprint;
+            this.scheduleRelationship = scheduleRelationship;
+        }
+    }
+
+    private final Map<Key, Record> records = new ConcurrentHashMap<>();
+
+    /**
+     * Compute a fingerprint of the content of a trip update: the full 128 bits of its murmur3 hash,
+     * so that distinct updates practically never collide. The timestamp is left out, as some
+     * producers set it to the time of the message even when nothing else has changed.
+     */
+    static HashCode fingerprint(TripUpdate tripUpdate) {
+        if (tripUpdate.hasTimestamp()) {
+            tripUpdate = tripUpdate.toBuilder().clearTimestamp().build();
+        }
+        return HASH_FUNCTION.hashBytes(tripUpdate.toByteArray());
+    }
+
+    Record get(Key key) {
+        return records.get(key);
+    }
+
+    void put(Key key, Record record) {
+        records.put(key, record);
+    }
+
+    void remove(Key key) {
+        records.remove(key);
+    }
+
+    /** @return the trips for which a trip update of the given feed is currently applied. */
+    List<Key> getKeys(String feedId) {
+        List<Key> keys = new ArrayList<>();
+        for (Key key : records.keySet()) {
+            if (feedId.equals(key.feedId)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /** Forget all fingerprints for a feed, e.g. because its updates were cleared from the buffer. */
+    void clear(String feedId) {
+        records.keySet().removeIf(key -> feedId.equals(key.feedId));
+    }
+
+    /** Forget the fingerprints for service dates on or before the one supplied. */
+    void purge(ServiceDate serviceDate) {
+        records.keySet().removeIf(key -> serviceDate.compareTo(key.serviceDate) >= 0);
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+}
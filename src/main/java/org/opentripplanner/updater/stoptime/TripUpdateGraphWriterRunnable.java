@@ -38,6 +38,11 @@ public class TripUpdateGraphWriterRunnable implements GraphWriterRunnable {
      */
     private final List<TripUpdate> updates;
 
+    /**
+     * The updates to apply, already prepared by the updater. If this is set, the list is not used.
+     */
+    private final TripUpdateBatch batch;
+
     private final String feedId;
 
     public TripUpdateGraphWriterRunnable(final boolean fullDataset, final List<TripUpdate> updates, final String feedId) {
@@ -48,18 +53,34 @@ public class TripUpdateGraphWriterRunnable implements GraphWriterRunnable {
         // Set fields
         this.fullDataset = fullDataset;
         this.updates = updates;
+        this.batch = null;
         this.feedId = feedId;
     }
 
+    public TripUpdateGraphWriterRunnable(final boolean fullDataset, final TripUpdateBatch batch) {
+        // Preconditions
+        Preconditions.checkNotNull(batch);
+
+        // Set fields
+        this.fullDataset = fullDataset;
+        this.updates = null;
+        this.batch = batch;
+        this.feedId = batch.getFeedId();
+    }
+
     @Override
     public void run(Graph graph) {
         // Apply updates to graph using realtime snapshot source
         TimetableSnapshotSource snapshotSource = graph.timetableSnapshotSource;
         if (snapshotSource != null) {
-            snapshotSource.applyTripUpdates(graph, fullDataset, updates, feedId);
+            if (batch != null) {
+                snapshotSource.applyTripUpdates(graph, fullDataset, batch);
+            } else {
+                snapshotSource.applyTripUpdates(graph, fullDataset, updates, feedId);
+            }
         } else {
             LOG.error("Could not find realtime data snapshot source in graph."
-                    + " The following updates are not applied: {}", updates);
+                    + " The updates for feed {} are not applied.", feedId);
         }
     }
 }
@@ -0,0 +1,143 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.updater.stoptime;
+
+/**
+ * Statistics on the trip updates applied for one realtime feed. The figures for the last message show whether the
+ * graph writer is keeping up with the feed: the latency runs from when the message started being prepared to when
+ * its updates were in the buffer, so it includes any time spent waiting for the graph writer thread.
+ */
+public class TripUpdateMetrics {
+
+    private final String feedId;
+
+    private long messages = 0;
+
+    private long appliedUpdates = 0;
+
+    private long rejectedUpdates = 0;
+
+    private long unchangedUpdates = 0;
+
+    private int lastMessageSize = 0;
+
+    private long lastPrepareNanos = 0;
+
+    private long lastApplyNanos = 0;
+
+    private long lastLatencyNanos = 0;
+
+    private long lastUpdateTime = 0;
+
+    /* Totals for the message currently being applied, which may arrive in several parts. */
+
+    private int currentMessageSize = 0;
+
+    private long currentPrepareNanos = 0;
+
+    private long currentApplyNanos = 0;
+
+    private long currentStartTime = 0;
+
+    public TripUpdateMetrics(String feedId) {
+        this.feedId = feedId;
+    }
+
+    /**
+     * Record that a message, or one part of a message, has been applied.
+     * @param startTime when preparation of this part started, according to System.nanoTime()
+     */
+    synchronized void record(int size, int applied, int rejected, int unchanged, long prepareNanos,
+            long applyNanos, long startTime, boolean firstPart, boolean lastPart) {
+        appliedUpdates += applied;
+        rejectedUpdates += rejected;
+        unchangedUpdates += unchanged;
+        if (firstPart) {
+            currentMessageSize = 0;
+            currentPrepareNanos = 0;
+            currentApplyNanos = 0;
+            currentStartTime = startTime;
+        }
+        currentMessageSize += size;
+        currentPrepareNanos += prepareNanos;
+        currentApplyNanos += applyNanos;
+        if (lastPart) {
+            messages += 1;
+            lastMessageSize = currentMessageSize;
+            lastPrepareNanos = currentPrepareNanos;
+            lastApplyNanos = currentApplyNanos;
+            lastLatencyNanos = System.nanoTime() - currentStartTime;
+            lastUpdateTime = System.currentTimeMillis();
+        }
+    }
+
+    public String getFeedId() {
+        return feedId;
+    }
+
+    public synchronized long getMessages() {
+        return messages;
+    }
+
+    public synchronized long getAppliedUpdates() {
+        return appliedUpdates;
+    }
+
+    public synchronized long getRejectedUpdates() {
+        return rejectedUpdates;
+    }
+
+    /** @return the number of updates skipped because they were the same as the last update for their trip. */
+    public synchronized long getUnchangedUpdates() {
+        return unchangedUpdates;
+    }
+
+    public synchronized int getLastMessageSize() {
+        return lastMessageSize;
+    }
+
+    public synchronized double getLastPrepareMillis() {
+        return lastPrepareNanos / 1e6;
+    }
+
+    /** @return the time the last message held the buffer lock, including the snapshot commit. */
+    public synchronized double getLastApplyMillis() {
+        return lastApplyNanos / 1e6;
+    }
+
+    public synchronized double getLastLatencyMillis() {
+        return lastLatencyNanos / 1e6;
+    }
+
+    /** @return the rate at which the last message was processed, not counting time spent waiting. */
+    public synchronized double getUpdatesPerSecond() {
+        long nanos = lastPrepareNanos + lastApplyNanos;
+        return nanos == 0 ? 0 : lastMessageSize * 1e9 / nanos;
+    }
+
+    /** @return when the last message was applied, in milliseconds since the epoch. */
+    public synchronized long getLastUpdateTime() {
+        return lastUpdateTime;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("feed %s: %d updates in %.1f ms (%.1f ms latency, %.0f updates/sec), "
+                + "%d applied, %d unchanged and %d rejected in total",
+                feedId, lastMessageSize, getLastPrepareMillis() + getLastApplyMillis(), getLastLatencyMillis(),
+                getUpdatesPerSecond(), appliedUpdates, unchangedUpdates, rejectedUpdates);
+    }
+
+}
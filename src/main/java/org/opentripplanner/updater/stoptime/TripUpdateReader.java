@@ -0,0 +1,41 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.updater.stoptime;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import com.google.transit.realtime.GtfsRealtime.TripUpdate;
+
+/**
+ * Reads the trip updates of one realtime message a part at a time, so that a large message never
+ * has to be held in memory all at once.
+ */
+public interface TripUpdateReader extends Closeable {
+
+    /**
+     * @return up to maxUpdates more trip updates from the message, or null if the end of the
+     *         message has been reached
+     */
+    public List<TripUpdate> read(int maxUpdates) throws IOException;
+
+    /**
+     * @return true iff the message represents all updates that are active right now, i.e. all
+     *         previous updates should be disregarded. This is known once the first part has been read.
+     */
+    public boolean isFullDataset();
+
+}
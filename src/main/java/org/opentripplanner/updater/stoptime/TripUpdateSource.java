@@ -32,4 +32,42 @@ public interface TripUpdateSource {
     public boolean getFullDatasetValueOfLastUpdates();
 
     public String getFeedId();
+
+    /**
+     * Start reading one message, whose trip updates can then be read a part at a time. Sources of
+     * large messages should read them from the network as the parts are requested. By default the
+     * whole message is read with {@link #getUpdates()}.
+     *
+     * @return a reader for the next message, or null if an exception occurred
+     */
+    public default TripUpdateReader openUpdates() {
+        final List<TripUpdate> updates = getUpdates();
+        if (updates == null) {
+            return null;
+        }
+        final boolean fullDataset = getFullDatasetValueOfLastUpdates();
+        return new TripUpdateReader() {
+            private int next = 0;
+
+            @Override
+            public List<TripUpdate> read(int maxUpdates) {
+                if (next >= updates.size()) {
+                    return null;
+                }
+                int end = (int) Math.min((long) next + maxUpdates, updates.size());
+                List<TripUpdate> part = updates.subList(next, end);
+                next = end;
+                return part;
+            }
+
+            @Override
+            public boolean isFullDataset() {
+                return fullDataset;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
 }
@@ -1,8 +1,6 @@
 package org.opentripplanner.updater.street_notes;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.SetMultimap;
 import com.vividsolutions.jts.geom.Geometry;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
@@ -22,6 +20,7 @@ import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.services.notes.DynamicStreetNotesSource;
 import org.opentripplanner.routing.services.notes.MatcherAndAlert;
 import org.opentripplanner.routing.services.notes.NoteMatcher;
+import org.opentripplanner.routing.services.notes.StreetNotesIndex;
 import org.opentripplanner.routing.services.notes.StreetNotesService;
 import org.opentripplanner.updater.GraphUpdaterManager;
 import org.opentripplanner.updater.GraphWriterRunnable;
@@ -53,7 +52,7 @@ public abstract class WFSNotePollingGraphUpdater extends PollingGraphUpdater {
 
     private GraphUpdaterManager updaterManager;
 
-    private SetMultimap<Edge, MatcherAndAlert> notesForEdge;
+    private StreetNotesIndex.Builder notesForEdge;
 
     /**
      * Set of unique matchers, kept during building phase, used for interning (lots of note/matchers
@@ -128,7 +127,7 @@ public abstract class WFSNotePollingGraphUpdater extends PollingGraphUpdater {
     protected void runPolling() throws IOException{
         LOG.info("Run WFS polling updater with hashcode: {}", this.hashCode());
 
-        notesForEdge = HashMultimap.create();
+        notesForEdge = new StreetNotesIndex.Builder();
         uniqueMatchers = new HashMap<>();
 
         FeatureIterator<SimpleFeature> features = featureSource.getFeatures(query).features();
@@ -149,7 +148,7 @@ public abstract class WFSNotePollingGraphUpdater extends PollingGraphUpdater {
                 }
             }
         }
-        updaterManager.execute(new WFSGraphWriter());
+        updaterManager.execute(new WFSGraphWriter(notesForEdge.build()));
     }
 
     /**
@@ -162,8 +161,14 @@ public abstract class WFSNotePollingGraphUpdater extends PollingGraphUpdater {
      * Changes the note source to use the newly generated notes
      */
     private class WFSGraphWriter implements GraphWriterRunnable {
+        private final StreetNotesIndex notes;
+
+        WFSGraphWriter(StreetNotesIndex notes) {
+            this.notes = notes;
+        }
+
         public void run(Graph graph) {
-            notesSource.setNotes(notesForEdge);
+            notesSource.setNotes(notes);
         }
     }
 
@@ -174,7 +179,7 @@ public abstract class WFSNotePollingGraphUpdater extends PollingGraphUpdater {
     private void addNote(Edge edge, Alert note, NoteMatcher matcher) {
         if (LOG.isDebugEnabled())
             LOG.debug("Adding note {} to {} with matcher {}", note, edge, matcher);
-        notesForEdge.put(edge, buildMatcherAndAlert(matcher, note));
+        notesForEdge.addNote(edge, buildMatcherAndAlert(matcher, note));
     }
 
     /**
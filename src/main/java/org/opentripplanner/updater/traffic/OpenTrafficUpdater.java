@@ -74,8 +74,12 @@ public class OpenTrafficUpdater extends PollingGraphUpdater {
 
         LOG.info("Indexed {} speed samples", speedIndex.size());
 
+        // Match the samples to edges here too, so the graph writer only has to swap in the finished snapshot.
+        StreetSpeedSnapshot snapshot = new StreetSpeedSnapshot(speedIndex, graph.getEdges());
+        LOG.info("Matched speed samples to {} street edges", snapshot.size());
+
         graphUpdaterManager.execute(graph -> {
-            graph.streetSpeedSource.setSnapshot(new StreetSpeedSnapshot(speedIndex));
+            graph.streetSpeedSource.setSnapshot(snapshot);
         });
     }
 
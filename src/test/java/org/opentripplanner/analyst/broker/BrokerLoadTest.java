@@ -0,0 +1,170 @@
+package org.opentripplanner.analyst.broker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.opentripplanner.analyst.cluster.AnalystWorker;
+import org.opentripplanner.analyst.cluster.JobSimulator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is not an automatic unit test. It is a load test that must be started manually. It starts a broker on a local
+ * port, starts thousands of simulated workers that long-poll the broker over HTTP and immediately report each task
+ * they receive as completed, then enqueues several large jobs on several graphs and measures how fast the broker gets
+ * through them. The simulated workers do no computation, so the throughput is that of the broker itself.
+ *
+ * Sizes can be set with system properties, e.g. -Dworkers=5000 -Dgraphs=8 -Djobs=16 -Dtasks=50000
+ */
+public class BrokerLoadTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BrokerLoadTest.class);
+
+    static final int N_WORKERS = Integer.getInteger("workers", 2000);
+    static final int N_GRAPHS = Integer.getInteger("graphs", 4);
+    static final int N_JOBS = Integer.getInteger("jobs", 8);
+    static final int N_TASKS_PER_JOB = Integer.getInteger("tasks", 20000);
+    static final int PORT = Integer.getInteger("port", 9091);
+
+    static final String BASE_URL = "http://localhost:" + PORT;
+
+    static final ObjectMapper mapper = new ObjectMapper();
+
+    static final AtomicBoolean done = new AtomicBoolean(false);
+    static final AtomicLong nPolls = new AtomicLong();
+    static final AtomicLong nTasksReceived = new AtomicLong();
+    static final AtomicLong pollNanos = new AtomicLong();
+
+    public static void main(String[] params) throws Exception {
+
+        // Start a broker in a new thread. With max-workers set to zero it will never try to start any EC2 workers.
+        Properties brokerConfig = new Properties();
+        brokerConfig.setProperty("graphs-bucket", "FAKE");
+        brokerConfig.setProperty("pointsets-bucket", "FAKE");
+        brokerConfig.setProperty("work-offline", "false");
+        brokerConfig.setProperty("max-workers", "0");
+        brokerConfig.setProperty("port", Integer.toString(PORT));
+        BrokerMain brokerMain = new BrokerMain(brokerConfig);
+        new Thread(brokerMain).start();
+        while (brokerMain.broker == null) Thread.sleep(100);
+        Thread.sleep(1000);
+
+        // Start the simulated workers, spread evenly over the graphs.
+        ExecutorService workers = Executors.newFixedThreadPool(N_WORKERS);
+        for (int i = 0; i < N_WORKERS; i++) {
+            String graphId = "GRAPH" + (i % N_GRAPHS);
+            String workerId = "worker" + i;
+            workers.execute(() -> simulateWorker(graphId, workerId));
+        }
+        Thread.sleep(2000);
+
+        // Feed some work to the broker.
+        long start = System.currentTimeMillis();
+        List<String> jobIds = new ArrayList<>();
+        for (int j = 0; j < N_JOBS; j++) {
+            String jobId = JobSimulator.compactUUID();
+            jobIds.add(jobId);
+            enqueueJob(jobId, "GRAPH" + (j % N_GRAPHS));
+        }
+        long enqueued = System.currentTimeMillis();
+        LOG.info("Enqueued {} tasks in {} ms.", N_JOBS * N_TASKS_PER_JOB, enqueued - start);
+
+        // Wait for all tasks to be marked finished, recording when each job finishes.
+        long[] finished = new long[N_JOBS];
+        int nFinished = 0;
+        while (nFinished < N_JOBS) {
+            Thread.sleep(100);
+            for (int j = 0; j < N_JOBS; j++) {
+                if (finished[j] == 0 && brokerMain.broker.findJob(jobIds.get(j)).isComplete()) {
+                    finished[j] = System.currentTimeMillis() - start;
+                    nFinished++;
+                }
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        done.set(true);
+
+        LOG.info("{} workers on {} graphs completed {} jobs of {} tasks in {} ms, {} tasks per second.",
+                N_WORKERS, N_GRAPHS, N_JOBS, N_TASKS_PER_JOB, elapsed, N_JOBS * N_TASKS_PER_JOB * 1000L / elapsed);
+        LOG.info("{} polls, {} tasks received (including redeliveries), mean poll-to-delivery time {} ms.",
+                nPolls.get(), nTasksReceived.get(), pollNanos.get() / Math.max(1, nPolls.get()) / 1000000);
+        for (int j = 0; j < N_JOBS; j++) {
+            LOG.info("Job {} on graph {} finished after {} ms.", j, "GRAPH" + (j % N_GRAPHS), finished[j]);
+        }
+        workers.shutdownNow();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+        System.exit(0);
+    }
+
+    /** Enqueue a job in batches, as the analyst server does. */
+    static void enqueueJob(String jobId, String graphId) throws IOException {
+        final int batchSize = 1000;
+        for (int first = 0; first < N_TASKS_PER_JOB; first += batchSize) {
+            ArrayNode tasks = mapper.createArrayNode();
+            for (int i = first; i < Math.min(first + batchSize, N_TASKS_PER_JOB); i++) {
+                ObjectNode task = tasks.addObject();
+                task.put("jobId", jobId);
+                task.put("graphId", graphId);
+                task.put("id", Integer.toString(i));
+            }
+            HttpURLConnection conn = (HttpURLConnection) new URL(BASE_URL + "/enqueue/jobs").openConnection();
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            try (OutputStream out = conn.getOutputStream()) {
+                mapper.writeValue(out, tasks);
+            }
+            if (conn.getResponseCode() != 202) {
+                throw new IOException("Enqueue failed with status " + conn.getResponseCode());
+            }
+            conn.getInputStream().close();
+        }
+    }
+
+    /** Long-poll the broker for tasks and mark each one completed as soon as it arrives. */
+    static void simulateWorker(String graphId, String workerId) {
+        while (!done.get()) {
+            try {
+                long pollStart = System.nanoTime();
+                HttpURLConnection conn = (HttpURLConnection) new URL(BASE_URL + "/dequeue/" + graphId).openConnection();
+                conn.setRequestMethod("POST");
+                conn.setRequestProperty(AnalystWorker.WORKER_ID_HEADER, workerId);
+                conn.setReadTimeout(30000);
+                JsonNode tasks;
+                try (InputStream in = conn.getInputStream()) {
+                    tasks = mapper.readTree(in);
+                }
+                nPolls.incrementAndGet();
+                pollNanos.addAndGet(System.nanoTime() - pollStart);
+                for (JsonNode task : tasks) {
+                    nTasksReceived.incrementAndGet();
+                    HttpURLConnection del = (HttpURLConnection) new URL(BASE_URL + "/tasks/" + task.get("taskId").asInt())
+                            .openConnection();
+                    del.setRequestMethod("DELETE");
+                    del.getResponseCode();
+                    del.getInputStream().close();
+                }
+            } catch (SocketTimeoutException e) {
+                // No work arrived, poll again like a real worker would.
+            } catch (IOException e) {
+                if (!done.get()) LOG.warn("Simulated worker {} failed to reach the broker: {}", workerId, e.toString());
+            }
+        }
+    }
+
+}
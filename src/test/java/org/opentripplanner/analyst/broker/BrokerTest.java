@@ -0,0 +1,213 @@
+package org.opentripplanner.analyst.broker;
+
+import org.glassfish.grizzly.http.server.Response;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opentripplanner.analyst.cluster.AnalystClusterRequest;
+import org.opentripplanner.analyst.cluster.AnalystWorker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks how the broker shards jobs and workers by graph and assigns tasks to workers, with mock worker connections
+ * and without starting the task pump thread. See BrokerLoadTest for a manually-run test over HTTP.
+ */
+public class BrokerTest {
+
+    private static Broker broker (boolean workOffline) {
+        Properties config = new Properties();
+        config.setProperty("graphs-bucket", "FAKE");
+        config.setProperty("pointsets-bucket", "FAKE");
+        config.setProperty("work-offline", Boolean.toString(workOffline));
+        // never start any EC2 workers
+        config.setProperty("max-workers", "0");
+        return new Broker(config, "localhost", 9001);
+    }
+
+    private static List<AnalystClusterRequest> tasks (String jobId, String graphId, int n) {
+        List<AnalystClusterRequest> tasks = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            AnalystClusterRequest task = new AnalystClusterRequest();
+            task.jobId = jobId;
+            task.graphId = graphId;
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    /** A suspended long-poll connection from a worker. */
+    private static Response consumer (String workerId, boolean open) {
+        Response response = mock(Response.class, RETURNS_DEEP_STUBS);
+        when(response.getRequest().getHeader(AnalystWorker.WORKER_ID_HEADER)).thenReturn(workerId);
+        when(response.getRequest().getRequest().getConnection().isOpen()).thenReturn(open);
+        return response;
+    }
+
+    @Test
+    public void testShardingByGraph () {
+        Broker broker = broker(false);
+        broker.enqueueTasks(tasks("job1", "graph1", 20));
+        broker.enqueueTasks(tasks("job2", "graph2", 20));
+        Job job1 = broker.findJob("job1");
+        Job job2 = broker.findJob("job2");
+        assertSame(job1, broker.getShard("graph1").jobs.peekFirst());
+        assertSame(job2, broker.getShard("graph2").jobs.peekFirst());
+        assertEquals(20, broker.getShard("graph1").nUndeliveredTasks.get());
+
+        // a worker only gets tasks on its own graph, at most MAX_TASKS_PER_WORKER at a time
+        broker.registerSuspendedResponse("graph2", consumer("worker1", true));
+        assertEquals(0, job1.getInvisibleTaskCount());
+        assertEquals(broker.MAX_TASKS_PER_WORKER, job2.getInvisibleTaskCount());
+        assertEquals(20 - broker.MAX_TASKS_PER_WORKER, broker.getShard("graph2").nUndeliveredTasks.get());
+
+        // a worker on a graph without tasks waits
+        broker.registerSuspendedResponse("graph3", consumer("worker2", true));
+        assertEquals(1, broker.getShard("graph3").consumers.size());
+        assertTrue(broker.getShard("graph2").consumers.isEmpty());
+    }
+
+    @Test
+    public void testOfflineSingleShard () {
+        Broker broker = broker(true);
+        broker.enqueueTasks(tasks("job1", "graph1", 5));
+        // graph affinity is ignored offline, everything is in one shard
+        assertSame(broker.getShard("graph1"), broker.getShard("graph2"));
+        broker.registerSuspendedResponse("graph2", consumer("worker1", true));
+        assertEquals(5, broker.findJob("job1").getInvisibleTaskCount());
+    }
+
+    @Test
+    public void testRoundRobinBetweenJobs () {
+        Broker broker = broker(false);
+        broker.enqueueTasks(tasks("job1", "graph1", 100));
+        broker.enqueueTasks(tasks("job2", "graph1", 100));
+        Job job1 = broker.findJob("job1");
+        Job job2 = broker.findJob("job2");
+        int n = broker.MAX_TASKS_PER_WORKER;
+        // each worker gets tasks from a single job, taking turns between the jobs
+        broker.registerSuspendedResponse("graph1", consumer("worker1", true));
+        assertEquals(n, job1.getInvisibleTaskCount());
+        assertEquals(0, job2.getInvisibleTaskCount());
+        broker.registerSuspendedResponse("graph1", consumer("worker2", true));
+        assertEquals(n, job2.getInvisibleTaskCount());
+        broker.registerSuspendedResponse("graph1", consumer("worker3", true));
+        assertEquals(2 * n, job1.getInvisibleTaskCount());
+        assertEquals(n, job2.getInvisibleTaskCount());
+    }
+
+    @Test
+    public void testTaskIdRanges () {
+        Broker broker = broker(false);
+        List<AnalystClusterRequest> first = tasks("job1", "graph1", 3);
+        List<AnalystClusterRequest> other = tasks("job2", "graph1", 3);
+        List<AnalystClusterRequest> second = tasks("job1", "graph1", 3);
+        broker.enqueueTasks(first);
+        broker.enqueueTasks(other);
+        broker.enqueueTasks(second);
+        Job job1 = broker.findJob("job1");
+        Job job2 = broker.findJob("job2");
+        // a job can own several ranges of task IDs, and each task is found in the range it was enqueued in
+        for (AnalystClusterRequest task : first) assertSame(job1, broker.getJobForTask(task.taskId));
+        for (AnalystClusterRequest task : other) assertSame(job2, broker.getJobForTask(task.taskId));
+        for (AnalystClusterRequest task : second) assertSame(job1, broker.getJobForTask(task.taskId));
+        assertNull(broker.getJobForTask(second.get(2).taskId + 1));
+        assertFalse(broker.markTaskCompleted(-1));
+
+        // only delivered tasks can be completed
+        broker.registerSuspendedResponse("graph1", consumer("worker1", true));
+        assertEquals(6, job1.getInvisibleTaskCount());
+        for (AnalystClusterRequest task : first) assertTrue(broker.markTaskCompleted(task.taskId));
+        for (AnalystClusterRequest task : second) assertTrue(broker.markTaskCompleted(task.taskId));
+        assertEquals(6, job1.getCompletedTaskCount());
+        assertTrue(job1.isComplete());
+        assertFalse(job2.isComplete());
+    }
+
+    @Test
+    public void testFailedDelivery () {
+        Broker broker = broker(false);
+        broker.enqueueTasks(tasks("job1", "graph1", 5));
+        Job job = broker.findJob("job1");
+        // the tasks go back in the queue when the worker has gone away, and the next worker gets them
+        broker.registerSuspendedResponse("graph1", consumer("worker1", false));
+        assertEquals(0, job.getInvisibleTaskCount());
+        assertEquals(5, job.getAwaitingDeliveryCount());
+        assertEquals(5, broker.getShard("graph1").nUndeliveredTasks.get());
+        assertTrue(broker.getShard("graph1").consumers.isEmpty());
+        broker.registerSuspendedResponse("graph1", consumer("worker2", true));
+        assertEquals(5, job.getInvisibleTaskCount());
+        assertEquals(0, broker.getShard("graph1").nUndeliveredTasks.get());
+    }
+
+    @Test
+    public void testCompletionBeforeResume () {
+        Broker broker = broker(false);
+        final List<AnalystClusterRequest> tasks = tasks("job1", "graph1", 5);
+        broker.enqueueTasks(tasks);
+        Job job = broker.findJob("job1");
+        // a fast worker reports its tasks completed before the delivering thread is done with the response
+        Response consumer = consumer("worker1", true);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer (InvocationOnMock invocation) {
+                for (AnalystClusterRequest task : tasks) broker.markTaskCompleted(task.taskId);
+                return null;
+            }
+        }).when(consumer).resume();
+        broker.registerSuspendedResponse("graph1", consumer);
+        assertEquals(5, job.getCompletedTaskCount());
+        assertEquals(0, job.getInvisibleTaskCount());
+        assertTrue(job.isComplete());
+    }
+
+    @Test
+    public void testWriteError () throws IOException {
+        Broker broker = broker(false);
+        broker.enqueueTasks(tasks("job1", "graph1", 5));
+        Job job = broker.findJob("job1");
+        // the connection looks open but breaks while the tasks are written
+        Response consumer = consumer("worker1", true);
+        OutputStream out = consumer.getOutputStream();
+        doThrow(new IOException("broken pipe")).when(out).write(any(byte[].class), anyInt(), anyInt());
+        doThrow(new IOException("broken pipe")).when(out).close();
+        broker.registerSuspendedResponse("graph1", consumer);
+        assertEquals(0, job.getInvisibleTaskCount());
+        assertEquals(5, job.getAwaitingDeliveryCount());
+        assertEquals(5, broker.getShard("graph1").nUndeliveredTasks.get());
+        broker.registerSuspendedResponse("graph1", consumer("worker2", true));
+        assertEquals(5, job.getInvisibleTaskCount());
+    }
+
+    @Test
+    public void testDeleteJob () {
+        Broker broker = broker(false);
+        broker.enqueueTasks(tasks("job1", "graph1", 5));
+        assertTrue(broker.deleteJob("job1"));
+        assertFalse(broker.deleteJob("job1"));
+        assertNull(broker.findJob("job1"));
+        assertEquals(0, broker.getShard("graph1").nUndeliveredTasks.get());
+        // a worker arriving after the deletion waits rather than getting the tasks of the deleted job
+        broker.registerSuspendedResponse("graph1", consumer("worker1", true));
+        assertEquals(1, broker.getShard("graph1").consumers.size());
+        assertNull(broker.getShard("graph1").nextJobWithTasks());
+    }
+
+}
@@ -0,0 +1,89 @@
+package org.opentripplanner.analyst.cluster;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import org.junit.Test;
+import org.opentripplanner.analyst.Histogram;
+import org.opentripplanner.analyst.ResultSet;
+import org.opentripplanner.analyst.core.IsochroneData;
+import org.opentripplanner.common.geometry.GeometryUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResultEnvelopeWriterTest {
+
+    @Test
+    public void testRoundTrip () throws Exception {
+        ResultEnvelope envelope = new ResultEnvelope();
+        envelope.profile = true;
+        envelope.jobId = "job";
+        envelope.id = "origin 1";
+        envelope.destinationPointsetId = null;
+
+        ResultSet best = new ResultSet();
+        best.id = "best";
+        best.times = new int[] { 0, 60, 3600, Integer.MAX_VALUE, 120, Integer.MAX_VALUE };
+        Histogram jobs = new Histogram();
+        jobs.counts = new int[] { 1, 5, 20, 18 };
+        jobs.sums = new int[] { 100, 2000000000, -5, 0 };
+        best.histograms.put("jobs", jobs);
+        Histogram workers = new Histogram();
+        workers.counts = new int[] { 3 };
+        workers.sums = null;
+        best.histograms.put("workers", workers);
+        envelope.bestCase = best;
+
+        ResultSet worst = new ResultSet();
+        Geometry square = GeometryUtils.getGeometryFactory().createPolygon(new Coordinate[] {
+                new Coordinate(0, 0), new Coordinate(0, 1), new Coordinate(1, 1), new Coordinate(0, 0) });
+        worst.isochrones = new IsochroneData[] { new IsochroneData(300, square), new IsochroneData(600, null) };
+        envelope.worstCase = worst;
+
+        ResultEnvelope second = new ResultEnvelope();
+        second.id = "origin 2";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ResultEnvelopeWriter writer = new ResultEnvelopeWriter(out)) {
+            writer.write(envelope);
+            writer.write(second);
+        }
+
+        ResultEnvelopeReader reader = new ResultEnvelopeReader(new ByteArrayInputStream(out.toByteArray()));
+        ResultEnvelope read = reader.read();
+        assertTrue(read.profile);
+        assertEquals("job", read.jobId);
+        assertEquals("origin 1", read.id);
+        assertNull(read.destinationPointsetId);
+        assertNull(read.avgCase);
+        assertNull(read.pointEstimate);
+
+        assertEquals("best", read.bestCase.id);
+        assertArrayEquals(best.times, read.bestCase.times);
+        assertEquals(2, read.bestCase.histograms.size());
+        assertArrayEquals(jobs.counts, read.bestCase.histograms.get("jobs").counts);
+        assertArrayEquals(jobs.sums, read.bestCase.histograms.get("jobs").sums);
+        assertArrayEquals(workers.counts, read.bestCase.histograms.get("workers").counts);
+        assertNull(read.bestCase.histograms.get("workers").sums);
+        assertNull(read.bestCase.isochrones);
+
+        assertNull(read.worstCase.times);
+        assertEquals(2, read.worstCase.isochrones.length);
+        assertEquals(300, read.worstCase.isochrones[0].cutoffSec);
+        assertTrue(square.equalsExact(read.worstCase.isochrones[0].geometry));
+        assertNull(read.worstCase.isochrones[1].geometry);
+
+        ResultEnvelope readSecond = reader.read();
+        assertEquals("origin 2", readSecond.id);
+        assertFalse(readSecond.profile);
+        assertNull(readSecond.bestCase);
+        assertNull(reader.read());
+    }
+
+}
@@ -0,0 +1,136 @@
+package org.opentripplanner.analyst.request;
+
+import junit.framework.TestCase;
+import org.opentripplanner.analyst.core.SlippyTile;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+public class TileImageCacheTest extends TestCase {
+
+    private static TileImageCache.Key key(String layer, int x) {
+        return new TileImageCache.Key(layer, "v1", new TileRequest(SlippyTile.tile2Envelope(x, 0, 10), 256, 256));
+    }
+
+    /** Concurrent requests for a tile being rendered share the rendering, later ones get the cached image. */
+    public void testCoalescing() throws Exception {
+        TileImageCache cache = new TileImageCache(16 * 1024 * 1024, 2, 10, 5);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger renderings = new AtomicInteger();
+        CompletableFuture<BufferedImage>[] futures = new CompletableFuture[5];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = cache.get(key("a", 0), () -> {
+                renderings.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return new BufferedImage(256, 256, BufferedImage.TYPE_BYTE_GRAY);
+            });
+        }
+        release.countDown();
+        BufferedImage image = futures[0].get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<BufferedImage> future : futures) {
+            assertSame(image, future.get(10, TimeUnit.SECONDS));
+        }
+        assertSame(image, cache.get(key("a", 0), () -> null).get());
+        assertEquals(1, renderings.get());
+
+        // Another layer or version of the same tile is another image.
+        assertNotSame(image, cache.get(key("b", 0),
+                () -> new BufferedImage(256, 256, BufferedImage.TYPE_BYTE_GRAY)).get(10, TimeUnit.SECONDS));
+        cache.shutdown();
+    }
+
+    /** The cache holds as many images as fit in its size. */
+    public void testEviction() throws Exception {
+        TileImageCache cache = new TileImageCache(4 * 256 * 256, 1, 10, 5);
+        for (int x = 0; x < 20; x++) {
+            cache.get(key("a", x), () -> new BufferedImage(256, 256, BufferedImage.TYPE_BYTE_GRAY))
+                    .get(10, TimeUnit.SECONDS);
+        }
+        assertTrue(cache.size() <= 4);
+        cache.shutdown();
+    }
+
+    /** Tiles beyond the rendering queue are refused, and failed renderings are not cached. */
+    public void testRejection() throws Exception {
+        TileImageCache cache = new TileImageCache(16 * 1024 * 1024, 1, 1, 5);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<BufferedImage> running = cache.get(key("a", 0), () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            throw new IllegalStateException("rendering failed");
+        });
+        started.await(10, TimeUnit.SECONDS);
+        CompletableFuture<BufferedImage> queued = cache.get(key("a", 1), () -> null);
+        CompletableFuture<BufferedImage> refused = cache.get(key("a", 2), () -> null);
+        try {
+            refused.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        release.countDown();
+        try {
+            running.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        queued.get(10, TimeUnit.SECONDS);
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+        assertSame(image, cache.get(key("a", 0), () -> image).get(10, TimeUnit.SECONDS));
+        cache.shutdown();
+    }
+
+    /** A rendering is cancelled once all the callers waiting for it have cancelled their futures. */
+    public void testCancellation() throws Exception {
+        TileImageCache cache = new TileImageCache(16 * 1024 * 1024, 1, 10, 5);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch stopped = new CountDownLatch(1);
+        Function<BooleanSupplier, BufferedImage> renderer = cancelled -> {
+            started.countDown();
+            try {
+                while (!cancelled.getAsBoolean()) {
+                    Thread.sleep(1);
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            stopped.countDown();
+            throw new CancellationException();
+        };
+        CompletableFuture<BufferedImage> first = cache.get(key("a", 0), renderer);
+        CompletableFuture<BufferedImage> second = cache.get(key("a", 0), renderer);
+        assertNotSame(first, second);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // The rendering goes on as long as somebody waits for it.
+        first.cancel(false);
+        assertFalse(stopped.await(100, TimeUnit.MILLISECONDS));
+        assertFalse(second.isDone());
+        second.cancel(false);
+        assertTrue(stopped.await(10, TimeUnit.SECONDS));
+
+        // Later requests for the same tile start another rendering.
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+        assertSame(image, cache.get(key("a", 0), () -> image).get(10, TimeUnit.SECONDS));
+        cache.shutdown();
+    }
+
+}
@@ -148,6 +148,22 @@ public class GraphPathToTripPlanConverterTest {
         assertEquals("WALK", itinerary.legs.get(0).mode);
     }
 
+    /**
+     * Test that walk steps and leg geometries are left out when they are not requested.
+     */
+    @Test
+    public void testOptionalFieldsSkipped() {
+        GraphPath graphPath = buildPaths()[0];
+
+        Itinerary itinerary = GraphPathToTripPlanConverter.generateItinerary(graphPath, false, false, false, false, locale);
+
+        assertEquals(9, itinerary.legs.size());
+        for (Leg leg : itinerary.legs) {
+            assertNull(leg.walkSteps);
+            assertNull(leg.legGeometry);
+        }
+    }
+
     /**
      * Test that empty graph paths throw a TrivialPathException
      */
@@ -0,0 +1,92 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package org.opentripplanner.api.resource;
+
+import junit.framework.TestCase;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.edgetype.FreeEdge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+public class PlanCacheTest extends TestCase {
+
+    private Graph graph = new Graph();
+
+    private PlanCache cache = new PlanCache(graph, 100, 60, 60);
+
+    private RoutingRequest request(double fromLat, long dateTime, String modes) {
+        RoutingRequest request = new RoutingRequest(modes);
+        request.from = new GenericLocation(fromLat, 10.0);
+        request.to = new GenericLocation(60.2, 10.1);
+        request.dateTime = dateTime;
+        return request;
+    }
+
+    public void testNormalization() {
+        PlanCache.Key key = cache.key(request(60.1, 1201, "WALK,TRANSIT"));
+        // a few meters away, in the same minute
+        assertEquals(key, cache.key(request(60.10001, 1260, "WALK,TRANSIT")));
+        assertEquals(key.hashCode(), cache.key(request(60.10001, 1260, "WALK,TRANSIT")).hashCode());
+        // next minute
+        assertFalse(key.equals(cache.key(request(60.1, 1261, "WALK,TRANSIT"))));
+        // hundreds of meters away
+        assertFalse(key.equals(cache.key(request(60.105, 1230, "WALK,TRANSIT"))));
+        // different modes
+        assertFalse(key.equals(cache.key(request(60.1, 1230, "BICYCLE"))));
+        // different output
+        RoutingRequest noSteps = request(60.1, 1230, "WALK,TRANSIT");
+        noSteps.showWalkSteps = false;
+        assertFalse(key.equals(cache.key(noSteps)));
+        // different search budget
+        RoutingRequest smallBudget = request(60.1, 1230, "WALK,TRANSIT");
+        smallBudget.maxVisitedStates = 1000;
+        assertFalse(key.equals(cache.key(smallBudget)));
+    }
+
+    public void testSearchTime() {
+        // Departures are searched from the end of their bucket, arrivals up to its start
+        RoutingRequest departure = request(60.1, 1201, "WALK,TRANSIT");
+        cache.key(departure);
+        assertEquals(1260, departure.dateTime);
+        RoutingRequest arrival = request(60.1, 1259, "WALK,TRANSIT");
+        arrival.arriveBy = true;
+        cache.key(arrival);
+        assertEquals(1200, arrival.dateTime);
+        // Times on the edge of a bucket are kept
+        RoutingRequest onTime = request(60.1, 1260, "WALK,TRANSIT");
+        cache.key(onTime);
+        assertEquals(1260, onTime.dateTime);
+    }
+
+    public void testInvalidation() {
+        TripPlan plan = new TripPlan();
+        PlanCache.Key key = cache.key(request(60.1, 1200, "WALK,TRANSIT"));
+        assertNull(cache.get(key));
+        cache.put(key, plan);
+        assertSame(plan, cache.get(cache.key(request(60.1, 1190, "WALK,TRANSIT"))));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // Publishing alerts drops the cached plans
+        IntersectionVertex a = new IntersectionVertex(graph, "a", 10.0, 60.1);
+        IntersectionVertex b = new IntersectionVertex(graph, "b", 10.1, 60.2);
+        graph.addAlertPatch(new FreeEdge(a, b), new AlertPatch());
+        assertNull(cache.get(cache.key(request(60.1, 1200, "WALK,TRANSIT"))));
+        // A plan made before the alerts were published is not returned either
+        cache.put(key, plan);
+        assertNull(cache.get(cache.key(request(60.1, 1200, "WALK,TRANSIT"))));
+    }
+}
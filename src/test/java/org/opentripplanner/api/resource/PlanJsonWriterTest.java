@@ -0,0 +1,89 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package org.opentripplanner.api.resource;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.routing.core.RoutingContext;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.spt.GraphPath;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class PlanJsonWriterTest extends TestCase {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private static RoutingRequest request() {
+        RoutingRequest request = mock(RoutingRequest.class);
+        request.rctx = mock(RoutingContext.class);
+        return request;
+    }
+
+    public void testCleanupAfterWriting() throws IOException {
+        RoutingRequest request = request();
+        PlanJsonWriter writer = new PlanJsonWriter(mapper, new Response(null),
+                Collections.<GraphPath>emptyList(), request);
+        writer.write(new ByteArrayOutputStream());
+        verify(request).cleanup();
+        // The completion of the response cleans up again, which has no effect
+        writer.cleanup();
+        verify(request, times(1)).cleanup();
+    }
+
+    public void testCleanupOnWriteError() {
+        RoutingRequest request = request();
+        PlanJsonWriter writer = new PlanJsonWriter(mapper, new Response(null),
+                Collections.<GraphPath>emptyList(), request);
+        try {
+            writer.write(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("client went away");
+                }
+            });
+        } catch (IOException e) {
+            // expected
+        }
+        verify(request).cleanup();
+        writer.cleanup();
+        verify(request, times(1)).cleanup();
+    }
+
+    public void testCleanupWithoutWriting() {
+        RoutingRequest request = request();
+        PlanJsonWriter writer = new PlanJsonWriter(mapper, new Response(null),
+                Collections.<GraphPath>emptyList(), request);
+        writer.cleanup();
+        writer.cleanup();
+        verify(request, times(1)).cleanup();
+    }
+
+    public void testNoCleanupWithoutPaths() {
+        // The resource has already cleaned up the request when there are no paths to convert
+        RoutingRequest request = request();
+        PlanJsonWriter writer = new PlanJsonWriter(mapper, new Response(null), null, request);
+        writer.cleanup();
+        verify(request, times(0)).cleanup();
+    }
+
+}
@@ -0,0 +1,169 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.opentripplanner.common.GeocoderIndex.Category;
+import org.opentripplanner.common.GeocoderIndex.Result;
+
+import junit.framework.TestCase;
+
+public class GeocoderIndexTest extends TestCase {
+
+    private GeocoderIndex index;
+
+    @Override
+    protected void setUp() {
+        GeocoderIndex.Builder builder = new GeocoderIndex.Builder();
+        builder.add(Category.STOP, "Main Street Station", "F:1", "1234", 45.50, -122.60);
+        builder.add(Category.STOP, "Main Street Station", "F:2", "1235", 45.60, -122.70);
+        builder.add(Category.STOP, "Gare de l'Est", "F:3", null, 45.51, -122.61);
+        builder.add(Category.STOP, "Mainland Ave", "F:4", null, 45.52, -122.62);
+        builder.add(Category.CLUSTER, "Main Street Station", "C:1", null, 45.55, -122.65);
+        builder.add(Category.CORNER, "Main Street & Oak Avenue", null, null, 45.53, -122.63);
+        builder.add(Category.CORNER, "Street Main & Elm Road", null, null, 45.54, -122.64);
+        index = builder.build("proximity");
+    }
+
+    private static List<String> descriptions(List<Result> results) {
+        List<String> descriptions = new ArrayList<>();
+        for (Result result : results) {
+            descriptions.add(result.description);
+        }
+        return descriptions;
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("[gare, de, l, est]", Arrays.toString(GeocoderIndex.normalize("Gare de l'Est")));
+        assertEquals("[sao, paulo]", Arrays.toString(GeocoderIndex.normalize("  São-PAULO ")));
+    }
+
+    @Test
+    public void testEditDistance() {
+        assertTrue(GeocoderIndex.withinEditDistance("street", "street", 0));
+        assertTrue(GeocoderIndex.withinEditDistance("street", "stret", 1));
+        assertTrue(GeocoderIndex.withinEditDistance("street", "strets", 2));
+        assertFalse(GeocoderIndex.withinEditDistance("street", "strets", 1));
+        assertFalse(GeocoderIndex.withinEditDistance("oak", "elm", 2));
+    }
+
+    @Test
+    public void testAutocomplete() {
+        // Every word is a prefix of a word of the name, in any order.
+        List<Result> results = index.query("stat mai", true, true, false, false);
+        assertEquals(2, results.size());
+        assertEquals("stop Main Street Station (1234)", results.get(0).description);
+        assertEquals("F:1", results.get(0).id);
+
+        // Exact words rank before longer words starting with them.
+        results = index.query("main", true, true, false, false);
+        assertEquals(3, results.size());
+        assertEquals("stop Mainland Ave ", results.get(2).description);
+
+        // Corners have no id, and asking for no category means all of them.
+        results = index.query("main oak", true, false, false, true);
+        assertEquals(1, results.size());
+        assertNull(results.get(0).id);
+        assertEquals(5, index.query("main str", true, false, false, false).size());
+        assertTrue(index.query("main zzz", true, true, true, true).isEmpty());
+        assertTrue(index.query("", true, true, true, true).isEmpty());
+    }
+
+    @Test
+    public void testSpatialBias() {
+        // The stop nearest the focus point comes first among equally good matches.
+        List<Result> results = index.query("main station", true, true, false, false, 45.6, -122.7, 10);
+        assertEquals("F:2", results.get(0).id);
+        results = index.query("main station", true, true, false, false, 45.5, -122.6, 1);
+        assertEquals(1, results.size());
+        assertEquals("F:1", results.get(0).id);
+    }
+
+    @Test
+    public void testFullSearch() {
+        // Misspelled words, accents and case are tolerated.
+        List<String> found = descriptions(index.query("GARE del est", false, true, false, false));
+        assertEquals(1, found.size());
+        assertEquals("stop Gare de l'Est ", found.get(0));
+        assertEquals(1, index.query("mainlnd", false, true, false, false).size());
+
+        // Stop codes.
+        List<Result> results = index.query("1235", false, true, false, false);
+        assertEquals(1, results.size());
+        assertEquals("F:2", results.get(0).id);
+
+        // A quoted phrase only matches its words in order.
+        found = descriptions(index.query("\"main street\"", false, false, false, true));
+        assertEquals(1, found.size());
+        assertEquals("corner Main Street & Oak Avenue ", found.get(0));
+
+        // Places matching more words come first.
+        results = index.query("elm road main", false, false, false, true);
+        assertEquals(2, results.size());
+        assertEquals("corner Street Main & Elm Road ", results.get(0).description);
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(index);
+        }
+        GeocoderIndex copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (GeocoderIndex) in.readObject();
+        }
+        assertEquals(index.size(), copy.size());
+        assertEquals("proximity", copy.stopClusterMode);
+        assertEquals(descriptions(index.query("main st", true, true, true, true)),
+                descriptions(copy.query("main st", true, true, true, true)));
+        assertEquals(descriptions(index.query("mian stret", false, true, true, true)),
+                descriptions(copy.query("mian stret", false, true, true, true)));
+    }
+
+    @Test
+    public void testMisspelledWords() {
+        // A mistake in the first character, or one that changes every pair of characters of a short word.
+        assertEquals(descriptions(index.query("main", false, true, true, true)),
+                descriptions(index.query("xain", false, true, true, true)));
+        assertEquals(1, index.query("oxk", false, false, false, true).size());
+        assertEquals(1, index.query("elk road", false, false, false, true).size());
+        assertEquals(1, index.query("avneue", false, false, false, true).size());
+        assertTrue(index.query("xyz", false, true, true, true).isEmpty());
+
+        // The words sharing a pair of characters or the first one are the same as those within the edit distance.
+        String[] words = { "main", "street", "station", "gare", "de", "l", "est", "mainland", "ave", "oak", "avenue",
+                "elm", "road" };
+        String[] queries = { "mian", "stret", "sttaion", "gear", "dx", "ets", "mainlnd", "aev", "xak", "avenu", "rod",
+                "ave", "lem", "treet", "statino" };
+        for (String query : queries) {
+            int maxEdits = query.length() < 3 ? 0 : query.length() < 6 ? 1 : 2;
+            boolean expected = false;
+            for (String word : words) {
+                expected |= GeocoderIndex.withinEditDistance(query, word, maxEdits);
+            }
+            assertEquals(query, expected, !index.query(query, false, true, true, true).isEmpty());
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class PersistentHashMapTest extends TestCase {
+
+    /** A key with a poor hash function, to exercise collisions. */
+    private static class BadKey {
+        final int id;
+
+        BadKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id % 7;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof BadKey && ((BadKey) other).id == id;
+        }
+    }
+
+    @Test
+    public void testAgainstHashMap() {
+        Random random = new Random(42);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(3000) - 1000;
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = -1000; key < 2000; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        Map<Integer, Integer> iterated = new HashMap<>();
+        map.forEach(iterated::put);
+        assertEquals(expected, iterated);
+    }
+
+    @Test
+    public void testCollisions() {
+        PersistentHashMap<BadKey, String> map = PersistentHashMap.empty();
+        for (int i = 0; i < 100; i++) {
+            map = map.plus(new BadKey(i), "v" + i);
+        }
+        assertEquals(100, map.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("v" + i, map.get(new BadKey(i)));
+        }
+        for (int i = 0; i < 100; i += 2) {
+            map = map.minus(new BadKey(i));
+        }
+        assertEquals(50, map.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 0 ? null : "v" + i, map.get(new BadKey(i)));
+        }
+        map = map.minusIf((k, v) -> k.id < 50);
+        assertEquals(25, map.size());
+        assertNull(map.get(new BadKey(49)));
+        assertEquals("v51", map.get(new BadKey(51)));
+    }
+
+    @Test
+    public void testStructuralSharing() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 10000; i++) {
+            map = map.plus("key" + i, i);
+        }
+        PersistentHashMap<String, Integer> changed = map.plus("key5", -5).minus("key6");
+
+        // the old version is unchanged
+        assertEquals(10000, map.size());
+        assertEquals(Integer.valueOf(5), map.get("key5"));
+        assertEquals(Integer.valueOf(6), map.get("key6"));
+        assertEquals(9999, changed.size());
+        assertEquals(Integer.valueOf(-5), changed.get("key5"));
+        assertNull(changed.get("key6"));
+
+        // only the paths to the two changed keys are new
+        int newNodes = changed.countNodesNotSharedWith(map);
+        assertTrue(newNodes > 0 && newNodes < 12);
+        assertEquals(0, map.countNodesNotSharedWith(map));
+
+        // operations that change nothing return the same map
+        Integer value = changed.get("key7");
+        assertSame(changed, changed.plus("key7", value));
+        assertSame(changed, changed.minus("key6"));
+        assertSame(changed, changed.minusIf((k, v) -> false));
+    }
+}
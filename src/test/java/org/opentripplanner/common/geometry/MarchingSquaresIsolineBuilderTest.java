@@ -0,0 +1,144 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.geometry;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+public class MarchingSquaresIsolineBuilderTest extends TestCase {
+
+    private static final int U = MarchingSquaresIsolineBuilder.UNDEFINED;
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    /** A cone of values growing with the distance to the center of a size x size raster. */
+    private static int[] cone(int size) {
+        int[] values = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                values[y * size + x] = (int) Math.round(100 * Math.hypot(x - size / 2, y - size / 2));
+            }
+        }
+        return values;
+    }
+
+    private boolean contains(Geometry isoline, double x, double y) {
+        for (int i = 0; i < isoline.getNumGeometries(); i++) {
+            if (isoline.getGeometryN(i).contains(geometryFactory.createPoint(new Coordinate(x, y))))
+                return true;
+        }
+        return false;
+    }
+
+    public void testSquare() {
+        int[] values = {
+                9, 9, 9, 9,
+                9, 1, 1, 9,
+                9, 1, 1, 9,
+                9, 9, 9, 9 };
+        MarchingSquaresIsolineBuilder builder = new MarchingSquaresIsolineBuilder(values, 4, 4, 10, 20, 1, 1);
+        Geometry isoline = builder.computeIsoline(5);
+        assertEquals(1, isoline.getNumGeometries());
+        Polygon polygon = (Polygon) isoline.getGeometryN(0);
+        assertEquals(0, polygon.getNumInteriorRing());
+        assertTrue(CGAlgorithms.isCCW(polygon.getExteriorRing().getCoordinates()));
+        // The crossings are half-way between the samples, so the isoline is an octagon around the 4 inside samples.
+        assertEquals(2 * 2 - 4 * 0.125, polygon.getArea(), 1e-9);
+        assertTrue(contains(isoline, 11.5, 21.5));
+        assertFalse(contains(isoline, 10.2, 20.2));
+
+        // Nothing is below the lowest value, and an isoline never includes the border of the raster.
+        assertTrue(builder.computeIsoline(1).isEmpty());
+        assertEquals(1, builder.computeIsoline(10).getNumGeometries());
+    }
+
+    public void testDebugGeometry() {
+        int[] values = {
+                9, 9, 9, 9,
+                9, 1, 1, 9,
+                9, 1, 1, 9,
+                9, 9, 9, 9 };
+        MarchingSquaresIsolineBuilder builder = new MarchingSquaresIsolineBuilder(values, 4, 4, 10, 20, 1, 1);
+        // Each of the 8 crossed grid edges, and its crossing point.
+        Geometry debug = builder.getDebugGeometry(5);
+        assertEquals(16, debug.getNumGeometries());
+        for (int i = 0; i < debug.getNumGeometries(); i += 2) {
+            assertEquals(1.0, debug.getGeometryN(i).getLength(), 1e-9);
+            assertTrue(debug.getGeometryN(i).distance(debug.getGeometryN(i + 1)) < 1e-9);
+        }
+        // The edges to the undefined border around the raster are crossed too.
+        assertEquals(2 * 16, builder.getDebugGeometry(10).getNumGeometries());
+        assertTrue(builder.getDebugGeometry(1).isEmpty());
+    }
+
+    public void testHole() {
+        int[] values = {
+                9, 9, 9, 9, 9, 9,
+                9, 1, 1, 1, 1, 9,
+                9, 1, 9, 9, 1, 9,
+                9, 1, 9, 9, 1, 9,
+                9, 1, 1, 1, 1, 9,
+                9, 9, 9, 9, 9, 9 };
+        Geometry isoline = new MarchingSquaresIsolineBuilder(values, 6, 6, 0, 0, 1, 1).computeIsoline(5);
+        assertEquals(1, isoline.getNumGeometries());
+        Polygon polygon = (Polygon) isoline.getGeometryN(0);
+        assertEquals(1, polygon.getNumInteriorRing());
+        assertFalse(contains(isoline, 2.5, 2.5));
+        assertTrue(contains(isoline, 1, 2.5));
+        assertFalse(contains(isoline, 0.2, 0.2));
+    }
+
+    public void testUndefined() {
+        int[] values = {
+                U, U, U, U,
+                U, 1, 5, U,
+                U, 5, 1, U,
+                U, U, U, U };
+        MarchingSquaresIsolineBuilder builder = new MarchingSquaresIsolineBuilder(values, 4, 4, 0, 0, 1, 1);
+        Geometry isoline = builder.computeIsoline(6);
+        assertEquals(1, isoline.getNumGeometries());
+        // Edges towards undefined samples are crossed in their middle.
+        assertEquals(2 * 2 - 4 * 0.125, isoline.getArea(), 1e-9);
+        // A saddle cell whose center is below the isoline value joins the two inside samples.
+        assertEquals(1, builder.computeIsoline(4).getNumGeometries());
+    }
+
+    public void testParallelCutoffs() {
+        int size = 41;
+        MarchingSquaresIsolineBuilder builder = new MarchingSquaresIsolineBuilder(cone(size), size, size, 0, 0, 1, 1);
+        int[] cutoffs = { 250, 500, 1000, 1500 };
+        List<Geometry> isolines = builder.computeIsolines(cutoffs);
+        assertEquals(cutoffs.length, isolines.size());
+        double lastArea = 0;
+        for (int i = 0; i < cutoffs.length; i++) {
+            Geometry isoline = isolines.get(i);
+            assertTrue(isoline.equalsExact(builder.computeIsoline(cutoffs[i])));
+            assertEquals(1, isoline.getNumGeometries());
+            // The isoline of the cone is close to a circle.
+            double radius = cutoffs[i] / 100.0;
+            assertEquals(Math.PI * radius * radius, isoline.getArea(), Math.PI * radius * radius * 0.05);
+            assertTrue(isoline.getArea() > lastArea);
+            lastArea = isoline.getArea();
+            assertTrue(contains(isoline, size / 2, size / 2));
+        }
+    }
+
+}
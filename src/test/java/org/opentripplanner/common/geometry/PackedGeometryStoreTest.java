@@ -0,0 +1,103 @@
+package org.opentripplanner.common.geometry;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+public class PackedGeometryStoreTest extends TestCase {
+
+    private GeometryFactory gf = new GeometryFactory();
+
+    @Test
+    public final void testLineStrings() throws Exception {
+        PackedGeometryStore store = new PackedGeometryStore();
+        LineString ls1 = gf.createLineString(new Coordinate[] {
+                new Coordinate(-122.123456, 37.654321), new Coordinate(-122.1, 37.7), new Coordinate(179.99, -80.0) });
+        LineString ls2 = gf.createLineString(new Coordinate[] {
+                new Coordinate(1.0, 2.0), new Coordinate(1.000001, 2.000001) });
+        int o1 = store.addLineString(ls1);
+        int o2 = store.addLineString(ls2);
+        assertTrue(o1 != o2);
+        assertEquals(PackedGeometryStore.STRAIGHT_LINE, store.addLineString(null));
+        assertNull(store.getLineString(PackedGeometryStore.STRAIGHT_LINE));
+        assertTrue(ls1.equalsExact(store.getLineString(o1), 0.00000015));
+        assertTrue(ls2.equalsExact(store.getLineString(o2), 0.00000015));
+
+        // identical geometries are only stored once
+        int size = store.getSizeBytes();
+        assertEquals(o1, store.addLineString((LineString) ls1.clone()));
+        assertEquals(size, store.getSizeBytes());
+
+        // geometries survive serialization, and the store can still be added to afterwards
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(baos);
+        out.writeObject(store);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        PackedGeometryStore copy = (PackedGeometryStore) in.readObject();
+        assertTrue(ls1.equalsExact(copy.getLineString(o1), 0.00000015));
+        assertTrue(ls2.equalsExact(copy.getLineString(o2), 0.00000015));
+        int o3 = copy.addLineString((LineString) ls2.reverse());
+        assertTrue(ls2.reverse().equalsExact(copy.getLineString(o3), 0.00000015));
+    }
+
+    @Test
+    public final void testCompactLineStrings() {
+        PackedGeometryStore store = new PackedGeometryStore();
+        assertEquals(PackedGeometryStore.STRAIGHT_LINE, store.addCompactLineString(CompactLineString.STRAIGHT_LINE));
+        assertTrue(store.getCompactLineString(PackedGeometryStore.STRAIGHT_LINE) == CompactLineString.STRAIGHT_LINE);
+        // large enough deltas to use every length of the variable length coding
+        int[] coords = new int[] { 1, -1, 100, -100, 10000, -10000, 2000000, -2000000, 100000000, -100000000 };
+        int offset = store.addCompactLineString(coords);
+        assertTrue(Arrays.equals(coords, store.getCompactLineString(offset)));
+        for (int i = 0; i < 1000; i++) {
+            store.addCompactLineString(new int[] { i, -i });
+        }
+        assertTrue(Arrays.equals(coords, store.getCompactLineString(offset)));
+    }
+
+    @Test
+    public final void testStorePerGraph() {
+        LineString ls1 = gf.createLineString(new Coordinate[] {
+                new Coordinate(1.0, 2.0), new Coordinate(1.001, 2.002), new Coordinate(1.002, 2.0) });
+        LineString ls2 = gf.createLineString(new Coordinate[] {
+                new Coordinate(1.0, 2.0), new Coordinate(1.001, 1.998), new Coordinate(1.002, 2.0) });
+        Graph g1 = new Graph();
+        Graph g2 = new Graph();
+        IntersectionVertex a = new IntersectionVertex(g1, "a", 1.0, 2.0);
+        StreetEdge e1 = new StreetEdge(a, new IntersectionVertex(g1, "b", 1.002, 2.0),
+                ls1, "e1", 100, StreetTraversalPermission.ALL, false);
+        assertTrue(g1.getGeometryStore().getSizeBytes() > 0);
+        assertEquals(0, g2.getGeometryStore().getSizeBytes());
+        StreetEdge e2 = new StreetEdge(new IntersectionVertex(g2, "a", 1.0, 2.0), new IntersectionVertex(g2, "b", 1.002, 2.0),
+                ls2, "e2", 100, StreetTraversalPermission.ALL, false);
+        // each edge reads its geometry from the store of its own graph
+        assertTrue(ls1.equalsExact(e1.getGeometry(), 0.00000015));
+        assertTrue(ls2.equalsExact(e2.getGeometry(), 0.00000015));
+        assertEquals(g1.getGeometryStore().getSizeBytes(), g2.getGeometryStore().getSizeBytes());
+
+        // the store is found when the edge is made, so later changes to the graph's vertices do not matter
+        new IntersectionVertex(g1, "a", 1.0, 2.0);
+        assertTrue(ls1.equalsExact(e1.getGeometry(), 0.00000015));
+        g1.removeVertex(g1.getVertex("a"));
+        assertTrue(ls1.equalsExact(e1.getGeometry(), 0.00000015));
+
+        // edges between vertices in no graph keep their geometry in a store of their own
+        StreetEdge e3 = new StreetEdge(new IntersectionVertex(null, "c", 1.0, 2.0),
+                new IntersectionVertex(null, "d", 1.002, 2.0), ls2, "e3", 100, StreetTraversalPermission.ALL, false);
+        assertTrue(ls2.equalsExact(e3.getGeometry(), 0.00000015));
+        assertEquals(g1.getGeometryStore().getSizeBytes(), g2.getGeometryStore().getSizeBytes());
+    }
+}
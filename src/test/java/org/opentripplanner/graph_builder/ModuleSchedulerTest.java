@@ -0,0 +1,94 @@
+package org.opentripplanner.graph_builder;
+
+import org.junit.Test;
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ModuleSchedulerTest {
+
+    @Test
+    public void testDependencies() {
+        FakeModule osm = new FakeModule(Arrays.asList("streets"), Collections.emptyList());
+        FakeModule gtfs = new FakeModule(Arrays.asList("transit"), Collections.emptyList());
+        FakeModule linker = new FakeModule(Arrays.asList("linking", "streets"), Arrays.asList("streets", "transit"));
+        FakeModule elevation = new FakeModule(Arrays.asList("elevation"), Arrays.asList("streets", "linking"));
+        FakeModule undeclared = new FakeModule(Collections.emptyList(), Collections.emptyList());
+
+        assertFalse(ModuleScheduler.dependsOn(gtfs, osm));
+        assertTrue(ModuleScheduler.dependsOn(linker, osm));
+        assertTrue(ModuleScheduler.dependsOn(linker, gtfs));
+        assertTrue(ModuleScheduler.dependsOn(elevation, linker));
+        assertFalse(ModuleScheduler.dependsOn(elevation, gtfs));
+        // a module that reads something a later module provides must finish first
+        assertTrue(ModuleScheduler.dependsOn(osm, elevation));
+        assertTrue(ModuleScheduler.dependsOn(undeclared, gtfs));
+        assertTrue(ModuleScheduler.dependsOn(gtfs, undeclared));
+    }
+
+    @Test
+    public void testRunRespectsDependencies() {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        FakeModule osm = new FakeModule(Arrays.asList("streets"), Collections.emptyList(), "osm", order);
+        FakeModule gtfs = new FakeModule(Arrays.asList("transit"), Collections.emptyList(), "gtfs", order);
+        FakeModule linker = new FakeModule(Arrays.asList("linking"), Arrays.asList("streets", "transit"), "linker", order);
+        List<GraphBuilderModule> modules = Arrays.asList(osm, gtfs, linker);
+
+        for (boolean concurrent : new boolean[] { false, true }) {
+            order.clear();
+            GraphBuildReport report = new ModuleScheduler(modules).run(new Graph(), new HashMap<>(), concurrent);
+            assertEquals(3, report.modules.size());
+            assertEquals(3, order.size());
+            assertEquals("linker", order.get(2));
+            assertEquals(Arrays.asList("FakeModule", "FakeModule"), report.modules.get(2).waitedFor);
+            assertTrue(report.modules.get(1).waitedFor.isEmpty());
+        }
+    }
+
+    private static class FakeModule implements GraphBuilderModule {
+        private final List<String> provides;
+        private final List<String> prerequisites;
+        private final String name;
+        private final List<String> order;
+
+        FakeModule(List<String> provides, List<String> prerequisites) {
+            this(provides, prerequisites, null, null);
+        }
+
+        FakeModule(List<String> provides, List<String> prerequisites, String name, List<String> order) {
+            this.provides = provides;
+            this.prerequisites = prerequisites;
+            this.name = name;
+            this.order = order;
+        }
+
+        @Override
+        public void buildGraph(Graph graph, Map<Class<?>, Object> extra) {
+            order.add(name);
+        }
+
+        @Override
+        public void checkInputs() {
+        }
+
+        @Override
+        public List<String> provides() {
+            return provides;
+        }
+
+        @Override
+        public List<String> getPrerequisites() {
+            return prerequisites;
+        }
+    }
+}
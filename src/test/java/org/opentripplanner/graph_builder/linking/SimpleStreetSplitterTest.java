@@ -0,0 +1,140 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.linking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Stop;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTransitLink;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.SplitterVertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+import com.vividsolutions.jts.geom.LineString;
+
+public class SimpleStreetSplitterTest extends TestCase {
+
+    private Graph graph;
+
+    private IntersectionVertex a;
+
+    private IntersectionVertex b;
+
+    private StreetEdge ab;
+
+    @Override
+    protected void setUp() {
+        graph = new Graph();
+        a = new IntersectionVertex(graph, "a", -74.01, 40.0);
+        b = new IntersectionVertex(graph, "b", -74.0, 40.0);
+        ab = new StreetEdge(a, b, GeometryUtils.makeLineString(-74.01, 40.0, -74.0, 40.0), "ab",
+                850, StreetTraversalPermission.ALL, false);
+        new StreetEdge(b, a, (LineString) ab.getGeometry().reverse(), "ba", 850,
+                StreetTraversalPermission.ALL, true);
+    }
+
+    private TransitStop stop(String id, double lon, double lat) {
+        Stop stop = new Stop();
+        stop.setName(id);
+        stop.setLon(lon);
+        stop.setLat(lat);
+        stop.setId(new AgencyAndId("A", id));
+        return new TransitStop(graph, stop);
+    }
+
+    /** The street vertices a stop is linked to. */
+    private List<Vertex> linkedVertices(TransitStop stop) {
+        List<Vertex> vertices = new ArrayList<>();
+        for (Edge e : stop.getOutgoing()) {
+            if (e instanceof StreetTransitLink)
+                vertices.add(e.getToVertex());
+        }
+        return vertices;
+    }
+
+    /** The street edges on the way from a to b, made of the parts of the original edge. */
+    private List<StreetEdge> forwardChain() {
+        List<StreetEdge> chain = new ArrayList<>();
+        Vertex v = a;
+        while (v != b) {
+            StreetEdge next = null;
+            for (Edge e : v.getOutgoing()) {
+                if (e instanceof StreetEdge && !((StreetEdge) e).isBack())
+                    next = (StreetEdge) e;
+            }
+            assertNotNull(next);
+            chain.add(next);
+            v = next.getToVertex();
+        }
+        return chain;
+    }
+
+    /**
+     * Two stops projecting onto the same point of an edge share its split vertex, and a stop projecting
+     * further along the edge splits the part of it that remains, keeping the parts in order along the street.
+     */
+    public void testStopsOnSameEdge() {
+        TransitStop s1 = stop("s1", -74.003, 40.0001);
+        TransitStop s2 = stop("s2", -74.007, 40.0001);
+        TransitStop s3 = stop("s3", -74.007, 40.0002);
+        graph.rebuildVertexAndEdgeIndices();
+
+        new SimpleStreetSplitter(graph).link();
+
+        assertFalse(a.getOutgoing().contains(ab));
+        List<StreetEdge> chain = forwardChain();
+        assertEquals(3, chain.size());
+        Vertex v1 = chain.get(0).getToVertex();
+        Vertex v2 = chain.get(1).getToVertex();
+        assertTrue(v1 instanceof SplitterVertex);
+        assertTrue(v2 instanceof SplitterVertex);
+        assertEquals(-74.007, v1.getLon(), 1e-7);
+        assertEquals(-74.003, v2.getLon(), 1e-7);
+
+        double length = 0;
+        for (StreetEdge e : chain)
+            length += e.getDistance();
+        assertEquals(850, length, 0.01);
+
+        assertTrue(linkedVertices(s1).contains(v2));
+        assertTrue(linkedVertices(s2).contains(v1));
+        // s3 does not link to the link edges or split vertex made for s2, but to the same point of the street.
+        assertTrue(linkedVertices(s3).contains(v1));
+        assertFalse(linkedVertices(s3).contains(s2));
+    }
+
+    /** Stops projecting onto the end points of an edge link to its vertices without splitting it. */
+    public void testStopsAtEdgeEnds() {
+        TransitStop s1 = stop("s1", -74.01, 40.0001);
+        TransitStop s2 = stop("s2", -74.0, 40.0001);
+        graph.rebuildVertexAndEdgeIndices();
+
+        new SimpleStreetSplitter(graph).link();
+
+        assertTrue(a.getOutgoing().contains(ab));
+        assertTrue(linkedVertices(s1).contains(a));
+        assertTrue(linkedVertices(s2).contains(b));
+    }
+
+}
@@ -29,10 +29,12 @@ import org.opentripplanner.gtfs.GtfsLibrary;
 import org.opentripplanner.routing.algorithm.AStar;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.edgetype.PreBoardEdge;
 import org.opentripplanner.routing.edgetype.factory.GTFSPatternHopFactory;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.AlertPatchServiceImpl;
 import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
 import org.opentripplanner.routing.spt.GraphPath;
 import org.opentripplanner.routing.spt.ShortestPathTree;
@@ -102,6 +104,44 @@ public class AlertPatchTest extends TestCase {
         assertEquals(expectedAlerts, unoptimizedAlerts);
     }
 
+    public void testAlertPatchService() {
+        AlertPatchServiceImpl service = new AlertPatchServiceImpl(graph);
+        AlertPatch snp1 = new AlertPatch();
+        snp1.setFeedId(feedId);
+        snp1.setTimePeriods(Collections.singletonList(new TimePeriod(0, Long.MAX_VALUE)));
+        snp1.setAlert(Alert.createSimpleAlerts("The first note"));
+        snp1.setId("id1");
+        snp1.setStop(new AgencyAndId(feedId, "A"));
+        service.apply(snp1);
+
+        Vertex stop_a = graph.getVertex(feedId + ":A");
+        Edge preBoardEdge = null;
+        for (Edge edge : stop_a.getOutgoing()) {
+            if (edge instanceof PreBoardEdge) {
+                preBoardEdge = edge;
+            }
+        }
+        AlertPatch[] patches = graph.getAlertPatches(preBoardEdge);
+        assertEquals(1, patches.length);
+        assertEquals(1, service.getStopPatches(new AgencyAndId(feedId, "A")).size());
+        assertTrue(snp1.isActiveAt(1000));
+
+        // applying an equal patch again leaves the graph as it is
+        AlertPatch snp2 = new AlertPatch();
+        snp2.setFeedId(feedId);
+        snp2.setTimePeriods(Collections.singletonList(new TimePeriod(0, Long.MAX_VALUE)));
+        snp2.setAlert(Alert.createSimpleAlerts("The first note"));
+        snp2.setId("id1");
+        snp2.setStop(new AgencyAndId(feedId, "A"));
+        service.apply(snp2);
+        assertSame(patches, graph.getAlertPatches(preBoardEdge));
+
+        service.expireAllExcept(Collections.<String>emptySet());
+        assertEquals(0, graph.getAlertPatches(preBoardEdge).length);
+        assertTrue(service.getStopPatches(new AgencyAndId(feedId, "A")).isEmpty());
+        assertTrue(service.getAllAlertPatches().isEmpty());
+    }
+
     public void testTimeRanges() {
         AlertPatch snp1 = new AlertPatch();
         snp1.setFeedId(feedId);
@@ -14,6 +14,8 @@
 package org.opentripplanner.routing.algorithm;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNotNull;
 
@@ -244,6 +246,25 @@ public class AStarTest {
         }
     }
 
+    @Test
+    public void testSearchBudget() {
+        RoutingRequest options = new RoutingRequest();
+        options.walkSpeed = 1.0;
+        options.maxVisitedStates = 3;
+        options.setRoutingContext(_graph, _graph.getVertex("56th_24th"), _graph.getVertex("leary_20th"));
+        AStar aStar = new AStar();
+        ShortestPathTree tree = aStar.getShortestPathTree(options);
+
+        // The search is aborted before reaching the target, but the partial tree is still returned.
+        assertNotNull(tree);
+        assertNull(tree.getPath(_graph.getVertex("leary_20th"), false));
+        assertTrue(options.rctx.aborted);
+        assertFalse(options.rctx.debugOutput.timedOut);
+        assertEquals("maxVisitedStates", options.rctx.debugOutput.budgetExceeded);
+        assertEquals(3, options.rctx.debugOutput.visitedStates);
+        assertTrue(aStar.getPathsToTarget().isEmpty());
+    }
+
     /****
      * Private Methods
      ****/
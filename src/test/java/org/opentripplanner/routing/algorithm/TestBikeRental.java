@@ -14,6 +14,7 @@
 package org.opentripplanner.routing.algorithm;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -21,6 +22,7 @@ import junit.framework.TestCase;
 
 import org.opentripplanner.api.parameter.QualifiedModeSet;
 import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.routing.bike_rental.BikeRentalAvailability;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.TraverseModeSet;
@@ -116,5 +118,28 @@ public class TestBikeRental extends TestCase {
 
         path = tree.getPath(v3, false);
         assertNotNull(path);
+
+        // once the second station is out of service the bike can't be dropped off there anymore
+        BikeRentalAvailability availability = new BikeRentalAvailability();
+        stationVertex.setAvailability(availability, 0);
+        stationVertex2.setAvailability(availability, 1);
+        BitSet inService = new BitSet();
+        inService.set(0);
+        availability.publish(new int[] { 5, 0 }, new int[] { 5, 0 }, inService);
+        options = new RoutingRequest();
+        new QualifiedModeSet("BICYCLE_RENT,TRANSIT").applyToRoutingRequest(options);
+        options.setRoutingContext(graph, v1, v3);
+        tree = aStar.getShortestPathTree(options);
+        assertNull(tree.getPath(v3, false));
+
+        // when it reappears the same vertex is used again
+        inService.set(1);
+        availability.publish(new int[] { 5, 3 }, new int[] { 5, 3 }, inService);
+        assertEquals(3, stationVertex2.getSpacesAvailable());
+        options = new RoutingRequest();
+        new QualifiedModeSet("BICYCLE_RENT,TRANSIT").applyToRoutingRequest(options);
+        options.setRoutingContext(graph, v1, v3);
+        tree = aStar.getShortestPathTree(options);
+        assertNotNull(tree.getPath(v3, false));
     }
 }
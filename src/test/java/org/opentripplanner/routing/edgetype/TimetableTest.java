@@ -16,6 +16,9 @@ package org.opentripplanner.routing.edgetype;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.opentripplanner.util.TestUtils.AUGUST;
 
 import java.io.File;
@@ -315,4 +318,41 @@ public class TimetableTest {
         updatedTripTimes = timetable.createUpdatedTripTimes(tripUpdate, timeZone, serviceDate); 
         assertNull(updatedTripTimes);
     }
+
+    @Test
+    public void testDepartureIndex() {
+        for (TripPattern pattern : patternIndex.values()) {
+            Timetable timetable = pattern.scheduledTimetable;
+            DepartureIndex index = timetable.getDepartureIndex();
+            assertSame(index, timetable.getDepartureIndex());
+            for (int s = 0; s < pattern.getStops().size(); s++) {
+                int n = 0;
+                for (TripTimes tripTimes : timetable.tripTimes) {
+                    if (tripTimes.getDepartureTime(s) != -1) n++;
+                }
+                assertEquals(n, index.size(s));
+                for (int d = 0; d < index.size(s); d++) {
+                    int time = index.getDepartureTime(s, d);
+                    assertEquals(time, timetable.getTripTimes(index.getTripIndex(s, d)).getDepartureTime(s));
+                    if (d > 0) {
+                        assertTrue(index.getDepartureTime(s, d - 1) <= time);
+                    }
+                    int first = index.firstDepartureAtOrAfter(s, time);
+                    assertEquals(time, index.getDepartureTime(s, first));
+                    assertTrue(first == 0 || index.getDepartureTime(s, first - 1) < time);
+                }
+                assertEquals(index.size(s), index.firstDepartureAtOrAfter(s, Integer.MAX_VALUE));
+            }
+        }
+
+        // The index of a timetable is rebuilt when its trips change
+        Timetable copy = new Timetable(timetable, serviceDate);
+        DepartureIndex index = copy.getDepartureIndex();
+        TripTimes delayed = new TripTimes(copy.getTripTimes(0));
+        delayed.updateDepartureDelay(0, 24 * 60 * 60);
+        copy.setTripTimes(0, delayed);
+        assertNotSame(index, copy.getDepartureIndex());
+        int last = copy.getDepartureIndex().size(0) - 1;
+        assertEquals(delayed.getDepartureTime(0), copy.getDepartureIndex().getDepartureTime(0, last));
+    }
 }
@@ -7,7 +7,10 @@ import org.onebusaway.gtfs.model.Route;
 import org.onebusaway.gtfs.model.Stop;
 import org.onebusaway.gtfs.model.Trip;
 import org.opentripplanner.GtfsTest;
+import org.opentripplanner.common.GeocoderIndex;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.index.GraphQLQueryCost;
+import org.opentripplanner.index.GraphQLRequestContext;
 import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.vertextype.TransitStop;
@@ -15,6 +18,10 @@ import org.opentripplanner.routing.vertextype.TransitStop;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 
+import javax.ws.rs.core.Response;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -213,13 +220,63 @@ public class GraphIndexTest extends GtfsTest {
         assertTrue(result.getErrors().isEmpty());
     }
 
+    public void testGraphQLQueryCost() {
+        GraphQLQueryCost queryCost = graph.index.graphQLQueryCost;
+        int nRoutes = graph.index.routeForId.size();
+        int nStops = graph.index.stopForId.size();
+
+        assertEquals(2.0, queryCost.cost("{ agency(id: \"agency\") { name } }", null));
+        assertEquals(1.0 + nRoutes, queryCost.cost("{ routes { shortName } }", null));
+        assertEquals(1.0 + nRoutes, queryCost.cost("{ viewer { routes { shortName } } }", null) - 1);
+        assertEquals(3.0, queryCost.cost("query Routes($ids: [String]) { routes(ids: $ids) { shortName } }",
+                Collections.singletonMap("ids", Arrays.asList("FEED:1", "FEED:2"))));
+        assertEquals(1.0 + nStops + nStops * 3 * 2, queryCost.cost("{ stops { " +
+                "stoptimesWithoutPatterns(numberOfDepartures: 3) { scheduledDeparture realtimeDeparture } } }", null));
+        assertEquals(1.0 + nStops * 2, queryCost.cost("{ stops { ...names } } fragment names on Stop { " +
+                "name ... on Stop { code } }", null));
+
+        try {
+            graph.index.maxGraphQLQueryCost = nRoutes;
+            Response response = graph.index.getGraphQLResponse("{ routes { shortName } }", new HashMap<>());
+            assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+            response = graph.index.getGraphQLResponse("{ agency(id: \"agency\") { name } }", new HashMap<>());
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        } finally {
+            graph.index.maxGraphQLQueryCost = Double.POSITIVE_INFINITY;
+        }
+    }
+
+    public void testGraphQLStoptimes() {
+        String feedId = graph.getFeedIds().iterator().next();
+        Stop stop = graph.index.stopForId.get(new AgencyAndId(feedId, "A"));
+        String query = "{ stop(id: \"" + feedId + ":A\") { " +
+                "a: stoptimesForPatterns(startTime: \"1\", numberOfDepartures: 2) { stoptimes { scheduledDeparture } } " +
+                "b: stoptimesForPatterns(startTime: \"1\", numberOfDepartures: 2) { stoptimes { scheduledDeparture } } } }";
+
+        ExecutionResult result = graph.index.graphQL.execute(query, null, new GraphQLRequestContext(graph.index), null);
+        assertTrue(result.getErrors().isEmpty());
+        Map stopResult = (Map) result.getData().get("stop");
+        // Both aliases are resolved from the same memoized stop times, which match those of the index.
+        assertEquals(stopResult.get("a"), stopResult.get("b"));
+        assertEquals(graph.index.stopTimesForStop(stop, 1, 24 * 60 * 60, 2).size(), ((List) stopResult.get("a")).size());
+    }
 
     public void testParentStations() {
         // graph.index.stopsForParentStation;
     }
 
-    public void testLucene() {
-        // graph.index.luceneIndex
+    public void testGeocoderIndex() {
+        GeocoderIndex geocoderIndex = graph.index.getGeocoderIndex();
+        assertSame(geocoderIndex, graph.geocoderIndex);
+        assertSame(geocoderIndex, graph.index.getGeocoderIndex());
+        Stop stop = graph.index.stopForId.values().iterator().next();
+        List<GeocoderIndex.Result> results = geocoderIndex.query(stop.getName(), true, true, false, false);
+        assertFalse(results.isEmpty());
+        boolean found = false;
+        for (GeocoderIndex.Result result : results) {
+            found |= stop.getId().toString().equals(result.id);
+        }
+        assertTrue(found);
     }
 
 }
@@ -0,0 +1,81 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.services.notes;
+
+import java.util.Set;
+
+import org.junit.Test;
+import org.opentripplanner.routing.alertpatch.Alert;
+import org.opentripplanner.routing.edgetype.FreeEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+
+import junit.framework.TestCase;
+
+public class StreetNotesIndexTest extends TestCase {
+
+    private IntersectionVertex a = new IntersectionVertex(null, "a", 0, 0);
+
+    private IntersectionVertex b = new IntersectionVertex(null, "b", 0, 1);
+
+    private MatcherAndAlert note1 = new MatcherAndAlert(StreetNotesService.ALWAYS_MATCHER,
+            Alert.createSimpleAlerts("note 1"));
+
+    private MatcherAndAlert note2 = new MatcherAndAlert(StreetNotesService.BICYCLE_MATCHER,
+            Alert.createSimpleAlerts("note 2"));
+
+    @Test
+    public void testIndex() {
+        Edge e1 = new FreeEdge(a, b);
+        Edge e2 = new FreeEdge(b, a);
+        Edge e3 = new FreeEdge(a, a);
+
+        StreetNotesIndex index = new StreetNotesIndex.Builder()
+                .addNote(e1, note1).addNote(e1, note2).addNote(e1, note1).addNote(e2, note2)
+                .build();
+        assertEquals(2, index.size());
+
+        Set<MatcherAndAlert> notes = index.getNotes(e1);
+        assertEquals(2, notes.size());
+        assertTrue(notes.contains(note1) && notes.contains(note2));
+        assertEquals(1, index.getNotes(e2).size());
+        assertFalse(index.mayHaveNotes(e3));
+        assertNull(index.getNotes(e3));
+
+        assertNull(StreetNotesIndex.EMPTY.getNotes(e1));
+        assertEquals(0, StreetNotesIndex.EMPTY.size());
+    }
+
+    @Test
+    public void testDynamicSource() {
+        Edge e1 = new FreeEdge(a, b);
+        Edge e2 = new FreeEdge(b, a);
+
+        DynamicStreetNotesSource source = new DynamicStreetNotesSource();
+        assertNull(source.getNotes(e1));
+
+        SetMultimap<Edge, MatcherAndAlert> notes = HashMultimap.create();
+        notes.put(e1, note1);
+        source.setNotes(notes);
+        assertEquals(1, source.getNotes(e1).size());
+        assertNull(source.getNotes(e2));
+
+        source.setNotes(new StreetNotesIndex.Builder().addNote(e2, note2).build());
+        assertNull(source.getNotes(e1));
+        assertTrue(source.getNotes(e2).contains(note2));
+    }
+}
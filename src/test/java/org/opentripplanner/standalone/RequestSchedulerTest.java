@@ -0,0 +1,175 @@
+package org.opentripplanner.standalone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Checks the limits of the request lanes, with mock suspended responses and work waiting on a latch so that the
+ * requests stay in their lanes as long as needed.
+ */
+public class RequestSchedulerTest {
+
+    private RequestScheduler scheduler;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        scheduler.shutdown();
+    }
+
+    private static AsyncResponse suspended() {
+        AsyncResponse response = mock(AsyncResponse.class);
+        when(response.isSuspended()).thenReturn(true);
+        return response;
+    }
+
+    /** Work that does not finish before the latch is released. */
+    private Callable<String> blocked(final String result) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                release.await();
+                return result;
+            }
+        };
+    }
+
+    private static Callable<String> immediate(final String result) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                return result;
+            }
+        };
+    }
+
+    /** Wait until the lane has taken the given number of requests. */
+    private static void awaitRunning(RequestScheduler.Lane lane, int running) throws InterruptedException {
+        for (int i = 0; i < 100 && lane.getRunning() < running; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(running, lane.getRunning());
+    }
+
+    @Test
+    public void testLaneLimits() throws Exception {
+        scheduler = new RequestScheduler(4, 2, 2, 1, 30);
+        AsyncResponse first = suspended();
+        AsyncResponse second = suspended();
+        AsyncResponse waiting = suspended();
+        AsyncResponse refused = suspended();
+        scheduler.submit(scheduler.plan, first, blocked("first"));
+        scheduler.submit(scheduler.plan, second, blocked("second"));
+        scheduler.submit(scheduler.plan, waiting, immediate("waiting"));
+        scheduler.submit(scheduler.plan, refused, immediate("refused"));
+        awaitRunning(scheduler.plan, 2);
+        // Only maxRunning requests are handled at once and maxWaiting wait, even with threads to spare
+        assertEquals(1, scheduler.plan.getWaiting());
+        assertEquals(1, scheduler.plan.getRefused());
+        verify(refused).resume(any(Response.class));
+
+        release.countDown();
+        verify(first, timeout(1000)).resume("first");
+        verify(second, timeout(1000)).resume("second");
+        verify(waiting, timeout(1000)).resume("waiting");
+        for (int i = 0; i < 100 && scheduler.plan.getRunning() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, scheduler.plan.getRunning());
+        assertEquals(3, scheduler.plan.getHandled());
+    }
+
+    @Test
+    public void testServiceUnavailable() throws Exception {
+        scheduler = new RequestScheduler(2, 1, 1, 0, 17);
+        scheduler.submit(scheduler.plan, suspended(), blocked("first"));
+        awaitRunning(scheduler.plan, 1);
+        AsyncResponse refused = suspended();
+        scheduler.submit(scheduler.plan, refused, immediate("refused"));
+
+        // The response is resumed at once on the calling thread
+        ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(refused).resume(response.capture());
+        assertEquals(503, response.getValue().getStatus());
+        assertEquals("17", String.valueOf(response.getValue().getHeaders().getFirst("Retry-After")));
+    }
+
+    @Test
+    public void testIndexDoesNotStarvePlan() throws Exception {
+        scheduler = new RequestScheduler(3, 1, 2, 10, 30);
+        for (int i = 0; i < 6; i++) {
+            scheduler.submit(scheduler.index, suspended(), blocked("index"));
+        }
+        awaitRunning(scheduler.index, 2);
+        assertEquals(4, scheduler.index.getWaiting());
+
+        // A thread is left for plan requests while the index lane is full
+        AsyncResponse plan = suspended();
+        scheduler.submit(scheduler.plan, plan, immediate("plan"));
+        verify(plan, timeout(1000)).resume("plan");
+        assertEquals(2, scheduler.index.getRunning());
+        assertEquals(4, scheduler.index.getWaiting());
+    }
+
+    @Test
+    public void testFailingWork() throws Exception {
+        scheduler = new RequestScheduler(1, 1, 1, 0, 30);
+        final IllegalStateException failure = new IllegalStateException("broken request");
+        AsyncResponse response = suspended();
+        scheduler.submit(scheduler.plan, response, new Callable<String>() {
+            @Override
+            public String call() {
+                throw failure;
+            }
+        });
+        // The exception goes to the exception mappers, and the lane is free for the next request
+        ArgumentCaptor<Throwable> thrown = ArgumentCaptor.forClass(Throwable.class);
+        verify(response, timeout(1000)).resume(thrown.capture());
+        assertSame(failure, thrown.getValue());
+        AsyncResponse next = suspended();
+        scheduler.submit(scheduler.plan, next, immediate("next"));
+        verify(next, timeout(1000)).resume("next");
+    }
+
+    @Test
+    public void testClientGone() throws Exception {
+        scheduler = new RequestScheduler(1, 1, 1, 1, 30);
+        scheduler.submit(scheduler.plan, suspended(), blocked("first"));
+        awaitRunning(scheduler.plan, 1);
+        AsyncResponse gone = suspended();
+        final CountDownLatch called = new CountDownLatch(1);
+        scheduler.submit(scheduler.plan, gone, new Callable<String>() {
+            @Override
+            public String call() {
+                called.countDown();
+                return "gone";
+            }
+        });
+        // The request times out while waiting, its work is skipped
+        when(gone.isSuspended()).thenReturn(false);
+        release.countDown();
+        for (int i = 0; i < 100 && scheduler.plan.getHandled() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, scheduler.plan.getHandled());
+        assertEquals(1, called.getCount());
+    }
+
+}
@@ -22,6 +22,8 @@ public class StreetSpeedSourceTest extends TestCase {
         OsmVertex v2 = new OsmVertex(g, "v2", 0, 0.01, 6l);
         StreetEdge se = new StreetEdge(v1, v2, null, "test", 1000, StreetTraversalPermission.CAR, false);
         se.wayId = 10;
+        StreetEdge wrongStreet = new StreetEdge(v1, v2, null, "wrong", 1000, StreetTraversalPermission.CAR, false);
+        wrongStreet.wayId = 102;
 
         // create a speed sample
         SegmentSpeedSample s = getSpeedSample();
@@ -31,7 +33,7 @@ public class StreetSpeedSourceTest extends TestCase {
         speeds.put(seg, s);
 
         g.streetSpeedSource = new StreetSpeedSnapshotSource();
-        g.streetSpeedSource.setSnapshot(new StreetSpeedSnapshot(speeds));
+        g.streetSpeedSource.setSnapshot(new StreetSpeedSnapshot(speeds, g.getEdges()));
 
         // confirm that we get the correct speeds.
         // This also implicitly tests encoding/decoding
@@ -54,9 +56,22 @@ public class StreetSpeedSourceTest extends TestCase {
         double monday10am =  snap.getSpeed(se, TraverseMode.CAR, odt.toInstant().toEpochMilli());
         assertEquals(33.3, monday10am, 0.1);
 
-        se.wayId = 102;
-        double wrongStreet = snap.getSpeed(se, TraverseMode.CAR, odt.toInstant().toEpochMilli());
-        assertTrue(Double.isNaN(wrongStreet));
+        assertTrue(Double.isNaN(snap.getSpeed(wrongStreet, TraverseMode.CAR, odt.toInstant().toEpochMilli())));
+
+        // Sunday 11pm is the last hour of the week
+        odt = OffsetDateTime.of(2015, 6, 7, 23, 59, 0, 0, ZoneOffset.UTC);
+        assertEquals(7 * 24 - 1, StreetSpeedSnapshot.getHourOfWeek(odt.toInstant().toEpochMilli()));
+        assertEquals(0, StreetSpeedSnapshot.getHourOfWeek(odt.plusMinutes(1).toInstant().toEpochMilli()));
+        assertEquals(33.3, snap.getSpeed(se, TraverseMode.CAR, odt.toInstant().toEpochMilli()), 0.1);
+
+        // an edge that was not in the graph when the snapshot was built, even if it has the same ID
+        StreetEdge temporary = new StreetEdge(v1, v2, null, "test", 1000, StreetTraversalPermission.CAR, false) {
+            @Override public int getId() {
+                return se.getId();
+            }
+        };
+        temporary.wayId = 10;
+        assertTrue(Double.isNaN(snap.getSpeed(temporary, TraverseMode.CAR, odt.toInstant().toEpochMilli())));
     }
 
     @Test
@@ -73,7 +88,7 @@ public class StreetSpeedSourceTest extends TestCase {
         Map<Segment, SegmentSpeedSample> ss2 = Maps.newHashMap();
         Segment seg = new Segment(10l, 5l, 6l);
         ss2.put(seg, getSpeedSample());
-        StreetSpeedSnapshot ssOrig = new StreetSpeedSnapshot(ss2);
+        StreetSpeedSnapshot ssOrig = new StreetSpeedSnapshot(ss2, g.getEdges());
         ssss.setSnapshot(ssOrig);
         StreetSpeedSnapshot snap = ssss.getSnapshot();
         assertEquals(ssOrig, snap);
@@ -87,7 +102,7 @@ public class StreetSpeedSourceTest extends TestCase {
         Map<Segment, SegmentSpeedSample> ss1 = Maps.newHashMap();
         seg = new Segment(10l, 4l, 6l);
         ss1.put(seg, getSpeedSample());
-        StreetSpeedSnapshot ssNew = new StreetSpeedSnapshot(ss1);
+        StreetSpeedSnapshot ssNew = new StreetSpeedSnapshot(ss1, g.getEdges());
         ssss.setSnapshot(ssNew);
 
         snap = ssss.getSnapshot();
@@ -0,0 +1,207 @@
+package org.opentripplanner.updater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
+
+/**
+ * Checks how graph writer runnables are grouped into writer passes, each ending with a single
+ * commit of the timetable snapshot.
+ */
+public class GraphUpdaterManagerTest {
+
+    private Graph graph;
+
+    private GraphUpdaterManager manager;
+
+    /** What happened on the writer thread, in order. */
+    private List<String> events;
+
+    @Before
+    public void setUp() {
+        events = Collections.synchronizedList(new ArrayList<String>());
+        graph = new Graph();
+        graph.timetableSnapshotSource = mock(TimetableSnapshotSource.class);
+        doAnswer(record("defer")).when(graph.timetableSnapshotSource).deferSnapshotCommit();
+        doAnswer(record("commit")).when(graph.timetableSnapshotSource).commitDeferredSnapshot();
+        manager = new GraphUpdaterManager(graph);
+    }
+
+    @After
+    public void tearDown() {
+        manager.stop();
+    }
+
+    private Answer<Void> record(final String event) {
+        return new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                events.add(event);
+                return null;
+            }
+        };
+    }
+
+    private GraphWriterRunnable writer(final String name) {
+        return new GraphWriterRunnable() {
+            @Override
+            public void run(Graph graph) {
+                events.add(name);
+            }
+        };
+    }
+
+    /** Keeps the writer thread busy until the returned latch is released. */
+    private CountDownLatch blockWriter() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        manager.execute(new GraphWriterRunnable() {
+            @Override
+            public void run(Graph graph) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        started.await();
+        return release;
+    }
+
+    @Test
+    public void testQueuedWritersShareCommit() throws Exception {
+        CountDownLatch release = blockWriter();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(manager.execute(writer("w" + i)));
+        }
+        release.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        // The futures complete before the commit at the end of the pass, stopping waits for it
+        manager.stop();
+
+        // The writers queued up while the pass was busy join it, in the order they were submitted, and
+        // share its commit. The pass scheduled for them finds nothing left to run.
+        assertEquals(Arrays.asList("defer", "w0", "w1", "w2", "w3", "w4", "commit"), events.subList(0, 7));
+        assertEquals(6, manager.getMaxWriterPassSize());
+    }
+
+    @Test
+    public void testFailingWriterInPass() throws Exception {
+        CountDownLatch release = blockWriter();
+        Future<?> first = manager.execute(writer("w0"));
+        Future<?> failing = manager.execute(new GraphWriterRunnable() {
+            @Override
+            public void run(Graph graph) {
+                events.add("failing");
+                throw new IllegalStateException("broken writer");
+            }
+        });
+        Future<?> last = manager.execute(writer("w1"));
+        release.countDown();
+        first.get();
+        failing.get();
+        last.get();
+        manager.stop();
+
+        // The exception is logged, and the rest of the pass and its commit happen as usual
+        assertEquals(Arrays.asList("defer", "w0", "failing", "w1", "commit"), events.subList(0, 5));
+    }
+
+    @Test
+    public void testPassDurationBound() throws Exception {
+        manager.setMaxWriterPassMs(50);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            final String name = "w" + i;
+            futures.add(manager.execute(new GraphWriterRunnable() {
+                @Override
+                public void run(Graph graph) {
+                    events.add(name);
+                    try {
+                        Thread.sleep(30);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        manager.stop();
+
+        // The queued writers are split into passes of at most two, each one committing a snapshot
+        assertTrue(manager.getWriterPasses() >= 3);
+        assertTrue(manager.getMaxWriterPassSize() <= 2);
+        int sinceCommit = 0;
+        for (String event : events) {
+            if (event.equals("commit")) {
+                sinceCommit = 0;
+            } else if (event.startsWith("w")) {
+                sinceCommit += 1;
+                assertTrue(sinceCommit <= 2);
+            }
+        }
+        assertEquals("commit", events.get(events.size() - 1));
+    }
+
+    @Test
+    public void testReplacedSnapshotSource() throws Exception {
+        final TimetableSnapshotSource newSource = mock(TimetableSnapshotSource.class);
+        doAnswer(record("new commit")).when(newSource).commitDeferredSnapshot();
+        manager.executeBlocking(new GraphWriterRunnable() {
+            @Override
+            public void run(Graph graph) {
+                events.add("replace");
+                graph.timetableSnapshotSource = newSource;
+            }
+        });
+        manager.stop();
+
+        // The source deferred at the start of the pass is committed too
+        assertEquals(Arrays.asList("defer", "replace", "commit", "new commit"), events);
+    }
+
+    @Test
+    public void testExecuteAfterStop() throws Exception {
+        manager.stop();
+        // The scheduler refuses the writer pass, the writer is cancelled rather than left waiting forever
+        Future<?> future = manager.execute(writer("late"));
+        assertTrue(future.isCancelled());
+        try {
+            manager.executeBlocking(writer("blocking"));
+            fail("A writer submitted after stopping must not be run");
+        } catch (CancellationException e) {
+            // expected
+        }
+        assertEquals(0, manager.getWriterQueueSize());
+        for (GraphWriterQueueStats stats : manager.getWriterQueueStats()) {
+            assertEquals(0, stats.getQueued());
+        }
+        assertTrue(events.isEmpty());
+    }
+
+}
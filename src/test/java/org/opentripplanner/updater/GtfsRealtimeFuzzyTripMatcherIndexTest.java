@@ -0,0 +1,108 @@
+package org.opentripplanner.updater;
+
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Route;
+import org.onebusaway.gtfs.model.Trip;
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.opentripplanner.GtfsTest;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.trippattern.TripTimes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks the index of scheduled trips by route, direction and start time that the fuzzy trip
+ * matcher builds the first time it is used.
+ */
+public class GtfsRealtimeFuzzyTripMatcherIndexTest extends GtfsTest {
+
+    private String feedId;
+
+    private Trip trip;
+
+    private Route route;
+
+    private int direction;
+
+    @Override
+    public String getFeedName() {
+        return "testagency.zip";
+    }
+
+    @Override
+    protected void setUp() {
+        super.setUp();
+        feedId = graph.getFeedIds().iterator().next();
+        // Starts at 08:00 every day
+        trip = graph.index.tripForId.get(new AgencyAndId(feedId, "1.3"));
+        route = trip.getRoute();
+        direction = graph.index.patternForTrip.get(trip).directionId;
+    }
+
+    /** Trips starting before midnight of their service day or after 24:00 are indexed like the others. */
+    public void testStartTimesOutsideDay() {
+        TripPattern pattern = graph.index.patternForTrip.get(trip);
+        TripTimes times = pattern.scheduledTimetable.getTripTimes(trip);
+        // Copies of the trip starting 10 minutes before midnight and at 25:10, added before the index is built
+        pattern.scheduledTimetable.tripTimes.add(times.timeShift(0, -600, true));
+        pattern.scheduledTimetable.tripTimes.add(times.timeShift(0, 25 * 3600 + 600, true));
+
+        GtfsRealtimeFuzzyTripMatcher matcher = new GtfsRealtimeFuzzyTripMatcher(graph.index);
+        ServiceDate date = new ServiceDate(2009, 9, 15);
+        assertSame(trip, matcher.getTrip(route, direction, 8 * 3600, date));
+        assertSame(trip, matcher.getTrip(route, direction, -600, date));
+        assertSame(trip, matcher.getTrip(route, direction, 25 * 3600 + 600, date));
+        // The start time and the direction don't spill into each other, also for negative times
+        assertNull(matcher.getTrip(route, direction, -599, date));
+        assertNull(matcher.getTrip(route, direction, -601, date));
+        for (int otherDirection = -1; otherDirection <= 1; otherDirection++) {
+            if (otherDirection != direction) {
+                assertNull(matcher.getTrip(route, otherDirection, -600, date));
+                assertNull(matcher.getTrip(route, otherDirection, 25 * 3600 + 600, date));
+            }
+        }
+
+        // A start time after 24:00 can be given as is, or on the next day
+        TripDescriptor late = TripDescriptor.newBuilder().setRouteId(route.getId().getId())
+                .setDirectionId(direction).setStartTime("25:10:00").setStartDate("20090915").build();
+        assertEquals("1.3", matcher.match(feedId, late).getTripId());
+        late = late.toBuilder().setStartTime("01:10:00").setStartDate("20090916").build();
+        assertEquals("1.3", matcher.match(feedId, late).getTripId());
+    }
+
+    /** Threads asking for matches before the index is built all wait for it and get the same results. */
+    public void testConcurrentFirstUse() throws Exception {
+        final GtfsRealtimeFuzzyTripMatcher matcher = new GtfsRealtimeFuzzyTripMatcher(graph.index);
+        final TripDescriptor morning = TripDescriptor.newBuilder().setRouteId(route.getId().getId())
+                .setDirectionId(direction).setStartTime("08:00:00").setStartDate("20090915").build();
+        final TripDescriptor night = morning.toBuilder().setStartTime("00:20:00").build();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                final TripDescriptor descriptor = i % 2 == 0 ? morning : night;
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        start.await();
+                        return matcher.match(feedId, descriptor).getTripId();
+                    }
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i % 2 == 0 ? "1.3" : "1.2", results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.opentripplanner.updater.bike_rental;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opentripplanner.routing.bike_rental.BikeRentalStation;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
+import org.opentripplanner.routing.edgetype.RentABikeOnEdge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.BikeRentalStationVertex;
+import org.opentripplanner.updater.GraphUpdaterManager;
+import org.opentripplanner.updater.GraphWriterRunnable;
+import org.opentripplanner.util.NonLocalizedString;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.Futures;
+
+public class TestBikeRentalUpdater extends TestCase {
+
+    private Graph graph;
+
+    private GraphUpdaterManager updaterManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        graph = new Graph();
+        Answer<Object> runNow = new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ((GraphWriterRunnable) invocation.getArguments()[0]).run(graph);
+                return Futures.immediateFuture(null);
+            }
+        };
+        updaterManager = mock(GraphUpdaterManager.class);
+        doAnswer(runNow).when(updaterManager).executeBlocking(any(GraphWriterRunnable.class));
+        // The first update fails on the graph writer thread, the next ones are applied
+        doReturn(Futures.immediateFailedFuture(new IllegalStateException("broken writer")))
+                .doAnswer(runNow).when(updaterManager).execute(any(GraphWriterRunnable.class));
+    }
+
+    private int countStationVertices() {
+        int n = 0;
+        for (Vertex v : graph.getVertices()) {
+            if (v instanceof BikeRentalStationVertex)
+                n++;
+        }
+        return n;
+    }
+
+    public void testFailedUpdate() throws Exception {
+        ObjectNode config = new ObjectMapper().createObjectNode();
+        config.put("sourceType", "share-bike");
+        config.put("url", "file:src/test/resources/bike/share-bike.json");
+        BikeRentalUpdater updater = new BikeRentalUpdater();
+        updater.configure(graph, config);
+        updater.setGraphUpdaterManager(updaterManager);
+        updater.setup();
+
+        updater.runPolling();
+        BikeRentalStationService service = graph.getService(BikeRentalStationService.class);
+        assertTrue(service.getBikeRentalStations().isEmpty());
+
+        // The failure of the previous update is logged rather than thrown, and its stations are added now
+        updater.runPolling();
+        assertEquals(17, service.getBikeRentalStations().size());
+        assertEquals(17, countStationVertices());
+
+        updater.runPolling();
+        assertEquals(17, service.getBikeRentalStations().size());
+        assertEquals(17, countStationVertices());
+    }
+
+    private BikeRentalStationVertex makeStationVertex(String network, String id) {
+        BikeRentalStation station = new BikeRentalStation();
+        station.id = id;
+        station.x = -1.68;
+        station.y = 48.11;
+        station.name = new NonLocalizedString(id);
+        BikeRentalStationVertex vertex = new BikeRentalStationVertex(graph, station);
+        new RentABikeOnEdge(vertex, vertex, Collections.singleton(network));
+        return vertex;
+    }
+
+    public void testOtherNetworkVerticesNotClaimed() throws Exception {
+        BikeRentalStationVertex ownVertex = makeStationVertex("rennes", "75");
+        // A station of another network whose ID collides with one of the feed
+        BikeRentalStationVertex otherVertex = makeStationVertex("other", "52");
+
+        ObjectNode config = new ObjectMapper().createObjectNode();
+        config.put("sourceType", "keolis-rennes");
+        config.put("url", "file:src/test/resources/bike/keolis-rennes.xml");
+        config.put("networks", "rennes");
+        BikeRentalUpdater updater = new BikeRentalUpdater();
+        updater.configure(graph, config);
+        updater.setGraphUpdaterManager(updaterManager);
+        updater.setup();
+        updater.runPolling();
+        updater.runPolling();
+
+        assertTrue(ownVertex.hasAvailability());
+        assertSame(ownVertex, graph.getVertex(ownVertex.getLabel()));
+        assertFalse(otherVertex.hasAvailability());
+        Vertex feedVertex = graph.getVertex(otherVertex.getLabel());
+        assertNotSame(otherVertex, feedVertex);
+        assertTrue(((BikeRentalStationVertex) feedVertex).hasAvailability());
+    }
+}
@@ -0,0 +1,77 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.updater.stoptime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.transit.realtime.GtfsRealtime.Alert;
+import com.google.transit.realtime.GtfsRealtime.FeedEntity;
+import com.google.transit.realtime.GtfsRealtime.FeedHeader;
+import com.google.transit.realtime.GtfsRealtime.FeedHeader.Incrementality;
+import com.google.transit.realtime.GtfsRealtime.FeedMessage;
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
+import com.google.transit.realtime.GtfsRealtime.TripUpdate;
+
+public class GtfsRealtimeTripUpdateReaderTest {
+
+    private static byte[] createMessage(Incrementality incrementality, int nTripUpdates) {
+        FeedMessage.Builder message = FeedMessage.newBuilder();
+        message.setHeader(FeedHeader.newBuilder().setGtfsRealtimeVersion("1.0")
+                .setIncrementality(incrementality));
+        for (int i = 0; i < nTripUpdates; i++) {
+            TripUpdate tripUpdate = TripUpdate.newBuilder()
+                    .setTrip(TripDescriptor.newBuilder().setTripId("trip" + i)).build();
+            message.addEntity(FeedEntity.newBuilder().setId("update" + i).setTripUpdate(tripUpdate));
+            // Entities without a trip update are skipped
+            message.addEntity(FeedEntity.newBuilder().setId("alert" + i).setAlert(Alert.newBuilder()));
+        }
+        return message.build().toByteArray();
+    }
+
+    @Test
+    public void testReadInParts() throws IOException {
+        byte[] bytes = createMessage(Incrementality.DIFFERENTIAL, 5);
+        GtfsRealtimeTripUpdateReader reader = new GtfsRealtimeTripUpdateReader(new ByteArrayInputStream(bytes));
+
+        List<TripUpdate> part = reader.read(2);
+        assertFalse(reader.isFullDataset());
+        assertEquals(2, part.size());
+        assertEquals("trip0", part.get(0).getTrip().getTripId());
+        assertEquals(2, reader.read(2).size());
+        part = reader.read(2);
+        assertEquals(1, part.size());
+        assertEquals("trip4", part.get(0).getTrip().getTripId());
+        assertNull(reader.read(2));
+        reader.close();
+    }
+
+    @Test
+    public void testReadAll() throws IOException {
+        byte[] bytes = createMessage(Incrementality.FULL_DATASET, 100);
+        GtfsRealtimeTripUpdateReader reader = new GtfsRealtimeTripUpdateReader(new ByteArrayInputStream(bytes));
+        List<TripUpdate> updates = reader.readAll();
+        assertTrue(reader.isFullDataset());
+        assertEquals(100, updates.size());
+        assertEquals("trip99", updates.get(99).getTrip().getTripId());
+    }
+}
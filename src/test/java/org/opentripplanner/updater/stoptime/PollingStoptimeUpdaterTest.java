@@ -0,0 +1,204 @@
+package org.opentripplanner.updater.stoptime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.updater.GraphUpdaterManager;
+import org.opentripplanner.updater.GraphWriterRunnable;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.Futures;
+import com.google.transit.realtime.GtfsRealtime.FeedEntity;
+import com.google.transit.realtime.GtfsRealtime.FeedHeader;
+import com.google.transit.realtime.GtfsRealtime.FeedHeader.Incrementality;
+import com.google.transit.realtime.GtfsRealtime.FeedMessage;
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
+import com.google.transit.realtime.GtfsRealtime.TripUpdate;
+
+/**
+ * Checks how the updater splits a GTFS-RT message into batches for the graph writer, with a mock
+ * snapshot source and a graph updater manager running the graph writer runnables right away.
+ */
+public class PollingStoptimeUpdaterTest {
+
+    private Graph graph;
+
+    private TimetableSnapshotSource snapshotSource;
+
+    private GraphUpdaterManager updaterManager;
+
+    /** Prepares an empty batch with the feed ID and the first and last part flags it is given. */
+    private final Answer<TripUpdateBatch> prepare = new Answer<TripUpdateBatch>() {
+        @Override
+        public TripUpdateBatch answer(InvocationOnMock invocation) {
+            Object[] args = invocation.getArguments();
+            return new TripUpdateBatch((String) args[1],
+                    Collections.<TripUpdateBatch.PreparedUpdate>emptyList(), 0,
+                    (Boolean) args[2], (Boolean) args[3], 0, 0);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new Graph();
+        snapshotSource = mock(TimetableSnapshotSource.class);
+        graph.timetableSnapshotSource = snapshotSource;
+        when(snapshotSource.prepareTripUpdates(anyListOf(TripUpdate.class), anyString(), anyBoolean(), anyBoolean()))
+                .thenAnswer(prepare);
+
+        Answer<Object> runNow = new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ((GraphWriterRunnable) invocation.getArguments()[0]).run(graph);
+                return Futures.immediateFuture(null);
+            }
+        };
+        updaterManager = mock(GraphUpdaterManager.class);
+        when(updaterManager.execute(any(GraphWriterRunnable.class))).thenAnswer(runNow);
+        doAnswer(runNow).when(updaterManager).executeBlocking(any(GraphWriterRunnable.class));
+    }
+
+    private static File createMessage(Incrementality incrementality, int nTripUpdates) throws IOException {
+        FeedMessage.Builder message = FeedMessage.newBuilder();
+        message.setHeader(FeedHeader.newBuilder().setGtfsRealtimeVersion("1.0")
+                .setIncrementality(incrementality));
+        for (int i = 0; i < nTripUpdates; i++) {
+            TripUpdate tripUpdate = TripUpdate.newBuilder()
+                    .setTrip(TripDescriptor.newBuilder().setTripId("trip" + i)).build();
+            message.addEntity(FeedEntity.newBuilder().setId("update" + i).setTripUpdate(tripUpdate));
+        }
+        File file = File.createTempFile("tripupdates", ".pb");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            message.build().writeTo(out);
+        }
+        return file;
+    }
+
+    private PollingStoptimeUpdater createUpdater(File file) throws Exception {
+        ObjectNode config = new ObjectMapper().createObjectNode();
+        config.put("sourceType", "gtfs-file");
+        config.put("file", file.getPath());
+        config.put("feedId", "FEED");
+        config.put("batchSize", 2);
+        PollingStoptimeUpdater updater = new PollingStoptimeUpdater();
+        updater.configure(graph, config);
+        updater.setGraphUpdaterManager(updaterManager);
+        updater.setup();
+        return updater;
+    }
+
+    @Test
+    public void testEmptyFullDataset() throws Exception {
+        createUpdater(createMessage(Incrementality.FULL_DATASET, 0)).runPolling();
+
+        // The message is applied as a single empty part, so that all the trips it lacks are reverted
+        ArgumentCaptor<TripUpdateBatch> batch = ArgumentCaptor.forClass(TripUpdateBatch.class);
+        verify(snapshotSource).applyTripUpdates(eq(graph), eq(true), batch.capture());
+        assertEquals(0, batch.getValue().size());
+        assertTrue(batch.getValue().firstPart);
+        assertTrue(batch.getValue().lastPart);
+    }
+
+    @Test
+    public void testMessageInParts() throws Exception {
+        createUpdater(createMessage(Incrementality.DIFFERENTIAL, 3)).runPolling();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<TripUpdate>> updates = (ArgumentCaptor) ArgumentCaptor.forClass(List.class);
+        verify(snapshotSource, times(2)).prepareTripUpdates(updates.capture(), eq("FEED"), anyBoolean(),
+                anyBoolean());
+        assertEquals(2, updates.getAllValues().get(0).size());
+        assertEquals("trip2", updates.getAllValues().get(1).get(0).getTrip().getTripId());
+
+        ArgumentCaptor<TripUpdateBatch> batches = ArgumentCaptor.forClass(TripUpdateBatch.class);
+        verify(snapshotSource, times(2)).applyTripUpdates(eq(graph), eq(false), batches.capture());
+        TripUpdateBatch first = batches.getAllValues().get(0);
+        TripUpdateBatch last = batches.getAllValues().get(1);
+        assertTrue(first.firstPart);
+        assertFalse(first.lastPart);
+        assertFalse(last.firstPart);
+        assertTrue(last.lastPart);
+    }
+
+    /** Checks that the parts applied so far are finished with an empty last part. */
+    private void verifyClosingPart() {
+        ArgumentCaptor<TripUpdateBatch> batches = ArgumentCaptor.forClass(TripUpdateBatch.class);
+        verify(snapshotSource, times(2)).applyTripUpdates(eq(graph), eq(false), batches.capture());
+        assertTrue(batches.getAllValues().get(0).firstPart);
+        TripUpdateBatch closing = batches.getAllValues().get(1);
+        assertEquals(0, closing.size());
+        assertFalse(closing.firstPart);
+        assertTrue(closing.lastPart);
+    }
+
+    @Test
+    public void testFailedLastPartPreparation() throws Exception {
+        doAnswer(new Answer<TripUpdateBatch>() {
+            @Override
+            public TripUpdateBatch answer(InvocationOnMock invocation) throws Throwable {
+                List<?> updates = (List<?>) invocation.getArguments()[0];
+                if ((Boolean) invocation.getArguments()[3] && !updates.isEmpty())
+                    throw new IllegalStateException("broken update");
+                return prepare.answer(invocation);
+            }
+        }).when(snapshotSource).prepareTripUpdates(anyListOf(TripUpdate.class), anyString(), anyBoolean(),
+                anyBoolean());
+        try {
+            createUpdater(createMessage(Incrementality.DIFFERENTIAL, 3)).runPolling();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        verifyClosingPart();
+    }
+
+    @Test
+    public void testFailedPreviousPart() throws Exception {
+        // The first part fails on the graph writer thread while the last part is prepared
+        doAnswer(new Answer<Object>() {
+            private boolean failed = false;
+
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ((GraphWriterRunnable) invocation.getArguments()[0]).run(graph);
+                if (failed)
+                    return Futures.immediateFuture(null);
+                failed = true;
+                return Futures.immediateFailedFuture(new IllegalStateException("broken writer"));
+            }
+        }).when(updaterManager).execute(any(GraphWriterRunnable.class));
+        try {
+            createUpdater(createMessage(Incrementality.DIFFERENTIAL, 3)).runPolling();
+        } catch (ExecutionException e) {
+            // expected
+        }
+        verifyClosingPart();
+    }
+
+}
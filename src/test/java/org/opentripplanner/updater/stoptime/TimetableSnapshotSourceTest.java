@@ -25,6 +25,9 @@ import java.text.ParseException;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -130,7 +133,10 @@ public class TimetableSnapshotSourceTest {
         assertNotNull(snapshot);
         assertSame(snapshot, updater.getTimetableSnapshot());
 
-        updater.applyTripUpdates(graph, fullDataset, Arrays.asList(TripUpdate.parseFrom(cancellation)), feedId);
+        // An identical update is skipped, so cancel another trip to have something to commit
+        final TripUpdate.Builder otherCancellation = TripUpdate.parseFrom(cancellation).toBuilder();
+        otherCancellation.getTripBuilder().setTripId("1.2");
+        updater.applyTripUpdates(graph, fullDataset, Arrays.asList(otherCancellation.build()), feedId);
         assertSame(snapshot, updater.getTimetableSnapshot());
 
         updater.maxSnapshotFrequency = (-1);
@@ -139,6 +145,95 @@ public class TimetableSnapshotSourceTest {
         assertNotSame(snapshot, newSnapshot);
     }
 
+    @Test
+    public void testSkipUnchangedTripUpdates() {
+        final AgencyAndId tripId = new AgencyAndId(feedId, "1.1");
+        final Trip trip = graph.index.tripForId.get(tripId);
+        final TripPattern pattern = graph.index.patternForTrip.get(trip);
+        final int tripIndex = pattern.scheduledTimetable.getTripIndex(tripId);
+
+        final TripUpdate.Builder tripUpdateBuilder = TripUpdate.newBuilder();
+        tripUpdateBuilder.getTripBuilder().setTripId("1.1");
+        final StopTimeUpdate.Builder stopTimeUpdateBuilder = tripUpdateBuilder.addStopTimeUpdateBuilder();
+        stopTimeUpdateBuilder.setStopSequence(2);
+        stopTimeUpdateBuilder.getArrivalBuilder().setDelay(60);
+        stopTimeUpdateBuilder.getDepartureBuilder().setDelay(60);
+        tripUpdateBuilder.setTimestamp(1000);
+        final TripUpdate tripUpdate = tripUpdateBuilder.build();
+
+        updater.maxSnapshotFrequency = -1;
+        updater.applyTripUpdates(graph, true, Arrays.asList(tripUpdate), feedId);
+        final TimetableSnapshot snapshot = updater.getTimetableSnapshot();
+        assertEquals(60, snapshot.resolve(pattern, serviceDate).getTripTimes(tripIndex).getArrivalDelay(1));
+
+        // The same update again, with only a newer timestamp, leaves the snapshot as it was
+        final TripUpdate sameTripUpdate = tripUpdate.toBuilder().setTimestamp(1030).build();
+        updater.applyTripUpdates(graph, true, Arrays.asList(sameTripUpdate), feedId);
+        assertSame(snapshot, updater.getTimetableSnapshot());
+        assertEquals(1, updater.getMetrics(feedId).getUnchangedUpdates());
+
+        // A full dataset without the trip reverts it to its scheduled times
+        updater.applyTripUpdates(graph, true, Arrays.<TripUpdate>asList(), feedId);
+        final TimetableSnapshot newSnapshot = updater.getTimetableSnapshot();
+        assertNotSame(snapshot, newSnapshot);
+        assertSame(pattern.scheduledTimetable.getTripTimes(tripIndex),
+                newSnapshot.resolve(pattern, serviceDate).getTripTimes(tripIndex));
+    }
+
+    @Test
+    public void testPrepareAndApplyOnDifferentThreads() throws Exception {
+        final AgencyAndId tripId = new AgencyAndId(feedId, "1.1");
+        final Trip trip = graph.index.tripForId.get(tripId);
+        final TripPattern pattern = graph.index.patternForTrip.get(trip);
+        final int tripIndex = pattern.scheduledTimetable.getTripIndex(tripId);
+
+        final TripUpdate.Builder tripUpdateBuilder = TripUpdate.newBuilder();
+        tripUpdateBuilder.getTripBuilder().setTripId("1.1");
+        final StopTimeUpdate.Builder stopTimeUpdateBuilder = tripUpdateBuilder.addStopTimeUpdateBuilder();
+        stopTimeUpdateBuilder.setStopSequence(2);
+        stopTimeUpdateBuilder.getArrivalBuilder().setDelay(60);
+        stopTimeUpdateBuilder.getDepartureBuilder().setDelay(60);
+        final TripUpdate delay = tripUpdateBuilder.build();
+        stopTimeUpdateBuilder.getArrivalBuilder().setDelay(120);
+        stopTimeUpdateBuilder.getDepartureBuilder().setDelay(120);
+        final TripUpdate otherDelay = tripUpdateBuilder.build();
+
+        updater.maxSnapshotFrequency = -1;
+        final ExecutorService preparer = Executors.newSingleThreadExecutor();
+        final ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            // Prepare both updates off the writer thread, before either is applied
+            final TripUpdateBatch batch = preparer.submit(new Callable<TripUpdateBatch>() {
+                @Override
+                public TripUpdateBatch call() {
+                    return updater.prepareTripUpdates(Arrays.asList(delay), feedId);
+                }
+            }).get();
+            final TripUpdateBatch otherBatch = preparer.submit(new Callable<TripUpdateBatch>() {
+                @Override
+                public TripUpdateBatch call() {
+                    return updater.prepareTripUpdates(Arrays.asList(otherDelay), feedId);
+                }
+            }).get();
+
+            // The second batch was prepared against the scheduled trip, which the first one changed in the meantime
+            writer.submit(new Runnable() {
+                @Override
+                public void run() {
+                    updater.applyTripUpdates(graph, fullDataset, batch);
+                    updater.applyTripUpdates(graph, fullDataset, otherBatch);
+                }
+            }).get();
+        } finally {
+            preparer.shutdown();
+            writer.shutdown();
+        }
+
+        final TimetableSnapshot snapshot = updater.getTimetableSnapshot();
+        assertEquals(120, snapshot.resolve(pattern, serviceDate).getTripTimes(tripIndex).getArrivalDelay(1));
+        assertEquals(120, snapshot.resolve(pattern, serviceDate).getTripTimes(tripIndex).getDepartureDelay(1));
+    }
+
     @Test
     public void testHandleCanceledTrip() throws InvalidProtocolBufferException {
         final AgencyAndId tripId = new AgencyAndId(feedId, "1.1");